@@ -83,7 +83,7 @@ CREATE TABLE user_profiles (
     
     -- Trường HOÃN (dành cho mở rộng sau)
     games_drawn INT DEFAULT 0 COMMENT 'HOÃN: Số trận hòa (không dùng cho thể thức 3 hiệp của MVP)',
-    rank_tier ENUM('BRONZE', 'SILVER', 'GOLD', 'PLATINUM', 'DIAMOND') DEFAULT 'BRONZE' COMMENT 'HOÃN: Hạng bậc để ghép trận nâng cao',
+    rank_tier ENUM('BRONZE', 'SILVER', 'GOLD', 'PLATINUM', 'DIAMOND') DEFAULT 'BRONZE' COMMENT 'ĐANG DÙNG: Bậc theo phần trăm rating (RankTierService: 40/70/90/97%)',
     current_rating DECIMAL(10,2) DEFAULT 1000.00 COMMENT 'HOÃN: Hệ số xếp hạng kiểu ELO',
     peak_rating DECIMAL(10,2) DEFAULT 1000.00 COMMENT 'HOÃN: Mức xếp hạng cao nhất đạt được',
     total_score DECIMAL(12,2) DEFAULT 0.00 COMMENT 'HOÃN: Tổng điểm tích lũy qua các ván',
@@ -140,10 +140,11 @@ CREATE TABLE cards (
 -- THAY ĐỔI: 
 --   - id VARCHAR(50) UUID → match_id VARCHAR(36) (UUID format chuẩn)
 --   - player*_id VARCHAR(50) → INT (FK users.user_id)
+-- PHÂN VÙNG: RANGE theo tháng của created_at (xem PHÂN VÙNG & LƯU TRỮ cuối file)
 -- ============================================================================
 CREATE TABLE games (
     -- Định danh chính (ĐANG DÙNG - MVP)
-    match_id VARCHAR(36) PRIMARY KEY COMMENT 'ĐANG DÙNG: Định danh ván duy nhất (định dạng UUID: 36 ký tự)',
+    match_id VARCHAR(36) NOT NULL COMMENT 'ĐANG DÙNG: Định danh ván duy nhất (định dạng UUID: 36 ký tự)',
     
     -- Người chơi (ĐANG DÙNG - MVP)
     player1_id INT NOT NULL COMMENT 'ĐANG DÙNG: ID người chơi 1 (FK users.user_id)',
@@ -166,7 +167,7 @@ CREATE TABLE games (
     completed_rounds INT DEFAULT 0 COMMENT 'ĐANG DÙNG: Số hiệp đã hoàn thành (0-3)',
     
     -- Dấu thời gian (ĐANG DÙNG - MVP)
-    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP COMMENT 'ĐANG DÙNG: Thời điểm tạo ván (bắt đầu ghép)',
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT 'ĐANG DÙNG: Thời điểm tạo ván (bắt đầu ghép), khóa phân vùng',
     started_at TIMESTAMP NULL COMMENT 'ĐANG DÙNG: Thời điểm bắt đầu (cả hai sẵn sàng)',
     completed_at TIMESTAMP NULL COMMENT 'ĐANG DÙNG: Thời điểm kết thúc (xong 3 hiệp hoặc bỏ dở)',
     
@@ -180,10 +181,9 @@ CREATE TABLE games (
     server_instance VARCHAR(50) COMMENT 'HOÃN: Máy chủ xử lý ván này',
     game_data JSON COMMENT 'HOÃN: Siêu dữ liệu bổ sung (chat, replay, v.v.)',
     
-    -- Ràng buộc khóa ngoại
-    FOREIGN KEY (player1_id) REFERENCES users(user_id) ON DELETE CASCADE,
-    FOREIGN KEY (player2_id) REFERENCES users(user_id) ON DELETE CASCADE,
-    FOREIGN KEY (winner_id) REFERENCES users(user_id) ON DELETE SET NULL,
+    -- Khóa chính phải chứa cột phân vùng; match_id (UUID) vẫn duy nhất do tầng ứng dụng sinh
+    PRIMARY KEY (match_id, created_at),
+    -- Bảng phân vùng không hỗ trợ khóa ngoại (InnoDB): player*_id / winner_id không còn FK tới users
     
     -- Chỉ mục hiệu năng
     INDEX idx_players (player1_id, player2_id) COMMENT 'ĐANG DÙNG: Tìm ván theo cặp người chơi',
@@ -192,12 +192,28 @@ CREATE TABLE games (
     INDEX idx_created_at (created_at) COMMENT 'ĐANG DÙNG: Sắp ván mới nhất',
     INDEX idx_completed_at (completed_at) COMMENT 'ĐANG DÙNG: Sắp ván đã hoàn thành',
     INDEX idx_winner (winner_id) COMMENT 'ĐANG DÙNG: Truy vấn số trận thắng cho leaderboard',
-    INDEX idx_player1_games (player1_id, created_at) COMMENT 'ĐANG DÙNG: Lịch sử ván của người chơi 1',
-    INDEX idx_player2_games (player2_id, created_at) COMMENT 'ĐANG DÙNG: Lịch sử ván của người chơi 2'
+    INDEX idx_player1_games (player1_id, completed_at, match_id) COMMENT 'ĐANG DÙNG: Lịch sử ván của người chơi 1 (phân trang keyset)',
+    INDEX idx_player2_games (player2_id, completed_at, match_id) COMMENT 'ĐANG DÙNG: Lịch sử ván của người chơi 2 (phân trang keyset)'
 ) ENGINE=InnoDB 
   CHARACTER SET=utf8mb4 
   COLLATE=utf8mb4_unicode_ci
-  COMMENT='ĐANG DÙNG (MVP): Phiên ván chơi với theo dõi kết quả';
+  COMMENT='ĐANG DÙNG (MVP): Phiên ván chơi với theo dõi kết quả'
+  PARTITION BY RANGE (UNIX_TIMESTAMP(created_at)) (
+    PARTITION p_history VALUES LESS THAN (UNIX_TIMESTAMP('2026-01-01 00:00:00')),
+    PARTITION p2026_01 VALUES LESS THAN (UNIX_TIMESTAMP('2026-02-01 00:00:00')),
+    PARTITION p2026_02 VALUES LESS THAN (UNIX_TIMESTAMP('2026-03-01 00:00:00')),
+    PARTITION p2026_03 VALUES LESS THAN (UNIX_TIMESTAMP('2026-04-01 00:00:00')),
+    PARTITION p2026_04 VALUES LESS THAN (UNIX_TIMESTAMP('2026-05-01 00:00:00')),
+    PARTITION p2026_05 VALUES LESS THAN (UNIX_TIMESTAMP('2026-06-01 00:00:00')),
+    PARTITION p2026_06 VALUES LESS THAN (UNIX_TIMESTAMP('2026-07-01 00:00:00')),
+    PARTITION p2026_07 VALUES LESS THAN (UNIX_TIMESTAMP('2026-08-01 00:00:00')),
+    PARTITION p2026_08 VALUES LESS THAN (UNIX_TIMESTAMP('2026-09-01 00:00:00')),
+    PARTITION p2026_09 VALUES LESS THAN (UNIX_TIMESTAMP('2026-10-01 00:00:00')),
+    PARTITION p2026_10 VALUES LESS THAN (UNIX_TIMESTAMP('2026-11-01 00:00:00')),
+    PARTITION p2026_11 VALUES LESS THAN (UNIX_TIMESTAMP('2026-12-01 00:00:00')),
+    PARTITION p2026_12 VALUES LESS THAN (UNIX_TIMESTAMP('2027-01-01 00:00:00')),
+    PARTITION p_future VALUES LESS THAN MAXVALUE
+  );
 
 -- ============================================================================
 -- BẢNG: game_rounds
@@ -208,11 +224,12 @@ CREATE TABLE games (
 --   - game_id VARCHAR(50) → match_id VARCHAR(36)
 --   - round_winner_id VARCHAR(50) → INT
 -- GIỮ NGUYÊN: player*_is_auto_picked (CRITICAL - Tính năng MVP C)
+-- PHÂN VÙNG: RANGE theo tháng của started_at, cùng tên phân vùng với games
 -- ============================================================================
 CREATE TABLE game_rounds (
     -- Định danh chính (ĐANG DÙNG - MVP)
-    round_id INT AUTO_INCREMENT PRIMARY KEY COMMENT 'ĐANG DÙNG: ID hiệp tự tăng',
-    match_id VARCHAR(36) NOT NULL COMMENT 'ĐANG DÙNG: Khóa ngoại tới bảng games',
+    round_id INT AUTO_INCREMENT COMMENT 'ĐANG DÙNG: ID hiệp tự tăng',
+    match_id VARCHAR(36) NOT NULL COMMENT 'ĐANG DÙNG: ID ván (games.match_id)',
     round_number INT NOT NULL COMMENT 'ĐANG DÙNG: Số thứ tự hiệp (1-3)',
     
     -- Nước đi người chơi 1 (ĐANG DÙNG - MVP)
@@ -231,7 +248,7 @@ CREATE TABLE game_rounds (
     player2_round_score INT DEFAULT 0 COMMENT 'ĐANG DÙNG: Điểm của người chơi 2 trong hiệp',
     
     -- Dấu thời gian (ĐANG DÙNG - MVP)
-    started_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP COMMENT 'ĐANG DÙNG: Thời điểm bắt đầu hiệp',
+    started_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT 'ĐANG DÙNG: Thời điểm bắt đầu hiệp, khóa phân vùng',
     completed_at TIMESTAMP NULL COMMENT 'ĐANG DÙNG: Thời điểm kết thúc hiệp (cả hai lật bài)',
     
     -- Trường HOÃN (dành cho mở rộng sau)
@@ -239,14 +256,14 @@ CREATE TABLE game_rounds (
     player2_moved_at TIMESTAMP NULL COMMENT 'HOÃN: Thời điểm người chơi 2 chọn bài',
     round_duration_ms INT COMMENT 'HOÃN: Thời lượng hiệp (ms)',
     
-    -- Ràng buộc khóa ngoại
-    FOREIGN KEY (match_id) REFERENCES games(match_id) ON DELETE CASCADE,
-    FOREIGN KEY (round_winner_id) REFERENCES users(user_id) ON DELETE SET NULL,
-    FOREIGN KEY (player1_card_id) REFERENCES cards(card_id) ON DELETE SET NULL,
-    FOREIGN KEY (player2_card_id) REFERENCES cards(card_id) ON DELETE SET NULL,
-    
-    -- Ràng buộc duy nhất (ngăn trùng hiệp)
-    UNIQUE KEY uk_game_round (match_id, round_number) COMMENT 'Mỗi ván có đúng 3 hiệp duy nhất',
+    PRIMARY KEY (round_id, started_at),
+    -- Bảng phân vùng: mọi khóa duy nhất phải chứa cột phân vùng, và không có FK (games, users, cards).
+    -- uk_game_round thêm started_at nên chỉ chặn dòng trùng hệt (ghi lặp trong cùng giây); ràng buộc
+    -- thật "ván tồn tại + mỗi (match_id, round_number) một dòng" nằm ở JdbcGameRepository.saveRound:
+    -- INSERT ... SELECT FROM games WHERE match_id = ? AND NOT EXISTS (hiệp đã có), 0 dòng → lỗi.
+    -- Đánh đổi: hai lệnh ghi đồng thời cùng một hiệp vẫn có thể lọt (GameService ghi mỗi hiệp
+    -- một lần dưới khóa của ván); ghi/sửa game_rounds bằng tay phải tự giữ ràng buộc này.
+    UNIQUE KEY uk_game_round (match_id, round_number, started_at) COMMENT 'ĐANG DÙNG: Chặn ghi lặp (gồm cột phân vùng)',
     
     -- Chỉ mục hiệu năng
     INDEX idx_game_rounds (match_id, round_number) COMMENT 'ĐANG DÙNG: Lấy danh sách hiệp theo ván',
@@ -255,7 +272,82 @@ CREATE TABLE game_rounds (
 ) ENGINE=InnoDB 
   CHARACTER SET=utf8mb4 
   COLLATE=utf8mb4_unicode_ci
-  COMMENT='ĐANG DÙNG (MVP): Theo dõi từng hiệp với xử lý quá thời gian';
+  COMMENT='ĐANG DÙNG (MVP): Theo dõi từng hiệp với xử lý quá thời gian'
+  PARTITION BY RANGE (UNIX_TIMESTAMP(started_at)) (
+    PARTITION p_history VALUES LESS THAN (UNIX_TIMESTAMP('2026-01-01 00:00:00')),
+    PARTITION p2026_01 VALUES LESS THAN (UNIX_TIMESTAMP('2026-02-01 00:00:00')),
+    PARTITION p2026_02 VALUES LESS THAN (UNIX_TIMESTAMP('2026-03-01 00:00:00')),
+    PARTITION p2026_03 VALUES LESS THAN (UNIX_TIMESTAMP('2026-04-01 00:00:00')),
+    PARTITION p2026_04 VALUES LESS THAN (UNIX_TIMESTAMP('2026-05-01 00:00:00')),
+    PARTITION p2026_05 VALUES LESS THAN (UNIX_TIMESTAMP('2026-06-01 00:00:00')),
+    PARTITION p2026_06 VALUES LESS THAN (UNIX_TIMESTAMP('2026-07-01 00:00:00')),
+    PARTITION p2026_07 VALUES LESS THAN (UNIX_TIMESTAMP('2026-08-01 00:00:00')),
+    PARTITION p2026_08 VALUES LESS THAN (UNIX_TIMESTAMP('2026-09-01 00:00:00')),
+    PARTITION p2026_09 VALUES LESS THAN (UNIX_TIMESTAMP('2026-10-01 00:00:00')),
+    PARTITION p2026_10 VALUES LESS THAN (UNIX_TIMESTAMP('2026-11-01 00:00:00')),
+    PARTITION p2026_11 VALUES LESS THAN (UNIX_TIMESTAMP('2026-12-01 00:00:00')),
+    PARTITION p2026_12 VALUES LESS THAN (UNIX_TIMESTAMP('2027-01-01 00:00:00')),
+    PARTITION p_future VALUES LESS THAN MAXVALUE
+  );
+
+-- ============================================================================
+-- BẢNG: games_archive, game_rounds_archive
+-- Mục đích: Ván / hiệp của các tháng đã đóng, do PartitionArchiver chuyển sang rồi DROP PARTITION
+-- Phạm vi: Chỉ INSERT (INSERT IGNORE, chạy lại an toàn) và đọc; nén trang, ít chỉ mục
+-- Đối đầu (LOBBY.GET_HEAD_TO_HEAD) gộp cả games_archive; lịch sử đấu chỉ đọc games (các tháng còn nóng)
+-- ============================================================================
+CREATE TABLE games_archive (
+    match_id VARCHAR(36) NOT NULL PRIMARY KEY,
+    player1_id INT NOT NULL,
+    player2_id INT NOT NULL,
+    game_mode VARCHAR(20) NOT NULL,
+    total_rounds INT,
+    status VARCHAR(20),
+    winner_id INT NULL,
+    player1_score INT,
+    player2_score INT,
+    completed_rounds INT,
+    created_at TIMESTAMP NOT NULL,
+    started_at TIMESTAMP NULL,
+    completed_at TIMESTAMP NULL,
+    duration_seconds INT NULL,
+    player1_rating_before DECIMAL(10,2),
+    player1_rating_after DECIMAL(10,2),
+    player2_rating_before DECIMAL(10,2),
+    player2_rating_after DECIMAL(10,2),
+    server_instance VARCHAR(50),
+
+    INDEX idx_archive_players (player1_id, player2_id) COMMENT 'Đối đầu theo cặp'
+) ENGINE=InnoDB
+  ROW_FORMAT=COMPRESSED KEY_BLOCK_SIZE=8
+  CHARACTER SET=utf8mb4
+  COLLATE=utf8mb4_unicode_ci
+  COMMENT='LƯU TRỮ: games của các tháng đã đóng';
+
+CREATE TABLE game_rounds_archive (
+    match_id VARCHAR(36) NOT NULL,
+    round_number INT NOT NULL,
+    player1_card_id INT,
+    player1_card_value INT,
+    player1_is_auto_picked BOOLEAN,
+    player2_card_id INT,
+    player2_card_value INT,
+    player2_is_auto_picked BOOLEAN,
+    round_winner_id INT,
+    player1_round_score INT,
+    player2_round_score INT,
+    started_at TIMESTAMP NOT NULL,
+    completed_at TIMESTAMP NULL,
+    player1_moved_at TIMESTAMP NULL,
+    player2_moved_at TIMESTAMP NULL,
+    round_duration_ms INT,
+
+    PRIMARY KEY (match_id, round_number)
+) ENGINE=InnoDB
+  ROW_FORMAT=COMPRESSED KEY_BLOCK_SIZE=8
+  CHARACTER SET=utf8mb4
+  COLLATE=utf8mb4_unicode_ci
+  COMMENT='LƯU TRỮ: game_rounds của các tháng đã đóng';
 
 -- ============================================================================
 -- BẢNG: active_sessions
@@ -286,7 +378,7 @@ CREATE TABLE active_sessions (
     
     -- Ràng buộc khóa ngoại
     FOREIGN KEY (user_id) REFERENCES users(user_id) ON DELETE CASCADE,
-    FOREIGN KEY (match_id) REFERENCES games(match_id) ON DELETE SET NULL,
+    -- match_id không có FK: games là bảng phân vùng
     
     -- Chỉ mục hiệu năng
     INDEX idx_user_session (user_id) COMMENT 'ĐANG DÙNG: Tìm phiên theo người dùng',
@@ -299,6 +391,31 @@ CREATE TABLE active_sessions (
   COLLATE=utf8mb4_unicode_ci
   COMMENT='ĐANG DÙNG (MVP): Quản lý phiên cho trạng thái online và theo dõi kết nối';
 
+-- ============================================================================
+-- BẢNG: leaderboard_window_stats
+-- Mục đích: Checkpoint bảng xếp hạng theo khung thời gian (ngày / tuần / mùa)
+-- Phạm vi: WindowedLeaderboards đếm trong bộ nhớ từ sự kiện kết thúc ván,
+--          ghi các dòng thay đổi mỗi 30 giây, nạp lại khi khởi động
+-- period_key: DAILY '2025-11-04', WEEKLY '2025-W45', SEASON '2025-Q4' (theo UTC)
+-- ============================================================================
+CREATE TABLE leaderboard_window_stats (
+    window_type ENUM('DAILY', 'WEEKLY', 'SEASON') NOT NULL COMMENT 'ĐANG DÙNG: Loại khung thời gian',
+    period_key VARCHAR(10) NOT NULL COMMENT 'ĐANG DÙNG: Khung cụ thể (ngày / tuần ISO / quý)',
+    user_id INT NOT NULL COMMENT 'ĐANG DÙNG: FK users.user_id',
+    games_played INT DEFAULT 0 COMMENT 'ĐANG DÙNG: Số ván trong khung',
+    games_won INT DEFAULT 0 COMMENT 'ĐANG DÙNG: Số ván thắng trong khung',
+    games_lost INT DEFAULT 0 COMMENT 'ĐANG DÙNG: Số ván thua trong khung',
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT 'ĐANG DÙNG: Lần checkpoint gần nhất',
+
+    PRIMARY KEY (window_type, period_key, user_id),
+    FOREIGN KEY (user_id) REFERENCES users(user_id) ON DELETE CASCADE,
+
+    INDEX idx_window_updated (window_type, updated_at) COMMENT 'ĐANG DÙNG: Dọn checkpoint ngày đã hết hạn'
+) ENGINE=InnoDB
+  CHARACTER SET=utf8mb4
+  COLLATE=utf8mb4_unicode_ci
+  COMMENT='ĐANG DÙNG: Checkpoint bảng xếp hạng ngày/tuần/mùa (ghi theo lô)';
+
 -- ============================================================================
 -- DỮ LIỆU KHỞI TẠO: 36 Lá (A-9 của 4 chất)
 -- ============================================================================
@@ -366,6 +483,8 @@ DELIMITER ;
 -- ============================================================================
 -- STORED PROCEDURE: Update user stats sau khi kết thúc ván
 -- Mục đích: Tự động cập nhật games_played, games_won, games_lost
+-- LƯU Ý: Core server không còn gọi procedure này (RatingEngine tính ELO/stats trong bộ nhớ
+--        và ghi user_profiles theo lô). Giữ lại cho công cụ quản trị / sửa dữ liệu thủ công.
 -- ============================================================================
 DELIMITER //
 
@@ -403,15 +522,34 @@ END//
 
 DELIMITER ;
 
+-- ============================================================================
+-- PHÂN VÙNG & LƯU TRỮ (games, game_rounds)
+-- ============================================================================
+-- - Mỗi tháng một phân vùng pYYYY_MM (games theo created_at, game_rounds theo started_at),
+--   p_history chứa mọi thứ trước 2026-01, p_future nhận phần vượt quá phân vùng cuối.
+-- - Mỗi index là index cục bộ của phân vùng → INSERT chỉ cập nhật cây index của tháng hiện tại.
+-- - PartitionArchiver (core, chỉ backend mysql) chạy định kỳ:
+--   1. Tách p_future để luôn có sẵn archive.futureMonths phân vùng tháng tới
+--   2. Phân vùng cũ hơn archive.retentionMonths: chép theo lô sang *_archive, kiểm tra đủ dòng,
+--      rồi ALTER TABLE ... DROP PARTITION (xóa cả tháng không sinh undo/redo cho từng dòng)
+--   3. Tạm dừng giữa các lô khi p95 ghi gameplay (histogram db.gameplay.write) tăng
+-- - Hiệp của ván tạo cuối tháng có thể nằm ở phân vùng tháng sau: được lưu trữ cùng tháng đó.
+-- - Truy vấn theo match_id không có created_at dò mọi phân vùng còn lại (số phân vùng nhỏ nhờ lưu trữ).
+-- - Đánh đổi ràng buộc: InnoDB không cho FK trên bảng phân vùng và khóa duy nhất phải chứa cột phân vùng.
+--   games.match_id (UUID) duy nhất do ứng dụng sinh; game_rounds → games và (match_id, round_number)
+--   do JdbcGameRepository.saveRound kiểm tra khi chèn (xem ghi chú ở game_rounds); users/cards không
+--   bị xóa cứng nên mất FK không để lại dòng mồ côi trong luồng bình thường.
+
 -- ============================================================================
 -- RÀNG BUỘC & QUY TẮC NGHIỆP VỤ
 -- ============================================================================
 -- 1. Mỗi user tự động có profile (trigger after_user_insert)
--- 2. Stats tự động cập nhật (stored procedure update_user_stats_after_game)
+-- 2. Stats + ELO cập nhật bởi RatingEngine (tầng ứng dụng, ghi user_profiles theo lô mỗi 5 giây)
 -- 3. Ranh giới giao dịch:
 --    - Tạo ván (INSERT games + UPDATE active_sessions) - Tầng ứng dụng
 --    - Kết thúc hiệp (INSERT game_rounds + UPDATE games.player*_score) - Tầng ứng dụng
---    - Kết thúc ván (UPDATE games.status/winner + CALL update_user_stats_after_game) - Tầng ứng dụng
+--    - Kết thúc ván (UPDATE games.status/winner/player*_rating_before/after) - Tầng ứng dụng
+--    - user_profiles (rating, W/L/D, streak) - RatingEngine flush theo lô, độc lập với giao dịch kết thúc ván
 
 -- ============================================================================
 -- KIỂM TRA DỮ LIỆU SEED
@@ -1,14 +1,27 @@
 package com.n9.core;
 
+import com.n9.core.database.DatabaseConfig;
 import com.n9.core.database.DatabaseManager;
+import com.n9.core.database.PartitionArchiver;
 import com.n9.core.network.ClientConnectionHandler;
 import com.n9.core.network.CoreServerListener;
+import com.n9.core.repository.Repositories;
 import com.n9.core.service.AuthService;
 import com.n9.core.service.ChallengeService;
 import com.n9.core.service.GameService;
+import com.n9.core.service.HeadToHeadService;
+import com.n9.core.service.LastLoginFlusher;
+import com.n9.core.service.LeaderboardIndex;
+import com.n9.core.service.LeaderboardPublisher;
 import com.n9.core.service.LeaderboardService;
+import com.n9.core.service.MatchHistoryService;
 import com.n9.core.service.MatchmakingService;
+import com.n9.core.service.PasswordHasher;
+import com.n9.core.service.RankTierService;
+import com.n9.core.service.RatingEngine;
 import com.n9.core.service.SessionManager;
+import com.n9.core.service.TakenNamesIndex;
+import com.n9.core.service.WindowedLeaderboards;
 import java.net.ServerSocket;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
@@ -19,24 +32,66 @@ public final class CoreServer {
 
         ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
         ConcurrentHashMap<String, ClientConnectionHandler> activeConnections = new ConcurrentHashMap<>();
-        DatabaseManager dbManager = DatabaseManager.getInstance();
+        String backend = System.getProperty("core.db.backend", "mysql");
+        Repositories repositories = createRepositories(backend);
 
-        if (!dbManager.isHealthy()) {
+        if (!repositories.isHealthy()) {
             System.exit(1);
         }
-        dbManager.printPoolStats();
+
+        // Chỉ MySQL phân vùng games / game_rounds theo tháng: chuyển tháng cũ sang bảng *_archive
+        PartitionArchiver partitionArchiver = "mysql".equals(backend)
+                ? new PartitionArchiver(DatabaseManager.getInstance(), DatabaseConfig.load())
+                : null;
+        if (partitionArchiver != null) {
+            partitionArchiver.start();
+        }
 
         int port = 9090;
         var serverSocket = new ServerSocket(port);
         serverSocket.setReuseAddress(true);
         var executor = Executors.newCachedThreadPool();
 
-        var sessionManager = new SessionManager(dbManager);
+        var sessionManager = new SessionManager(repositories.sessions());
 
-        var gameService = new GameService(dbManager, activeConnections, scheduler, sessionManager);
+        // ELO + stats tính trong bộ nhớ, user_profiles ghi theo lô (luồng flush riêng).
+        // scheduler chỉ dành cho việc không chặn: timeout hiệp/lật bài, tick ghép trận, hết hạn lời mời
+        var ratingEngine = new RatingEngine(repositories.stats());
+        ratingEngine.start();
+        var gameService = new GameService(repositories.games(), activeConnections, scheduler, sessionManager, ratingEngine);
 
-        var authService = new AuthService(dbManager);
-        var leaderboardService = new LeaderboardService(dbManager, sessionManager);
+        // BCrypt chạy trên pool cố định = số core, hàng đợi giới hạn (admission control)
+        var passwordHasher = new PasswordHasher();
+        var lastLoginFlusher = new LastLoginFlusher(repositories.users());
+        lastLoginFlusher.start();
+        var takenNames = new TakenNamesIndex(repositories.users());
+        takenNames.loadFromDatabase(); // nạp trước khi nhận kết nối
+        var authService = new AuthService(repositories.users(), passwordHasher, lastLoginFlusher, takenNames);
+        // Bảng xếp hạng trong bộ nhớ: nạp một lần, cập nhật sau mỗi trận
+        var leaderboardIndex = new LeaderboardIndex(repositories.stats());
+        leaderboardIndex.loadFromDatabase();
+        gameService.addGameEndListener(leaderboardIndex);
+        ratingEngine.setDeferredResultListener(leaderboardIndex::onDeferredResult);
+        // Bảng ngày/tuần/mùa: cộng dồn từ sự kiện kết thúc ván, checkpoint định kỳ
+        var windowedLeaderboards = new WindowedLeaderboards(repositories.stats(), leaderboardIndex);
+        windowedLeaderboards.loadFromDatabase();
+        windowedLeaderboards.start(); // checkpoint trên luồng riêng
+        gameService.addGameEndListener(windowedLeaderboards);
+        // rank_tier theo phần trăm rating (sketch KLL), re-tier toàn bảng mỗi ngày
+        var rankTierService = new RankTierService(repositories.stats());
+        rankTierService.start(); // flush + job re-tier trên luồng riêng
+        gameService.addGameEndListener(rankTierService);
+        var leaderboardService = new LeaderboardService(repositories.stats(), sessionManager, leaderboardIndex, windowedLeaderboards);
+        // Push top-N thay đổi cho client đã subscribe (gộp theo chu kỳ)
+        var leaderboardPublisher = new LeaderboardPublisher(leaderboardIndex, sessionManager, activeConnections);
+        leaderboardPublisher.start(scheduler);
+        // Lịch sử đấu: keyset trên (completed_at, match_id), các ván gần nhất giữ trong bộ nhớ
+        var matchHistoryService = new MatchHistoryService(repositories.games(), sessionManager);
+        matchHistoryService.start(scheduler);
+        gameService.addGameEndListener(matchHistoryService);
+        // Đối đầu theo cặp: LRU tổng hợp, cộng dồn sau mỗi trận
+        var headToHeadService = new HeadToHeadService(repositories.games());
+        gameService.addGameEndListener(headToHeadService);
         var matchmakingService = new MatchmakingService(gameService, sessionManager, activeConnections, scheduler);
 
         // Khởi tạo ChallengeService
@@ -51,22 +106,50 @@ public final class CoreServer {
                 activeConnections,
                 matchmakingService,
                 leaderboardService,
-                challengeService
+                challengeService,
+                leaderboardPublisher,
+                matchHistoryService,
+                headToHeadService
         );
         listener.start();
         matchmakingService.startMatchmakingLoop();
+        challengeService.startExpirySweep();
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("\n=== Shutting down Core Server ===");
             try { serverSocket.close(); } catch (Exception ignored) {}
             executor.shutdownNow();
+            passwordHasher.shutdown();
             scheduler.shutdownNow();
-            dbManager.shutdown();
+            lastLoginFlusher.shutdown(); // flush last_login còn tồn trước khi đóng pool
+            ratingEngine.shutdown();     // flush stats/rating chưa ghi
+            windowedLeaderboards.shutdown(); // checkpoint bảng ngày/tuần/mùa
+            rankTierService.shutdown();      // ghi bậc đã đổi
+            if (partitionArchiver != null) partitionArchiver.shutdown();
+            repositories.shutdown();
             System.out.println("=== Server shutdown complete ===");
         }));
 
         System.out.println("=== Core server started on port: " + port + " ===");
         System.out.println("   Server is ready to accept connections!");
     }
-}
 
+    /**
+     * Backend lưu trữ theo -Dcore.db.backend: mysql (mặc định) | h2 | memory.
+     */
+    private static Repositories createRepositories(String backend) {
+        switch (backend) {
+            case "h2":
+                return Repositories.h2();
+            case "memory":
+                System.out.println("⚠️ In-memory storage backend: data is lost on shutdown");
+                return Repositories.inMemory();
+            case "mysql":
+                DatabaseManager dbManager = DatabaseManager.getInstance();
+                dbManager.printPoolStats(); // sau đó db-pool-monitor in định kỳ
+                return Repositories.mysql(dbManager);
+            default:
+                throw new IllegalArgumentException("Unknown core.db.backend: " + backend);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.n9.core.analytics;
+
+import com.n9.shared.constants.GameConstants;
+import com.n9.shared.model.enums.CardRank;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * CardOutcomeAnalytics - Thống kê kết quả lá-vs-lá trên dữ liệu hiệp do GameExporter xuất ra
+ * (offline, không chạm DB): tỉ lệ thắng của từng giá trị lá, lá auto-pick, theo từng vòng.
+ *
+ * 1. Nạp: mỗi file game_rounds.csv.gz một task (parallel stream), parse thẳng từ byte gzip
+ *    không tạo String mỗi dòng, ghi vào RoundColumns (2 byte / hiệp).
+ * 2. Gộp: chia mảng thành khối BLOCK hiệp, IntStream.parallel().collect() trên ForkJoinPool chung;
+ *    mỗi khối đếm vào mảng bin riêng (không tranh chấp), cuối cùng cộng các mảng bin.
+ * 3. Mọi câu hỏi (CardOutcomeReport) chỉ đọc BINS ô đếm, không quét lại dữ liệu.
+ *
+ * Chạy: java -Dexport.dir=/data/export -cp ... com.n9.core.analytics.CardOutcomeAnalytics
+ */
+public final class CardOutcomeAnalytics {
+
+    /** Số bin: 8 bit giá trị hai lá + 6 bit cờ (RoundColumns). */
+    static final int BINS = 1 << 14;
+    static final int BLOCK = 1 << 18;
+
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final int COLUMNS = GameExporter.ROUND_COLUMNS.length;
+    private static final String HEADER = String.join(",", GameExporter.ROUND_COLUMNS);
+
+    // Vị trí cột trong game_rounds.csv.gz (GameExporter.ROUND_COLUMNS)
+    private static final int ROUND_NUMBER = 1;
+    private static final int PLAYER1_VALUE = 3;
+    private static final int PLAYER1_AUTO = 4;
+    private static final int PLAYER2_VALUE = 6;
+    private static final int PLAYER2_AUTO = 7;
+    private static final int PLAYER1_SCORE = 9;
+    private static final int PLAYER2_SCORE = 10;
+
+    private CardOutcomeAnalytics() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Paths.get(System.getProperty("export.dir", "export"));
+
+        long startNanos = System.nanoTime();
+        RoundColumns rounds = load(directory);
+        double loadSeconds = (System.nanoTime() - startNanos) / 1e9;
+        startNanos = System.nanoTime();
+        CardOutcomeReport report = aggregate(rounds);
+        double aggregateSeconds = (System.nanoTime() - startNanos) / 1e9;
+
+        System.out.printf("📂 Loaded %,d rounds from %s in %.1f s (%,.0f rounds/s), skipped %,d%n",
+                rounds.size(), directory, loadSeconds, rounds.size() / Math.max(loadSeconds, 1e-9), rounds.getSkipped());
+        System.out.printf("⚙️ Aggregated in %.3f s (%,.0f rounds/s); rounds not matching GameRuleUtils: %,d%n%n",
+                aggregateSeconds, rounds.size() / Math.max(aggregateSeconds, 1e-9), report.getRuleMismatches());
+        print(report);
+    }
+
+    /** Nạp game_rounds.csv.gz của mọi segment trong thư mục xuất (song song theo file). */
+    public static RoundColumns load(Path exportDirectory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(exportDirectory, "segment-*")) {
+            for (Path segment : segments) {
+                Path file = segment.resolve(GameExporter.ROUNDS_FILE);
+                if (Files.exists(file)) {
+                    files.add(file);
+                }
+            }
+        }
+        files.sort(null);
+        try {
+            List<RoundColumns> parts = files.parallelStream()
+                    .map(file -> {
+                        try {
+                            return loadFile(file);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    })
+                    .collect(Collectors.toList());
+            return RoundColumns.concat(parts);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /** Đếm số hiệp theo bin trên toàn bộ dữ liệu (fork/join). */
+    public static CardOutcomeReport aggregate(RoundColumns rounds) {
+        byte[] cards = rounds.cards();
+        byte[] flags = rounds.flags();
+        int size = rounds.size();
+        int blocks = (size + BLOCK - 1) / BLOCK;
+        long[] bins = IntStream.range(0, blocks).parallel().collect(
+                () -> new long[BINS],
+                (counts, block) -> {
+                    int to = Math.min(size, (block + 1) * BLOCK);
+                    for (int i = block * BLOCK; i < to; i++) {
+                        counts[(cards[i] & 0xFF) | (flags[i] & 0x3F) << 8]++;
+                    }
+                },
+                CardOutcomeAnalytics::merge);
+        return new CardOutcomeReport(bins, rounds.getSkipped());
+    }
+
+    // ============================
+    // NỘI BỘ
+    // ============================
+
+    /**
+     * Parse một file: chỉ cần các cột số nên đọc từng byte, ',' và '\n' kết thúc trường.
+     * match_id (UUID) không bao giờ bị quote nên không cần xử lý dấu ngoặc kép.
+     */
+    static RoundColumns loadFile(Path file) throws IOException {
+        RoundColumns rounds = new RoundColumns(1 << 16);
+        int[] fields = new int[COLUMNS];
+        StringBuilder header = new StringBuilder();
+        boolean inHeader = true;
+        int field = 0;
+        int value = 0;
+        boolean hasValue = false;
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file), BUFFER_BYTES)) {
+            byte[] buffer = new byte[BUFFER_BYTES];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer[i];
+                    if (inHeader) {
+                        if (b == '\n') {
+                            if (!HEADER.contentEquals(header)) {
+                                throw new IOException("Unexpected header in " + file + ": " + header);
+                            }
+                            inHeader = false;
+                        } else {
+                            header.append((char) b);
+                        }
+                    } else if (b == ',' || b == '\n') {
+                        if (field < COLUMNS) {
+                            fields[field] = hasValue ? value : -1; // -1 = NULL
+                        }
+                        field++;
+                        value = 0;
+                        hasValue = false;
+                        if (b == '\n') {
+                            addRow(rounds, fields, field);
+                            field = 0;
+                        }
+                    } else if (b >= '0' && b <= '9') {
+                        // Cột chữ (match_id) và completed_at cũng cộng dồn ở đây nhưng không được dùng
+                        value = value * 10 + (b - '0');
+                        hasValue = true;
+                    }
+                }
+            }
+        }
+        if (field > 0 || hasValue) {
+            if (field < COLUMNS) fields[field] = hasValue ? value : -1;
+            addRow(rounds, fields, field + 1); // dòng cuối không có '\n'
+        }
+        return rounds;
+    }
+
+    private static void addRow(RoundColumns rounds, int[] fields, int fieldCount) {
+        int round = fields[ROUND_NUMBER];
+        int value1 = fields[PLAYER1_VALUE];
+        int value2 = fields[PLAYER2_VALUE];
+        if (fieldCount != COLUMNS || round < 1 || round > RoundColumns.MAX_ROUND
+                || !GameConstants.isValidCardValue(value1) || !GameConstants.isValidCardValue(value2)) {
+            rounds.skip();
+            return;
+        }
+        // Người thắng hiệp nhận POINTS_PER_WIN, hòa cả hai 0 điểm
+        int score1 = Math.max(0, fields[PLAYER1_SCORE]);
+        int score2 = Math.max(0, fields[PLAYER2_SCORE]);
+        int outcome = score1 > score2 ? RoundColumns.PLAYER1 : score2 > score1 ? RoundColumns.PLAYER2 : RoundColumns.TIE;
+        rounds.add(round, value1, fields[PLAYER1_AUTO] == 1, value2, fields[PLAYER2_AUTO] == 1, outcome);
+    }
+
+    private static void merge(long[] into, long[] from) {
+        for (int i = 0; i < into.length; i++) {
+            into[i] += from[i];
+        }
+    }
+
+    private static void print(CardOutcomeReport report) {
+        int min = GameConstants.MIN_CARD_VALUE;
+        int max = GameConstants.MAX_CARD_VALUE;
+
+        System.out.println("🃏 Card vs card: win % of my card (row) against opponent card (column)");
+        StringBuilder line = new StringBuilder("      ");
+        for (int opponent = min; opponent <= max; opponent++) {
+            line.append(String.format("%7s", label(opponent)));
+        }
+        System.out.println(line);
+        for (int mine = min; mine <= max; mine++) {
+            line = new StringBuilder(String.format("%6s", label(mine)));
+            for (int opponent = min; opponent <= max; opponent++) {
+                line.append(String.format("%7s", percent(report.outcomes(0, mine, opponent, null, null).getWinRate())));
+            }
+            System.out.println(line);
+        }
+
+        System.out.println("\n⏱️ Auto-pick (me vs opponent):");
+        printOutcomes("   manual vs manual", report.outcomes(0, 0, 0, false, false));
+        printOutcomes("   manual vs auto  ", report.outcomes(0, 0, 0, false, true));
+        printOutcomes("   auto   vs manual", report.outcomes(0, 0, 0, true, false));
+        printOutcomes("   auto   vs auto  ", report.outcomes(0, 0, 0, true, true));
+        line = new StringBuilder("   Win % against an auto-picked card:");
+        for (int mine = min; mine <= max; mine++) {
+            line.append(" ").append(label(mine)).append('=').append(percent(report.outcomes(0, mine, 0, null, true).getWinRate()));
+        }
+        System.out.println(line);
+
+        System.out.println("\n🔁 Per round:");
+        for (int round = 1; round <= GameConstants.TOTAL_ROUNDS; round++) {
+            long rounds = report.rounds(round);
+            System.out.printf("   Round %d: %,d rounds, tie %.1f%%, auto-picked %.1f%% of moves, auto-picked card wins %.1f%%%n",
+                    round, rounds, report.outcomes(round, 0, 0, null, null).getTieRate(),
+                    rounds == 0 ? Double.NaN : report.autoPickedMoves(round) * 100.0 / (2 * rounds),
+                    report.outcomes(round, 0, 0, true, null).getWinRate());
+        }
+    }
+
+    private static void printOutcomes(String title, CardOutcomeReport.Outcomes outcomes) {
+        System.out.printf("%s: %,d moves, win %.1f%%, loss %.1f%%, tie %.1f%%%n", title, outcomes.getTotal(),
+                outcomes.getWinRate(), 100.0 - outcomes.getWinRate() - outcomes.getTieRate(), outcomes.getTieRate());
+    }
+
+    /** "-" cho ô không có dữ liệu. */
+    private static String percent(double rate) {
+        return Double.isNaN(rate) ? "-" : String.format("%.1f", rate);
+    }
+
+    private static String label(int value) {
+        CardRank rank = CardRank.fromValue(value);
+        return rank != null ? rank.getCode() : String.valueOf(value);
+    }
+}
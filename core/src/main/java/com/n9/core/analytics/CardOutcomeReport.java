@@ -0,0 +1,176 @@
+package com.n9.core.analytics;
+
+import com.n9.shared.constants.GameConstants;
+import com.n9.shared.model.dto.game.CardDto;
+import com.n9.shared.util.GameRuleUtils;
+
+/**
+ * CardOutcomeReport - Kết quả gộp của CardOutcomeAnalytics: số hiệp theo từng bin
+ * (vòng, giá trị hai lá, auto-pick, kết quả), mọi câu hỏi đọc từ mảng bin này.
+ *
+ * Câu hỏi nhìn từ phía "tôi": mỗi hiệp được tính hai lần, một lần cho mỗi người chơi
+ * (người chơi 1 và người chơi 2 đổi vai) → bảng lá-vs-lá đối xứng, không phụ thuộc ai là player1.
+ */
+public final class CardOutcomeReport {
+
+    /** Thắng / thua / hòa của một nhóm lượt. */
+    public static final class Outcomes {
+        private final long wins;
+        private final long losses;
+        private final long ties;
+
+        Outcomes(long wins, long losses, long ties) {
+            this.wins = wins;
+            this.losses = losses;
+            this.ties = ties;
+        }
+
+        public long getWins() { return wins; }
+        public long getLosses() { return losses; }
+        public long getTies() { return ties; }
+        public long getTotal() { return wins + losses + ties; }
+
+        /** Tỉ lệ thắng (%), NaN nếu không có lượt nào. */
+        public double getWinRate() {
+            return getTotal() == 0 ? Double.NaN : wins * 100.0 / getTotal();
+        }
+
+        public double getTieRate() {
+            return getTotal() == 0 ? Double.NaN : ties * 100.0 / getTotal();
+        }
+    }
+
+    private final long[] bins;
+    private final long skipped;
+    private final long rounds;
+
+    CardOutcomeReport(long[] bins, long skipped) {
+        this.bins = bins;
+        this.skipped = skipped;
+        long total = 0;
+        for (long count : bins) {
+            total += count;
+        }
+        this.rounds = total;
+    }
+
+    /** Số hiệp đã gộp. */
+    public long getRounds() {
+        return rounds;
+    }
+
+    /** Số dòng bỏ qua khi nạp (thiếu giá trị lá, vòng không hợp lệ). */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Kết quả của "tôi" theo bộ lọc. round / myValue / opponentValue = 0: mọi giá trị;
+     * myAutoPicked / opponentAutoPicked = null: cả tự chọn lẫn auto-pick.
+     *
+     * Ví dụ "lá 9 gặp lá auto-pick": outcomes(0, 9, 0, null, true).
+     */
+    public Outcomes outcomes(int round, int myValue, int opponentValue, Boolean myAutoPicked, Boolean opponentAutoPicked) {
+        long wins = 0;
+        long losses = 0;
+        long ties = 0;
+        for (int bin = 0; bin < bins.length; bin++) {
+            long count = bins[bin];
+            if (count == 0 || (round != 0 && round(bin) != round)) continue;
+            int value1 = value1(bin);
+            int value2 = value2(bin);
+            boolean auto1 = autoPicked1(bin);
+            boolean auto2 = autoPicked2(bin);
+            int outcome = outcome(bin);
+            // Phía người chơi 1
+            if (matches(value1, value2, auto1, auto2, myValue, opponentValue, myAutoPicked, opponentAutoPicked)) {
+                if (outcome == RoundColumns.PLAYER1) wins += count;
+                else if (outcome == RoundColumns.PLAYER2) losses += count;
+                else ties += count;
+            }
+            // Phía người chơi 2
+            if (matches(value2, value1, auto2, auto1, myValue, opponentValue, myAutoPicked, opponentAutoPicked)) {
+                if (outcome == RoundColumns.PLAYER2) wins += count;
+                else if (outcome == RoundColumns.PLAYER1) losses += count;
+                else ties += count;
+            }
+        }
+        return new Outcomes(wins, losses, ties);
+    }
+
+    /** Số hiệp của vòng round (0 = mọi vòng). */
+    public long rounds(int round) {
+        long total = 0;
+        for (int bin = 0; bin < bins.length; bin++) {
+            if (round == 0 || round(bin) == round) total += bins[bin];
+        }
+        return total;
+    }
+
+    /** Số lượt chọn bài do hết giờ (auto-pick) trong vòng round (0 = mọi vòng); mỗi hiệp có hai lượt. */
+    public long autoPickedMoves(int round) {
+        long total = 0;
+        for (int bin = 0; bin < bins.length; bin++) {
+            if (round != 0 && round(bin) != round) continue;
+            if (autoPicked1(bin)) total += bins[bin];
+            if (autoPicked2(bin)) total += bins[bin];
+        }
+        return total;
+    }
+
+    /**
+     * Số hiệp có kết quả ghi trong DB khác với luật GameRuleUtils.getRoundWinner (lá lớn hơn thắng).
+     * Khác 0 là dấu hiệu dữ liệu hoặc luật tính điểm đã lệch nhau.
+     */
+    public long getRuleMismatches() {
+        int[][] expected = expectedWinners();
+        long total = 0;
+        for (int bin = 0; bin < bins.length; bin++) {
+            if (bins[bin] == 0) continue;
+            int value1 = value1(bin);
+            int value2 = value2(bin);
+            if (!GameConstants.isValidCardValue(value1) || !GameConstants.isValidCardValue(value2)
+                    || expected[value1][value2] != outcome(bin)) {
+                total += bins[bin];
+            }
+        }
+        return total;
+    }
+
+    // ============================
+    // NỘI BỘ
+    // ============================
+
+    private static boolean matches(int myValue, int opponentValue, boolean myAuto, boolean opponentAuto,
+                                   int wantMyValue, int wantOpponentValue, Boolean wantMyAuto, Boolean wantOpponentAuto) {
+        return (wantMyValue == 0 || myValue == wantMyValue)
+                && (wantOpponentValue == 0 || opponentValue == wantOpponentValue)
+                && (wantMyAuto == null || myAuto == wantMyAuto)
+                && (wantOpponentAuto == null || opponentAuto == wantOpponentAuto);
+    }
+
+    /** Kết quả theo luật cho mọi cặp giá trị hợp lệ: 1 = người chơi 1 thắng, 2 = người chơi 2, 0 = hòa. */
+    private static int[][] expectedWinners() {
+        int size = GameConstants.MAX_CARD_VALUE + 1;
+        int[][] expected = new int[size][size];
+        for (int value1 = GameConstants.MIN_CARD_VALUE; value1 < size; value1++) {
+            for (int value2 = GameConstants.MIN_CARD_VALUE; value2 < size; value2++) {
+                expected[value1][value2] = GameRuleUtils.getRoundWinner(card(value1), card(value2));
+            }
+        }
+        return expected;
+    }
+
+    private static CardDto card(int value) {
+        CardDto card = new CardDto();
+        card.setValue(value);
+        return card;
+    }
+
+    private static int value1(int bin) { return (bin >> 4) & 0xF; }
+    private static int value2(int bin) { return bin & 0xF; }
+    private static int round(int bin) { return ((bin >> 8) & 0x3) + 1; }
+    private static boolean autoPicked1(int bin) { return (bin >> 10 & 1) != 0; }
+    private static boolean autoPicked2(int bin) { return (bin >> 11 & 1) != 0; }
+    private static int outcome(int bin) { return (bin >> 12) & 0x3; }
+}
@@ -0,0 +1,414 @@
+package com.n9.core.analytics;
+
+import com.n9.core.database.ConnectionProvider;
+import com.n9.core.database.DatabaseManager;
+import com.n9.core.database.Workload;
+import com.n9.core.repository.jdbc.SqlDialect;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Properties;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * GameExporter - Xuất games / game_rounds ra file CSV.gz cho phân tích offline,
+ * thay cho các câu SELECT tùy ý chạy thẳng trên bảng production.
+ *
+ * Cách đọc:
+ * - Keyset theo match_id (PRIMARY KEY / idx_game_rounds), mỗi lần CHUNK ván: không OFFSET,
+ *   không quét lại phần đã xuất, mỗi chunk mượn connection LEADERBOARD (replica nếu có) rồi trả ngay.
+ * - Statement streaming (SqlDialect.streamingStatement, MySQL: fetchSize = Integer.MIN_VALUE):
+ *   dòng đi thẳng từ socket ra file, bộ nhớ không phụ thuộc kích thước bảng.
+ * - Chỉ xuất ván đã đóng (COMPLETED / ABANDONED); hiệp lấy theo cùng khoảng match_id của chunk.
+ * - Chỉ đọc games / game_rounds: tháng đã chuyển sang *_archive (PartitionArchiver) không nằm trong bản xuất.
+ *
+ * File: segment-NNNNNN/games.csv.gz và game_rounds.csv.gz, mỗi segment tối đa segmentGames ván.
+ * Cột thời gian ghi epoch millis, boolean 0/1, NULL để trống.
+ *
+ * Tiếp tục: segment ghi vào *.tmp, xong mới đổi tên rồi ghi export.checkpoint (match_id cuối).
+ * Chạy lại cùng thư mục sẽ xóa segment dở dang và đi tiếp sau match_id đó.
+ * Đây là bản chụp để phân tích: ván đóng sau lần chạy đầu mà có match_id nhỏ hơn checkpoint
+ * sẽ không được lấy (muốn đủ thì xuất lại vào thư mục mới).
+ *
+ * Chạy: java -Dexport.dir=/data/export -cp ... com.n9.core.analytics.GameExporter
+ *   -Dexport.chunkSize=10000 -Dexport.segmentGames=500000 -Dexport.maxSegments=0 (0 = hết bảng)
+ */
+public class GameExporter {
+
+    public static final String GAMES_FILE = "games.csv.gz";
+    public static final String ROUNDS_FILE = "game_rounds.csv.gz";
+    public static final String CHECKPOINT_FILE = "export.checkpoint";
+
+    /** Cột của games.csv.gz, theo thứ tự trong file. */
+    public static final String[] GAME_COLUMNS = {
+            "match_id", "player1_id", "player2_id", "game_mode", "status", "winner_id",
+            "player1_score", "player2_score", "completed_rounds", "total_rounds",
+            "created_at", "started_at", "completed_at",
+            "player1_rating_before", "player1_rating_after", "player2_rating_before", "player2_rating_after"
+    };
+
+    /** Cột của game_rounds.csv.gz, theo thứ tự trong file. */
+    public static final String[] ROUND_COLUMNS = {
+            "match_id", "round_number",
+            "player1_card_id", "player1_card_value", "player1_is_auto_picked",
+            "player2_card_id", "player2_card_value", "player2_is_auto_picked",
+            "round_winner_id", "player1_round_score", "player2_round_score", "completed_at"
+    };
+
+    private static final String CLOSED = "status IN ('COMPLETED', 'ABANDONED')";
+    private static final String GAMES_SQL = "SELECT " + String.join(", ", GAME_COLUMNS) +
+            " FROM games WHERE match_id > ? AND " + CLOSED + " ORDER BY match_id LIMIT ?";
+    private static final String ROUNDS_SQL = "SELECT " + qualified("r", ROUND_COLUMNS) +
+            " FROM game_rounds r INNER JOIN games g ON g.match_id = r.match_id" +
+            " WHERE r.match_id > ? AND r.match_id <= ? AND g." + CLOSED +
+            " ORDER BY r.match_id, r.round_number";
+
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final ConnectionProvider connections;
+    private final SqlDialect dialect;
+    private final Path directory;
+    private final int chunkSize;
+    private final int segmentGames;
+
+    /** Kết quả một lần chạy (chỉ phần xuất trong lần này). */
+    public static final class Result {
+        private final long games;
+        private final long rounds;
+        private final int segments;
+        private final long elapsedNanos;
+        private final String lastMatchId;
+        private final boolean finished;
+
+        Result(long games, long rounds, int segments, long elapsedNanos, String lastMatchId, boolean finished) {
+            this.games = games;
+            this.rounds = rounds;
+            this.segments = segments;
+            this.elapsedNanos = elapsedNanos;
+            this.lastMatchId = lastMatchId;
+            this.finished = finished;
+        }
+
+        public long getGames() { return games; }
+        public long getRounds() { return rounds; }
+        public int getSegments() { return segments; }
+        public String getLastMatchId() { return lastMatchId; }
+        /** true nếu đã tới cuối bảng (false khi dừng do maxSegments). */
+        public boolean isFinished() { return finished; }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : (games + rounds) * 1e9 / elapsedNanos;
+        }
+    }
+
+    public GameExporter(ConnectionProvider connections, SqlDialect dialect, Path directory,
+                        int chunkSize, int segmentGames) {
+        if (chunkSize <= 0 || segmentGames <= 0) {
+            throw new IllegalArgumentException("chunkSize and segmentGames must be positive");
+        }
+        this.connections = connections;
+        this.dialect = dialect;
+        this.directory = directory;
+        this.chunkSize = chunkSize;
+        this.segmentGames = segmentGames;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Paths.get(System.getProperty("export.dir", "export"));
+        int chunkSize = Integer.getInteger("export.chunkSize", 10_000);
+        int segmentGames = Integer.getInteger("export.segmentGames", 500_000);
+        int maxSegments = Integer.getInteger("export.maxSegments", 0);
+
+        DatabaseManager db = DatabaseManager.getInstance();
+        try {
+            Result result = new GameExporter(db, SqlDialect.MYSQL, directory, chunkSize, segmentGames)
+                    .export(maxSegments);
+            if (!result.isFinished()) {
+                System.out.println("⏸️ Stopped after " + maxSegments + " segments, run again to continue");
+            }
+        } finally {
+            db.shutdown();
+        }
+    }
+
+    /**
+     * Xuất tiếp từ checkpoint (nếu có) tới hết bảng, hoặc tới khi ghi xong maxSegments segment (0 = không giới hạn).
+     */
+    public Result export(int maxSegments) throws SQLException, IOException {
+        Files.createDirectories(directory);
+        Properties checkpoint = readCheckpoint();
+        String lastMatchId = checkpoint.getProperty("lastMatchId", "");
+        int segment = Integer.parseInt(checkpoint.getProperty("nextSegment", "0"));
+        long totalGames = Long.parseLong(checkpoint.getProperty("games", "0"));
+        long totalRounds = Long.parseLong(checkpoint.getProperty("rounds", "0"));
+        removeUncommitted(segment);
+        if (!lastMatchId.isEmpty()) {
+            System.out.println("▶️ Resuming export after match_id " + lastMatchId + " (segment " + segment + ")");
+        }
+
+        long startNanos = System.nanoTime();
+        long games = 0;
+        long rounds = 0;
+        int segments = 0;
+        boolean finished = false;
+        while (!finished && (maxSegments <= 0 || segments < maxSegments)) {
+            long segmentStart = System.nanoTime();
+            try (Segment current = new Segment(segmentDirectory(segment))) {
+                while (current.games < segmentGames) {
+                    int limit = Math.min(chunkSize, segmentGames - (int) current.games);
+                    int exported = exportChunk(current, lastMatchId, limit);
+                    if (exported > 0) {
+                        lastMatchId = current.lastMatchId;
+                    }
+                    if (exported < limit) {
+                        finished = true;
+                        break;
+                    }
+                }
+                if (current.games == 0) {
+                    break; // không còn ván mới: không tạo segment rỗng
+                }
+                current.commit();
+                games += current.games;
+                rounds += current.rounds;
+                totalGames += current.games;
+                totalRounds += current.rounds;
+                segments++;
+                writeCheckpoint(lastMatchId, ++segment, totalGames, totalRounds);
+                double seconds = (System.nanoTime() - segmentStart) / 1e9;
+                System.out.printf("📦 Segment %d: %d games, %d rounds in %.1f s (%.0f rows/s), last match_id %s%n",
+                        segment - 1, current.games, current.rounds, seconds,
+                        (current.games + current.rounds) / Math.max(seconds, 1e-9), lastMatchId);
+            }
+        }
+
+        Result result = new Result(games, rounds, segments, System.nanoTime() - startNanos, lastMatchId, finished);
+        System.out.printf("✅ Exported %d games, %d rounds in %d segments (%.0f rows/s); total %d games, %d rounds in %s%n",
+                games, rounds, segments, result.getRowsPerSecond(), totalGames, totalRounds, directory);
+        return result;
+    }
+
+    // ============================
+    // NỘI BỘ
+    // ============================
+
+    /** Một chunk: tối đa limit ván sau afterMatchId cùng các hiệp của chúng. Trả về số ván. */
+    private int exportChunk(Segment segment, String afterMatchId, int limit) throws SQLException, IOException {
+        try (Connection conn = connections.getReadConnection(Workload.LEADERBOARD)) {
+            int count = 0;
+            // Streaming: phải đọc hết ResultSet này trước khi chạy câu tiếp theo trên cùng connection
+            try (PreparedStatement stmt = dialect.streamingStatement(conn, GAMES_SQL)) {
+                stmt.setString(1, afterMatchId);
+                stmt.setInt(2, limit);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        writeGame(segment.gamesOut, rs);
+                        segment.lastMatchId = rs.getString(1);
+                        count++;
+                    }
+                }
+            }
+            if (count == 0) {
+                return 0;
+            }
+            try (PreparedStatement stmt = dialect.streamingStatement(conn, ROUNDS_SQL)) {
+                stmt.setString(1, afterMatchId);
+                stmt.setString(2, segment.lastMatchId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        writeRound(segment.roundsOut, rs);
+                        segment.rounds++;
+                    }
+                }
+            }
+            segment.games += count;
+            return count;
+        }
+    }
+
+    private static void writeGame(Writer out, ResultSet rs) throws SQLException, IOException {
+        writeText(out, rs.getString(1), ',');          // match_id
+        writeNumber(out, rs.getString(2), ',');        // player1_id
+        writeNumber(out, rs.getString(3), ',');        // player2_id
+        writeText(out, rs.getString(4), ',');          // game_mode
+        writeText(out, rs.getString(5), ',');          // status
+        for (int i = 6; i <= 10; i++) {                // winner_id .. total_rounds
+            writeNumber(out, rs.getString(i), ',');
+        }
+        for (int i = 11; i <= 13; i++) {               // created_at, started_at, completed_at
+            writeMillis(out, rs.getTimestamp(i), ',');
+        }
+        for (int i = 14; i <= 17; i++) {               // rating before/after
+            writeNumber(out, rs.getString(i), i == 17 ? '\n' : ',');
+        }
+    }
+
+    private static void writeRound(Writer out, ResultSet rs) throws SQLException, IOException {
+        writeText(out, rs.getString(1), ',');          // match_id
+        writeNumber(out, rs.getString(2), ',');        // round_number
+        writeNumber(out, rs.getString(3), ',');        // player1_card_id
+        writeNumber(out, rs.getString(4), ',');        // player1_card_value
+        writeBoolean(out, rs, 5, ',');                 // player1_is_auto_picked
+        writeNumber(out, rs.getString(6), ',');        // player2_card_id
+        writeNumber(out, rs.getString(7), ',');        // player2_card_value
+        writeBoolean(out, rs, 8, ',');                 // player2_is_auto_picked
+        for (int i = 9; i <= 11; i++) {                // round_winner_id, scores
+            writeNumber(out, rs.getString(i), ',');
+        }
+        writeMillis(out, rs.getTimestamp(12), '\n');   // completed_at
+    }
+
+    private static void writeText(Writer out, String value, char end) throws IOException {
+        if (value != null) {
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0) {
+                out.write('"');
+                out.write(value.replace("\"", "\"\""));
+                out.write('"');
+            } else {
+                out.write(value);
+            }
+        }
+        out.write(end);
+    }
+
+    private static void writeNumber(Writer out, String value, char end) throws IOException {
+        if (value != null) out.write(value);
+        out.write(end);
+    }
+
+    private static void writeMillis(Writer out, Timestamp value, char end) throws IOException {
+        if (value != null) out.write(Long.toString(value.getTime()));
+        out.write(end);
+    }
+
+    private static void writeBoolean(Writer out, ResultSet rs, int column, char end) throws SQLException, IOException {
+        boolean value = rs.getBoolean(column);
+        if (!rs.wasNull()) out.write(value ? '1' : '0');
+        out.write(end);
+    }
+
+    private Path segmentDirectory(int segment) {
+        return directory.resolve(String.format("segment-%06d", segment));
+    }
+
+    /** Xóa segment từ số segment trở đi (dở dang do lần chạy trước bị dừng). */
+    private void removeUncommitted(int segment) throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "segment-*")) {
+            for (Path entry : entries) {
+                int number = Integer.parseInt(entry.getFileName().toString().substring("segment-".length()));
+                if (number >= segment) {
+                    try (DirectoryStream<Path> files = Files.newDirectoryStream(entry)) {
+                        for (Path file : files) {
+                            Files.delete(file);
+                        }
+                    }
+                    Files.delete(entry);
+                    System.out.println("🧹 Removed uncommitted " + entry.getFileName());
+                }
+            }
+        }
+    }
+
+    private Properties readCheckpoint() throws IOException {
+        Properties checkpoint = new Properties();
+        Path file = directory.resolve(CHECKPOINT_FILE);
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                checkpoint.load(in);
+            }
+        }
+        return checkpoint;
+    }
+
+    /** Ghi file tạm rồi đổi tên: checkpoint luôn là bản cũ hoặc bản mới đầy đủ. */
+    private void writeCheckpoint(String lastMatchId, int nextSegment, long games, long rounds) throws IOException {
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty("lastMatchId", lastMatchId);
+        checkpoint.setProperty("nextSegment", Integer.toString(nextSegment));
+        checkpoint.setProperty("games", Long.toString(games));
+        checkpoint.setProperty("rounds", Long.toString(rounds));
+        Path tmp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            checkpoint.store(out, "GameExporter checkpoint");
+        }
+        Files.move(tmp, directory.resolve(CHECKPOINT_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String qualified(String alias, String[] columns) {
+        StringBuilder sb = new StringBuilder();
+        for (String column : columns) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(alias).append('.').append(column);
+        }
+        return sb.toString();
+    }
+
+    /** Hai file gzip của một segment, ghi vào *.tmp cho tới commit(). */
+    private static final class Segment implements AutoCloseable {
+        private final Path directory;
+        private final Writer gamesOut;
+        private final Writer roundsOut;
+        private long games;
+        private long rounds;
+        private String lastMatchId;
+        private boolean closed;
+
+        Segment(Path directory) throws IOException {
+            this.directory = directory;
+            Files.createDirectories(directory);
+            this.gamesOut = open(directory.resolve(GAMES_FILE + ".tmp"), GAME_COLUMNS);
+            this.roundsOut = open(directory.resolve(ROUNDS_FILE + ".tmp"), ROUND_COLUMNS);
+        }
+
+        private static Writer open(Path file, String[] columns) throws IOException {
+            Writer out = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(Files.newOutputStream(file), BUFFER_BYTES), StandardCharsets.UTF_8),
+                    BUFFER_BYTES);
+            out.write(String.join(",", columns));
+            out.write('\n');
+            return out;
+        }
+
+        void commit() throws IOException {
+            closeStreams();
+            Files.move(directory.resolve(GAMES_FILE + ".tmp"), directory.resolve(GAMES_FILE), StandardCopyOption.ATOMIC_MOVE);
+            Files.move(directory.resolve(ROUNDS_FILE + ".tmp"), directory.resolve(ROUNDS_FILE), StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closeStreams();
+            // Chưa commit (lỗi giữa chừng hoặc segment rỗng): bỏ
+            Files.deleteIfExists(directory.resolve(GAMES_FILE + ".tmp"));
+            Files.deleteIfExists(directory.resolve(ROUNDS_FILE + ".tmp"));
+            Files.deleteIfExists(directory);
+        }
+
+        private void closeStreams() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                gamesOut.close();
+            } finally {
+                roundsOut.close();
+            }
+        }
+    }
+}
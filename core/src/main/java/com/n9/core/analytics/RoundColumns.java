@@ -0,0 +1,92 @@
+package com.n9.core.analytics;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * RoundColumns - Các hiệp đã xuất, lưu theo cột trong mảng byte (2 byte / hiệp, 100M hiệp ≈ 200 MB).
+ *
+ * - cards: giá trị lá người chơi 1 (4 bit cao) | giá trị lá người chơi 2 (4 bit thấp)
+ * - flags: bit 0-1 = round_number - 1, bit 2 = người chơi 1 auto-pick, bit 3 = người chơi 2 auto-pick,
+ *          bit 4-5 = kết quả (TIE / PLAYER1 / PLAYER2)
+ *
+ * (cards | flags << 8) là chỉ số bin 14 bit dùng khi gộp (CardOutcomeAnalytics.BINS).
+ */
+public final class RoundColumns {
+
+    public static final int TIE = 0;
+    public static final int PLAYER1 = 1;
+    public static final int PLAYER2 = 2;
+
+    static final int MAX_ROUND = 4;   // 2 bit
+    static final int MAX_VALUE = 15;  // 4 bit
+
+    private byte[] cards;
+    private byte[] flags;
+    private int size;
+    private long skipped;   // dòng không dùng được khi nạp
+
+    public RoundColumns(int initialCapacity) {
+        this.cards = new byte[Math.max(16, initialCapacity)];
+        this.flags = new byte[cards.length];
+    }
+
+    public void add(int roundNumber, int player1Value, boolean player1AutoPicked,
+                    int player2Value, boolean player2AutoPicked, int outcome) {
+        if (roundNumber < 1 || roundNumber > MAX_ROUND || player1Value < 0 || player1Value > MAX_VALUE
+                || player2Value < 0 || player2Value > MAX_VALUE || outcome < TIE || outcome > PLAYER2) {
+            throw new IllegalArgumentException("Round out of range: round " + roundNumber + ", values "
+                    + player1Value + "/" + player2Value + ", outcome " + outcome);
+        }
+        if (size == cards.length) {
+            cards = Arrays.copyOf(cards, size * 2);
+            flags = Arrays.copyOf(flags, size * 2);
+        }
+        cards[size] = (byte) (player1Value << 4 | player2Value);
+        flags[size] = (byte) ((roundNumber - 1)
+                | (player1AutoPicked ? 1 << 2 : 0)
+                | (player2AutoPicked ? 1 << 3 : 0)
+                | outcome << 4);
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Ghi nhận một dòng bị bỏ qua (thiếu giá trị lá, vòng không hợp lệ). */
+    public void skip() {
+        skipped++;
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    byte[] cards() {
+        return cards;
+    }
+
+    byte[] flags() {
+        return flags;
+    }
+
+    /** Nối các phần (mỗi file một phần) thành một mảng liên tục. */
+    public static RoundColumns concat(List<RoundColumns> parts) {
+        long total = 0;
+        for (RoundColumns part : parts) {
+            total += part.size;
+        }
+        if (total > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many rounds for one array: " + total);
+        }
+        RoundColumns all = new RoundColumns((int) total);
+        for (RoundColumns part : parts) {
+            System.arraycopy(part.cards, 0, all.cards, all.size, part.size);
+            System.arraycopy(part.flags, 0, all.flags, all.size, part.size);
+            all.size += part.size;
+            all.skipped += part.skipped;
+        }
+        return all;
+    }
+}
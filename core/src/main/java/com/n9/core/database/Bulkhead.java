@@ -0,0 +1,132 @@
+package com.n9.core.database;
+
+import com.n9.core.metrics.LatencyHistogram;
+import com.n9.core.metrics.MetricsRegistry;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bulkhead - Quota connection của một Workload trên pool primary (Semaphore).
+ *
+ * Permit được giữ từ lúc lấy connection tới khi close(); hết quota thì chờ tối đa
+ * acquireTimeoutMs rồi ném SQLTransientConnectionException (thay vì chờ connectionTimeout
+ * 30s của Hikari). Thời gian chờ (quota + Hikari) xuất ra histogram db.bulkhead.<loại>.wait.
+ * resize() dùng cho quota đi theo kích thước pool khi PoolSizeController đổi pool lúc chạy.
+ */
+class Bulkhead {
+
+    @FunctionalInterface
+    interface ConnectionSource {
+        Connection get() throws SQLException;
+    }
+
+    private final Workload workload;
+    private volatile int size;
+    private final long acquireTimeoutMs;
+    private final AdjustableSemaphore permits;
+    private final LatencyHistogram waitHistogram;
+    private final LongAdder rejected = new LongAdder();
+
+    Bulkhead(Workload workload, int size, long acquireTimeoutMs) {
+        this.workload = workload;
+        this.size = size;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.permits = new AdjustableSemaphore(size);
+
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        String prefix = "db.bulkhead." + workload.key();
+        this.waitHistogram = metrics.histogram(prefix + ".wait");
+        metrics.gauge(prefix + ".inUse", this::getInUse);
+        metrics.gauge(prefix + ".size", this::getSize);
+        metrics.gauge(prefix + ".rejected", rejected::sum);
+    }
+
+    Connection acquire(ConnectionSource source) throws SQLException {
+        long startNanos = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for " + workload + " connection");
+        }
+        if (!acquired) {
+            waitHistogram.recordNanos(System.nanoTime() - startNanos);
+            rejected.increment();
+            throw new SQLTransientConnectionException(workload + " bulkhead full (" + size
+                    + " connections) - timed out after " + acquireTimeoutMs + " ms");
+        }
+        try {
+            Connection conn = source.get();
+            waitHistogram.recordNanos(System.nanoTime() - startNanos);
+            return releasingOnClose(conn);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Đổi quota lúc chạy. Thu nhỏ khi permit đang được giữ → availablePermits âm tạm thời,
+     * các lần acquire sau chờ tới khi đủ connection được trả.
+     */
+    synchronized void resize(int newSize) {
+        int delta = newSize - size;
+        if (delta > 0) {
+            permits.release(delta);
+        } else if (delta < 0) {
+            permits.reducePermits(-delta);
+        }
+        size = newSize;
+    }
+
+    int getSize() { return size; }
+    long getAcquireTimeoutMs() { return acquireTimeoutMs; }
+
+    int getInUse() {
+        return size - permits.availablePermits();
+    }
+
+    /** Bọc connection: close() đầu tiên trả permit, các lệnh khác chuyển thẳng xuống connection thật. */
+    private Connection releasingOnClose(Connection conn) {
+        AtomicBoolean released = new AtomicBoolean(false);
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if ("close".equals(method.getName()) && method.getParameterCount() == 0) {
+                        try {
+                            conn.close();
+                        } finally {
+                            if (released.compareAndSet(false, true)) {
+                                permits.release();
+                            }
+                        }
+                        return null;
+                    }
+                    try {
+                        return method.invoke(conn, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    /** Semaphore cho phép giảm permit (reducePermits là protected). */
+    private static final class AdjustableSemaphore extends Semaphore {
+        AdjustableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
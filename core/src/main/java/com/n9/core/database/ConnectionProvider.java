@@ -0,0 +1,38 @@
+package com.n9.core.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Nguồn connection JDBC cho các repository (MySQL qua DatabaseManager, H2 nhúng qua H2Database).
+ *
+ * Connection trả về phải được close() sau khi dùng (try-with-resources).
+ */
+public interface ConnectionProvider {
+
+    /** Connection tới primary, không tính quota (công cụ, khởi tạo schema). */
+    Connection getConnection() throws SQLException;
+
+    /** Connection tới primary trong quota của workload (ghi, hoặc đọc cần dữ liệu mới nhất). */
+    default Connection getConnection(Workload workload) throws SQLException {
+        return getConnection();
+    }
+
+    /** Connection cho truy vấn chỉ đọc, chấp nhận trễ sao chép. Mặc định: primary. */
+    default Connection getReadConnection(Workload workload) throws SQLException {
+        return getConnection(workload);
+    }
+
+    /** Đọc dữ liệu của userId: phải thấy các lần ghi trước đó cho user này (read-your-writes). */
+    default Connection getReadConnection(Workload workload, int userId) throws SQLException {
+        return getReadConnection(workload);
+    }
+
+    /** Ghi nhận vừa ghi dữ liệu của userId (cho getReadConnection(userId)). */
+    default void markWritten(int userId) {
+    }
+
+    boolean isHealthy();
+
+    void shutdown();
+}
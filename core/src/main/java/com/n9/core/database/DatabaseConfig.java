@@ -0,0 +1,92 @@
+package com.n9.core.database;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * DatabaseConfig - Cấu hình pool đọc từ database.properties (classpath).
+ *
+ * Thứ tự ưu tiên cho mỗi khóa (cao → thấp):
+ * 1. System property cùng tên: -Dhikari.maxPoolSize=20
+ * 2. Biến môi trường: tên khóa viết hoa, '.' và chữ hoa giữa từ thành '_'
+ *    (hikari.maxPoolSize → HIKARI_MAX_POOL_SIZE, db.replica.urls → DB_REPLICA_URLS)
+ * 3. database.properties
+ * 4. Giá trị mặc định truyền vào get*()
+ */
+public final class DatabaseConfig {
+
+    private static final String RESOURCE = "database.properties";
+
+    private final Properties properties;
+
+    DatabaseConfig(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Nạp database.properties; thiếu file thì chỉ dùng biến môi trường / system property / mặc định.
+     */
+    public static DatabaseConfig load() {
+        Properties properties = new Properties();
+        try (InputStream in = DatabaseConfig.class.getClassLoader().getResourceAsStream(RESOURCE)) {
+            if (in != null) {
+                properties.load(in);
+            } else {
+                System.err.println("⚠️ " + RESOURCE + " not found on classpath, using environment/defaults");
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read " + RESOURCE, e);
+        }
+        return new DatabaseConfig(properties);
+    }
+
+    public String get(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) value = System.getenv(envName(key));
+        if (value == null) value = properties.getProperty(key);
+        return value != null ? value.trim() : defaultValue;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = get(key, null);
+        if (value == null || value.isEmpty()) return defaultValue;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Invalid integer for " + key + ": " + value);
+        }
+    }
+
+    public long getLong(String key, long defaultValue) {
+        String value = get(key, null);
+        if (value == null || value.isEmpty()) return defaultValue;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Invalid number for " + key + ": " + value);
+        }
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = get(key, null);
+        return value == null || value.isEmpty() ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    /** hikari.maxPoolSize → HIKARI_MAX_POOL_SIZE */
+    static String envName(String key) {
+        StringBuilder sb = new StringBuilder(key.length() + 8);
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c == '.' || c == '-') {
+                sb.append('_');
+            } else if (Character.isUpperCase(c) && i > 0 && Character.isLowerCase(key.charAt(i - 1))) {
+                sb.append('_').append(c);
+            } else {
+                sb.append(Character.toUpperCase(c));
+            }
+        }
+        return sb.toString().toUpperCase(Locale.ROOT);
+    }
+}
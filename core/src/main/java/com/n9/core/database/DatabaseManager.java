@@ -2,19 +2,77 @@ package com.n9.core.database;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import com.n9.core.metrics.LatencyHistogram;
+import com.n9.core.metrics.MetricsRegistry;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 
+/**
+ * DatabaseManager - Pool ghi (primary) + các pool đọc (replica, tùy chọn).
+ *
+ * Cấu hình đọc qua DatabaseConfig: database.properties, ghi đè bằng biến môi trường
+ * (DB_URL, DB_PASSWORD, HIKARI_MAX_POOL_SIZE...) hoặc -D cùng tên khóa.
+ *
+ * Replica cấu hình bằng db.replica.urls (hoặc biến môi trường DB_REPLICA_URLS), nhiều URL cách
+ * nhau bởi dấu phẩy; không cấu hình thì mọi truy vấn đọc dùng primary như trước.
+ *
+ * Chống đọc dữ liệu cũ:
+ * - Trễ sao chép đo mỗi REPLICA_PROBE_INTERVAL_MS; replica trễ quá db.replica.maxLagSeconds
+ *   (mặc định 2s) hoặc lỗi bị bỏ qua, đọc về primary.
+ * - Read-your-writes: repository gọi markWritten(userId) sau khi ghi; các lần đọc theo user đó
+ *   trong READ_YOUR_WRITES_MS tiếp theo đi primary.
+ *
+ * Bulkhead: connection primary lấy qua getConnection(Workload) bị giới hạn theo quota của từng
+ * loại tải (db.bulkhead.<loại>.size / .timeoutMs). Tổng quota các loại không phải GAMEPLAY
+ * không được vượt (pool - db.bulkhead.gameplay.reserved) → lưu trận luôn còn connection.
+ *
+ * Kích thước pool primary thích ứng (PoolSizeController): mỗi hikari.adaptive.intervalMs đọc số thread
+ * chờ / connection đang dùng / độ trễ lấy connection rồi đổi maximumPoolSize trong
+ * [hikari.adaptive.minPoolSize, hikari.adaptive.maxPoolSize]. Cận dưới không bao giờ nhỏ hơn tổng quota
+ * bulkhead + phần dành cho GAMEPLAY. Trạng thái pool in ra log mỗi hikari.stats.intervalMs.
+ */
+public class DatabaseManager implements ConnectionProvider {
+    private static final long REPLICA_PROBE_INTERVAL_MS = 2_000;
+    private static final long READ_YOUR_WRITES_MS = 10_000;
 
-public class DatabaseManager {
     private static DatabaseManager instance;
+    private final DatabaseConfig dbConfig;
     private HikariDataSource dataSource;
+    private PoolSizeController poolSizeController;
+    private LatencyHistogram acquireLatency;
+    private boolean gameplayFollowsPool;
+    private final List<ReplicaPool> replicas = new ArrayList<>();
+    private final Map<Workload, Bulkhead> bulkheads = new EnumMap<>(Workload.class);
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final ConcurrentHashMap<Integer, Long> recentWrites = new ConcurrentHashMap<>();
+    private final LongAdder primaryReads = new LongAdder();
+    private final LongAdder readYourWritesReads = new LongAdder();
+    private ScheduledExecutorService replicaProbe;
+    private ScheduledExecutorService poolMonitor;
     
     // Private constructor để implement Singleton
     private DatabaseManager() {
+        dbConfig = DatabaseConfig.load();
         initializePool();
+        int bulkheadFloor = initializeBulkheads();
+        initializeAdaptiveSizing(bulkheadFloor);
+        initializeReplicas();
+        registerMetrics();
+        startPoolMonitor();
     }
     
     /**
@@ -37,23 +95,24 @@ public class DatabaseManager {
             // ============================================
             // DATABASE CONNECTION SETTINGS
             // ============================================
-            config.setJdbcUrl("jdbc:mysql://localhost:3306/cardgame_db?useSSL=false&serverTimezone=UTC&allowPublicKeyRetrieval=true");
-            config.setUsername("root");
-            config.setPassword("sieudenden");
+            config.setJdbcUrl(dbConfig.get("db.url",
+                    "jdbc:mysql://localhost:3306/cardgame_db?useSSL=false&serverTimezone=UTC&allowPublicKeyRetrieval=true"));
+            config.setUsername(dbConfig.get("db.username", "root"));
+            config.setPassword(dbConfig.get("db.password", ""));
             config.setDriverClassName("com.mysql.cj.jdbc.Driver");
             
             // ============================================
-            // POOL SIZE CONFIGURATION (MVP - 10 connections)
+            // POOL SIZE CONFIGURATION (kích thước ban đầu, PoolSizeController đổi lúc chạy)
             // ============================================
-            config.setMaximumPoolSize(10);        // Max 10 connections đồng thời
-            config.setMinimumIdle(2);             // Luôn có 2 connections sẵn sàng
+            config.setMaximumPoolSize(dbConfig.getInt("hikari.maxPoolSize", 10));
+            config.setMinimumIdle(dbConfig.getInt("hikari.minIdle", 2));
             
             // ============================================
             // TIMEOUT SETTINGS
             // ============================================
-            config.setConnectionTimeout(30000);   // 30s timeout khi lấy connection
-            config.setIdleTimeout(600000);        // 10 phút idle → đóng connection
-            config.setMaxLifetime(1800000);       // 30 phút max lifetime mỗi connection
+            config.setConnectionTimeout(dbConfig.getLong("hikari.connectionTimeout", 30000)); // chờ tối đa khi lấy connection
+            config.setIdleTimeout(dbConfig.getLong("hikari.idleTimeout", 600000));            // idle lâu → đóng connection
+            config.setMaxLifetime(dbConfig.getLong("hikari.maxLifetime", 1800000));           // tuổi thọ tối đa mỗi connection
             
             // ============================================
             // PERFORMANCE & RELIABILITY
@@ -64,7 +123,7 @@ public class DatabaseManager {
             // ============================================
             // LEAK DETECTION (Development)
             // ============================================
-            config.setLeakDetectionThreshold(60000); // Cảnh báo nếu connection không trả về sau 60s
+            config.setLeakDetectionThreshold(dbConfig.getLong("hikari.leakDetectionThreshold", 60000)); // cảnh báo connection không trả về
             
             // ============================================
             // POOL NAME (Debugging)
@@ -86,6 +145,168 @@ public class DatabaseManager {
         }
     }
     
+    /**
+     * Quota theo loại tải trên pool primary. Cấu hình sai (phần dành riêng cho GAMEPLAY bị chiếm) → dừng khởi động.
+     * Trả về kích thước pool tối thiểu để giữ được phần dành riêng đó.
+     */
+    private int initializeBulkheads() {
+        int poolSize = dataSource.getMaximumPoolSize();
+        int reserved = dbConfig.getInt("db.bulkhead.gameplay.reserved", Workload.GAMEPLAY_RESERVED);
+        int othersTotal = 0;
+        for (Workload workload : Workload.values()) {
+            int size = dbConfig.getInt("db.bulkhead." + workload.key() + ".size", workload.getDefaultSize());
+            long timeoutMs = dbConfig.getLong("db.bulkhead." + workload.key() + ".timeoutMs", workload.getDefaultAcquireTimeoutMs());
+            if (workload != Workload.GAMEPLAY) {
+                othersTotal += Math.min(size, poolSize);
+            } else if (size < reserved) {
+                throw new IllegalStateException("db.bulkhead.gameplay.size (" + size + ") < reserved (" + reserved + ")");
+            } else {
+                gameplayFollowsPool = size >= poolSize; // quota = cả pool → đi theo khi pool đổi kích thước
+            }
+            bulkheads.put(workload, new Bulkhead(workload, Math.min(size, poolSize), timeoutMs));
+        }
+        if (othersTotal > poolSize - reserved) {
+            throw new IllegalStateException("Non-gameplay bulkheads need " + othersTotal + " connections but only "
+                    + (poolSize - reserved) + " are left after reserving " + reserved + " for gameplay");
+        }
+        System.out.print("   Bulkheads:");
+        bulkheads.forEach((workload, bulkhead) -> System.out.print(" " + workload.key() + "=" + bulkhead.getSize()
+                + "/" + bulkhead.getAcquireTimeoutMs() + "ms"));
+        System.out.println(" (gameplay reserved " + reserved + ")");
+        return othersTotal + reserved;
+    }
+
+    /**
+     * Bật PoolSizeController. Cận dưới = max(hikari.adaptive.minPoolSize, quota bulkhead + phần dành riêng).
+     */
+    private void initializeAdaptiveSizing(int bulkheadFloor) {
+        acquireLatency = MetricsRegistry.getInstance().histogram("db.pool.primary.acquire");
+        int poolSize = dataSource.getMaximumPoolSize();
+        if (!dbConfig.getBoolean("hikari.adaptive.enabled", true)) {
+            System.out.println("   Adaptive pool sizing: disabled (fixed at " + poolSize + ")");
+            return;
+        }
+        int minSize = Math.max(bulkheadFloor, dbConfig.getInt("hikari.adaptive.minPoolSize", poolSize));
+        int maxSize = dbConfig.getInt("hikari.adaptive.maxPoolSize", poolSize * 3);
+        if (poolSize < minSize || poolSize > maxSize) {
+            throw new IllegalStateException("hikari.maxPoolSize (" + poolSize + ") must be within adaptive bounds ["
+                    + minSize + ", " + maxSize + "]");
+        }
+        poolSizeController = new PoolSizeController(
+                dataSource.getHikariPoolMXBean(), dataSource.getHikariConfigMXBean(),
+                minSize, maxSize, dataSource.getMinimumIdle(),
+                dbConfig.getInt("hikari.adaptive.targetAcquireMs", 20),
+                dbConfig.getInt("hikari.adaptive.step", 2),
+                dbConfig.getInt("hikari.adaptive.shrinkAfterSamples", 12),
+                this::onPoolResized);
+        System.out.println("   Adaptive pool sizing: " + minSize + ".." + maxSize + " connections");
+    }
+
+    /** Quota GAMEPLAY đi theo kích thước pool nếu được cấu hình dùng cả pool. */
+    private void onPoolResized(int newSize) {
+        if (gameplayFollowsPool) {
+            bulkheads.get(Workload.GAMEPLAY).resize(newSize);
+        }
+    }
+
+    /**
+     * Luồng nền: vòng điều khiển kích thước pool + log trạng thái pool định kỳ.
+     */
+    private void startPoolMonitor() {
+        long statsIntervalMs = dbConfig.getLong("hikari.stats.intervalMs", 60_000);
+        if (poolSizeController == null && statsIntervalMs <= 0) {
+            return;
+        }
+        poolMonitor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-monitor");
+            t.setDaemon(true);
+            return t;
+        });
+        if (poolSizeController != null) {
+            long intervalMs = dbConfig.getLong("hikari.adaptive.intervalMs", 5_000);
+            poolMonitor.scheduleWithFixedDelay(() -> {
+                try {
+                    poolSizeController.sample();
+                } catch (Exception e) {
+                    System.err.println("❌ Adaptive pool sizing failed: " + e.getMessage());
+                }
+            }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        }
+        if (statsIntervalMs > 0) {
+            poolMonitor.scheduleWithFixedDelay(this::printPoolStats, statsIntervalMs, statsIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Tạo một pool chỉ đọc cho mỗi URL replica và bắt đầu đo trễ sao chép.
+     */
+    private void initializeReplicas() {
+        String urls = dbConfig.get("db.replica.urls", null);
+        if (urls == null || urls.isBlank()) {
+            System.out.println("   Read replicas: none (reads use the primary pool)");
+            return;
+        }
+        int maxLagSeconds = dbConfig.getInt("db.replica.maxLagSeconds", 2);
+        for (String url : urls.split(",")) {
+            if (url.isBlank()) continue;
+            String name = "replica-" + (replicas.size() + 1);
+            HikariConfig config = new HikariConfig();
+            config.setJdbcUrl(url.trim());
+            config.setUsername(dataSource.getUsername());
+            config.setPassword(dataSource.getPassword());
+            config.setDriverClassName("com.mysql.cj.jdbc.Driver");
+            config.setMaximumPoolSize(dbConfig.getInt("db.replica.maxPoolSize", 10));
+            config.setMinimumIdle(dbConfig.getInt("hikari.minIdle", 2));
+            config.setConnectionTimeout(5000);    // replica chậm → lùi về primary thay vì chờ 30s
+            config.setIdleTimeout(600000);
+            config.setMaxLifetime(1800000);
+            config.setReadOnly(true);             // chặn ghi nhầm vào replica
+            config.setConnectionTestQuery("SELECT 1");
+            config.setPoolName("CardGame-MySQL-" + name);
+            replicas.add(new ReplicaPool(name, new HikariDataSource(config), maxLagSeconds));
+            System.out.println("   Read replica " + name + ": " + url.trim());
+        }
+
+        replicaProbe = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-replica-probe");
+            t.setDaemon(true);
+            return t;
+        });
+        replicaProbe.scheduleWithFixedDelay(this::probeReplicas, 0, REPLICA_PROBE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void probeReplicas() {
+        for (ReplicaPool replica : replicas) {
+            replica.probe();
+        }
+        long cutoff = System.currentTimeMillis() - READ_YOUR_WRITES_MS;
+        recentWrites.values().removeIf(writtenAt -> writtenAt < cutoff);
+    }
+
+    private void registerMetrics() {
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        registerPoolMetrics(metrics, "primary", dataSource);
+        metrics.gauge("db.pool.primary.maxSize", () -> dataSource.getHikariConfigMXBean().getMaximumPoolSize());
+        if (poolSizeController != null) {
+            metrics.gauge("db.pool.primary.resizes", poolSizeController::getResizes);
+        }
+        for (ReplicaPool replica : replicas) {
+            registerPoolMetrics(metrics, replica.getName(), replica.getDataSource());
+            metrics.gauge("db.pool." + replica.getName() + ".lagSeconds", replica::getLagSeconds);
+            metrics.gauge("db.pool." + replica.getName() + ".fresh", replica::isFresh);
+            metrics.gauge("db.pool." + replica.getName() + ".reads", replica.reads::sum);
+        }
+        metrics.gauge("db.read.primary", primaryReads::sum);
+        metrics.gauge("db.read.readYourWrites", readYourWritesReads::sum);
+    }
+
+    private static void registerPoolMetrics(MetricsRegistry metrics, String name, HikariDataSource pool) {
+        metrics.gauge("db.pool." + name + ".active", () -> pool.getHikariPoolMXBean().getActiveConnections());
+        metrics.gauge("db.pool." + name + ".idle", () -> pool.getHikariPoolMXBean().getIdleConnections());
+        metrics.gauge("db.pool." + name + ".awaiting", () -> pool.getHikariPoolMXBean().getThreadsAwaitingConnection());
+        metrics.gauge("db.pool." + name + ".total", () -> pool.getHikariPoolMXBean().getTotalConnections());
+    }
+
     /**
      * Lấy connection từ pool
      * 
@@ -101,18 +322,78 @@ public class DatabaseManager {
      * @return Connection từ pool
      * @throws SQLException nếu không lấy được connection
      */
+    @Override
     public Connection getConnection() throws SQLException {
         if (dataSource == null || dataSource.isClosed()) {
             throw new SQLException("DataSource is not available");
         }
-        return dataSource.getConnection();
+        long startNanos = System.nanoTime();
+        Connection conn = dataSource.getConnection();
+        long elapsed = System.nanoTime() - startNanos;
+        acquireLatency.recordNanos(elapsed);
+        if (poolSizeController != null) {
+            poolSizeController.recordAcquire(elapsed);
+        }
+        return conn;
     }
     
+    /**
+     * Connection primary trong quota của workload.
+     */
+    @Override
+    public Connection getConnection(Workload workload) throws SQLException {
+        return bulkheads.get(workload).acquire(this::getConnection);
+    }
+
+    /**
+     * Connection cho truy vấn chỉ đọc: replica fresh tiếp theo (round-robin), hoặc primary
+     * (trong quota của workload) nếu không có replica nào dùng được.
+     */
+    @Override
+    public Connection getReadConnection(Workload workload) throws SQLException {
+        int size = replicas.size();
+        for (int i = 0; i < size; i++) {
+            ReplicaPool replica = replicas.get(Math.floorMod(nextReplica.getAndIncrement(), size));
+            if (!replica.isFresh()) continue;
+            try {
+                Connection conn = replica.getConnection();
+                replica.reads.increment();
+                return conn;
+            } catch (SQLException e) {
+                replica.markFailed();
+                System.err.println("❌ Replica " + replica.getName() + " unavailable, reading from primary: " + e.getMessage());
+            }
+        }
+        primaryReads.increment();
+        return getConnection(workload);
+    }
+
+    /**
+     * Đọc dữ liệu của một user: primary nếu user vừa được ghi (read-your-writes).
+     */
+    @Override
+    public Connection getReadConnection(Workload workload, int userId) throws SQLException {
+        Long writtenAt = recentWrites.get(userId);
+        if (writtenAt != null && System.currentTimeMillis() - writtenAt < READ_YOUR_WRITES_MS) {
+            readYourWritesReads.increment();
+            return getConnection(workload);
+        }
+        return getReadConnection(workload);
+    }
+
+    @Override
+    public void markWritten(int userId) {
+        if (!replicas.isEmpty()) {
+            recentWrites.put(userId, System.currentTimeMillis());
+        }
+    }
+
     /**
      * Kiểm tra health của database connection
      * 
      * @return true nếu connection OK, false nếu lỗi
      */
+    @Override
     public boolean isHealthy() {
         try (Connection conn = getConnection()) {
             return conn.isValid(5); // Timeout 5 giây
@@ -128,7 +409,17 @@ public class DatabaseManager {
      * Đóng tất cả connections trong pool.
      * Nên gọi trong shutdown hook của com.n9.core.CoreServer.
      */
+    @Override
     public void shutdown() {
+        if (poolMonitor != null) {
+            poolMonitor.shutdownNow();
+        }
+        if (replicaProbe != null) {
+            replicaProbe.shutdownNow();
+        }
+        for (ReplicaPool replica : replicas) {
+            replica.getDataSource().close();
+        }
         if (dataSource != null && !dataSource.isClosed()) {
             dataSource.close();
             System.out.println("❌ HikariCP Connection Pool closed");
@@ -136,15 +427,34 @@ public class DatabaseManager {
     }
     
     /**
-     * Lấy thông tin pool (để debug/monitoring)
+     * Một dòng trạng thái cho mỗi pool (log định kỳ từ db-pool-monitor, gọi tay được khi debug).
      */
     public void printPoolStats() {
-        if (dataSource != null) {
-            System.out.println("=== HikariCP Pool Statistics ===");
-            System.out.println("Active Connections: " + dataSource.getHikariPoolMXBean().getActiveConnections());
-            System.out.println("Idle Connections: " + dataSource.getHikariPoolMXBean().getIdleConnections());
-            System.out.println("Total Connections: " + dataSource.getHikariPoolMXBean().getTotalConnections());
-            System.out.println("Threads Awaiting Connection: " + dataSource.getHikariPoolMXBean().getThreadsAwaitingConnection());
+        if (dataSource == null || dataSource.isClosed()) {
+            return;
+        }
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        StringBuilder line = new StringBuilder("📊 DB pool primary: active=").append(pool.getActiveConnections())
+                .append(" idle=").append(pool.getIdleConnections())
+                .append(" total=").append(pool.getTotalConnections())
+                .append("/").append(dataSource.getHikariConfigMXBean().getMaximumPoolSize())
+                .append(" awaiting=").append(pool.getThreadsAwaitingConnection())
+                .append(" acquire p95=").append(acquireLatency.getPercentileMillis(0.95)).append("ms");
+        if (poolSizeController != null) {
+            line.append(" bounds=").append(poolSizeController.getMinSize()).append("..").append(poolSizeController.getMaxSize())
+                    .append(" resizes=").append(poolSizeController.getResizes());
+        }
+        line.append(" |");
+        bulkheads.forEach((workload, bulkhead) -> line.append(" ").append(workload.key()).append("=")
+                .append(bulkhead.getInUse()).append("/").append(bulkhead.getSize()));
+        System.out.println(line);
+        for (ReplicaPool replica : replicas) {
+            HikariPoolMXBean replicaPool = replica.getDataSource().getHikariPoolMXBean();
+            System.out.println("📊 DB pool " + replica.getName() + ": active=" + replicaPool.getActiveConnections()
+                    + " idle=" + replicaPool.getIdleConnections()
+                    + " awaiting=" + replicaPool.getThreadsAwaitingConnection()
+                    + " lag=" + replica.getLagSeconds() + "s fresh=" + replica.isFresh()
+                    + " reads=" + replica.reads.sum());
         }
     }
 }
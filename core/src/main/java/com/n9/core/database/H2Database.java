@@ -0,0 +1,101 @@
+package com.n9.core.database;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * H2Database - H2 nhúng (in-memory, MODE=MySQL) cho dev và test, không cần MySQL.
+ *
+ * Tạo schema từ classpath db/h2-schema.sql lúc khởi tạo. Dữ liệu mất khi JVM tắt.
+ * Dùng chung pool HikariCP nên các repository JDBC chạy y như với MySQL.
+ */
+public class H2Database implements ConnectionProvider {
+
+    private static final String SCHEMA_RESOURCE = "/db/h2-schema.sql";
+
+    private final HikariDataSource dataSource;
+
+    public H2Database(String databaseName) {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:" + databaseName
+                + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        config.setUsername("sa");
+        config.setPassword("");
+        config.setDriverClassName("org.h2.Driver");
+        config.setMaximumPoolSize(10);
+        config.setMinimumIdle(2);
+        config.setAutoCommit(true);
+        config.setPoolName("CardGame-H2-Pool");
+
+        this.dataSource = new HikariDataSource(config);
+        try {
+            createSchema();
+        } catch (SQLException | IOException e) {
+            dataSource.close();
+            throw new RuntimeException("H2 schema initialization failed", e);
+        }
+        System.out.println("✅ Embedded H2 database initialized: " + config.getJdbcUrl());
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (dataSource.isClosed()) {
+            throw new SQLException("DataSource is not available");
+        }
+        return dataSource.getConnection();
+    }
+
+    @Override
+    public boolean isHealthy() {
+        try (Connection conn = getConnection()) {
+            return conn.isValid(5);
+        } catch (SQLException e) {
+            System.err.println("❌ H2 health check failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        if (!dataSource.isClosed()) {
+            dataSource.close();
+            System.out.println("❌ H2 Connection Pool closed");
+        }
+    }
+
+    /** Chạy từng câu lệnh (phân tách bằng ';') của script schema; bỏ dòng chú thích trước khi tách. */
+    private void createSchema() throws SQLException, IOException {
+        String script;
+        try (InputStream in = H2Database.class.getResourceAsStream(SCHEMA_RESOURCE)) {
+            if (in == null) {
+                throw new IOException("Missing classpath resource " + SCHEMA_RESOURCE);
+            }
+            script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        try (Connection conn = getConnection(); Statement stmt = conn.createStatement()) {
+            for (String sql : stripComments(script).split(";")) {
+                String trimmed = sql.trim();
+                if (!trimmed.isEmpty()) {
+                    stmt.execute(trimmed);
+                }
+            }
+        }
+    }
+
+    private static String stripComments(String sql) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : sql.split("\n")) {
+            if (!line.trim().startsWith("--")) {
+                sb.append(line).append('\n');
+            }
+        }
+        return sb.toString().trim();
+    }
+}
@@ -0,0 +1,313 @@
+package com.n9.core.database;
+
+import com.n9.core.metrics.MetricsRegistry;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PartitionArchiver - Vòng đời phân vùng theo tháng của games / game_rounds (chỉ MySQL, xem DB_SCRIPT.sql).
+ *
+ * Mỗi lượt (luồng nền "partition-archiver", connection không quota như các công cụ):
+ * 1. Tách p_future để luôn có sẵn archive.futureMonths phân vùng tháng tới
+ * 2. Phân vùng có cận trên ≤ đầu tháng (hiện tại - archive.retentionMonths), cũ nhất trước:
+ *    chép theo lô keyset sang games_archive / game_rounds_archive (INSERT IGNORE → chạy lại an toàn),
+ *    kiểm tra không còn dòng nào chưa chép, rồi DROP PARTITION (rẻ hơn DELETE từng dòng rất nhiều)
+ * 3. Trước mỗi lô hỏi WriteLatencyGuard: p95 ghi gameplay đang tăng → nghỉ archive.pauseMs
+ *
+ * Mốc thời gian tính bằng hàm ngày của MySQL (cùng múi giờ với UNIX_TIMESTAMP trong định nghĩa phân vùng).
+ */
+public class PartitionArchiver {
+
+    private static final String FUTURE_PARTITION = "p_future";
+
+    private static final String GAME_COLUMNS = "match_id, player1_id, player2_id, game_mode, total_rounds, status, " +
+            "winner_id, player1_score, player2_score, completed_rounds, created_at, started_at, completed_at, " +
+            "duration_seconds, player1_rating_before, player1_rating_after, player2_rating_before, player2_rating_after, " +
+            "server_instance";
+    private static final String ROUND_COLUMNS = "match_id, round_number, player1_card_id, player1_card_value, " +
+            "player1_is_auto_picked, player2_card_id, player2_card_value, player2_is_auto_picked, round_winner_id, " +
+            "player1_round_score, player2_round_score, started_at, completed_at, player1_moved_at, player2_moved_at, " +
+            "round_duration_ms";
+
+    private final ConnectionProvider connections;
+    private final boolean enabled;
+    private final int retentionMonths;
+    private final int futureMonths;
+    private final int batchRows;
+    private final long intervalMs;
+    private final long pauseMs;
+    private final WriteLatencyGuard guard;
+
+    private final AtomicLong archivedRows = new AtomicLong();
+    private final AtomicLong archivedPartitions = new AtomicLong();
+    private final AtomicLong pauses = new AtomicLong();
+    private ScheduledExecutorService executor;
+    private volatile boolean stopped = false;
+
+    public PartitionArchiver(ConnectionProvider connections, DatabaseConfig config) {
+        this.connections = connections;
+        this.enabled = config.getBoolean("archive.enabled", true);
+        this.retentionMonths = Math.max(1, config.getInt("archive.retentionMonths", 3));
+        this.futureMonths = Math.max(1, config.getInt("archive.futureMonths", 3));
+        this.batchRows = Math.max(1, config.getInt("archive.batchRows", 2_000));
+        this.intervalMs = config.getLong("archive.intervalMs", 3_600_000);
+        this.pauseMs = config.getLong("archive.pauseMs", 30_000);
+        this.guard = new WriteLatencyGuard(MetricsRegistry.getInstance().histogram("db.gameplay.write"),
+                config.getInt("archive.pauseAboveMs", 50),
+                config.getInt("archive.latencyFactor", 2),
+                Math.min(pauseMs, config.getLong("archive.windowMs", 5_000)));
+
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        metrics.gauge("db.archive.rows", archivedRows::get);
+        metrics.gauge("db.archive.partitions", archivedPartitions::get);
+        metrics.gauge("db.archive.pauses", pauses::get);
+        metrics.gauge("db.archive.writeP95Ms", guard::getLastP95Ms);
+    }
+
+    /**
+     * Chạy lượt đầu sau 1 phút (server đã nhận kết nối), sau đó mỗi archive.intervalMs.
+     */
+    public void start() {
+        if (!enabled || intervalMs <= 0) {
+            System.out.println("🗄️ Partition archiver: disabled");
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "partition-archiver");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                runOnce();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                System.err.println("❌ Partition archiving failed: " + e.getMessage());
+            }
+        }, Math.min(60_000, intervalMs), intervalMs, TimeUnit.MILLISECONDS);
+        System.out.println("🗄️ Partition archiver: keep " + retentionMonths + " months, "
+                + futureMonths + " months ahead, every " + intervalMs / 1000 + "s");
+    }
+
+    /**
+     * Dừng giữa hai lô; lô đang chạy bị bỏ dở thì lượt sau chép lại (INSERT IGNORE).
+     */
+    public void shutdown() {
+        stopped = true;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Một lượt: tạo phân vùng tới, lưu trữ phân vùng hết hạn. Trả về số phân vùng đã lưu trữ.
+     */
+    public int runOnce() throws SQLException, InterruptedException {
+        guard.begin();
+        ensureFuturePartitions();
+        int archived = 0;
+        for (String partition : expiredPartitions()) {
+            if (stopped) break;
+            archivePartition(partition);
+            archived++;
+        }
+        return archived;
+    }
+
+    public long getArchivedRows() { return archivedRows.get(); }
+    public long getArchivedPartitions() { return archivedPartitions.get(); }
+    public long getPauses() { return pauses.get(); }
+
+    // ============================
+    // NỘI BỘ
+    // ============================
+
+    /** Tách p_future thành tháng kế tiếp + p_future cho tới khi đủ futureMonths tháng tới (cả hai bảng). */
+    private void ensureFuturePartitions() throws SQLException {
+        try (Connection conn = connections.getConnection()) {
+            long wanted = queryLong(conn, "SELECT UNIX_TIMESTAMP(DATE_FORMAT(NOW() + INTERVAL ? MONTH, '%Y-%m-01'))",
+                    futureMonths + 1);
+            for (String table : new String[]{"games", "game_rounds"}) {
+                long last = lastBound(conn, table);
+                while (last < wanted) {
+                    String name;
+                    long next;
+                    try (PreparedStatement stmt = conn.prepareStatement(
+                            "SELECT DATE_FORMAT(FROM_UNIXTIME(?), 'p%Y_%m'), UNIX_TIMESTAMP(FROM_UNIXTIME(?) + INTERVAL 1 MONTH)")) {
+                        stmt.setLong(1, last);
+                        stmt.setLong(2, last);
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            rs.next();
+                            name = rs.getString(1);
+                            next = rs.getLong(2);
+                        }
+                    }
+                    try (Statement stmt = conn.createStatement()) {
+                        stmt.execute("ALTER TABLE " + table + " REORGANIZE PARTITION " + FUTURE_PARTITION + " INTO ("
+                                + "PARTITION " + name + " VALUES LESS THAN (" + next + "), "
+                                + "PARTITION " + FUTURE_PARTITION + " VALUES LESS THAN MAXVALUE)");
+                    }
+                    System.out.println("🗄️ Added partition " + table + "." + name);
+                    last = next;
+                }
+            }
+        }
+    }
+
+    /** Phân vùng của games hết hạn giữ nóng, cũ nhất trước (game_rounds dùng cùng tên và cận). */
+    private List<String> expiredPartitions() throws SQLException {
+        List<String> expired = new ArrayList<>();
+        try (Connection conn = connections.getConnection()) {
+            long cutoff = queryLong(conn, "SELECT UNIX_TIMESTAMP(DATE_FORMAT(NOW() - INTERVAL ? MONTH, '%Y-%m-01'))",
+                    retentionMonths);
+            for (Partition partition : partitions(conn, "games")) {
+                if (partition.bound != null && partition.bound <= cutoff) {
+                    expired.add(partition.name);
+                }
+            }
+        }
+        return expired;
+    }
+
+    private void archivePartition(String partition) throws SQLException, InterruptedException {
+        long startNanos = System.nanoTime();
+        long games = copy("games", "games_archive", partition, "match_id", GAME_COLUMNS, false);
+        long rounds = copy("game_rounds", "game_rounds_archive", partition, "round_id", ROUND_COLUMNS, true);
+
+        try (Connection conn = connections.getConnection()) {
+            long missingGames = queryLong(conn, "SELECT COUNT(*) FROM games PARTITION (" + partition + ") g " +
+                    "LEFT JOIN games_archive a ON a.match_id = g.match_id WHERE a.match_id IS NULL");
+            long missingRounds = queryLong(conn, "SELECT COUNT(*) FROM game_rounds PARTITION (" + partition + ") r " +
+                    "LEFT JOIN game_rounds_archive a ON a.match_id = r.match_id AND a.round_number = r.round_number " +
+                    "WHERE a.match_id IS NULL");
+            if (missingGames > 0 || missingRounds > 0) {
+                // Giữ phân vùng; lượt sau chép tiếp phần thiếu
+                throw new SQLException("Partition " + partition + " not fully archived: " + missingGames
+                        + " games, " + missingRounds + " rounds missing");
+            }
+            awaitHealthyWrites();
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER TABLE game_rounds DROP PARTITION " + partition);
+                stmt.execute("ALTER TABLE games DROP PARTITION " + partition);
+            }
+        }
+        archivedPartitions.incrementAndGet();
+        System.out.printf("🗄️ Archived partition %s: %d games, %d rounds in %.1fs (write p95 %.1fms, baseline %.1fms)%n",
+                partition, games, rounds, (System.nanoTime() - startNanos) / 1e9,
+                guard.getLastP95Ms(), guard.getBaselineMs());
+    }
+
+    /**
+     * Chép một phân vùng theo lô keyset trên khóa key (tăng dần trong phân vùng).
+     * Mỗi lô: tìm khóa cuối của batchRows dòng kế tiếp, rồi INSERT IGNORE ... SELECT trong khoảng đó.
+     */
+    private long copy(String table, String archiveTable, String partition, String key, String columns,
+                      boolean numericKey) throws SQLException, InterruptedException {
+        String source = table + " PARTITION (" + partition + ")";
+        String nextKeySql = "SELECT MAX(" + key + ") FROM (SELECT " + key + " FROM " + source +
+                " WHERE " + key + " > ? ORDER BY " + key + " LIMIT " + batchRows + ") batch";
+        String copySql = "INSERT IGNORE INTO " + archiveTable + " (" + columns + ") SELECT " + columns +
+                " FROM " + source + " WHERE " + key + " > ? AND " + key + " <= ?";
+        Object after = numericKey ? (Object) 0L : "";
+        long copied = 0;
+        while (!stopped) {
+            awaitHealthyWrites();
+            try (Connection conn = connections.getConnection()) {
+                Object last;
+                try (PreparedStatement stmt = conn.prepareStatement(nextKeySql)) {
+                    stmt.setObject(1, after);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        rs.next();
+                        last = numericKey ? (Object) rs.getLong(1) : rs.getString(1);
+                        if (rs.wasNull()) break;
+                    }
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(copySql)) {
+                    stmt.setObject(1, after);
+                    stmt.setObject(2, last);
+                    int inserted = stmt.executeUpdate();
+                    copied += inserted;
+                    archivedRows.addAndGet(inserted);
+                }
+                after = last;
+            }
+        }
+        return copied;
+    }
+
+    /** Nghỉ pauseMs mỗi lần guard báo độ trễ ghi gameplay đang tăng. */
+    private void awaitHealthyWrites() throws InterruptedException {
+        while (!stopped && guard.isRising()) {
+            pauses.incrementAndGet();
+            System.out.printf("⏸️ Partition archiver paused: write p95 %.1fms > %.1fms%n",
+                    guard.getLastP95Ms(), guard.getThresholdMs());
+            Thread.sleep(pauseMs);
+        }
+    }
+
+    private static final class Partition {
+        final String name;
+        final Long bound;    // null = MAXVALUE
+
+        Partition(String name, Long bound) {
+            this.name = name;
+            this.bound = bound;
+        }
+    }
+
+    private static List<Partition> partitions(Connection conn, String table) throws SQLException {
+        List<Partition> partitions = new ArrayList<>();
+        String sql = "SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM information_schema.PARTITIONS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL " +
+                "ORDER BY PARTITION_ORDINAL_POSITION";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String description = rs.getString(2);
+                    partitions.add(new Partition(rs.getString(1),
+                            "MAXVALUE".equalsIgnoreCase(description) ? null : Long.parseLong(description.trim())));
+                }
+            }
+        }
+        if (partitions.isEmpty()) {
+            throw new SQLException("Table " + table + " is not partitioned (apply core/db/DB_SCRIPT.sql)");
+        }
+        return partitions;
+    }
+
+    /** Cận trên lớn nhất (trừ MAXVALUE) của bảng. */
+    private static long lastBound(Connection conn, String table) throws SQLException {
+        long last = Long.MIN_VALUE;
+        for (Partition partition : partitions(conn, table)) {
+            if (partition.bound != null) last = Math.max(last, partition.bound);
+        }
+        if (last == Long.MIN_VALUE) {
+            throw new SQLException("Table " + table + " has no monthly partitions");
+        }
+        return last;
+    }
+
+    private static long queryLong(Connection conn, String sql, Object... params) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+}
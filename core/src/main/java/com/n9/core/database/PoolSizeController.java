@@ -0,0 +1,131 @@
+package com.n9.core.database;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+/**
+ * PoolSizeController - Đổi maximumPoolSize của pool primary lúc chạy, trong khoảng [minSize, maxSize].
+ *
+ * Mỗi lần sample() (DatabaseManager gọi định kỳ) đọc HikariPoolMXBean và độ trễ lấy connection
+ * ghi nhận từ lần sample trước:
+ * - Tăng: pool đã mở đủ connection (total >= max) mà vẫn có thread chờ, hoặc độ trễ lấy connection
+ *   trung bình vượt targetAcquireMs → thêm max(step, số thread chờ).
+ * - Giảm: không ai chờ, dùng dưới LOW_UTILISATION và độ trễ thấp trong shrinkAfterSamples lần liên tiếp
+ *   → bớt 1. Hikari tự đóng connection thừa khi chúng được trả về.
+ *
+ * Tăng nhanh, giảm chậm: nghẽn làm chậm trận đang chơi, còn thừa vài connection idle thì rẻ.
+ */
+class PoolSizeController {
+
+    static final double LOW_UTILISATION = 0.5;
+
+    private final HikariPoolMXBean pool;
+    private final HikariConfigMXBean config;
+    private final int minSize;
+    private final int maxSize;
+    private final int minIdle;
+    private final double targetAcquireMs;
+    private final int step;
+    private final int shrinkAfterSamples;
+    private final IntConsumer onResize;
+
+    private final LongAdder acquireNanos = new LongAdder();
+    private final LongAdder acquireCount = new LongAdder();
+    private final AtomicLong resizes = new AtomicLong();
+    private int lowSamples = 0;                 // chỉ truy cập từ luồng sample()
+    private volatile double lastAcquireMs = 0;
+
+    PoolSizeController(HikariPoolMXBean pool, HikariConfigMXBean config, int minSize, int maxSize, int minIdle,
+                       double targetAcquireMs, int step, int shrinkAfterSamples, IntConsumer onResize) {
+        if (minSize < 1 || maxSize < minSize) {
+            throw new IllegalArgumentException("Invalid adaptive pool bounds [" + minSize + ", " + maxSize + "]");
+        }
+        this.pool = pool;
+        this.config = config;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.minIdle = minIdle;
+        this.targetAcquireMs = targetAcquireMs;
+        this.step = Math.max(1, step);
+        this.shrinkAfterSamples = Math.max(1, shrinkAfterSamples);
+        this.onResize = onResize;
+    }
+
+    /** Ghi nhận thời gian một lần lấy connection từ Hikari (gọi từ mọi thread). */
+    void recordAcquire(long nanos) {
+        acquireNanos.add(nanos);
+        acquireCount.increment();
+    }
+
+    /**
+     * Một vòng điều khiển. Trả về kích thước pool sau vòng này.
+     */
+    synchronized int sample() {
+        long count = acquireCount.sumThenReset();
+        long nanos = acquireNanos.sumThenReset();
+        double avgAcquireMs = count == 0 ? 0.0 : nanos / 1_000_000.0 / count;
+        lastAcquireMs = avgAcquireMs;
+
+        int current = config.getMaximumPoolSize();
+        int awaiting = pool.getThreadsAwaitingConnection();
+        int active = pool.getActiveConnections();
+        int total = pool.getTotalConnections();
+
+        boolean saturated = total >= current && (awaiting > 0 || avgAcquireMs > targetAcquireMs);
+        if (saturated) {
+            lowSamples = 0;
+            if (current < maxSize) {
+                int target = Math.min(maxSize, current + Math.max(step, awaiting));
+                resize(current, target, "awaiting=" + awaiting + ", active=" + active
+                        + ", acquire avg=" + round(avgAcquireMs) + "ms");
+                return target;
+            }
+            return current;
+        }
+
+        boolean idle = awaiting == 0 && active < current * LOW_UTILISATION && avgAcquireMs <= targetAcquireMs;
+        if (!idle) {
+            lowSamples = 0;
+            return current;
+        }
+        if (++lowSamples < shrinkAfterSamples || current <= minSize) {
+            return current;
+        }
+        lowSamples = 0;
+        int target = current - 1;
+        resize(current, target, "active=" + active + " for " + shrinkAfterSamples + " samples");
+        return target;
+    }
+
+    int getMinSize() { return minSize; }
+    int getMaxSize() { return maxSize; }
+    long getResizes() { return resizes.get(); }
+    double getLastAcquireMs() { return lastAcquireMs; }
+
+    // ============================
+    // NỘI BỘ
+    // ============================
+
+    private void resize(int from, int to, String reason) {
+        // Hikari yêu cầu minimumIdle <= maximumPoolSize: giảm minIdle trước khi giảm max
+        int idle = Math.min(minIdle, to);
+        if (to < from) {
+            config.setMinimumIdle(idle);
+            config.setMaximumPoolSize(to);
+        } else {
+            config.setMaximumPoolSize(to);
+            config.setMinimumIdle(idle);
+        }
+        resizes.incrementAndGet();
+        onResize.accept(to);
+        System.out.println((to > from ? "📈" : "📉") + " DB pool resized " + from + " → " + to + " (" + reason + ")");
+    }
+
+    private static double round(double v) {
+        return Math.round(v * 100.0) / 100.0;
+    }
+}
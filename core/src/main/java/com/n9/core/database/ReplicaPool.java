@@ -0,0 +1,83 @@
+package com.n9.core.database;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool chỉ đọc tới một MySQL replica + trạng thái độ trễ sao chép đo định kỳ.
+ *
+ * fresh = kết nối được VÀ trễ <= maxLagSeconds. Replica không fresh thì DatabaseManager
+ * đọc từ primary thay thế cho tới lần đo sau.
+ */
+class ReplicaPool {
+
+    private final String name;
+    private final HikariDataSource dataSource;
+    private final int maxLagSeconds;
+
+    private volatile boolean fresh = false;          // chưa đo thì chưa dùng
+    private volatile long lagSeconds = -1;           // -1 = không biết
+    private volatile boolean warnedNotReplicating = false;
+    final LongAdder reads = new LongAdder();
+
+    ReplicaPool(String name, HikariDataSource dataSource, int maxLagSeconds) {
+        this.name = name;
+        this.dataSource = dataSource;
+        this.maxLagSeconds = maxLagSeconds;
+    }
+
+    String getName() { return name; }
+    HikariDataSource getDataSource() { return dataSource; }
+    boolean isFresh() { return fresh; }
+    long getLagSeconds() { return lagSeconds; }
+
+    Connection getConnection() throws SQLException {
+        return dataSource.getConnection();
+    }
+
+    /** Lỗi khi lấy connection: ngừng dùng replica tới lần đo sau. */
+    void markFailed() {
+        fresh = false;
+    }
+
+    /**
+     * Đo trễ bằng SHOW REPLICA STATUS (MySQL 8.0.22+), lùi về SHOW SLAVE STATUS cho bản cũ.
+     * Seconds_Behind_* = NULL nghĩa là luồng sao chép đã dừng → coi như stale.
+     */
+    void probe() {
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            Long lag;
+            try (ResultSet rs = stmt.executeQuery("SHOW REPLICA STATUS")) {
+                lag = readLag(rs, "Seconds_Behind_Source");
+            } catch (SQLException e) {
+                try (ResultSet rs = stmt.executeQuery("SHOW SLAVE STATUS")) {
+                    lag = readLag(rs, "Seconds_Behind_Master");
+                }
+            }
+            lagSeconds = lag != null ? lag : -1;
+            fresh = lag != null && lag <= maxLagSeconds;
+        } catch (SQLException e) {
+            lagSeconds = -1;
+            fresh = false;
+            System.err.println("❌ Replica " + name + " probe failed: " + e.getMessage());
+        }
+    }
+
+    private Long readLag(ResultSet rs, String column) throws SQLException {
+        if (!rs.next()) {
+            // Không cấu hình sao chép (ví dụ instance MySQL thứ hai đứng thay replica khi test)
+            if (!warnedNotReplicating) {
+                warnedNotReplicating = true;
+                System.out.println("⚠️ Replica " + name + " reports no replication status; assuming it is in sync");
+            }
+            return 0L;
+        }
+        long value = rs.getLong(column);
+        return rs.wasNull() ? null : value;
+    }
+}
@@ -0,0 +1,39 @@
+package com.n9.core.database;
+
+/**
+ * Loại tải của một truy vấn. Mỗi loại có quota connection riêng trên pool primary (Bulkhead)
+ * để một loại bị nghẽn không chiếm hết connection của các loại khác.
+ *
+ * Kích thước mặc định cho pool 10 connection: tổng quota các loại không phải GAMEPLAY
+ * (2 + 3 + 1) để lại ít nhất GAMEPLAY_RESERVED connection cho trận đang diễn ra.
+ */
+public enum Workload {
+
+    /** Lưu trận/hiệp, flush rating sau trận. Được dùng cả pool, luôn có phần dành riêng. */
+    GAMEPLAY(10, 5_000),
+    /** Đăng ký, đăng nhập. */
+    AUTH(2, 2_000),
+    /** Bảng xếp hạng, re-tier, checkpoint bảng theo khung. */
+    LEADERBOARD(3, 1_000),
+    /** active_sessions, last_login. */
+    SESSION(1, 1_000);
+
+    /** Số connection primary luôn để dành cho GAMEPLAY. */
+    public static final int GAMEPLAY_RESERVED = 4;
+
+    private final int defaultSize;
+    private final long defaultAcquireTimeoutMs;
+
+    Workload(int defaultSize, long defaultAcquireTimeoutMs) {
+        this.defaultSize = defaultSize;
+        this.defaultAcquireTimeoutMs = defaultAcquireTimeoutMs;
+    }
+
+    public int getDefaultSize() { return defaultSize; }
+    public long getDefaultAcquireTimeoutMs() { return defaultAcquireTimeoutMs; }
+
+    /** Tên dùng trong cấu hình và metrics: db.bulkhead.gameplay.* */
+    public String key() {
+        return name().toLowerCase();
+    }
+}
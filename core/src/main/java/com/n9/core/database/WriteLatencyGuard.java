@@ -0,0 +1,111 @@
+package com.n9.core.database;
+
+import com.n9.core.metrics.LatencyHistogram;
+
+import java.util.function.LongSupplier;
+
+/**
+ * WriteLatencyGuard - Báo khi độ trễ ghi gameplay đang tăng để việc nền (PartitionArchiver) nhường đường.
+ *
+ * Histogram là cộng dồn nên guard giữ bản sao số đếm theo bucket lúc đầu cửa sổ; hiệu số là
+ * histogram của riêng cửa sổ đó. Mỗi cửa sổ dài ít nhất minWindowMs:
+ * - begin(): p95 của khoảng việc nền đang nghỉ thành mức nền (baseline)
+ * - isRising(): p95 của cửa sổ vừa qua > max(pauseAboveMs, baseline x factor) và đủ MIN_SAMPLES mẫu
+ * Ít mẫu (ít người chơi) → không coi là tăng.
+ */
+class WriteLatencyGuard {
+
+    static final int MIN_SAMPLES = 20;
+    static final double PERCENTILE = 0.95;
+
+    private final LatencyHistogram histogram;
+    private final double pauseAboveMs;
+    private final double factor;
+    private final long minWindowMs;
+    private final LongSupplier clock;
+
+    private long[] windowCounts;
+    private long windowStartMs;
+    private double baselineMs = 0;
+    private double lastP95Ms = 0;
+    private boolean rising = false;
+
+    WriteLatencyGuard(LatencyHistogram histogram, double pauseAboveMs, double factor, long minWindowMs) {
+        this(histogram, pauseAboveMs, factor, minWindowMs, System::currentTimeMillis);
+    }
+
+    WriteLatencyGuard(LatencyHistogram histogram, double pauseAboveMs, double factor, long minWindowMs,
+                      LongSupplier clock) {
+        this.histogram = histogram;
+        this.pauseAboveMs = pauseAboveMs;
+        this.factor = factor;
+        this.minWindowMs = minWindowMs;
+        this.clock = clock;
+        resetWindow();
+    }
+
+    /**
+     * Gọi khi việc nền bắt đầu một lượt: cửa sổ từ lần gọi trước (việc nền đang nghỉ) thành baseline.
+     */
+    synchronized void begin() {
+        long[] window = delta();
+        if (total(window) >= MIN_SAMPLES) {
+            baselineMs = LatencyHistogram.percentileMillis(window, PERCENTILE);
+        }
+        rising = false;
+        resetWindow();
+    }
+
+    /**
+     * Độ trễ ghi có đang tăng không. Cửa sổ chưa đủ minWindowMs → giữ kết luận của cửa sổ trước.
+     */
+    synchronized boolean isRising() {
+        if (clock.getAsLong() - windowStartMs < minWindowMs) {
+            return rising;
+        }
+        long[] window = delta();
+        if (total(window) < MIN_SAMPLES) {
+            rising = false;
+        } else {
+            lastP95Ms = LatencyHistogram.percentileMillis(window, PERCENTILE);
+            rising = lastP95Ms > getThresholdMs();
+        }
+        resetWindow();
+        return rising;
+    }
+
+    synchronized double getBaselineMs() {
+        return baselineMs;
+    }
+
+    synchronized double getLastP95Ms() {
+        return lastP95Ms;
+    }
+
+    synchronized double getThresholdMs() {
+        return Math.max(pauseAboveMs, baselineMs * factor);
+    }
+
+    // ============================
+    // NỘI BỘ
+    // ============================
+
+    private long[] delta() {
+        long[] now = histogram.bucketCounts();
+        for (int i = 0; i < now.length; i++) {
+            now[i] -= windowCounts[i];
+        }
+        return now;
+    }
+
+    private void resetWindow() {
+        windowCounts = histogram.bucketCounts();
+        windowStartMs = clock.getAsLong();
+    }
+
+    private static long total(long[] counts) {
+        long total = 0;
+        for (long c : counts) total += c;
+        return total;
+    }
+}
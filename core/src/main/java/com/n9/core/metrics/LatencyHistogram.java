@@ -0,0 +1,127 @@
+package com.n9.core.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram - Histogram độ trễ dạng bucket cố định (lock-free).
+ *
+ * Bucket theo lũy thừa 2 của micro-giây: [0,1µs), [1,2µs), [2,4µs) ... ~ 35 phút.
+ * record() chỉ cộng một LongAdder nên an toàn gọi từ mọi worker thread.
+ * Percentile trả về là cận trên của bucket chứa percentile đó.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKET_COUNT = 32;
+
+    private final String name;
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Ghi nhận một mẫu (đơn vị nano-giây, lấy từ System.nanoTime()).
+     */
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1_000);
+        int idx = micros == 0 ? 0 : Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets[idx].increment();
+        count.increment();
+        totalMicros.add(micros);
+        maxMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    public void recordMillis(long millis) {
+        recordNanos(millis * 1_000_000L);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Giá trị trung bình (ms).
+     */
+    public double getMeanMillis() {
+        long n = count.sum();
+        return n == 0 ? 0.0 : totalMicros.sum() / 1000.0 / n;
+    }
+
+    /**
+     * Percentile xấp xỉ (ms), p trong khoảng (0, 1].
+     */
+    public double getPercentileMillis(double p) {
+        long[] counts = bucketCounts();
+        long total = 0;
+        for (long c : counts) total += c;
+        if (total == 0) return 0.0;
+        return Math.min(percentileMillis(counts, p), maxMicros.get() / 1000.0);
+    }
+
+    /**
+     * Số mẫu hiện tại của từng bucket (cộng dồn từ lúc khởi động). Hiệu hai lần gọi
+     * là histogram của riêng khoảng thời gian giữa hai lần gọi.
+     */
+    public long[] bucketCounts() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+
+    /**
+     * Percentile (ms, cận trên của bucket) trên mảng đếm theo bucket như bucketCounts(); 0 nếu rỗng.
+     */
+    public static double percentileMillis(long[] counts, double p) {
+        long total = 0;
+        for (long c : counts) total += c;
+        if (total == 0) return 0.0;
+        long rank = (long) Math.ceil(p * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return (i == 0 ? 1 : (1L << i)) / 1000.0;
+            }
+        }
+        return (1L << (counts.length - 1)) / 1000.0;
+    }
+
+    /**
+     * Snapshot dạng Map để trả qua protocol/log.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snap = new LinkedHashMap<>();
+        snap.put("count", getCount());
+        snap.put("meanMs", round(getMeanMillis()));
+        snap.put("p50Ms", round(getPercentileMillis(0.50)));
+        snap.put("p95Ms", round(getPercentileMillis(0.95)));
+        snap.put("p99Ms", round(getPercentileMillis(0.99)));
+        snap.put("maxMs", round(maxMicros.get() / 1000.0));
+        return snap;
+    }
+
+    private static double round(double v) {
+        return Math.round(v * 1000.0) / 1000.0;
+    }
+
+    @Override
+    public String toString() {
+        return name + snapshot();
+    }
+}
@@ -0,0 +1,54 @@
+package com.n9.core.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * MetricsRegistry - Nơi đăng ký tập trung các histogram và gauge của Core Server.
+ *
+ * Singleton giống DatabaseManager để các service lấy histogram mà không phải
+ * truyền thêm tham số qua constructor. Snapshot được trả về qua SYSTEM.METRICS_REQUEST.
+ */
+public class MetricsRegistry {
+
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Supplier<Object>> gauges = new ConcurrentHashMap<>();
+
+    private MetricsRegistry() {
+    }
+
+    public static MetricsRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Lấy (hoặc tạo) histogram theo tên, ví dụ "auth.hash.queueWait".
+     */
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, LatencyHistogram::new);
+    }
+
+    /**
+     * Đăng ký gauge (giá trị đọc tại thời điểm snapshot).
+     */
+    public void gauge(String name, Supplier<Object> supplier) {
+        gauges.put(name, supplier);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snap = new TreeMap<>();
+        histograms.forEach((name, h) -> snap.put(name, h.snapshot()));
+        gauges.forEach((name, g) -> {
+            try {
+                snap.put(name, g.get());
+            } catch (RuntimeException e) {
+                snap.put(name, null);
+            }
+        });
+        return snap;
+    }
+}
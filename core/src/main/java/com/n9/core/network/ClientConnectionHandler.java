@@ -1,16 +1,25 @@
 package com.n9.core.network;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.n9.core.metrics.MetricsRegistry;
 import com.n9.core.service.AuthService;
 import com.n9.core.service.ChallengeService;
 import com.n9.core.service.GameService;
+import com.n9.core.service.HeadToHeadService;
+import com.n9.core.service.LeaderboardPublisher;
 import com.n9.core.service.LeaderboardService;
+import com.n9.core.service.MatchHistoryService;
 import com.n9.core.service.MatchmakingService;
+import com.n9.core.service.ServerBusyException;
 import com.n9.core.service.SessionManager;
+import com.n9.core.service.WindowedLeaderboards;
 import com.n9.shared.MessageProtocol;
 import com.n9.shared.constants.GameConstants;
+import com.n9.shared.model.dto.auth.LoginFailureDto;
 import com.n9.shared.model.dto.auth.LoginRequestDto;
+import com.n9.shared.model.dto.auth.LoginSuccessDto;
 import com.n9.shared.model.dto.auth.RegisterRequestDto;
+import com.n9.shared.model.dto.auth.RegisterResponseDto;
 import com.n9.shared.model.dto.challenge.ChallengeRequestDto;
 import com.n9.shared.model.dto.challenge.ChallengeResponseDto;
 import com.n9.shared.model.dto.game.CardDto;
@@ -47,6 +56,9 @@ public class ClientConnectionHandler implements Runnable {
     private final MatchmakingService matchmakingService;
     private final LeaderboardService leaderboardService;
     private final ChallengeService challengeService; // Thêm ChallengeService
+    private final LeaderboardPublisher leaderboardPublisher;
+    private final MatchHistoryService matchHistoryService;
+    private final HeadToHeadService headToHeadService;
     private final ExecutorService pool;
     private final ConcurrentHashMap<String, ClientConnectionHandler> activeConnections;
 
@@ -61,6 +73,9 @@ public class ClientConnectionHandler implements Runnable {
             MatchmakingService matchmakingService,
             LeaderboardService leaderboardService,
             ChallengeService challengeService, // Thêm parameter
+            LeaderboardPublisher leaderboardPublisher,
+            MatchHistoryService matchHistoryService,
+            HeadToHeadService headToHeadService,
             ExecutorService pool,
             ConcurrentHashMap<String, ClientConnectionHandler> activeConnections
     ) {
@@ -71,6 +86,9 @@ public class ClientConnectionHandler implements Runnable {
         this.matchmakingService = matchmakingService;
         this.leaderboardService = leaderboardService;
         this.challengeService = challengeService; // Inject
+        this.leaderboardPublisher = leaderboardPublisher;
+        this.matchHistoryService = matchHistoryService;
+        this.headToHeadService = headToHeadService;
         this.pool = pool;
         this.activeConnections = activeConnections;
     }
@@ -152,6 +170,9 @@ public class ClientConnectionHandler implements Runnable {
                 case MessageProtocol.Type.AUTH_LOGOUT_REQUEST:
                     response = handleLogout(envelope);
                     break;
+                case MessageProtocol.Type.AUTH_CHECK_USERNAME:
+                    response = handleCheckUsername(envelope);
+                    break;
 
                 // --- LOBBY ---
                 case MessageProtocol.Type.LOBBY_MATCH_REQUEST:
@@ -165,6 +186,21 @@ public class ClientConnectionHandler implements Runnable {
                 case MessageProtocol.Type.LOBBY_GET_USER_RANK_REQUEST:
                     response = handleGetUserRank(envelope);
                     break;
+                case MessageProtocol.Type.LOBBY_GET_RANK_NEIGHBOURHOOD_REQUEST:
+                    response = handleGetRankNeighbourhood(envelope);
+                    break;
+                case MessageProtocol.Type.LOBBY_GET_MATCH_HISTORY_REQUEST:
+                    response = handleGetMatchHistory(envelope);
+                    break;
+                case MessageProtocol.Type.LOBBY_GET_HEAD_TO_HEAD_REQUEST:
+                    response = handleGetHeadToHead(envelope);
+                    break;
+                case MessageProtocol.Type.LOBBY_LEADERBOARD_SUBSCRIBE:
+                    response = handleLeaderboardSubscribe(envelope);
+                    break;
+                case MessageProtocol.Type.LOBBY_LEADERBOARD_UNSUBSCRIBE:
+                    response = handleLeaderboardUnsubscribe(envelope);
+                    break;
 
                 // --- CHALLENGE ---
                 case MessageProtocol.Type.GAME_CHALLENGE_REQUEST:
@@ -181,11 +217,20 @@ public class ClientConnectionHandler implements Runnable {
                 case MessageProtocol.Type.GAME_CARD_PLAY_REQUEST:
                     response = handlePlayCard(envelope);
                     break;
+                case MessageProtocol.Type.GAME_READY:
+                    response = handleGameReady(envelope);
+                    break;
+                case MessageProtocol.Type.GAME_REVEAL_ACK:
+                    response = handleRevealAck(envelope);
+                    break;
 
                 case MessageProtocol.Type.SYSTEM_PING:
                     System.out.println("💓 Received PING from Gateway. Sending PONG.");
                     response = MessageFactory.createResponse(envelope, MessageProtocol.Type.SYSTEM_PONG, null);
                     break;
+                case MessageProtocol.Type.SYSTEM_METRICS_REQUEST:
+                    response = MessageFactory.createResponse(envelope, MessageProtocol.Type.SYSTEM_METRICS_RESPONSE, MetricsRegistry.getInstance().snapshot());
+                    break;
 
                 default:
                     response = MessageFactory.createErrorResponse(envelope, "UNKNOWN_TYPE", "Unknown message type: " + type);
@@ -215,7 +260,12 @@ public class ClientConnectionHandler implements Runnable {
     // đăng kí xong mới sessionId
     private MessageEnvelope handleRegister(MessageEnvelope envelope) throws Exception {
         RegisterRequestDto dto = JsonUtils.getObjectMapper().convertValue(envelope.getPayload(), RegisterRequestDto.class);
-        var responseDto = authService.register(dto.getUsername(), dto.getEmail(), dto.getPassword(), dto.getDisplayName());
+        RegisterResponseDto responseDto;
+        try {
+            responseDto = authService.register(dto.getUsername(), dto.getEmail(), dto.getPassword(), dto.getDisplayName());
+        } catch (ServerBusyException e) {
+            return MessageFactory.createResponse(envelope, MessageProtocol.Type.AUTH_REGISTER_FAILURE, LoginFailureDto.serverBusy(e.getRetryAfterSeconds()));
+        }
 //        String sessionId = sessionManager.createSession(responseDto.getUserId(), responseDto.getUsername());
         
         MessageEnvelope response = MessageFactory.createResponse(envelope, MessageProtocol.Type.AUTH_REGISTER_SUCCESS, responseDto);
@@ -226,17 +276,44 @@ public class ClientConnectionHandler implements Runnable {
 
     private MessageEnvelope handleLogin(MessageEnvelope envelope) throws Exception {
         LoginRequestDto dto = JsonUtils.getObjectMapper().convertValue(envelope.getPayload(), LoginRequestDto.class);
-        var responseDto = authService.login(dto.getUsername(), dto.getPassword());
+        LoginSuccessDto responseDto;
+        try {
+            responseDto = authService.login(dto.getUsername(), dto.getPassword());
+        } catch (ServerBusyException e) {
+            // Pool BCrypt đầy → báo client thử lại sau, không chiếm thêm CPU
+            return MessageFactory.createResponse(envelope, MessageProtocol.Type.AUTH_LOGIN_FAILURE, LoginFailureDto.serverBusy(e.getRetryAfterSeconds()));
+        }
         String sessionId = sessionManager.createSession(responseDto.getUserId(), responseDto.getUsername());
+        SessionManager.SessionContext newContext = sessionManager.getSessionByUserId(responseDto.getUserId());
+        if (newContext != null && responseDto.getRating() != null) {
+            newContext.setRating(responseDto.getRating()); // matchmaking ghép theo current_rating
+        }
         
         MessageEnvelope response = MessageFactory.createResponse(envelope, MessageProtocol.Type.AUTH_LOGIN_SUCCESS, responseDto);
         response.setSessionId(sessionId);
         
         activeConnections.put(responseDto.getUserId(), this);
+        leaderboardService.onUserLogin(responseDto.getUserId());
+        matchHistoryService.onUserLogin(responseDto.getUserId()); // nạp nền bộ đệm lịch sử đấu
 
         return response;
     }
 
+    /**
+     * Payload: { "username": "abc" } → { "username": "abc", "available": true }
+     */
+    private MessageEnvelope handleCheckUsername(MessageEnvelope envelope) {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> payload = (Map<String, Object>) envelope.getPayload();
+        String username = payload != null ? (String) payload.get("username") : null;
+        boolean available = authService.isUsernameAvailable(username);
+
+        Map<String, Object> responsePayload = new HashMap<>();
+        responsePayload.put("username", username);
+        responsePayload.put("available", available);
+        return MessageFactory.createResponse(envelope, MessageProtocol.Type.AUTH_CHECK_USERNAME_RESULT, responsePayload);
+    }
+
     private MessageEnvelope handleLogout(MessageEnvelope envelope) {
         SessionManager.SessionContext context = sessionManager.getSession(envelope.getSessionId());
         if (context != null) {
@@ -253,6 +330,7 @@ public class ClientConnectionHandler implements Runnable {
             matchmakingService.cancelMatch(userId);
             
             challengeService.cleanupUserChallenges(userId);
+            leaderboardPublisher.unsubscribe(userId);
             
             // Xóa khỏi activeConnections và session
             activeConnections.remove(userId);
@@ -294,9 +372,38 @@ public class ClientConnectionHandler implements Runnable {
         }
     }
 
+    /**
+     * GAME.READY - payload: { "matchId": "..." }. Không có response (fire-and-forget).
+     */
+    private MessageEnvelope handleGameReady(MessageEnvelope envelope) {
+        SessionManager.SessionContext context = sessionManager.getSession(envelope.getSessionId());
+        if (context == null) throw new IllegalArgumentException("Authentication required.");
+        Map<?, ?> payload = envelope.getPayload() instanceof Map ? (Map<?, ?>) envelope.getPayload() : Map.of();
+        Object matchId = payload.get("matchId");
+        if (matchId == null) throw new IllegalArgumentException("matchId is required.");
+        matchmakingService.markReady(matchId.toString(), context.getUserId());
+        return null;
+    }
+
+    /**
+     * GAME.REVEAL_ACK - payload: { "matchId": "...", "roundNumber": 1 }. Không có response.
+     */
+    private MessageEnvelope handleRevealAck(MessageEnvelope envelope) {
+        SessionManager.SessionContext context = sessionManager.getSession(envelope.getSessionId());
+        if (context == null) throw new IllegalArgumentException("Authentication required.");
+        Map<?, ?> payload = envelope.getPayload() instanceof Map ? (Map<?, ?>) envelope.getPayload() : Map.of();
+        Object matchId = payload.get("matchId");
+        if (matchId == null) throw new IllegalArgumentException("matchId is required.");
+        Object round = payload.get("roundNumber");
+        Integer roundNumber = round instanceof Number ? ((Number) round).intValue() : null;
+        gameService.acknowledgeReveal(matchId.toString(), context.getUserId(), roundNumber);
+        return null;
+    }
+
     /**
      * Xử lý yêu cầu lấy danh sách leaderboard.
      * Payload mong đợi: { "limit": 100, "offset": 0 }
+     * Tùy chọn: "window": DAILY | WEEKLY | SEASON (bỏ trống = all-time), "previous": true = khung vừa kết thúc
      */
     private MessageEnvelope handleGetLeaderboard(MessageEnvelope envelope) {
         try {
@@ -311,16 +418,18 @@ public class ClientConnectionHandler implements Runnable {
                 ? ((Number) payload.get("offset")).intValue() 
                 : 0;
 
-            // Gọi service
-            var leaderboard = leaderboardService.getTopPlayers(limit, offset);
-            int totalPlayers = leaderboardService.getTotalPlayersCount();
+            WindowedLeaderboards.Window window = payload != null
+                ? WindowedLeaderboards.Window.parse((String) payload.get("window"))
+                : null;
+            if (window != null) {
+                boolean previous = Boolean.TRUE.equals(payload.get("previous"));
+                return MessageFactory.createResponse(envelope,
+                    MessageProtocol.Type.LOBBY_GET_LEADERBOARD_SUCCESS,
+                    leaderboardService.getWindowLeaderboardPayload(window, previous, limit, offset));
+            }
 
-            // Tạo response payload
-            Map<String, Object> responsePayload = new HashMap<>();
-            responsePayload.put("leaderboard", leaderboard);
-            responsePayload.put("totalPlayers", totalPlayers);
-            responsePayload.put("limit", limit);
-            responsePayload.put("offset", offset);
+            // Gọi service (trang đã cache theo version, chỉ ghép cờ online mỗi request)
+            Map<String, Object> responsePayload = leaderboardService.getLeaderboardPayload(limit, offset);
 
             return MessageFactory.createResponse(envelope, 
                 MessageProtocol.Type.LOBBY_GET_LEADERBOARD_SUCCESS, 
@@ -334,9 +443,159 @@ public class ClientConnectionHandler implements Runnable {
         }
     }
 
+    /**
+     * Xử lý yêu cầu "xung quanh tôi": K người trên/dưới user hiện tại.
+     * Payload tùy chọn: { "k": 10 }
+     */
+    private MessageEnvelope handleGetRankNeighbourhood(MessageEnvelope envelope) {
+        try {
+            SessionManager.SessionContext session = sessionManager.getSession(envelope.getSessionId());
+            if (session == null) {
+                return MessageFactory.createErrorResponse(envelope, 
+                    "INVALID_SESSION", 
+                    "Session not found or expired");
+            }
+
+            @SuppressWarnings("unchecked")
+            Map<String, Object> payload = (Map<String, Object>) envelope.getPayload();
+            int k = payload != null && payload.get("k") instanceof Number
+                ? ((Number) payload.get("k")).intValue()
+                : 10;
+
+            Map<String, Object> responsePayload = leaderboardService.getRankNeighbourhood(
+                Integer.parseInt(session.getUserId()), k);
+            return MessageFactory.createResponse(envelope, 
+                MessageProtocol.Type.LOBBY_GET_RANK_NEIGHBOURHOOD_SUCCESS, 
+                responsePayload);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return MessageFactory.createErrorResponse(envelope, 
+                "RANK_NEIGHBOURHOOD_ERROR", 
+                "Failed to fetch rank neighbourhood: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Xử lý yêu cầu lịch sử đấu của user hiện tại.
+     * Payload tùy chọn: { "limit": 20, "cursor": "<nextCursor của trang trước>" }
+     */
+    private MessageEnvelope handleGetMatchHistory(MessageEnvelope envelope) {
+        try {
+            SessionManager.SessionContext session = sessionManager.getSession(envelope.getSessionId());
+            if (session == null) {
+                return MessageFactory.createErrorResponse(envelope, 
+                    "INVALID_SESSION", 
+                    "Session not found or expired");
+            }
+
+            @SuppressWarnings("unchecked")
+            Map<String, Object> payload = (Map<String, Object>) envelope.getPayload();
+            int limit = payload != null && payload.get("limit") instanceof Number
+                ? ((Number) payload.get("limit")).intValue()
+                : MatchHistoryService.DEFAULT_PAGE_SIZE;
+            String cursor = payload != null && payload.get("cursor") instanceof String
+                ? (String) payload.get("cursor")
+                : null;
+
+            Map<String, Object> responsePayload = matchHistoryService.getMatchHistory(
+                Integer.parseInt(session.getUserId()), cursor, limit);
+            return MessageFactory.createResponse(envelope, 
+                MessageProtocol.Type.LOBBY_GET_MATCH_HISTORY_SUCCESS, 
+                responsePayload);
+
+        } catch (IllegalArgumentException e) {
+            return MessageFactory.createErrorResponse(envelope, 
+                "INVALID_CURSOR", 
+                e.getMessage());
+        } catch (Exception e) {
+            e.printStackTrace();
+            return MessageFactory.createErrorResponse(envelope, 
+                "MATCH_HISTORY_ERROR", 
+                "Failed to fetch match history: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Xử lý yêu cầu thành tích đối đầu giữa user hiện tại và opponentId.
+     * Payload: { "opponentId": 42 } (số hoặc chuỗi)
+     */
+    private MessageEnvelope handleGetHeadToHead(MessageEnvelope envelope) {
+        try {
+            SessionManager.SessionContext session = sessionManager.getSession(envelope.getSessionId());
+            if (session == null) {
+                return MessageFactory.createErrorResponse(envelope, 
+                    "INVALID_SESSION", 
+                    "Session not found or expired");
+            }
+
+            @SuppressWarnings("unchecked")
+            Map<String, Object> payload = (Map<String, Object>) envelope.getPayload();
+            Object opponent = payload != null ? payload.get("opponentId") : null;
+            int opponentId;
+            try {
+                opponentId = opponent instanceof Number
+                    ? ((Number) opponent).intValue()
+                    : Integer.parseInt(String.valueOf(opponent));
+            } catch (NumberFormatException e) {
+                return MessageFactory.createErrorResponse(envelope, 
+                    "INVALID_OPPONENT", 
+                    "opponentId is required");
+            }
+
+            Map<String, Object> responsePayload = headToHeadService.getHeadToHead(
+                Integer.parseInt(session.getUserId()), opponentId);
+            return MessageFactory.createResponse(envelope, 
+                MessageProtocol.Type.LOBBY_GET_HEAD_TO_HEAD_SUCCESS, 
+                responsePayload);
+
+        } catch (IllegalArgumentException e) {
+            return MessageFactory.createErrorResponse(envelope, 
+                "INVALID_OPPONENT", 
+                e.getMessage());
+        } catch (Exception e) {
+            e.printStackTrace();
+            return MessageFactory.createErrorResponse(envelope, 
+                "HEAD_TO_HEAD_ERROR", 
+                "Failed to fetch head-to-head stats: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Đăng ký nhận LOBBY.LEADERBOARD_DELTA. Payload tùy chọn: topN (mặc định 20, tối đa 100).
+     * Trả về snapshot top-N hiện tại kèm seq để client ghép các delta tiếp theo.
+     */
+    private MessageEnvelope handleLeaderboardSubscribe(MessageEnvelope envelope) {
+        SessionManager.SessionContext session = sessionManager.getSession(envelope.getSessionId());
+        if (session == null) {
+            return MessageFactory.createErrorResponse(envelope,
+                "INVALID_SESSION",
+                "Session not found or expired");
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> payload = (Map<String, Object>) envelope.getPayload();
+        int topN = payload != null && payload.get("topN") instanceof Number
+            ? ((Number) payload.get("topN")).intValue()
+            : LeaderboardPublisher.DEFAULT_TOP_N;
+
+        Map<String, Object> snapshot = leaderboardPublisher.subscribe(session.getUserId(), topN);
+        return MessageFactory.createResponse(envelope,
+            MessageProtocol.Type.LOBBY_LEADERBOARD_SNAPSHOT,
+            snapshot);
+    }
+
+    private MessageEnvelope handleLeaderboardUnsubscribe(MessageEnvelope envelope) {
+        SessionManager.SessionContext session = sessionManager.getSession(envelope.getSessionId());
+        if (session != null) {
+            leaderboardPublisher.unsubscribe(session.getUserId());
+        }
+        return null;
+    }
+
     /**
      * Xử lý yêu cầu lấy rank của user hiện tại.
-     * Không cần payload (lấy từ sessionId).
+     * Không cần payload (lấy từ sessionId); "window" tùy chọn để lấy rank ngày/tuần/mùa.
      */
     private MessageEnvelope handleGetUserRank(MessageEnvelope envelope) {
         try {
@@ -357,8 +616,17 @@ public class ClientConnectionHandler implements Runnable {
 
             int userId = Integer.parseInt(session.getUserId());
             
-            // Gọi service
-            var userRankInfo = leaderboardService.getUserRank(userId);
+            // Gọi service ("window" tùy chọn như GET_LEADERBOARD)
+            @SuppressWarnings("unchecked")
+            Map<String, Object> payload = envelope.getPayload() instanceof Map
+                ? (Map<String, Object>) envelope.getPayload()
+                : null;
+            WindowedLeaderboards.Window window = payload != null
+                ? WindowedLeaderboards.Window.parse((String) payload.get("window"))
+                : null;
+            var userRankInfo = window != null
+                ? leaderboardService.getWindowUserRank(window, userId)
+                : leaderboardService.getUserRank(userId);
 
             if (userRankInfo == null) {
                 // User chưa chơi trận nào
@@ -411,19 +679,23 @@ public class ClientConnectionHandler implements Runnable {
                 ChallengeRequestDto.class
             );
 
-            if (request == null || request.getTargetUserId() == null) {
+            boolean openChallenge = request != null && request.getTargetUserIds() != null && !request.getTargetUserIds().isEmpty();
+            if (request == null || (request.getTargetUserId() == null && !openChallenge)) {
                 return MessageFactory.createErrorResponse(envelope, 
                     "INVALID_PAYLOAD", 
                     "Missing targetUserId");
             }
 
-            // Tạo challenge
-            var challenge = challengeService.createChallenge(senderId, request.getTargetUserId());
+            // Tạo challenge (open challenge: nhiều target, ai accept trước thì đấu)
+            var challenge = openChallenge
+                ? challengeService.createOpenChallenge(senderId, request.getTargetUserIds())
+                : challengeService.createChallenge(senderId, request.getTargetUserId());
 
             // Response ACK
             Map<String, Object> ackPayload = new HashMap<>();
             ackPayload.put("challengeId", challenge.getChallengeId());
             ackPayload.put("status", "PENDING");
+            ackPayload.put("targetUserIds", challenge.getTargetIds());
 
             return MessageFactory.createResponse(envelope, 
                 MessageProtocol.Type.GAME_CHALLENGE_REQUEST_ACK, 
@@ -468,7 +740,7 @@ public class ClientConnectionHandler implements Runnable {
             }
 
             // Process response
-            challengeService.handleChallengeResponse(response.getChallengeId(), response.isAccept());
+            challengeService.handleChallengeResponse(response.getChallengeId(), session.getUserId(), response.isAccept());
 
             // ACK
             return MessageFactory.createResponse(envelope, 
@@ -562,6 +834,7 @@ public class ClientConnectionHandler implements Runnable {
                 
                 // Hủy challenge nếu đang trong challenge (THÊM)
                 challengeService.handleUserDisconnect(userId);
+                leaderboardPublisher.unsubscribe(userId);
                 
                 // Xóa session
                 sessionManager.removeSession(context.getSessionId());
@@ -3,7 +3,10 @@ package com.n9.core.network;
 import com.n9.core.service.AuthService;
 import com.n9.core.service.ChallengeService;
 import com.n9.core.service.GameService;
+import com.n9.core.service.HeadToHeadService;
+import com.n9.core.service.LeaderboardPublisher;
 import com.n9.core.service.LeaderboardService;
+import com.n9.core.service.MatchHistoryService;
 import com.n9.core.service.MatchmakingService; // Thêm import
 import com.n9.core.service.SessionManager;
 import java.io.IOException;
@@ -26,6 +29,9 @@ public class CoreServerListener implements Runnable {
     private final MatchmakingService matchmakingService; // Thêm
     private final LeaderboardService leaderboardService;
     private final ChallengeService challengeService; // Thêm ChallengeService
+    private final LeaderboardPublisher leaderboardPublisher;
+    private final MatchHistoryService matchHistoryService;
+    private final HeadToHeadService headToHeadService;
     private final ConcurrentHashMap<String, ClientConnectionHandler> activeConnections;
     private volatile boolean running = true;
 
@@ -38,7 +44,10 @@ public class CoreServerListener implements Runnable {
             ConcurrentHashMap<String, ClientConnectionHandler> activeConnections,
             MatchmakingService matchmakingService,
             LeaderboardService leaderboardService,
-            ChallengeService challengeService // Thêm parameter
+            ChallengeService challengeService, // Thêm parameter
+            LeaderboardPublisher leaderboardPublisher,
+            MatchHistoryService matchHistoryService,
+            HeadToHeadService headToHeadService
     ) {
         this.serverSocket = serverSocket;
         this.pool = pool;
@@ -49,6 +58,9 @@ public class CoreServerListener implements Runnable {
         this.matchmakingService = matchmakingService;
         this.leaderboardService = leaderboardService;
         this.challengeService = challengeService; // Inject
+        this.leaderboardPublisher = leaderboardPublisher;
+        this.matchHistoryService = matchHistoryService;
+        this.headToHeadService = headToHeadService;
     }
 
     public void start() {
@@ -73,6 +85,9 @@ public class CoreServerListener implements Runnable {
                         matchmakingService,
                         leaderboardService,
                         challengeService, // Truyền vào handler
+                        leaderboardPublisher,
+                        matchHistoryService,
+                        headToHeadService,
                         pool,
                         activeConnections
                 );
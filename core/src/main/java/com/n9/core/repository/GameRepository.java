@@ -0,0 +1,33 @@
+package com.n9.core.repository;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Ghi bảng games / game_rounds trong vòng đời một ván, đọc lịch sử đấu và thành tích đối đầu.
+ */
+public interface GameRepository {
+
+    void createGame(String matchId, int player1Id, int player2Id, int totalRounds) throws SQLException;
+
+    void saveRound(GameRoundRecord round) throws SQLException;
+
+    /** Ván kết thúc bình thường (status COMPLETED). */
+    void completeGame(GameResultRecord result) throws SQLException;
+
+    /** Ván bị bỏ (status ABANDONED, không ghi điểm). */
+    void abandonGame(GameResultRecord result) throws SQLException;
+
+    /**
+     * Lịch sử đấu của user, mới trước, phân trang keyset: chỉ các ván đứng sau con trỏ
+     * (beforeCompletedAtMillis, beforeMatchId); con trỏ null = trang đầu.
+     */
+    List<MatchHistoryRecord> findMatchHistory(int userId, Long beforeCompletedAtMillis, String beforeMatchId, int limit)
+            throws SQLException;
+
+    /**
+     * Tổng hợp đối đầu userId vs opponentId (cả hai thứ tự player1/player2), đọc primary.
+     * Kèm matchId các ván kết thúc từ recentSinceMillis trở đi.
+     */
+    HeadToHeadRecord findHeadToHead(int userId, int opponentId, long recentSinceMillis) throws SQLException;
+}
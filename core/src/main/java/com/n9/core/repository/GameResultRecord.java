@@ -0,0 +1,47 @@
+package com.n9.core.repository;
+
+/**
+ * Kết quả cuối của một ván (các cột games cập nhật khi ván kết thúc hoặc bị bỏ).
+ */
+public class GameResultRecord {
+
+    private final String matchId;
+    private final Integer winnerId;
+    private final int player1Score;
+    private final int player2Score;
+    private final int completedRounds;
+    private final Double player1RatingBefore;
+    private final Double player1RatingAfter;
+    private final Double player2RatingBefore;
+    private final Double player2RatingAfter;
+    private final long completedAtMillis;
+
+    public GameResultRecord(String matchId, Integer winnerId, int player1Score, int player2Score, int completedRounds,
+                            Double player1RatingBefore, Double player1RatingAfter,
+                            Double player2RatingBefore, Double player2RatingAfter, long completedAtMillis) {
+        this.matchId = matchId;
+        this.winnerId = winnerId;
+        this.player1Score = player1Score;
+        this.player2Score = player2Score;
+        this.completedRounds = completedRounds;
+        this.player1RatingBefore = player1RatingBefore;
+        this.player1RatingAfter = player1RatingAfter;
+        this.player2RatingBefore = player2RatingBefore;
+        this.player2RatingAfter = player2RatingAfter;
+        this.completedAtMillis = completedAtMillis;
+    }
+
+    public String getMatchId() { return matchId; }
+    /** null nếu hòa. */
+    public Integer getWinnerId() { return winnerId; }
+    public int getPlayer1Score() { return player1Score; }
+    public int getPlayer2Score() { return player2Score; }
+    public int getCompletedRounds() { return completedRounds; }
+    /** Rating trước/sau: null nếu RatingEngine hoãn trận (chưa nạp được profile). */
+    public Double getPlayer1RatingBefore() { return player1RatingBefore; }
+    public Double getPlayer1RatingAfter() { return player1RatingAfter; }
+    public Double getPlayer2RatingBefore() { return player2RatingBefore; }
+    public Double getPlayer2RatingAfter() { return player2RatingAfter; }
+    /** Giá trị ghi vào games.completed_at (tròn giây, khớp TIMESTAMP) - khóa phân trang lịch sử đấu. */
+    public long getCompletedAtMillis() { return completedAtMillis; }
+}
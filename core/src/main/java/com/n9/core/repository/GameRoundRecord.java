@@ -0,0 +1,49 @@
+package com.n9.core.repository;
+
+/**
+ * Kết quả một hiệp (một dòng game_rounds).
+ */
+public class GameRoundRecord {
+
+    private final String matchId;
+    private final int roundNumber;
+    private final int player1CardId;
+    private final int player1CardValue;
+    private final boolean player1AutoPicked;
+    private final int player2CardId;
+    private final int player2CardValue;
+    private final boolean player2AutoPicked;
+    private final Integer roundWinnerId;
+    private final int player1RoundScore;
+    private final int player2RoundScore;
+
+    public GameRoundRecord(String matchId, int roundNumber,
+                           int player1CardId, int player1CardValue, boolean player1AutoPicked,
+                           int player2CardId, int player2CardValue, boolean player2AutoPicked,
+                           Integer roundWinnerId, int player1RoundScore, int player2RoundScore) {
+        this.matchId = matchId;
+        this.roundNumber = roundNumber;
+        this.player1CardId = player1CardId;
+        this.player1CardValue = player1CardValue;
+        this.player1AutoPicked = player1AutoPicked;
+        this.player2CardId = player2CardId;
+        this.player2CardValue = player2CardValue;
+        this.player2AutoPicked = player2AutoPicked;
+        this.roundWinnerId = roundWinnerId;
+        this.player1RoundScore = player1RoundScore;
+        this.player2RoundScore = player2RoundScore;
+    }
+
+    public String getMatchId() { return matchId; }
+    public int getRoundNumber() { return roundNumber; }
+    public int getPlayer1CardId() { return player1CardId; }
+    public int getPlayer1CardValue() { return player1CardValue; }
+    public boolean isPlayer1AutoPicked() { return player1AutoPicked; }
+    public int getPlayer2CardId() { return player2CardId; }
+    public int getPlayer2CardValue() { return player2CardValue; }
+    public boolean isPlayer2AutoPicked() { return player2AutoPicked; }
+    /** null nếu hòa hiệp. */
+    public Integer getRoundWinnerId() { return roundWinnerId; }
+    public int getPlayer1RoundScore() { return player1RoundScore; }
+    public int getPlayer2RoundScore() { return player2RoundScore; }
+}
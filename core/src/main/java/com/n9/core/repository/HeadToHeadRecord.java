@@ -0,0 +1,51 @@
+package com.n9.core.repository;
+
+import java.util.Set;
+
+/**
+ * Tổng hợp các ván đã kết thúc giữa hai người chơi, nhìn từ phía userId.
+ *
+ * Điểm chỉ cộng các ván COMPLETED (ván bỏ dở không ghi điểm) → điểm trung bình chia cho scoredGames.
+ * recentMatchIds: các ván của cặp kết thúc từ mốc recentSince trở đi, để HeadToHeadService biết
+ * sự kiện kết thúc ván nào đã nằm trong kết quả truy vấn.
+ */
+public class HeadToHeadRecord {
+
+    private final int userId;
+    private final int opponentId;
+    private final int games;
+    private final int wins;
+    private final int losses;
+    private final int scoredGames;
+    private final long scoreTotal;
+    private final long opponentScoreTotal;
+    private final Long lastPlayedMillis;
+    private final Set<String> recentMatchIds;
+
+    public HeadToHeadRecord(int userId, int opponentId, int games, int wins, int losses, int scoredGames,
+                            long scoreTotal, long opponentScoreTotal, Long lastPlayedMillis, Set<String> recentMatchIds) {
+        this.userId = userId;
+        this.opponentId = opponentId;
+        this.games = games;
+        this.wins = wins;
+        this.losses = losses;
+        this.scoredGames = scoredGames;
+        this.scoreTotal = scoreTotal;
+        this.opponentScoreTotal = opponentScoreTotal;
+        this.lastPlayedMillis = lastPlayedMillis;
+        this.recentMatchIds = recentMatchIds;
+    }
+
+    public int getUserId() { return userId; }
+    public int getOpponentId() { return opponentId; }
+    public int getGames() { return games; }
+    public int getWins() { return wins; }
+    public int getLosses() { return losses; }
+    public int getDraws() { return games - wins - losses; }
+    public int getScoredGames() { return scoredGames; }
+    public long getScoreTotal() { return scoreTotal; }
+    public long getOpponentScoreTotal() { return opponentScoreTotal; }
+    /** null nếu hai người chưa từng gặp nhau. */
+    public Long getLastPlayedMillis() { return lastPlayedMillis; }
+    public Set<String> getRecentMatchIds() { return recentMatchIds; }
+}
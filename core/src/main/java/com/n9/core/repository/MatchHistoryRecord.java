@@ -0,0 +1,59 @@
+package com.n9.core.repository;
+
+/**
+ * Một ván đã kết thúc (COMPLETED hoặc ABANDONED) kèm username hai người chơi, dùng cho lịch sử đấu.
+ *
+ * Thứ tự lịch sử: completedAtMillis DESC, matchId DESC (cặp này là khóa phân trang keyset).
+ */
+public class MatchHistoryRecord {
+
+    private final String matchId;
+    private final int player1Id;
+    private final String player1Username;
+    private final int player2Id;
+    private final String player2Username;
+    private final Integer winnerId;
+    private final int player1Score;
+    private final int player2Score;
+    private final boolean abandoned;
+    private final long completedAtMillis;
+
+    public MatchHistoryRecord(String matchId, int player1Id, String player1Username, int player2Id, String player2Username,
+                              Integer winnerId, int player1Score, int player2Score, boolean abandoned,
+                              long completedAtMillis) {
+        this.matchId = matchId;
+        this.player1Id = player1Id;
+        this.player1Username = player1Username;
+        this.player2Id = player2Id;
+        this.player2Username = player2Username;
+        this.winnerId = winnerId;
+        this.player1Score = player1Score;
+        this.player2Score = player2Score;
+        this.abandoned = abandoned;
+        this.completedAtMillis = completedAtMillis;
+    }
+
+    public String getMatchId() { return matchId; }
+    public int getPlayer1Id() { return player1Id; }
+    public String getPlayer1Username() { return player1Username; }
+    public int getPlayer2Id() { return player2Id; }
+    public String getPlayer2Username() { return player2Username; }
+    /** null nếu hòa. */
+    public Integer getWinnerId() { return winnerId; }
+    public int getPlayer1Score() { return player1Score; }
+    public int getPlayer2Score() { return player2Score; }
+    public boolean isAbandoned() { return abandoned; }
+    public long getCompletedAtMillis() { return completedAtMillis; }
+
+    /** Sắp xếp lịch sử: mới trước; cùng giây thì matchId lớn trước. */
+    public int compareNewestFirst(MatchHistoryRecord other) {
+        int byTime = Long.compare(other.completedAtMillis, completedAtMillis);
+        return byTime != 0 ? byTime : other.matchId.compareTo(matchId);
+    }
+
+    /** true nếu ván này đứng sau con trỏ (completedAtMillis, matchId) trong thứ tự lịch sử. */
+    public boolean isOlderThan(long cursorCompletedAtMillis, String cursorMatchId) {
+        return completedAtMillis < cursorCompletedAtMillis
+                || (completedAtMillis == cursorCompletedAtMillis && matchId.compareTo(cursorMatchId) < 0);
+    }
+}
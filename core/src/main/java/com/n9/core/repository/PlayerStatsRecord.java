@@ -0,0 +1,36 @@
+package com.n9.core.repository;
+
+/**
+ * Một dòng bảng xếp hạng: user + W/L (all-time hoặc theo khung thời gian).
+ *
+ * rank = 0 khi nguồn dữ liệu không tính rank (stream để nạp index).
+ */
+public class PlayerStatsRecord {
+
+    private final int rank;
+    private final int userId;
+    private final String username;
+    private final int gamesPlayed;
+    private final int gamesWon;
+    private final int gamesLost;
+    private final Long lastLoginMillis;
+
+    public PlayerStatsRecord(int rank, int userId, String username, int gamesPlayed, int gamesWon,
+                             int gamesLost, Long lastLoginMillis) {
+        this.rank = rank;
+        this.userId = userId;
+        this.username = username;
+        this.gamesPlayed = gamesPlayed;
+        this.gamesWon = gamesWon;
+        this.gamesLost = gamesLost;
+        this.lastLoginMillis = lastLoginMillis;
+    }
+
+    public int getRank() { return rank; }
+    public int getUserId() { return userId; }
+    public String getUsername() { return username; }
+    public int getGamesPlayed() { return gamesPlayed; }
+    public int getGamesWon() { return gamesWon; }
+    public int getGamesLost() { return gamesLost; }
+    public Long getLastLoginMillis() { return lastLoginMillis; }
+}
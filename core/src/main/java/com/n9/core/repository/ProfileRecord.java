@@ -0,0 +1,43 @@
+package com.n9.core.repository;
+
+/**
+ * Một dòng user_profiles (stats + rating + bậc).
+ */
+public class ProfileRecord {
+
+    private final int userId;
+    private final double rating;
+    private final double peakRating;
+    private final int gamesPlayed;
+    private final int gamesWon;
+    private final int gamesLost;
+    private final int gamesDrawn;
+    private final int winStreakCurrent;
+    private final int winStreakBest;
+    private final String rankTier;
+
+    public ProfileRecord(int userId, double rating, double peakRating, int gamesPlayed, int gamesWon,
+                         int gamesLost, int gamesDrawn, int winStreakCurrent, int winStreakBest, String rankTier) {
+        this.userId = userId;
+        this.rating = rating;
+        this.peakRating = peakRating;
+        this.gamesPlayed = gamesPlayed;
+        this.gamesWon = gamesWon;
+        this.gamesLost = gamesLost;
+        this.gamesDrawn = gamesDrawn;
+        this.winStreakCurrent = winStreakCurrent;
+        this.winStreakBest = winStreakBest;
+        this.rankTier = rankTier;
+    }
+
+    public int getUserId() { return userId; }
+    public double getRating() { return rating; }
+    public double getPeakRating() { return peakRating; }
+    public int getGamesPlayed() { return gamesPlayed; }
+    public int getGamesWon() { return gamesWon; }
+    public int getGamesLost() { return gamesLost; }
+    public int getGamesDrawn() { return gamesDrawn; }
+    public int getWinStreakCurrent() { return winStreakCurrent; }
+    public int getWinStreakBest() { return winStreakBest; }
+    public String getRankTier() { return rankTier; }
+}
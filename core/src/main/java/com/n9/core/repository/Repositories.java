@@ -0,0 +1,78 @@
+package com.n9.core.repository;
+
+import com.n9.core.database.ConnectionProvider;
+import com.n9.core.database.H2Database;
+import com.n9.core.repository.jdbc.JdbcGameRepository;
+import com.n9.core.repository.jdbc.JdbcSessionRepository;
+import com.n9.core.repository.jdbc.JdbcStatsRepository;
+import com.n9.core.repository.jdbc.JdbcUserRepository;
+import com.n9.core.repository.jdbc.SqlDialect;
+import com.n9.core.repository.memory.InMemoryGameRepository;
+import com.n9.core.repository.memory.InMemorySessionRepository;
+import com.n9.core.repository.memory.InMemoryStatsRepository;
+import com.n9.core.repository.memory.InMemoryStore;
+import com.n9.core.repository.memory.InMemoryUserRepository;
+
+/**
+ * Bộ repository của một backend lưu trữ. Các service chỉ phụ thuộc vào interface,
+ * CoreServer chọn backend theo system property core.db.backend:
+ * - mysql (mặc định): DatabaseManager + DB_SCRIPT.sql
+ * - h2: H2 nhúng in-memory, schema db/h2-schema.sql
+ * - memory: ConcurrentHashMap, không JDBC (test / benchmark)
+ */
+public final class Repositories {
+
+    private final String backend;
+    private final UserRepository users;
+    private final SessionRepository sessions;
+    private final GameRepository games;
+    private final StatsRepository stats;
+    private final ConnectionProvider connectionProvider; // null với backend memory
+
+    private Repositories(String backend, UserRepository users, SessionRepository sessions, GameRepository games,
+                         StatsRepository stats, ConnectionProvider connectionProvider) {
+        this.backend = backend;
+        this.users = users;
+        this.sessions = sessions;
+        this.games = games;
+        this.stats = stats;
+        this.connectionProvider = connectionProvider;
+    }
+
+    public static Repositories mysql(ConnectionProvider provider) {
+        return jdbc("mysql", provider, SqlDialect.MYSQL);
+    }
+
+    public static Repositories h2() {
+        return jdbc("h2", new H2Database("cardgame"), SqlDialect.H2);
+    }
+
+    public static Repositories inMemory() {
+        InMemoryStore store = new InMemoryStore();
+        return new Repositories("memory", new InMemoryUserRepository(store), new InMemorySessionRepository(store),
+                new InMemoryGameRepository(store), new InMemoryStatsRepository(store), null);
+    }
+
+    private static Repositories jdbc(String backend, ConnectionProvider provider, SqlDialect dialect) {
+        return new Repositories(backend, new JdbcUserRepository(provider, dialect), new JdbcSessionRepository(provider),
+                new JdbcGameRepository(provider, dialect), new JdbcStatsRepository(provider, dialect), provider);
+    }
+
+    public String getBackend() { return backend; }
+    public UserRepository users() { return users; }
+    public SessionRepository sessions() { return sessions; }
+    public GameRepository games() { return games; }
+    public StatsRepository stats() { return stats; }
+
+    /** true nếu backend không cần kết nối hoặc kết nối còn dùng được. */
+    public boolean isHealthy() {
+        return connectionProvider == null || connectionProvider.isHealthy();
+    }
+
+    /** Đóng pool (nếu có). Gọi SAU khi các service đã flush lần cuối. */
+    public void shutdown() {
+        if (connectionProvider != null) {
+            connectionProvider.shutdown();
+        }
+    }
+}
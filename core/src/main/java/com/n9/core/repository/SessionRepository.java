@@ -0,0 +1,13 @@
+package com.n9.core.repository;
+
+import java.sql.SQLException;
+
+/**
+ * Bản ghi active_sessions (trạng thái online lưu bền; bản chính nằm trong SessionManager).
+ */
+public interface SessionRepository {
+
+    void saveSession(String sessionId, int userId) throws SQLException;
+
+    void deleteSession(String sessionId) throws SQLException;
+}
@@ -0,0 +1,54 @@
+package com.n9.core.repository;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Stats người chơi: user_profiles, truy vấn xếp hạng và checkpoint bảng theo khung thời gian.
+ *
+ * Thứ tự xếp hạng ở mọi truy vấn: games_won DESC, games_played ASC, username ASC.
+ */
+public interface StatsRepository {
+
+    /** Xử lý từng dòng khi stream; được phép ghi DB (qua connection khác) ngay trong lúc duyệt. */
+    @FunctionalInterface
+    interface RowHandler<T> {
+        void accept(T row) throws SQLException;
+    }
+
+    // --- user_profiles (RatingEngine, RankTierService) ---
+
+    Map<Integer, ProfileRecord> findProfiles(Collection<Integer> userIds) throws SQLException;
+
+    /** Ghi rating/W/L/D/streak của cả lô trong một giao dịch. */
+    void saveProfiles(Collection<ProfileRecord> profiles) throws SQLException;
+
+    /** Stream mọi profile (kể cả chưa chơi). */
+    void forEachProfile(RowHandler<ProfileRecord> handler) throws SQLException;
+
+    void updateRankTiers(Map<Integer, String> tiers) throws SQLException;
+
+    // --- Bảng xếp hạng all-time ---
+
+    /** Stream người chơi có games_played > 0 (rank = 0). */
+    void forEachRankedPlayer(Consumer<PlayerStatsRecord> consumer) throws SQLException;
+
+    List<PlayerStatsRecord> findTopPlayers(int limit, int offset) throws SQLException;
+
+    /** Dòng xếp hạng kèm rank của user, hoặc null nếu chưa chơi. */
+    PlayerStatsRecord findRankedPlayer(int userId) throws SQLException;
+
+    int countRankedPlayers() throws SQLException;
+
+    // --- leaderboard_window_stats ---
+
+    void forEachWindowStat(String windowType, String periodKey, Consumer<PlayerStatsRecord> consumer) throws SQLException;
+
+    void saveWindowStats(String windowType, String periodKey, Collection<PlayerStatsRecord> stats) throws SQLException;
+
+    int purgeWindowStats(String windowType, Timestamp updatedBefore) throws SQLException;
+}
@@ -0,0 +1,47 @@
+package com.n9.core.repository;
+
+/**
+ * Một user kèm các cột user_profiles cần cho đăng nhập.
+ */
+public class UserRecord {
+
+    private final int userId;
+    private final String username;
+    private final String email;
+    private final String passwordHash;
+    private final String status;
+    private final String displayName;
+    private final double totalScore;
+    private final int gamesPlayed;
+    private final int gamesWon;
+    private final double currentRating;
+    private final String rankTier;
+
+    public UserRecord(int userId, String username, String email, String passwordHash, String status,
+                      String displayName, double totalScore, int gamesPlayed, int gamesWon,
+                      double currentRating, String rankTier) {
+        this.userId = userId;
+        this.username = username;
+        this.email = email;
+        this.passwordHash = passwordHash;
+        this.status = status;
+        this.displayName = displayName;
+        this.totalScore = totalScore;
+        this.gamesPlayed = gamesPlayed;
+        this.gamesWon = gamesWon;
+        this.currentRating = currentRating;
+        this.rankTier = rankTier;
+    }
+
+    public int getUserId() { return userId; }
+    public String getUsername() { return username; }
+    public String getEmail() { return email; }
+    public String getPasswordHash() { return passwordHash; }
+    public String getStatus() { return status; }
+    public String getDisplayName() { return displayName; }
+    public double getTotalScore() { return totalScore; }
+    public int getGamesPlayed() { return gamesPlayed; }
+    public int getGamesWon() { return gamesWon; }
+    public double getCurrentRating() { return currentRating; }
+    public String getRankTier() { return rankTier; }
+}
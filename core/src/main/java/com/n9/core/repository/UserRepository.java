@@ -0,0 +1,34 @@
+package com.n9.core.repository;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Truy cập bảng users (và phần user_profiles cần khi đăng ký / đăng nhập).
+ */
+public interface UserRepository {
+
+    /**
+     * Tạo user + profile. Trả về user_id mới.
+     *
+     * @throws java.sql.SQLIntegrityConstraintViolationException nếu trùng; message chứa "username"
+     *         hoặc "email" để AuthService phân biệt
+     */
+    int createUser(String username, String email, String passwordHash, String displayName) throws SQLException;
+
+    /** null nếu không có. */
+    UserRecord findByUsername(String username) throws SQLException;
+
+    /** Một user trùng username HOẶC email, hoặc null. */
+    UserRecord findByUsernameOrEmail(String username, String email) throws SQLException;
+
+    /** Ghi last_login cho cả lô (userId → epoch millis). */
+    void updateLastLogins(List<Map.Entry<Integer, Long>> logins) throws SQLException;
+
+    long countUsers() throws SQLException;
+
+    /** Stream (username, email) của mọi user, không nạp cả bảng vào heap. */
+    void forEachUsernameAndEmail(BiConsumer<String, String> consumer) throws SQLException;
+}
@@ -0,0 +1,287 @@
+package com.n9.core.repository.jdbc;
+
+import com.n9.core.database.ConnectionProvider;
+import com.n9.core.database.Workload;
+import com.n9.core.metrics.LatencyHistogram;
+import com.n9.core.metrics.MetricsRegistry;
+import com.n9.core.repository.GameRepository;
+import com.n9.core.repository.GameResultRecord;
+import com.n9.core.repository.GameRoundRecord;
+import com.n9.core.repository.HeadToHeadRecord;
+import com.n9.core.repository.MatchHistoryRecord;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * GameRepository trên JDBC (bảng games, game_rounds).
+ *
+ * Lịch sử đấu: trang đầu đọc primary (vừa kết thúc ván có thể chưa sang replica), các trang sau
+ * (dữ liệu cũ hơn) đọc replica nếu có. Quota LEADERBOARD như các truy vấn sảnh khác.
+ * Đối đầu: một lần gộp trên idx_players cho cả hai thứ tự, chỉ chạy khi cặp chưa có trong cache;
+ * gộp cả games_archive nên số liệu trọn đời không mất khi PartitionArchiver chuyển tháng cũ đi.
+ * Lịch sử đấu chỉ đọc games (các tháng còn giữ nóng).
+ * Thời gian mỗi câu ghi gameplay xuất ra histogram db.gameplay.write (PartitionArchiver theo dõi).
+ */
+public class JdbcGameRepository implements GameRepository {
+
+    private final ConnectionProvider connections;
+    private final SqlDialect dialect;
+    private final LatencyHistogram writeLatency = MetricsRegistry.getInstance().histogram("db.gameplay.write");
+
+    public JdbcGameRepository(ConnectionProvider connections, SqlDialect dialect) {
+        this.connections = connections;
+        this.dialect = dialect;
+    }
+
+    @Override
+    public void createGame(String matchId, int player1Id, int player2Id, int totalRounds) throws SQLException {
+        String sql = "INSERT INTO games (match_id, player1_id, player2_id, game_mode, total_rounds, status, started_at) " +
+                "VALUES (?, ?, ?, 'QUICK', ?, 'IN_PROGRESS', NOW())";
+        try (Connection conn = connections.getConnection(Workload.GAMEPLAY);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, matchId);
+            stmt.setInt(2, player1Id);
+            stmt.setInt(3, player2Id);
+            stmt.setInt(4, totalRounds);
+            executeWrite(stmt);
+        }
+    }
+
+    /**
+     * MySQL: game_rounds là bảng phân vùng nên không có FK tới games và UNIQUE (match_id, round_number):
+     * câu INSERT ... SELECT chỉ chèn khi ván tồn tại và hiệp chưa được ghi (xem DB_SCRIPT.sql).
+     * H2 không phân vùng, còn đủ ràng buộc, nên dùng INSERT thường (H2 cũng không nhận tham số '?'
+     * chưa rõ kiểu trong danh sách SELECT).
+     *
+     * @throws SQLIntegrityConstraintViolationException nếu không có ván hoặc hiệp đã có
+     */
+    @Override
+    public void saveRound(GameRoundRecord round) throws SQLException {
+        boolean guarded = !dialect.hasGameRoundConstraints();
+        String columns = "INSERT INTO game_rounds (match_id, round_number, " +
+                "player1_card_id, player1_card_value, player1_is_auto_picked, " +
+                "player2_card_id, player2_card_value, player2_is_auto_picked, " +
+                "round_winner_id, player1_round_score, player2_round_score, completed_at) ";
+        String sql = guarded
+                ? columns + "SELECT g.match_id, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, NOW() FROM games g " +
+                        "WHERE g.match_id = ? AND NOT EXISTS " +
+                        "(SELECT 1 FROM game_rounds r WHERE r.match_id = ? AND r.round_number = ?) LIMIT 1"
+                : columns + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, NOW())";
+        try (Connection conn = connections.getConnection(Workload.GAMEPLAY);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            if (!guarded) {
+                stmt.setString(index++, round.getMatchId());
+            }
+            stmt.setInt(index++, round.getRoundNumber());
+            stmt.setInt(index++, round.getPlayer1CardId());
+            stmt.setInt(index++, round.getPlayer1CardValue());
+            stmt.setBoolean(index++, round.isPlayer1AutoPicked());
+            stmt.setInt(index++, round.getPlayer2CardId());
+            stmt.setInt(index++, round.getPlayer2CardValue());
+            stmt.setBoolean(index++, round.isPlayer2AutoPicked());
+            setNullableInt(stmt, index++, round.getRoundWinnerId());
+            stmt.setInt(index++, round.getPlayer1RoundScore());
+            stmt.setInt(index++, round.getPlayer2RoundScore());
+            if (guarded) {
+                stmt.setString(index++, round.getMatchId());
+                stmt.setString(index++, round.getMatchId());
+                stmt.setInt(index, round.getRoundNumber());
+            }
+            // H2: vi phạm FK / UNIQUE ném SQLIntegrityConstraintViolationException từ chính câu INSERT
+            if (executeWrite(stmt) == 0) {
+                throw new SQLIntegrityConstraintViolationException("Round " + round.getRoundNumber() + " of match "
+                        + round.getMatchId() + " not saved: game missing or round already recorded");
+            }
+        }
+    }
+
+    @Override
+    public void completeGame(GameResultRecord result) throws SQLException {
+        String sql = "UPDATE games SET status = 'COMPLETED', winner_id = ?, player1_score = ?, player2_score = ?, completed_rounds = ?, " +
+                "player1_rating_before = ?, player1_rating_after = ?, player2_rating_before = ?, player2_rating_after = ?, " +
+                "completed_at = ? WHERE match_id = ?";
+        try (Connection conn = connections.getConnection(Workload.GAMEPLAY);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            setNullableInt(stmt, 1, result.getWinnerId());
+            stmt.setInt(2, result.getPlayer1Score());
+            stmt.setInt(3, result.getPlayer2Score());
+            stmt.setInt(4, result.getCompletedRounds());
+            setRatingColumns(stmt, 5, result);
+            stmt.setTimestamp(9, new Timestamp(result.getCompletedAtMillis()));
+            stmt.setString(10, result.getMatchId());
+            executeWrite(stmt);
+        }
+    }
+
+    @Override
+    public void abandonGame(GameResultRecord result) throws SQLException {
+        String sql = "UPDATE games SET status = 'ABANDONED', winner_id = ?, " +
+                "player1_rating_before = ?, player1_rating_after = ?, player2_rating_before = ?, player2_rating_after = ?, " +
+                "completed_at = ? WHERE match_id = ?";
+        try (Connection conn = connections.getConnection(Workload.GAMEPLAY);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            setNullableInt(stmt, 1, result.getWinnerId());
+            setRatingColumns(stmt, 2, result);
+            stmt.setTimestamp(6, new Timestamp(result.getCompletedAtMillis()));
+            stmt.setString(7, result.getMatchId());
+            executeWrite(stmt);
+        }
+    }
+
+    @Override
+    public List<MatchHistoryRecord> findMatchHistory(int userId, Long beforeCompletedAtMillis, String beforeMatchId,
+                                                     int limit) throws SQLException {
+        boolean firstPage = beforeCompletedAtMillis == null || beforeMatchId == null;
+        // Mỗi nhánh đi theo index (playerN_id, completed_at, match_id) và dừng sau limit dòng;
+        // gộp hai nhánh rồi cắt lại limit. Không OFFSET: trang sâu tốn như trang đầu.
+        String sql = historyBranch("player1_id", firstPage) + " UNION ALL " + historyBranch("player2_id", firstPage) +
+                " ORDER BY completed_at DESC, match_id DESC LIMIT ?";
+
+        List<MatchHistoryRecord> games = new ArrayList<>();
+        try (Connection conn = firstPage
+                    ? connections.getConnection(Workload.LEADERBOARD)
+                    : connections.getReadConnection(Workload.LEADERBOARD, userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            for (int branch = 0; branch < 2; branch++) {
+                stmt.setInt(index++, userId);
+                if (!firstPage) {
+                    Timestamp cursor = new Timestamp(beforeCompletedAtMillis);
+                    stmt.setTimestamp(index++, cursor);
+                    stmt.setTimestamp(index++, cursor);
+                    stmt.setString(index++, beforeMatchId);
+                }
+                stmt.setInt(index++, limit);
+            }
+            stmt.setInt(index, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int winner = rs.getInt("winner_id");
+                    Integer winnerId = rs.wasNull() ? null : winner;
+                    games.add(new MatchHistoryRecord(
+                            rs.getString("match_id"),
+                            rs.getInt("player1_id"), rs.getString("player1_username"),
+                            rs.getInt("player2_id"), rs.getString("player2_username"),
+                            winnerId,
+                            rs.getInt("player1_score"), rs.getInt("player2_score"),
+                            "ABANDONED".equals(rs.getString("status")),
+                            rs.getTimestamp("completed_at").getTime()));
+                }
+            }
+        }
+        return games;
+    }
+
+    @Override
+    public HeadToHeadRecord findHeadToHead(int userId, int opponentId, long recentSinceMillis) throws SQLException {
+        String pair = "((player1_id = ? AND player2_id = ?) OR (player1_id = ? AND player2_id = ?)) AND completed_at IS NOT NULL";
+        String aggregateSql = "SELECT COUNT(*) AS games, " +
+                "SUM(CASE WHEN winner_id = ? THEN 1 ELSE 0 END) AS wins, " +
+                "SUM(CASE WHEN winner_id = ? THEN 1 ELSE 0 END) AS losses, " +
+                "SUM(CASE WHEN status = 'COMPLETED' THEN 1 ELSE 0 END) AS scored_games, " +
+                "SUM(CASE WHEN status <> 'COMPLETED' THEN 0 WHEN player1_id = ? THEN player1_score ELSE player2_score END) AS score, " +
+                "SUM(CASE WHEN status <> 'COMPLETED' THEN 0 WHEN player1_id = ? THEN player2_score ELSE player1_score END) AS opponent_score, " +
+                "MAX(completed_at) AS last_played " +
+                // UNION (không ALL): ván đang được chép sang archive có mặt ở cả hai bảng
+                "FROM (" + headToHeadBranch("games", pair) + " UNION " + headToHeadBranch("games_archive", pair) + ") h";
+        String recentSql = "SELECT match_id FROM games WHERE " + pair + " AND completed_at >= ?";
+
+        try (Connection conn = connections.getConnection(Workload.LEADERBOARD)) {
+            int games, wins, losses, scoredGames;
+            long score, opponentScore;
+            Long lastPlayed;
+            try (PreparedStatement stmt = conn.prepareStatement(aggregateSql)) {
+                stmt.setInt(1, userId);
+                stmt.setInt(2, opponentId);
+                stmt.setInt(3, userId);
+                stmt.setInt(4, userId);
+                setPair(stmt, 5, userId, opponentId);
+                setPair(stmt, 9, userId, opponentId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                    games = rs.getInt("games");
+                    wins = rs.getInt("wins");
+                    losses = rs.getInt("losses");
+                    scoredGames = rs.getInt("scored_games");
+                    score = rs.getLong("score");
+                    opponentScore = rs.getLong("opponent_score");
+                    Timestamp last = rs.getTimestamp("last_played");
+                    lastPlayed = last != null ? last.getTime() : null;
+                }
+            }
+            Set<String> recent = new HashSet<>();
+            try (PreparedStatement stmt = conn.prepareStatement(recentSql)) {
+                setPair(stmt, 1, userId, opponentId);
+                stmt.setTimestamp(5, new Timestamp(recentSinceMillis));
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        recent.add(rs.getString(1));
+                    }
+                }
+            }
+            return new HeadToHeadRecord(userId, opponentId, games, wins, losses, scoredGames,
+                    score, opponentScore, lastPlayed, recent);
+        }
+    }
+
+    private int executeWrite(PreparedStatement stmt) throws SQLException {
+        long startNanos = System.nanoTime();
+        try {
+            return stmt.executeUpdate();
+        } finally {
+            writeLatency.recordNanos(System.nanoTime() - startNanos);
+        }
+    }
+
+    private static String headToHeadBranch(String table, String pair) {
+        return "SELECT match_id, player1_id, player2_id, winner_id, status, player1_score, player2_score, completed_at " +
+                "FROM " + table + " WHERE " + pair;
+    }
+
+    private static void setPair(PreparedStatement stmt, int firstIndex, int userId, int opponentId) throws SQLException {
+        stmt.setInt(firstIndex, userId);
+        stmt.setInt(firstIndex + 1, opponentId);
+        stmt.setInt(firstIndex + 2, opponentId);
+        stmt.setInt(firstIndex + 3, userId);
+    }
+
+    private static String historyBranch(String playerColumn, boolean firstPage) {
+        return "(SELECT g.match_id, g.player1_id, u1.username AS player1_username, " +
+                "g.player2_id, u2.username AS player2_username, g.winner_id, g.player1_score, g.player2_score, " +
+                "g.status, g.completed_at " +
+                "FROM games g " +
+                "INNER JOIN users u1 ON u1.user_id = g.player1_id " +
+                "INNER JOIN users u2 ON u2.user_id = g.player2_id " +
+                "WHERE g." + playerColumn + " = ? AND g.completed_at IS NOT NULL" +
+                (firstPage ? "" : " AND (g.completed_at < ? OR (g.completed_at = ? AND g.match_id < ?))") +
+                " ORDER BY g.completed_at DESC, g.match_id DESC LIMIT ?)";
+    }
+
+    private static void setRatingColumns(PreparedStatement stmt, int firstIndex, GameResultRecord r) throws SQLException {
+        setNullableDouble(stmt, firstIndex, r.getPlayer1RatingBefore());
+        setNullableDouble(stmt, firstIndex + 1, r.getPlayer1RatingAfter());
+        setNullableDouble(stmt, firstIndex + 2, r.getPlayer2RatingBefore());
+        setNullableDouble(stmt, firstIndex + 3, r.getPlayer2RatingAfter());
+    }
+
+    private static void setNullableDouble(PreparedStatement stmt, int index, Double value) throws SQLException {
+        if (value != null) stmt.setDouble(index, value);
+        else stmt.setNull(index, Types.DECIMAL);
+    }
+
+    private static void setNullableInt(PreparedStatement stmt, int index, Integer value) throws SQLException {
+        if (value != null) stmt.setInt(index, value);
+        else stmt.setNull(index, Types.INTEGER);
+    }
+}
@@ -0,0 +1,46 @@
+package com.n9.core.repository.jdbc;
+
+import com.n9.core.database.ConnectionProvider;
+import com.n9.core.database.Workload;
+import com.n9.core.repository.SessionRepository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * SessionRepository trên JDBC (bảng active_sessions).
+ */
+public class JdbcSessionRepository implements SessionRepository {
+
+    private final ConnectionProvider connections;
+
+    public JdbcSessionRepository(ConnectionProvider connections) {
+        this.connections = connections;
+    }
+
+    @Override
+    public void saveSession(String sessionId, int userId) throws SQLException {
+        String sql = """
+                INSERT INTO active_sessions (session_id, user_id, status, last_heartbeat)
+                VALUES (?, ?, 'IN_LOBBY', NOW())
+                ON DUPLICATE KEY UPDATE last_heartbeat = NOW(), status = 'IN_LOBBY'
+                """;
+        try (Connection conn = connections.getConnection(Workload.SESSION);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, sessionId);
+            stmt.setInt(2, userId);
+            stmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public void deleteSession(String sessionId) throws SQLException {
+        String sql = "DELETE FROM active_sessions WHERE session_id = ?";
+        try (Connection conn = connections.getConnection(Workload.SESSION);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, sessionId);
+            stmt.executeUpdate();
+        }
+    }
+}
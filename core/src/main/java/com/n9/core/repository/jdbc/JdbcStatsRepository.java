@@ -0,0 +1,307 @@
+package com.n9.core.repository.jdbc;
+
+import com.n9.core.database.ConnectionProvider;
+import com.n9.core.database.Workload;
+import com.n9.core.repository.PlayerStatsRecord;
+import com.n9.core.repository.ProfileRecord;
+import com.n9.core.repository.StatsRepository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * StatsRepository trên JDBC (user_profiles, users, leaderboard_window_stats).
+ *
+ * Truy vấn xếp hạng chỉ đọc dùng getReadConnection (replica nếu có); đọc để rồi ghi lại
+ * (findProfiles, forEachProfile) luôn dùng primary.
+ * Profile của trận (findProfiles, saveProfiles) thuộc quota GAMEPLAY, còn lại thuộc LEADERBOARD.
+ */
+public class JdbcStatsRepository implements StatsRepository {
+
+    private static final int BATCH_SIZE = 500;
+
+    private static final String PROFILE_COLUMNS = "user_id, current_rating, peak_rating, games_played, games_won, " +
+            "games_lost, games_drawn, win_streak_current, win_streak_best, rank_tier";
+
+    private final ConnectionProvider connections;
+    private final SqlDialect dialect;
+
+    public JdbcStatsRepository(ConnectionProvider connections, SqlDialect dialect) {
+        this.connections = connections;
+        this.dialect = dialect;
+    }
+
+    // ============================
+    // user_profiles
+    // ============================
+
+    @Override
+    public Map<Integer, ProfileRecord> findProfiles(Collection<Integer> userIds) throws SQLException {
+        Map<Integer, ProfileRecord> result = new HashMap<>();
+        if (userIds.isEmpty()) return result;
+
+        StringBuilder sql = new StringBuilder("SELECT " + PROFILE_COLUMNS + " FROM user_profiles WHERE user_id IN (");
+        for (int i = 0; i < userIds.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+
+        try (Connection conn = connections.getConnection(Workload.GAMEPLAY);
+             PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            int idx = 1;
+            for (Integer userId : userIds) {
+                stmt.setInt(idx++, userId);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ProfileRecord profile = mapProfile(rs);
+                    result.put(profile.getUserId(), profile);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void saveProfiles(Collection<ProfileRecord> profiles) throws SQLException {
+        if (profiles.isEmpty()) return;
+        String sql = "UPDATE user_profiles SET current_rating = ?, peak_rating = ?, games_played = ?, " +
+                "games_won = ?, games_lost = ?, games_drawn = ?, win_streak_current = ?, win_streak_best = ? " +
+                "WHERE user_id = ?";
+        try (Connection conn = connections.getConnection(Workload.GAMEPLAY)) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (ProfileRecord p : profiles) {
+                    stmt.setDouble(1, p.getRating());
+                    stmt.setDouble(2, p.getPeakRating());
+                    stmt.setInt(3, p.getGamesPlayed());
+                    stmt.setInt(4, p.getGamesWon());
+                    stmt.setInt(5, p.getGamesLost());
+                    stmt.setInt(6, p.getGamesDrawn());
+                    stmt.setInt(7, p.getWinStreakCurrent());
+                    stmt.setInt(8, p.getWinStreakBest());
+                    stmt.setInt(9, p.getUserId());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                conn.commit();
+                for (ProfileRecord p : profiles) {
+                    connections.markWritten(p.getUserId());
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    @Override
+    public void forEachProfile(RowHandler<ProfileRecord> handler) throws SQLException {
+        try (Connection conn = connections.getConnection(Workload.LEADERBOARD);
+             PreparedStatement stmt = dialect.streamingStatement(conn, "SELECT " + PROFILE_COLUMNS + " FROM user_profiles");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                handler.accept(mapProfile(rs));
+            }
+        }
+    }
+
+    @Override
+    public void updateRankTiers(Map<Integer, String> tiers) throws SQLException {
+        if (tiers.isEmpty()) return;
+        String sql = "UPDATE user_profiles SET rank_tier = ? WHERE user_id = ?";
+        try (Connection conn = connections.getConnection(Workload.LEADERBOARD);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int pending = 0;
+            for (Map.Entry<Integer, String> entry : tiers.entrySet()) {
+                stmt.setString(1, entry.getValue());
+                stmt.setInt(2, entry.getKey());
+                stmt.addBatch();
+                if (++pending == BATCH_SIZE) {
+                    stmt.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                stmt.executeBatch();
+            }
+        }
+    }
+
+    // ============================
+    // Bảng xếp hạng all-time
+    // ============================
+
+    @Override
+    public void forEachRankedPlayer(Consumer<PlayerStatsRecord> consumer) throws SQLException {
+        String sql = "SELECT u.user_id, u.username, p.games_played, p.games_won, p.games_lost, u.last_login " +
+                "FROM users u INNER JOIN user_profiles p ON u.user_id = p.user_id WHERE p.games_played > 0";
+        try (Connection conn = connections.getReadConnection(Workload.LEADERBOARD);
+             PreparedStatement stmt = dialect.streamingStatement(conn, sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                consumer.accept(mapPlayer(rs, 0));
+            }
+        }
+    }
+
+    @Override
+    public List<PlayerStatsRecord> findTopPlayers(int limit, int offset) throws SQLException {
+        // Tận dụng index idx_games_won
+        String sql =
+            "SELECT u.user_id, u.username, p.games_played, p.games_won, p.games_lost, u.last_login " +
+            "FROM users u " +
+            "INNER JOIN user_profiles p ON u.user_id = p.user_id " +
+            "WHERE p.games_played > 0 " + // Chỉ lấy user đã chơi ít nhất 1 trận
+            "ORDER BY p.games_won DESC, p.games_played ASC, u.username ASC " + // Thắng nhiều → Chơi ít → Tên A-Z
+            "LIMIT ? OFFSET ?";
+
+        List<PlayerStatsRecord> players = new ArrayList<>();
+        try (Connection conn = connections.getReadConnection(Workload.LEADERBOARD);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, limit);
+            stmt.setInt(2, offset);
+            try (ResultSet rs = stmt.executeQuery()) {
+                int rank = offset + 1; // Rank bắt đầu từ offset + 1
+                while (rs.next()) {
+                    players.add(mapPlayer(rs, rank++));
+                }
+            }
+        }
+        return players;
+    }
+
+    @Override
+    public PlayerStatsRecord findRankedPlayer(int userId) throws SQLException {
+        String sql =
+            "SELECT ranked.user_rank, ranked.user_id, ranked.username, ranked.games_played, " +
+            "       ranked.games_won, ranked.games_lost, ranked.last_login " +
+            "FROM ( " +
+            "    SELECT " +
+            "        ROW_NUMBER() OVER (ORDER BY p.games_won DESC, p.games_played ASC, u.username ASC) AS user_rank, " +
+            "        u.user_id, u.username, p.games_played, p.games_won, p.games_lost, u.last_login " +
+            "    FROM users u " +
+            "    INNER JOIN user_profiles p ON u.user_id = p.user_id " +
+            "    WHERE p.games_played > 0 " +
+            ") AS ranked " +
+            "WHERE ranked.user_id = ?";
+
+        // Rank của chính user sau trận vừa chơi: đọc primary nếu stats của user vừa được ghi
+        try (Connection conn = connections.getReadConnection(Workload.LEADERBOARD, userId);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, userId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? mapPlayer(rs, rs.getInt("user_rank")) : null;
+            }
+        }
+    }
+
+    @Override
+    public int countRankedPlayers() throws SQLException {
+        String sql = "SELECT COUNT(*) AS total FROM user_profiles WHERE games_played > 0";
+        try (Connection conn = connections.getReadConnection(Workload.LEADERBOARD);
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getInt("total") : 0;
+        }
+    }
+
+    // ============================
+    // leaderboard_window_stats
+    // ============================
+
+    @Override
+    public void forEachWindowStat(String windowType, String periodKey, Consumer<PlayerStatsRecord> consumer) throws SQLException {
+        String sql = "SELECT w.user_id, u.username, w.games_played, w.games_won, w.games_lost " +
+                "FROM leaderboard_window_stats w INNER JOIN users u ON u.user_id = w.user_id " +
+                "WHERE w.window_type = ? AND w.period_key = ?";
+        try (Connection conn = connections.getReadConnection(Workload.LEADERBOARD);
+             PreparedStatement stmt = dialect.streamingStatement(conn, sql)) {
+            stmt.setString(1, windowType);
+            stmt.setString(2, periodKey);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    consumer.accept(new PlayerStatsRecord(0, rs.getInt("user_id"), rs.getString("username"),
+                            rs.getInt("games_played"), rs.getInt("games_won"), rs.getInt("games_lost"), null));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void saveWindowStats(String windowType, String periodKey, Collection<PlayerStatsRecord> stats) throws SQLException {
+        if (stats.isEmpty()) return;
+        String sql = "INSERT INTO leaderboard_window_stats " +
+                "(window_type, period_key, user_id, games_played, games_won, games_lost) VALUES (?, ?, ?, ?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE games_played = VALUES(games_played), " +
+                "games_won = VALUES(games_won), games_lost = VALUES(games_lost)";
+        try (Connection conn = connections.getConnection(Workload.LEADERBOARD);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int pending = 0;
+            for (PlayerStatsRecord row : stats) {
+                stmt.setString(1, windowType);
+                stmt.setString(2, periodKey);
+                stmt.setInt(3, row.getUserId());
+                stmt.setInt(4, row.getGamesPlayed());
+                stmt.setInt(5, row.getGamesWon());
+                stmt.setInt(6, row.getGamesLost());
+                stmt.addBatch();
+                if (++pending == BATCH_SIZE) {
+                    stmt.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                stmt.executeBatch();
+            }
+        }
+    }
+
+    @Override
+    public int purgeWindowStats(String windowType, Timestamp updatedBefore) throws SQLException {
+        String sql = "DELETE FROM leaderboard_window_stats WHERE window_type = ? AND updated_at < ?";
+        try (Connection conn = connections.getConnection(Workload.LEADERBOARD);
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, windowType);
+            stmt.setTimestamp(2, updatedBefore);
+            return stmt.executeUpdate();
+        }
+    }
+
+    // ============================
+    // NỘI BỘ
+    // ============================
+
+    private static ProfileRecord mapProfile(ResultSet rs) throws SQLException {
+        return new ProfileRecord(
+                rs.getInt("user_id"),
+                rs.getDouble("current_rating"),
+                rs.getDouble("peak_rating"),
+                rs.getInt("games_played"),
+                rs.getInt("games_won"),
+                rs.getInt("games_lost"),
+                rs.getInt("games_drawn"),
+                rs.getInt("win_streak_current"),
+                rs.getInt("win_streak_best"),
+                rs.getString("rank_tier"));
+    }
+
+    private static PlayerStatsRecord mapPlayer(ResultSet rs, int rank) throws SQLException {
+        Timestamp lastLogin = rs.getTimestamp("last_login");
+        return new PlayerStatsRecord(rank, rs.getInt("user_id"), rs.getString("username"),
+                rs.getInt("games_played"), rs.getInt("games_won"), rs.getInt("games_lost"),
+                lastLogin != null ? lastLogin.getTime() : null);
+    }
+}
@@ -0,0 +1,160 @@
+package com.n9.core.repository.jdbc;
+
+import com.n9.core.database.ConnectionProvider;
+import com.n9.core.database.Workload;
+import com.n9.core.repository.UserRecord;
+import com.n9.core.repository.UserRepository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * UserRepository trên JDBC (MySQL hoặc H2 MODE=MySQL).
+ */
+public class JdbcUserRepository implements UserRepository {
+
+    private static final String SELECT_USER =
+            "SELECT u.user_id, u.username, u.email, u.password_hash, u.status, " +
+            "up.display_name, up.total_score, up.games_played, up.games_won, up.current_rating, up.rank_tier " +
+            "FROM users u JOIN user_profiles up ON u.user_id = up.user_id ";
+
+    private final ConnectionProvider connections;
+    private final SqlDialect dialect;
+
+    public JdbcUserRepository(ConnectionProvider connections, SqlDialect dialect) {
+        this.connections = connections;
+        this.dialect = dialect;
+    }
+
+    @Override
+    public int createUser(String username, String email, String passwordHash, String displayName) throws SQLException {
+        String sql = "INSERT INTO users (username, email, password_hash, created_at) VALUES (?, ?, ?, NOW())";
+        try (Connection conn = connections.getConnection(Workload.AUTH)) {
+            int userId;
+            try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                stmt.setString(1, username);
+                stmt.setString(2, email);
+                stmt.setString(3, passwordHash);
+                if (stmt.executeUpdate() == 0) {
+                    throw new SQLException("Creating user failed, no rows affected.");
+                }
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    if (!keys.next()) {
+                        throw new SQLException("Creating user failed, no ID obtained.");
+                    }
+                    userId = keys.getInt(1);
+                }
+            }
+            connections.markWritten(userId);
+
+            // MySQL: profile do trigger tạo → chỉ cập nhật display_name
+            String profileSql = dialect.createsProfileByTrigger()
+                    ? "UPDATE user_profiles SET display_name = ? WHERE user_id = ?"
+                    : "INSERT INTO user_profiles (display_name, user_id) VALUES (?, ?)";
+            try (PreparedStatement stmt = conn.prepareStatement(profileSql)) {
+                stmt.setString(1, displayName);
+                stmt.setInt(2, userId);
+                stmt.executeUpdate();
+            }
+            return userId;
+        }
+    }
+
+    /** Đăng nhập luôn đọc primary: user vừa đăng ký phải đăng nhập được ngay. */
+    @Override
+    public UserRecord findByUsername(String username) throws SQLException {
+        try (Connection conn = connections.getConnection(Workload.AUTH);
+             PreparedStatement stmt = conn.prepareStatement(SELECT_USER + "WHERE u.username = ?")) {
+            stmt.setString(1, username);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? mapUser(rs) : null;
+            }
+        }
+    }
+
+    @Override
+    public UserRecord findByUsernameOrEmail(String username, String email) throws SQLException {
+        // Replica được: unique constraint của INSERT vẫn là chốt chặn cuối
+        try (Connection conn = connections.getReadConnection(Workload.AUTH);
+             PreparedStatement stmt = conn.prepareStatement(SELECT_USER + "WHERE u.username = ? OR u.email = ?")) {
+            stmt.setString(1, username);
+            stmt.setString(2, email);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? mapUser(rs) : null;
+            }
+        }
+    }
+
+    /**
+     * UPDATE users SET last_login = CASE user_id WHEN ? THEN ? ... END WHERE user_id IN (?, ...)
+     * → một câu lệnh cho cả lô.
+     */
+    @Override
+    public void updateLastLogins(List<Map.Entry<Integer, Long>> logins) throws SQLException {
+        if (logins.isEmpty()) return;
+        StringBuilder sql = new StringBuilder("UPDATE users SET last_login = CASE user_id");
+        for (int i = 0; i < logins.size(); i++) {
+            sql.append(" WHEN ? THEN ?");
+        }
+        sql.append(" ELSE last_login END WHERE user_id IN (");
+        for (int i = 0; i < logins.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+
+        try (Connection conn = connections.getConnection(Workload.SESSION);
+             PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            int idx = 1;
+            for (Map.Entry<Integer, Long> entry : logins) {
+                stmt.setInt(idx++, entry.getKey());
+                stmt.setTimestamp(idx++, new Timestamp(entry.getValue()));
+            }
+            for (Map.Entry<Integer, Long> entry : logins) {
+                stmt.setInt(idx++, entry.getKey());
+            }
+            stmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public long countUsers() throws SQLException {
+        try (Connection conn = connections.getReadConnection(Workload.AUTH);
+             PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) FROM users");
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    @Override
+    public void forEachUsernameAndEmail(BiConsumer<String, String> consumer) throws SQLException {
+        try (Connection conn = connections.getReadConnection(Workload.AUTH);
+             PreparedStatement stmt = dialect.streamingStatement(conn, "SELECT username, email FROM users");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                consumer.accept(rs.getString(1), rs.getString(2));
+            }
+        }
+    }
+
+    private static UserRecord mapUser(ResultSet rs) throws SQLException {
+        return new UserRecord(
+                rs.getInt("user_id"),
+                rs.getString("username"),
+                rs.getString("email"),
+                rs.getString("password_hash"),
+                rs.getString("status"),
+                rs.getString("display_name"),
+                rs.getDouble("total_score"),
+                rs.getInt("games_played"),
+                rs.getInt("games_won"),
+                rs.getDouble("current_rating"),
+                rs.getString("rank_tier"));
+    }
+}
@@ -0,0 +1,60 @@
+package com.n9.core.repository.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Khác biệt nhỏ giữa MySQL và H2 (MODE=MySQL) mà các repository JDBC cần biết.
+ */
+public enum SqlDialect {
+
+    /** MySQL 8 với DB_SCRIPT.sql: profile do trigger after_user_insert tạo. */
+    MYSQL {
+        @Override
+        public PreparedStatement streamingStatement(Connection conn, String sql) throws SQLException {
+            PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(Integer.MIN_VALUE); // stream từng dòng (MySQL Connector/J)
+            return stmt;
+        }
+
+        @Override
+        public boolean createsProfileByTrigger() {
+            return true;
+        }
+
+        @Override
+        public boolean hasGameRoundConstraints() {
+            return false; // game_rounds phân vùng theo tháng: không có FK / UNIQUE (match_id, round_number)
+        }
+    },
+
+    /** H2 nhúng (db/h2-schema.sql): không có trigger, fetch size âm không hợp lệ. */
+    H2 {
+        @Override
+        public PreparedStatement streamingStatement(Connection conn, String sql) throws SQLException {
+            PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(1_000);
+            return stmt;
+        }
+
+        @Override
+        public boolean createsProfileByTrigger() {
+            return false;
+        }
+
+        @Override
+        public boolean hasGameRoundConstraints() {
+            return true;
+        }
+    };
+
+    /** Statement đọc tuần tự không giữ cả kết quả trong heap. */
+    public abstract PreparedStatement streamingStatement(Connection conn, String sql) throws SQLException;
+
+    public abstract boolean createsProfileByTrigger();
+
+    /** true nếu game_rounds còn FK tới games và UNIQUE (match_id, round_number) để DB tự chặn. */
+    public abstract boolean hasGameRoundConstraints();
+}
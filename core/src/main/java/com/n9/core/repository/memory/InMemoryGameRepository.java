@@ -0,0 +1,121 @@
+package com.n9.core.repository.memory;
+
+import com.n9.core.repository.GameRepository;
+import com.n9.core.repository.GameResultRecord;
+import com.n9.core.repository.GameRoundRecord;
+import com.n9.core.repository.HeadToHeadRecord;
+import com.n9.core.repository.MatchHistoryRecord;
+import com.n9.core.repository.UserRecord;
+
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * GameRepository trong bộ nhớ.
+ */
+public class InMemoryGameRepository implements GameRepository {
+
+    private final InMemoryStore store;
+
+    public InMemoryGameRepository(InMemoryStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void createGame(String matchId, int player1Id, int player2Id, int totalRounds)
+            throws SQLIntegrityConstraintViolationException {
+        InMemoryStore.GameRow row = new InMemoryStore.GameRow(matchId, player1Id, player2Id, totalRounds,
+                "IN_PROGRESS", System.currentTimeMillis(), null, null);
+        if (store.games.putIfAbsent(matchId, row) != null) {
+            throw new SQLIntegrityConstraintViolationException("Duplicate entry '" + matchId + "' for key 'games.PRIMARY'");
+        }
+    }
+
+    /**
+     * Giống JdbcGameRepository.saveRound: cần ván tồn tại, mỗi (match_id, round_number) một lần.
+     */
+    @Override
+    public void saveRound(GameRoundRecord round) throws SQLIntegrityConstraintViolationException {
+        if (!store.games.containsKey(round.getMatchId())) {
+            throw new SQLIntegrityConstraintViolationException("Round " + round.getRoundNumber() + " of match "
+                    + round.getMatchId() + " not saved: game missing");
+        }
+        List<GameRoundRecord> rounds = store.roundsOf(round.getMatchId());
+        synchronized (rounds) {
+            for (GameRoundRecord existing : rounds) {
+                if (existing.getRoundNumber() == round.getRoundNumber()) {
+                    throw new SQLIntegrityConstraintViolationException("Round " + round.getRoundNumber() + " of match "
+                            + round.getMatchId() + " not saved: round already recorded");
+                }
+            }
+            rounds.add(round);
+        }
+    }
+
+    @Override
+    public void completeGame(GameResultRecord result) {
+        store.games.computeIfPresent(result.getMatchId(), (id, row) -> row.finish("COMPLETED", result));
+    }
+
+    @Override
+    public void abandonGame(GameResultRecord result) {
+        store.games.computeIfPresent(result.getMatchId(), (id, row) -> row.finish("ABANDONED", result));
+    }
+
+    @Override
+    public List<MatchHistoryRecord> findMatchHistory(int userId, Long beforeCompletedAtMillis, String beforeMatchId,
+                                                     int limit) {
+        boolean firstPage = beforeCompletedAtMillis == null || beforeMatchId == null;
+        return store.games.values().stream()
+                .filter(row -> row.completedAtMillis != null && (row.player1Id == userId || row.player2Id == userId))
+                .map(this::toHistory)
+                .filter(game -> firstPage || game.isOlderThan(beforeCompletedAtMillis, beforeMatchId))
+                .sorted(MatchHistoryRecord::compareNewestFirst)
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public HeadToHeadRecord findHeadToHead(int userId, int opponentId, long recentSinceMillis) {
+        int games = 0, wins = 0, losses = 0, scoredGames = 0;
+        long score = 0, opponentScore = 0;
+        Long lastPlayed = null;
+        Set<String> recent = new HashSet<>();
+        for (InMemoryStore.GameRow row : store.games.values()) {
+            boolean pair = (row.player1Id == userId && row.player2Id == opponentId)
+                    || (row.player1Id == opponentId && row.player2Id == userId);
+            if (!pair || row.completedAtMillis == null) continue;
+            MatchHistoryRecord game = toHistory(row);
+            games++;
+            if (game.getWinnerId() != null && game.getWinnerId() == userId) wins++;
+            if (game.getWinnerId() != null && game.getWinnerId() == opponentId) losses++;
+            if (!game.isAbandoned()) {
+                scoredGames++;
+                score += row.player1Id == userId ? game.getPlayer1Score() : game.getPlayer2Score();
+                opponentScore += row.player1Id == userId ? game.getPlayer2Score() : game.getPlayer1Score();
+            }
+            lastPlayed = lastPlayed == null ? row.completedAtMillis : Math.max(lastPlayed, row.completedAtMillis);
+            if (row.completedAtMillis >= recentSinceMillis) recent.add(row.matchId);
+        }
+        return new HeadToHeadRecord(userId, opponentId, games, wins, losses, scoredGames,
+                score, opponentScore, lastPlayed, recent);
+    }
+
+    private MatchHistoryRecord toHistory(InMemoryStore.GameRow row) {
+        GameResultRecord result = row.result;
+        return new MatchHistoryRecord(row.matchId,
+                row.player1Id, usernameOf(row.player1Id), row.player2Id, usernameOf(row.player2Id),
+                result.getWinnerId(),
+                "ABANDONED".equals(row.status) ? 0 : result.getPlayer1Score(),
+                "ABANDONED".equals(row.status) ? 0 : result.getPlayer2Score(),
+                "ABANDONED".equals(row.status), row.completedAtMillis);
+    }
+
+    private String usernameOf(int userId) {
+        UserRecord user = store.users.get(userId);
+        return user != null ? user.getUsername() : null;
+    }
+}
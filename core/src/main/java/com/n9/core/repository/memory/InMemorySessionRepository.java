@@ -0,0 +1,25 @@
+package com.n9.core.repository.memory;
+
+import com.n9.core.repository.SessionRepository;
+
+/**
+ * SessionRepository trong bộ nhớ.
+ */
+public class InMemorySessionRepository implements SessionRepository {
+
+    private final InMemoryStore store;
+
+    public InMemorySessionRepository(InMemoryStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void saveSession(String sessionId, int userId) {
+        store.sessions.put(sessionId, userId);
+    }
+
+    @Override
+    public void deleteSession(String sessionId) {
+        store.sessions.remove(sessionId);
+    }
+}
@@ -0,0 +1,190 @@
+package com.n9.core.repository.memory;
+
+import com.n9.core.repository.PlayerStatsRecord;
+import com.n9.core.repository.ProfileRecord;
+import com.n9.core.repository.StatsRepository;
+import com.n9.core.repository.UserRecord;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * StatsRepository trong bộ nhớ.
+ *
+ * Các truy vấn xếp hạng quét toàn bộ profile (O(n log n)) như SQL không có index;
+ * bình thường chúng chỉ chạy khi LeaderboardIndex chưa nạp.
+ */
+public class InMemoryStatsRepository implements StatsRepository {
+
+    /** games_won DESC, games_played ASC, username ASC (không phân biệt hoa thường). */
+    private static final Comparator<PlayerStatsRecord> RANK_ORDER = Comparator
+            .comparingInt((PlayerStatsRecord r) -> -r.getGamesWon())
+            .thenComparingInt(PlayerStatsRecord::getGamesPlayed)
+            .thenComparing(r -> r.getUsername().toLowerCase(Locale.ROOT))
+            .thenComparingInt(PlayerStatsRecord::getUserId);
+
+    private final InMemoryStore store;
+
+    public InMemoryStatsRepository(InMemoryStore store) {
+        this.store = store;
+    }
+
+    // ============================
+    // user_profiles
+    // ============================
+
+    @Override
+    public Map<Integer, ProfileRecord> findProfiles(Collection<Integer> userIds) {
+        Map<Integer, ProfileRecord> result = new HashMap<>();
+        for (Integer userId : userIds) {
+            ProfileRecord profile = store.profiles.get(userId);
+            if (profile != null) result.put(userId, profile);
+        }
+        return result;
+    }
+
+    @Override
+    public void saveProfiles(Collection<ProfileRecord> profiles) {
+        for (ProfileRecord p : profiles) {
+            // Giữ rank_tier đang có: cột này do RankTierService ghi riêng
+            store.profiles.computeIfPresent(p.getUserId(), (id, old) -> new ProfileRecord(id, p.getRating(),
+                    p.getPeakRating(), p.getGamesPlayed(), p.getGamesWon(), p.getGamesLost(), p.getGamesDrawn(),
+                    p.getWinStreakCurrent(), p.getWinStreakBest(), old.getRankTier()));
+        }
+    }
+
+    @Override
+    public void forEachProfile(RowHandler<ProfileRecord> handler) throws SQLException {
+        for (ProfileRecord profile : store.profiles.values()) {
+            handler.accept(profile);
+        }
+    }
+
+    @Override
+    public void updateRankTiers(Map<Integer, String> tiers) {
+        tiers.forEach((userId, tier) -> store.profiles.computeIfPresent(userId, (id, p) -> new ProfileRecord(id,
+                p.getRating(), p.getPeakRating(), p.getGamesPlayed(), p.getGamesWon(), p.getGamesLost(),
+                p.getGamesDrawn(), p.getWinStreakCurrent(), p.getWinStreakBest(), tier)));
+    }
+
+    // ============================
+    // Bảng xếp hạng all-time
+    // ============================
+
+    @Override
+    public void forEachRankedPlayer(Consumer<PlayerStatsRecord> consumer) {
+        for (ProfileRecord profile : store.profiles.values()) {
+            PlayerStatsRecord row = toPlayer(profile, 0);
+            if (row != null) consumer.accept(row);
+        }
+    }
+
+    @Override
+    public List<PlayerStatsRecord> findTopPlayers(int limit, int offset) {
+        List<PlayerStatsRecord> sorted = sortedPlayers();
+        List<PlayerStatsRecord> page = new ArrayList<>();
+        for (int i = offset; i < sorted.size() && page.size() < limit; i++) {
+            page.add(withRank(sorted.get(i), i + 1));
+        }
+        return page;
+    }
+
+    @Override
+    public PlayerStatsRecord findRankedPlayer(int userId) {
+        ProfileRecord profile = store.profiles.get(userId);
+        PlayerStatsRecord target = profile != null ? toPlayer(profile, 0) : null;
+        if (target == null) return null;
+        int ahead = 0;
+        for (ProfileRecord other : store.profiles.values()) {
+            PlayerStatsRecord row = toPlayer(other, 0);
+            if (row != null && RANK_ORDER.compare(row, target) < 0) ahead++;
+        }
+        return withRank(target, ahead + 1);
+    }
+
+    @Override
+    public int countRankedPlayers() {
+        int count = 0;
+        for (ProfileRecord profile : store.profiles.values()) {
+            if (profile.getGamesPlayed() > 0) count++;
+        }
+        return count;
+    }
+
+    // ============================
+    // leaderboard_window_stats
+    // ============================
+
+    @Override
+    public void forEachWindowStat(String windowType, String periodKey, Consumer<PlayerStatsRecord> consumer) {
+        Map<Integer, InMemoryStore.WindowRow> rows = store.windowStats.get(InMemoryStore.windowKey(windowType, periodKey));
+        if (rows == null) return;
+        for (InMemoryStore.WindowRow row : rows.values()) {
+            consumer.accept(row.stats);
+        }
+    }
+
+    @Override
+    public void saveWindowStats(String windowType, String periodKey, Collection<PlayerStatsRecord> stats) {
+        if (stats.isEmpty()) return;
+        ConcurrentHashMap<Integer, InMemoryStore.WindowRow> rows = store.windowStats.computeIfAbsent(
+                InMemoryStore.windowKey(windowType, periodKey), k -> new ConcurrentHashMap<>());
+        long now = System.currentTimeMillis();
+        for (PlayerStatsRecord row : stats) {
+            UserRecord user = store.users.get(row.getUserId());
+            if (user == null) continue; // FK users.user_id
+            rows.put(row.getUserId(), new InMemoryStore.WindowRow(new PlayerStatsRecord(0, row.getUserId(),
+                    user.getUsername(), row.getGamesPlayed(), row.getGamesWon(), row.getGamesLost(), null), now));
+        }
+    }
+
+    @Override
+    public int purgeWindowStats(String windowType, Timestamp updatedBefore) {
+        int deleted = 0;
+        String prefix = windowType + "|";
+        for (Map.Entry<String, ConcurrentHashMap<Integer, InMemoryStore.WindowRow>> period : store.windowStats.entrySet()) {
+            if (!period.getKey().startsWith(prefix)) continue;
+            for (Map.Entry<Integer, InMemoryStore.WindowRow> row : period.getValue().entrySet()) {
+                if (row.getValue().updatedAtMillis < updatedBefore.getTime()
+                        && period.getValue().remove(row.getKey(), row.getValue())) {
+                    deleted++;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    // ============================
+    // NỘI BỘ
+    // ============================
+
+    private List<PlayerStatsRecord> sortedPlayers() {
+        List<PlayerStatsRecord> players = new ArrayList<>();
+        forEachRankedPlayer(players::add);
+        players.sort(RANK_ORDER);
+        return players;
+    }
+
+    /** null nếu chưa chơi trận nào hoặc user không còn. */
+    private PlayerStatsRecord toPlayer(ProfileRecord profile, int rank) {
+        if (profile.getGamesPlayed() <= 0) return null;
+        UserRecord user = store.users.get(profile.getUserId());
+        if (user == null) return null;
+        return new PlayerStatsRecord(rank, profile.getUserId(), user.getUsername(), profile.getGamesPlayed(),
+                profile.getGamesWon(), profile.getGamesLost(), store.lastLogins.get(profile.getUserId()));
+    }
+
+    private static PlayerStatsRecord withRank(PlayerStatsRecord r, int rank) {
+        return new PlayerStatsRecord(rank, r.getUserId(), r.getUsername(), r.getGamesPlayed(),
+                r.getGamesWon(), r.getGamesLost(), r.getLastLoginMillis());
+    }
+}
@@ -0,0 +1,89 @@
+package com.n9.core.repository.memory;
+
+import com.n9.core.repository.GameResultRecord;
+import com.n9.core.repository.GameRoundRecord;
+import com.n9.core.repository.PlayerStatsRecord;
+import com.n9.core.repository.ProfileRecord;
+import com.n9.core.repository.UserRecord;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dữ liệu dùng chung của các repository in-memory (tương đương các bảng của DB_SCRIPT.sql).
+ *
+ * Không khóa: mỗi "dòng" là object bất biến, được thay thế nguyên tử bằng put/compute
+ * trên ConcurrentHashMap. Ràng buộc UNIQUE của username/email giữ bằng putIfAbsent
+ * trên khóa chữ thường (giống collation utf8mb4_unicode_ci).
+ */
+public class InMemoryStore {
+
+    /** Khớp DEFAULT 1000.00 của user_profiles.current_rating. */
+    static final double DEFAULT_RATING = 1000.0;
+
+    /** Một dòng games. result = null khi trận đang diễn ra. */
+    static final class GameRow {
+        final String matchId;
+        final int player1Id;
+        final int player2Id;
+        final int totalRounds;
+        final String status;
+        final long startedAtMillis;
+        final Long completedAtMillis;
+        final GameResultRecord result;
+
+        GameRow(String matchId, int player1Id, int player2Id, int totalRounds, String status,
+                long startedAtMillis, Long completedAtMillis, GameResultRecord result) {
+            this.matchId = matchId;
+            this.player1Id = player1Id;
+            this.player2Id = player2Id;
+            this.totalRounds = totalRounds;
+            this.status = status;
+            this.startedAtMillis = startedAtMillis;
+            this.completedAtMillis = completedAtMillis;
+            this.result = result;
+        }
+
+        GameRow finish(String newStatus, GameResultRecord newResult) {
+            return new GameRow(matchId, player1Id, player2Id, totalRounds, newStatus,
+                    startedAtMillis, newResult.getCompletedAtMillis(), newResult);
+        }
+    }
+
+    /** Một dòng leaderboard_window_stats. */
+    static final class WindowRow {
+        final PlayerStatsRecord stats;
+        final long updatedAtMillis;
+
+        WindowRow(PlayerStatsRecord stats, long updatedAtMillis) {
+            this.stats = stats;
+            this.updatedAtMillis = updatedAtMillis;
+        }
+    }
+
+    final AtomicInteger nextUserId = new AtomicInteger(1);
+    /** userId -> user (phần stats trong UserRecord không dùng; stats đọc từ profiles). */
+    final ConcurrentHashMap<Integer, UserRecord> users = new ConcurrentHashMap<>();
+    final ConcurrentHashMap<String, Integer> userIdsByUsername = new ConcurrentHashMap<>();
+    final ConcurrentHashMap<String, Integer> userIdsByEmail = new ConcurrentHashMap<>();
+    final ConcurrentHashMap<Integer, Long> lastLogins = new ConcurrentHashMap<>();
+    final ConcurrentHashMap<Integer, ProfileRecord> profiles = new ConcurrentHashMap<>();
+
+    final ConcurrentHashMap<String, Integer> sessions = new ConcurrentHashMap<>();
+
+    final ConcurrentHashMap<String, GameRow> games = new ConcurrentHashMap<>();
+    final ConcurrentHashMap<String, List<GameRoundRecord>> gameRounds = new ConcurrentHashMap<>();
+
+    /** "WINDOW_TYPE|periodKey" -> userId -> dòng. */
+    final ConcurrentHashMap<String, ConcurrentHashMap<Integer, WindowRow>> windowStats = new ConcurrentHashMap<>();
+
+    List<GameRoundRecord> roundsOf(String matchId) {
+        return gameRounds.computeIfAbsent(matchId, k -> new CopyOnWriteArrayList<>());
+    }
+
+    static String windowKey(String windowType, String periodKey) {
+        return windowType + "|" + periodKey;
+    }
+}
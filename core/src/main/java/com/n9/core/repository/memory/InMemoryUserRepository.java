@@ -0,0 +1,92 @@
+package com.n9.core.repository.memory;
+
+import com.n9.core.repository.ProfileRecord;
+import com.n9.core.repository.UserRecord;
+import com.n9.core.repository.UserRepository;
+
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * UserRepository trong bộ nhớ (không ghi đĩa).
+ */
+public class InMemoryUserRepository implements UserRepository {
+
+    private final InMemoryStore store;
+
+    public InMemoryUserRepository(InMemoryStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public int createUser(String username, String email, String passwordHash, String displayName)
+            throws SQLIntegrityConstraintViolationException {
+        int userId = store.nextUserId.getAndIncrement();
+        String usernameKey = normalize(username);
+        String emailKey = normalize(email);
+        if (store.userIdsByUsername.putIfAbsent(usernameKey, userId) != null) {
+            throw new SQLIntegrityConstraintViolationException("Duplicate entry '" + username + "' for key 'users.username'");
+        }
+        if (store.userIdsByEmail.putIfAbsent(emailKey, userId) != null) {
+            store.userIdsByUsername.remove(usernameKey, userId); // trả lại username đã giữ chỗ
+            throw new SQLIntegrityConstraintViolationException("Duplicate entry '" + email + "' for key 'users.email'");
+        }
+        // Profile trước user: ai thấy user là thấy profile (như trigger after_user_insert)
+        store.profiles.put(userId, new ProfileRecord(userId, InMemoryStore.DEFAULT_RATING, InMemoryStore.DEFAULT_RATING,
+                0, 0, 0, 0, 0, 0, "BRONZE"));
+        store.users.put(userId, new UserRecord(userId, username, email, passwordHash, "ACTIVE", displayName,
+                0, 0, 0, InMemoryStore.DEFAULT_RATING, "BRONZE"));
+        return userId;
+    }
+
+    @Override
+    public UserRecord findByUsername(String username) {
+        Integer userId = store.userIdsByUsername.get(normalize(username));
+        return userId != null ? withProfile(userId) : null;
+    }
+
+    @Override
+    public UserRecord findByUsernameOrEmail(String username, String email) {
+        Integer userId = store.userIdsByUsername.get(normalize(username));
+        if (userId == null) {
+            userId = store.userIdsByEmail.get(normalize(email));
+        }
+        return userId != null ? withProfile(userId) : null;
+    }
+
+    @Override
+    public void updateLastLogins(List<Map.Entry<Integer, Long>> logins) {
+        for (Map.Entry<Integer, Long> entry : logins) {
+            if (store.users.containsKey(entry.getKey())) {
+                store.lastLogins.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public long countUsers() {
+        return store.users.size();
+    }
+
+    @Override
+    public void forEachUsernameAndEmail(BiConsumer<String, String> consumer) {
+        for (UserRecord user : store.users.values()) {
+            consumer.accept(user.getUsername(), user.getEmail());
+        }
+    }
+
+    private UserRecord withProfile(int userId) {
+        UserRecord user = store.users.get(userId);
+        if (user == null) return null; // đang được tạo ở luồng khác
+        ProfileRecord p = store.profiles.get(userId);
+        return new UserRecord(userId, user.getUsername(), user.getEmail(), user.getPasswordHash(), user.getStatus(),
+                user.getDisplayName(), 0, p.getGamesPlayed(), p.getGamesWon(), p.getRating(), p.getRankTier());
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.toLowerCase(Locale.ROOT);
+    }
+}
@@ -8,25 +8,35 @@ import com.n9.shared.protocol.MessageEnvelope;
 import com.n9.shared.protocol.MessageFactory;
 import com.n9.shared.util.JsonUtils;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * ChallengeService - Quản lý hệ thống thách đấu trực tiếp.
  * 
  * Chức năng:
  * - Tạo challenge request từ sender → target
+ * - Open challenge: gửi offer đến tối đa MAX_OPEN_CHALLENGE_TARGETS người, ai accept trước thì đấu
  * - Xử lý response (accept/decline)
  * - Quản lý timeout (15 giây)
  * - Cleanup khi user disconnect
  *
+ * Đồng thời:
+ * - Không lock theo challenge: mọi chuyển trạng thái từ PENDING dùng CAS trên ChallengeSession.status,
+ *   luồng thắng CAS chịu trách nhiệm notify + cleanup (open challenge: accept đầu tiên thắng,
+ *   offer của các target còn lại bị rút)
+ * - Index userId → challengeIds (cả sender và target): disconnect chỉ duyệt challenge của user đó
+ * - Timeout: một sweep mỗi giây trên hàng đợi theo thứ tự tạo (timeout cố định ⇒ cũng là thứ tự hết hạn),
+ *   chỉ duyệt các challenge đã hết hạn, không tạo ScheduledFuture cho từng challenge
  */
 public class ChallengeService {
     
@@ -34,13 +44,17 @@ public class ChallengeService {
     // CONSTANTS
     // ============================
     private static final int CHALLENGE_TIMEOUT_SECONDS = 15;
+    private static final long EXPIRY_SWEEP_INTERVAL_MS = 1_000;
+    public static final int MAX_OPEN_CHALLENGE_TARGETS = 5;
     
     // ============================
     // DATA STRUCTURES
     // ============================
     private final ConcurrentHashMap<String, ChallengeSession> activeChallenges;
-    private final ConcurrentHashMap<String, Lock> challengeLocks;
-    private final ConcurrentHashMap<String, ScheduledFuture<?>> timeoutTasks;
+    // userId → challengeIds mà user là sender hoặc target
+    private final ConcurrentHashMap<String, Set<String>> challengesByUser;
+    // Thứ tự tạo = thứ tự hết hạn; entry đã xử lý xong được bỏ qua khi sweep tới
+    private final ConcurrentLinkedQueue<ChallengeSession> expiryQueue;
     
     // ============================
     // DEPENDENCIES
@@ -64,8 +78,16 @@ public class ChallengeService {
         this.activeConnections = activeConnections;
         this.scheduler = scheduler;
         this.activeChallenges = new ConcurrentHashMap<>();
-        this.challengeLocks = new ConcurrentHashMap<>();
-        this.timeoutTasks = new ConcurrentHashMap<>();
+        this.challengesByUser = new ConcurrentHashMap<>();
+        this.expiryQueue = new ConcurrentLinkedQueue<>();
+    }
+    
+    /**
+     * Bắt đầu sweep timeout định kỳ (gọi một lần lúc khởi động server).
+     */
+    public void startExpirySweep() {
+        scheduler.scheduleAtFixedRate(this::expireChallenges,
+                EXPIRY_SWEEP_INTERVAL_MS, EXPIRY_SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
     }
     
 
@@ -80,33 +102,73 @@ public class ChallengeService {
     public ChallengeSession createChallenge(String senderId, String targetId) 
             throws IllegalArgumentException {
         
-
-        validateChallengeRequest(senderId, targetId);
+        validateSender(senderId);
+        String unavailableReason = checkTargetAvailable(senderId, targetId);
+        if (unavailableReason != null) {
+            throw new IllegalArgumentException(unavailableReason);
+        }
+        return registerChallenge(senderId, List.of(targetId));
+    }
+    
+    /**
+     * Tạo open challenge: gửi offer đến nhiều target cùng lúc, target accept đầu tiên thắng.
+     * Target đang bận/offline bị bỏ qua; chỉ lỗi khi không còn target nào hợp lệ.
+     * 
+     * @param senderId ID của người gửi challenge
+     * @param targetIds Danh sách target (tối đa MAX_OPEN_CHALLENGE_TARGETS)
+     * @return ChallengeSession với targetIds = các target thực sự nhận offer
+     * @throws IllegalArgumentException nếu validation fail
+     */
+    public ChallengeSession createOpenChallenge(String senderId, List<String> targetIds) 
+            throws IllegalArgumentException {
         
+        validateSender(senderId);
+        LinkedHashSet<String> distinctTargets = new LinkedHashSet<>(targetIds);
+        distinctTargets.remove(null);
+        if (distinctTargets.isEmpty()) {
+            throw new IllegalArgumentException("At least one target is required.");
+        }
+        if (distinctTargets.size() > MAX_OPEN_CHALLENGE_TARGETS) {
+            throw new IllegalArgumentException("You can challenge at most " + MAX_OPEN_CHALLENGE_TARGETS + " players at once.");
+        }
+        
+        List<String> availableTargets = new ArrayList<>();
+        for (String targetId : distinctTargets) {
+            if (checkTargetAvailable(senderId, targetId) == null) {
+                availableTargets.add(targetId);
+            }
+        }
+        if (availableTargets.isEmpty()) {
+            throw new IllegalArgumentException("None of the selected players are available.");
+        }
+        return registerChallenge(senderId, availableTargets);
+    }
+    
+    private ChallengeSession registerChallenge(String senderId, List<String> targetIds) {
         String challengeId = "ch-" + UUID.randomUUID().toString();
         ChallengeSession challenge = new ChallengeSession(
-            challengeId, senderId, targetId, CHALLENGE_TIMEOUT_SECONDS
+            challengeId, senderId, targetIds, CHALLENGE_TIMEOUT_SECONDS
         );
         
         activeChallenges.put(challengeId, challenge);
-        challengeLocks.put(challengeId, new ReentrantLock());
+        indexChallenge(senderId, challengeId);
+        targetIds.forEach(targetId -> indexChallenge(targetId, challengeId));
         
         // [4] UPDATE SESSION CONTEXTS
         SessionManager.SessionContext senderCtx = sessionManager.getSessionByUserId(senderId);
-        SessionManager.SessionContext targetCtx = sessionManager.getSessionByUserId(targetId);
         if (senderCtx != null) senderCtx.setChallengeId(challengeId);
-        if (targetCtx != null) targetCtx.setChallengeId(challengeId);
+        for (String targetId : targetIds) {
+            SessionManager.SessionContext targetCtx = sessionManager.getSessionByUserId(targetId);
+            if (targetCtx != null) targetCtx.setChallengeId(challengeId);
+        }
         
-        // [5] SCHEDULE TIMEOUT
-        ScheduledFuture<?> timeoutTask = scheduler.schedule(
-            () -> handleChallengeTimeout(challengeId),
-            CHALLENGE_TIMEOUT_SECONDS,
-            TimeUnit.SECONDS
-        );
-        timeoutTasks.put(challengeId, timeoutTask);
+        // [5] TIMEOUT: xử lý bởi expireChallenges()
+        expiryQueue.add(challenge);
         
-        // [6] SEND OFFER TO TARGET
-        sendChallengeOfferToTarget(challenge);
+        // [6] SEND OFFER TO TARGETS
+        for (String targetId : targetIds) {
+            sendChallengeOfferToTarget(challenge, targetId);
+        }
         
         return challenge;
     }
@@ -114,41 +176,46 @@ public class ChallengeService {
     /**
      * Xử lý response từ target.
      * 
+     * Accept: CAS PENDING → ACCEPTED, chỉ target đầu tiên thắng; offer của các target khác bị rút.
+     * Decline: chỉ rút target này; challenge DECLINED khi không còn target nào đang chờ.
+     * 
      * @param challengeId ID của challenge
+     * @param responderId ID của target trả lời
      * @param accept true = chấp nhận, false = từ chối
-     * @throws IllegalArgumentException nếu challenge không hợp lệ
+     * @throws IllegalArgumentException nếu challenge không hợp lệ (hoặc đã có người khác accept)
      */
-    public void handleChallengeResponse(String challengeId, boolean accept) 
+    public void handleChallengeResponse(String challengeId, String responderId, boolean accept) 
             throws IllegalArgumentException {
         
-
-        Lock lock = challengeLocks.get(challengeId);
-        if (lock == null) {
+        ChallengeSession challenge = activeChallenges.get(challengeId);
+        if (challenge == null) {
             throw new IllegalArgumentException("Challenge not found or expired.");
         }
+        if (!challenge.isPendingTarget(responderId)) {
+            throw new IllegalArgumentException("Challenge no longer valid.");
+        }
+        
+        if (!accept) {
+            // [DECLINE]
+            withdrawTarget(challenge, responderId, "DECLINED");
+            return;
+        }
+        
+        // [ACCEPT]
+        if (!challenge.compareAndSetStatus(ChallengeSession.ChallengeStatus.PENDING, ChallengeSession.ChallengeStatus.ACCEPTED)) {
+            // Target khác đã accept trước, hoặc đã bị timeout/cancel
+            throw new IllegalArgumentException("Challenge no longer valid.");
+        }
+        challenge.setAcceptedTargetId(responderId);
         
-        lock.lock();
         try {
-            ChallengeSession challenge = activeChallenges.get(challengeId);
-            if (challenge == null || challenge.getStatus() != ChallengeSession.ChallengeStatus.PENDING) {
-                throw new IllegalArgumentException("Challenge no longer valid.");
-            }
-            
-            // Cancel timeout
-            cancelTimeoutTask(challengeId);
-            
-            if (accept) {
-                // [ACCEPT]
-                challenge.setStatus(ChallengeSession.ChallengeStatus.ACCEPTED);
-                createDirectMatch(challenge);
-            } else {
-                // [DECLINE]
-                challenge.setStatus(ChallengeSession.ChallengeStatus.DECLINED);
-                notifyChallengeCancelled(challenge, "DECLINED");
+            for (String otherTargetId : challenge.getPendingTargetIds()) {
+                if (!otherTargetId.equals(responderId)) {
+                    notifyUser(otherTargetId, createCancelledEnvelope(challenge, "ACCEPTED_BY_OTHER"));
+                }
             }
-            
+            createDirectMatch(challenge);
         } finally {
-            lock.unlock();
             cleanupChallenge(challengeId);
         }
     }
@@ -161,20 +228,15 @@ public class ChallengeService {
      */
     public void cancelChallenge(String challengeId, String reason) {
 
-        Lock lock = challengeLocks.get(challengeId);
-        if (lock == null) return;
+        ChallengeSession challenge = activeChallenges.get(challengeId);
+        if (challenge == null) return;
         
-        lock.lock();
-        try {
-            ChallengeSession challenge = activeChallenges.get(challengeId);
-            if (challenge != null) {
-                challenge.setStatus(ChallengeSession.ChallengeStatus.CANCELLED);
-                cancelTimeoutTask(challengeId);
+        if (challenge.compareAndSetStatus(ChallengeSession.ChallengeStatus.PENDING, ChallengeSession.ChallengeStatus.CANCELLED)) {
+            try {
                 notifyChallengeCancelled(challenge, reason);
+            } finally {
+                cleanupChallenge(challengeId);
             }
-        } finally {
-            lock.unlock();
-            cleanupChallenge(challengeId);
         }
     }
     
@@ -197,15 +259,19 @@ public class ChallengeService {
     public void handleUserDisconnect(String userId) {
         System.out.println("🔌 User disconnected, checking challenges: " + userId);
         
-        // Tìm tất cả challenges có userId
-        activeChallenges.values().forEach(challenge -> {
-            if (userId.equals(challenge.getSenderId()) || userId.equals(challenge.getTargetId())) {
-                String reason = userId.equals(challenge.getSenderId()) 
-                    ? "SENDER_DISCONNECTED" 
-                    : "TARGET_DISCONNECTED";
-                cancelChallenge(challenge.getChallengeId(), reason);
+        // Chỉ các challenge của user này (index), không duyệt toàn bộ activeChallenges
+        Set<String> challengeIds = challengesByUser.get(userId);
+        if (challengeIds == null) return;
+        for (String challengeId : new ArrayList<>(challengeIds)) {
+            ChallengeSession challenge = activeChallenges.get(challengeId);
+            if (challenge == null) continue;
+            if (userId.equals(challenge.getSenderId())) {
+                cancelChallenge(challengeId, "SENDER_DISCONNECTED");
+            } else {
+                // Open challenge vẫn tiếp tục với các target còn lại
+                withdrawTarget(challenge, userId, "TARGET_DISCONNECTED");
             }
-        });
+        }
     }
     
     /**
@@ -219,22 +285,11 @@ public class ChallengeService {
     
 
     /**
-     * Validate điều kiện thách đấu.
+     * Validate điều kiện của sender.
      */
-    private void validateChallengeRequest(String senderId, String targetId) 
-            throws IllegalArgumentException {
-        
-        // [1] Target phải khác sender
-        if (senderId.equals(targetId)) {
-            throw new IllegalArgumentException("Cannot challenge yourself.");
-        }
-        
-        // [2] Target phải online
-        if (!sessionManager.isUserOnline(targetId)) {
-            throw new IllegalArgumentException("Target user is offline.");
-        }
+    private void validateSender(String senderId) throws IllegalArgumentException {
         
-        // [3] Sender không được đang trong queue hoặc game
+        // Sender không được đang trong queue hoặc game
         SessionManager.SessionContext senderCtx = sessionManager.getSessionByUserId(senderId);
         if (senderCtx == null) {
             throw new IllegalArgumentException("Sender session not found.");
@@ -248,28 +303,46 @@ public class ChallengeService {
         if (matchmakingService.isUserInQueue(senderId)) {
             throw new IllegalArgumentException("You are in matchmaking queue. Please cancel first.");
         }
+    }
+    
+    /**
+     * Kiểm tra target có thể nhận challenge không.
+     * 
+     * @return null nếu hợp lệ, ngược lại là lý do từ chối
+     */
+    private String checkTargetAvailable(String senderId, String targetId) {
+        
+        // [1] Target phải khác sender
+        if (senderId.equals(targetId)) {
+            return "Cannot challenge yourself.";
+        }
+        
+        // [2] Target phải online
+        if (!sessionManager.isUserOnline(targetId)) {
+            return "Target user is offline.";
+        }
         
-        // [4] Target không được đang busy
+        // [3] Target không được đang busy
         SessionManager.SessionContext targetCtx = sessionManager.getSessionByUserId(targetId);
         if (targetCtx == null) {
-            throw new IllegalArgumentException("Target session not found.");
+            return "Target session not found.";
         }
         if (targetCtx.getCurrentMatchId() != null) {
-            throw new IllegalArgumentException("Target user is already in a game.");
+            return "Target user is already in a game.";
         }
         if (targetCtx.getChallengeId() != null) {
-            throw new IllegalArgumentException("Target user is already in a challenge.");
+            return "Target user is already in a challenge.";
         }
         if (matchmakingService.isUserInQueue(targetId)) {
-            throw new IllegalArgumentException("Target user is in matchmaking queue.");
+            return "Target user is in matchmaking queue.";
         }
+        return null;
     }
     
     /**
      * Gửi challenge offer đến target user.
      */
-    private void sendChallengeOfferToTarget(ChallengeSession challenge) {
-        String targetId = challenge.getTargetId();
+    private void sendChallengeOfferToTarget(ChallengeSession challenge, String targetId) {
         String senderId = challenge.getSenderId();
         
         // Lấy username của sender
@@ -325,47 +398,75 @@ public class ChallengeService {
     }
     
     /**
-     * Xử lý timeout (15 giây).
+     * Sweep timeout (15 giây): lấy các challenge đã hết hạn ở đầu hàng đợi, dừng ở challenge
+     * đầu tiên còn hạn. Chi phí O(số challenge hết hạn trong tick).
      */
-    private void handleChallengeTimeout(String challengeId) {
-
-        Lock lock = challengeLocks.get(challengeId);
-        if (lock == null) return;
-        
-        lock.lock();
+    private void expireChallenges() {
         try {
-            ChallengeSession challenge = activeChallenges.get(challengeId);
-            if (challenge != null && challenge.getStatus() == ChallengeSession.ChallengeStatus.PENDING) {
-                challenge.setStatus(ChallengeSession.ChallengeStatus.TIMEOUT);
-                notifyChallengeCancelled(challenge, "TIMEOUT");
+            long now = System.currentTimeMillis();
+            List<ChallengeSession> expired = new ArrayList<>();
+            ChallengeSession head;
+            while ((head = expiryQueue.peek()) != null && head.getExpiresAt() <= now) {
+                expiryQueue.poll();
+                if (head.compareAndSetStatus(ChallengeSession.ChallengeStatus.PENDING, ChallengeSession.ChallengeStatus.TIMEOUT)) {
+                    expired.add(head);
+                }
             }
-        } finally {
-            lock.unlock();
-            cleanupChallenge(challengeId);
+            for (ChallengeSession challenge : expired) {
+                try {
+                    notifyChallengeCancelled(challenge, "TIMEOUT");
+                } finally {
+                    cleanupChallenge(challenge.getChallengeId());
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace(); // không để exception hủy lịch chạy định kỳ
         }
     }
     
     /**
-     * Thông báo challenge đã bị hủy.
+     * Rút một target khỏi challenge (từ chối / disconnect). Khi target cuối cùng rời đi,
+     * challenge kết thúc (DECLINED hoặc CANCELLED) và sender được thông báo.
+     */
+    private void withdrawTarget(ChallengeSession challenge, String targetId, String reason) {
+        if (!challenge.removePendingTarget(targetId)) return;
+        String challengeId = challenge.getChallengeId();
+        releaseUser(targetId, challengeId);
+        
+        if (challenge.getPendingTargetIds().isEmpty()) {
+            ChallengeSession.ChallengeStatus finalStatus = "DECLINED".equals(reason)
+                ? ChallengeSession.ChallengeStatus.DECLINED
+                : ChallengeSession.ChallengeStatus.CANCELLED;
+            if (challenge.compareAndSetStatus(ChallengeSession.ChallengeStatus.PENDING, finalStatus)) {
+                try {
+                    notifyChallengeCancelled(challenge, reason);
+                } finally {
+                    cleanupChallenge(challengeId);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Thông báo challenge đã bị hủy cho sender và các target còn đang chờ
+     * (target đã từ chối/rời đi không nhận thông báo trùng).
      */
     private void notifyChallengeCancelled(ChallengeSession challenge, String reason) {
+        notifyUser(challenge.getSenderId(), createCancelledEnvelope(challenge, reason));
+        for (String targetId : challenge.getPendingTargetIds()) {
+            notifyUser(targetId, createCancelledEnvelope(challenge, reason));
+        }
+    }
+    
+    private MessageEnvelope createCancelledEnvelope(ChallengeSession challenge, String reason) {
         Map<String, Object> payload = new HashMap<>();
         payload.put("challengeId", challenge.getChallengeId());
         payload.put("reason", reason);
         
-        MessageEnvelope envelope = MessageFactory.createNotification(
+        return MessageFactory.createNotification(
             MessageProtocol.Type.GAME_CHALLENGE_CANCELLED,
             payload
         );
-        
-        // Notify sender
-        notifyUser(challenge.getSenderId(), envelope);
-        
-        // Notify target (nếu reason không phải DECLINED - tránh notification trùng)
-        if (!"DECLINED".equals(reason)) {
-            notifyUser(challenge.getTargetId(), envelope);
-        }
-        
     }
     
     /**
@@ -386,33 +487,49 @@ public class ChallengeService {
         }
     }
     
+    private void indexChallenge(String userId, String challengeId) {
+        challengesByUser.computeIfAbsent(userId, k -> ConcurrentHashMap.newKeySet()).add(challengeId);
+    }
+    
+    private void unindexChallenge(String userId, String challengeId) {
+        // computeIfPresent: xóa set rỗng nguyên tử, không đua với indexChallenge()
+        challengesByUser.computeIfPresent(userId, (k, ids) -> {
+            ids.remove(challengeId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+    
+
     /**
-     * Hủy timeout task.
+     * Số challenge đang hoạt động (dùng cho kiểm thử/giám sát).
      */
-    private void cancelTimeoutTask(String challengeId) {
-        ScheduledFuture<?> task = timeoutTasks.remove(challengeId);
-        if (task != null && !task.isDone()) {
-            task.cancel(false);
+    int getActiveChallengeCount() {
+        return activeChallenges.size();
+    }
+    
+    /**
+     * Số user còn trong index (dùng cho kiểm thử/giám sát).
+     */
+    int getIndexedUserCount() {
+        return challengesByUser.size();
+    }
+    
+    private void releaseUser(String userId, String challengeId) {
+        unindexChallenge(userId, challengeId);
+        SessionManager.SessionContext ctx = sessionManager.getSessionByUserId(userId);
+        if (ctx != null && challengeId.equals(ctx.getChallengeId())) {
+            ctx.setChallengeId(null);
         }
     }
     
-
     private void cleanupChallenge(String challengeId) {
         ChallengeSession challenge = activeChallenges.remove(challengeId);
-        challengeLocks.remove(challengeId);
-        timeoutTasks.remove(challengeId);
         
         if (challenge != null) {
-            SessionManager.SessionContext senderCtx = sessionManager.getSessionByUserId(challenge.getSenderId());
-            SessionManager.SessionContext targetCtx = sessionManager.getSessionByUserId(challenge.getTargetId());
-            
-            if (senderCtx != null && challengeId.equals(senderCtx.getChallengeId())) {
-                senderCtx.setChallengeId(null);
-            }
-            if (targetCtx != null && challengeId.equals(targetCtx.getChallengeId())) {
-                targetCtx.setChallengeId(null);
+            releaseUser(challenge.getSenderId(), challengeId);
+            for (String targetId : challenge.getTargetIds()) {
+                releaseUser(targetId, challengeId);
             }
-            
         }
     }
 }
@@ -0,0 +1,100 @@
+package com.n9.core.service;
+
+import com.n9.core.repository.MatchHistoryRecord;
+
+/**
+ * Kết quả một trận đã kết thúc, gửi cho các GameEndListener.
+ *
+ * Stats sau trận (W/L/D, rating) lấy từ getRatings() - bản sao RatingEngine vừa tính,
+ * listener không cần đọc lại user_profiles.
+ */
+public class GameEndEvent {
+
+    private final String matchId;
+    private final String player1Id;
+    private final String player2Id;
+    private final String player1Username;
+    private final String player2Username;
+    private final String winnerId;
+    private final int player1Score;
+    private final int player2Score;
+    private final boolean forfeited;
+    private final long completedAtMillis;
+    private final RatingEngine.GameRatingResult ratings;
+
+    public GameEndEvent(String matchId, String player1Id, String player2Id,
+                        String player1Username, String player2Username,
+                        String winnerId, int player1Score, int player2Score,
+                        boolean forfeited, long completedAtMillis,
+                        RatingEngine.GameRatingResult ratings) {
+        this.matchId = matchId;
+        this.player1Id = player1Id;
+        this.player2Id = player2Id;
+        this.player1Username = player1Username;
+        this.player2Username = player2Username;
+        this.winnerId = winnerId;
+        this.player1Score = player1Score;
+        this.player2Score = player2Score;
+        this.forfeited = forfeited;
+        this.completedAtMillis = completedAtMillis;
+        this.ratings = ratings;
+    }
+
+    public String getMatchId() {
+        return matchId;
+    }
+
+    public String getPlayer1Id() {
+        return player1Id;
+    }
+
+    public String getPlayer2Id() {
+        return player2Id;
+    }
+
+    public String getPlayer1Username() {
+        return player1Username;
+    }
+
+    public String getPlayer2Username() {
+        return player2Username;
+    }
+
+    /** null nếu hòa. */
+    public String getWinnerId() {
+        return winnerId;
+    }
+
+    public int getPlayer1Score() {
+        return player1Score;
+    }
+
+    public int getPlayer2Score() {
+        return player2Score;
+    }
+
+    public boolean isForfeited() {
+        return forfeited;
+    }
+
+    public long getCompletedAtMillis() {
+        return completedAtMillis;
+    }
+
+    public RatingEngine.GameRatingResult getRatings() {
+        return ratings;
+    }
+
+    /**
+     * Dòng games tương ứng (như MatchHistoryRecord đọc từ DB). Ván bỏ dở không ghi điểm vào games
+     * (abandonGame) nên điểm để 0 cho khớp DB.
+     */
+    public MatchHistoryRecord toHistoryRecord() {
+        return new MatchHistoryRecord(matchId,
+                Integer.parseInt(player1Id), player1Username,
+                Integer.parseInt(player2Id), player2Username,
+                winnerId != null ? Integer.valueOf(winnerId) : null,
+                forfeited ? 0 : player1Score, forfeited ? 0 : player2Score,
+                forfeited, completedAtMillis);
+    }
+}
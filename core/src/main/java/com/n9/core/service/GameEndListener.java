@@ -0,0 +1,13 @@
+package com.n9.core.service;
+
+/**
+ * Callback khi một trận kết thúc (hoàn thành 3 hiệp hoặc forfeit).
+ *
+ * Được GameService gọi sau khi kết quả đã ghi vào bảng games và RatingEngine đã cập nhật stats,
+ * ngoài game lock. Listener không được chặn lâu (chạy trên luồng xử lý trận).
+ */
+@FunctionalInterface
+public interface GameEndListener {
+
+    void onGameEnd(GameEndEvent event);
+}
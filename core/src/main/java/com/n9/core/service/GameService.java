@@ -1,8 +1,12 @@
 package com.n9.core.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.n9.core.database.DatabaseManager;
+import com.n9.core.metrics.LatencyHistogram;
+import com.n9.core.metrics.MetricsRegistry;
 import com.n9.core.network.ClientConnectionHandler;
+import com.n9.core.repository.GameRepository;
+import com.n9.core.repository.GameResultRecord;
+import com.n9.core.repository.GameRoundRecord;
 import com.n9.shared.MessageProtocol;
 import com.n9.shared.constants.GameConstants;
 import com.n9.shared.model.dto.game.CardDto;
@@ -15,12 +19,10 @@ import com.n9.shared.util.CardUtils;
 import com.n9.shared.util.GameRuleUtils;
 import com.n9.shared.util.JsonUtils;
 
-import java.sql.CallableStatement;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
@@ -30,25 +32,57 @@ import java.util.concurrent.locks.ReentrantLock;
 
 public class GameService {
 
-    private final DatabaseManager dbManager;
+    private final GameRepository gameRepository;
     private final ConcurrentHashMap<String, GameState> activeGames = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, ClientConnectionHandler> activeConnections;
     private final ScheduledExecutorService scheduler;
     private final ConcurrentHashMap<String, Lock> gameLocks = new ConcurrentHashMap<>();
 
     private final SessionManager sessionManager;
+    private final RatingEngine ratingEngine;
+    private final List<GameEndListener> gameEndListeners = new CopyOnWriteArrayList<>();
 
-    public GameService(DatabaseManager dbManager,
+    // Thời gian từ lúc lật bài đến khi sang hiệp mới (ack của cả hai hoặc hết REVEAL_ACK_TIMEOUT_MS)
+    private final LatencyHistogram revealToNextRoundHistogram =
+            MetricsRegistry.getInstance().histogram("game.phase.revealToNextRound");
+
+    /** Giới hạn trên thời gian chờ GAME.REVEAL_ACK (trước đây là delay cố định 3 giây). */
+    public static final long REVEAL_ACK_TIMEOUT_MS = 3_000;
+
+    public GameService(GameRepository gameRepository,
                        ConcurrentHashMap<String, ClientConnectionHandler> activeConnections,
                        ScheduledExecutorService scheduler,
-                       SessionManager sessionManager) {
-        this.dbManager = dbManager;
+                       SessionManager sessionManager,
+                       RatingEngine ratingEngine) {
+        this.gameRepository = gameRepository;
         this.activeConnections = activeConnections;
         this.scheduler = scheduler;
         this.sessionManager = sessionManager; // Thêm
+        this.ratingEngine = ratingEngine;
     }
 
 
+    /**
+     * Đăng ký listener nhận kết quả mỗi trận (leaderboard, lịch sử...). Gọi lúc khởi động.
+     */
+    public void addGameEndListener(GameEndListener listener) {
+        gameEndListeners.add(listener);
+    }
+
+    private void fireGameEnd(GameState game, String winnerId, boolean forfeited, long completedAtMillis,
+                             RatingEngine.GameRatingResult ratings) {
+        GameEndEvent event = new GameEndEvent(game.getMatchId(), game.getPlayer1Id(), game.getPlayer2Id(),
+                game.getPlayer1Username(), game.getPlayer2Username(), winnerId,
+                game.getPlayer1Score(), game.getPlayer2Score(), forfeited, completedAtMillis, ratings);
+        for (GameEndListener listener : gameEndListeners) {
+            try {
+                listener.onGameEnd(event);
+            } catch (Exception e) {
+                e.printStackTrace(); // một listener lỗi không chặn các listener khác
+            }
+        }
+    }
+
     public static class GameState {
 
         private final String matchId;
@@ -60,6 +94,12 @@ public class GameService {
         private List<CardDto> availableCards;
         private CardDto player1PlayedCard = null, player2PlayedCard = null;
         private boolean player1AutoPicked = false, player2AutoPicked = false;
+        // Lưu lúc bắt đầu trận (người forfeit có thể đã mất session khi trận kết thúc)
+        private String player1Username, player2Username;
+        // Hiệp vừa lật bài đang chờ GAME.REVEAL_ACK (0 = không chờ). Truy cập trong game lock.
+        private int revealedRound = 0;
+        private long revealedAtNanos;
+        private final Set<String> revealAcks = new HashSet<>();
 
         public GameState(String matchId, String p1, String p2) {
             this.matchId = matchId;
@@ -119,6 +159,19 @@ public class GameService {
             return player2AutoPicked;
         }
 
+        public String getPlayer1Username() {
+            return player1Username;
+        }
+
+        public String getPlayer2Username() {
+            return player2Username;
+        }
+
+        public void setPlayerUsernames(String player1Username, String player2Username) {
+            this.player1Username = player1Username;
+            this.player2Username = player2Username;
+        }
+
         public void setAvailableCards(List<CardDto> cards) {
             this.availableCards = cards;
         }
@@ -168,6 +221,7 @@ public class GameService {
         List<CardDto> fullShuffledDeck = CardUtils.generateDeck();
         CardUtils.shuffle(fullShuffledDeck);
         GameState game = new GameState(matchId, player1Id, player2Id);
+        game.setPlayerUsernames(getUsernameForId(player1Id), getUsernameForId(player2Id));
         game.setAvailableCards(new ArrayList<>(fullShuffledDeck));
         game.setCurrentRound(0);
         activeGames.put(matchId, game);
@@ -177,8 +231,9 @@ public class GameService {
         } catch (SQLException e) {
             return null;
         }
-        Object payload1 = createGameStartPayload_SharedDeck(game, player1Id, getUsernameForId(player2Id));
-        Object payload2 = createGameStartPayload_SharedDeck(game, player2Id, getUsernameForId(player1Id));
+        ratingEngine.preload(player1Id, player2Id); // để lúc kết thúc ván không phải chờ DB
+        Object payload1 = createGameStartPayload_SharedDeck(game, player1Id, game.getPlayer2Username());
+        Object payload2 = createGameStartPayload_SharedDeck(game, player2Id, game.getPlayer1Username());
         notifyPlayer(player1Id, MessageProtocol.Type.GAME_START, payload1);
         notifyPlayer(player2Id, MessageProtocol.Type.GAME_START, payload2);
         startNextRound(matchId);
@@ -378,6 +433,7 @@ public class GameService {
         boolean gameOver = false;
         GameState gameSnapshotForEnd = null;
         String player1Id = null, player2Id = null;
+        int revealedRound = 0;
 
         lock.lock();
         try {
@@ -432,6 +488,12 @@ public class GameService {
                 game.setComplete(true);
                 gameOver = true;
                 gameSnapshotForEnd = cloneGameState(game);
+            } else {
+                // Chờ cả hai client GAME.REVEAL_ACK (đã hiển thị xong kết quả hiệp)
+                revealedRound = game.getCurrentRound();
+                game.revealedRound = revealedRound;
+                game.revealedAtNanos = System.nanoTime();
+                game.revealAcks.clear();
             }
         } finally {
             lock.unlock();
@@ -443,8 +505,61 @@ public class GameService {
         if (gameOver && gameSnapshotForEnd != null) {
             handleGameEnd(gameSnapshotForEnd);
             cleanupGame(matchId);
-        } else if (!gameOver && player1Id != null) {
-            scheduler.schedule(() -> startNextRound(matchId), 3, TimeUnit.SECONDS);
+        } else if (!gameOver && revealedRound > 0) {
+            // Ack đến đủ thì sang hiệp ngay; timeout chỉ là giới hạn trên cho client chậm/không gửi ack
+            final int round = revealedRound;
+            scheduler.schedule(() -> advanceAfterReveal(matchId, round), REVEAL_ACK_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Client báo đã hiển thị xong kết quả hiệp (GAME.REVEAL_ACK).
+     * Khi cả hai người chơi ack → bắt đầu hiệp tiếp theo ngay, không chờ hết timeout.
+     *
+     * @param roundNumber hiệp được ack; null = hiệp đang chờ ack
+     */
+    public void acknowledgeReveal(String matchId, String playerId, Integer roundNumber) {
+        Lock lock = gameLocks.get(matchId);
+        if (lock == null) return;
+        boolean bothAcked = false;
+        int round = 0;
+        lock.lock();
+        try {
+            GameState game = activeGames.get(matchId);
+            if (game == null || game.isComplete() || game.revealedRound == 0) return;
+            if (roundNumber != null && roundNumber != game.revealedRound) return; // ack muộn của hiệp cũ
+            if (!playerId.equals(game.getPlayer1Id()) && !playerId.equals(game.getPlayer2Id())) {
+                throw new IllegalArgumentException("You are not a player in match " + matchId);
+            }
+            game.revealAcks.add(playerId);
+            round = game.revealedRound;
+            bothAcked = game.revealAcks.size() == 2;
+        } finally {
+            lock.unlock();
+        }
+        if (bothAcked) {
+            advanceAfterReveal(matchId, round);
+        }
+    }
+
+    /**
+     * Sang hiệp tiếp theo đúng một lần cho mỗi hiệp đã lật (ack đủ hoặc timeout, cái nào đến trước).
+     */
+    private void advanceAfterReveal(String matchId, int revealedRound) {
+        Lock lock = gameLocks.get(matchId);
+        if (lock == null) return;
+        lock.lock();
+        try {
+            GameState game = activeGames.get(matchId);
+            if (game == null || game.isComplete() || game.revealedRound != revealedRound
+                    || game.getCurrentRound() != revealedRound) {
+                return; // đã chuyển hiệp bởi nhánh còn lại
+            }
+            game.revealedRound = 0;
+            revealToNextRoundHistogram.recordNanos(System.nanoTime() - game.revealedAtNanos);
+            startNextRound(matchId); // ReentrantLock: startNextRound lấy lại cùng lock
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -456,6 +571,8 @@ public class GameService {
         GameState copy = new GameState(original.getMatchId(), original.getPlayer1Id(), original.getPlayer2Id());
         copy.setPlayer1Score(original.getPlayer1Score());
         copy.setPlayer2Score(original.getPlayer2Score());
+        copy.setCurrentRound(original.getCurrentRound());
+        copy.setPlayerUsernames(original.getPlayer1Username(), original.getPlayer2Username());
         copy.setComplete(original.isComplete());
         return copy;
     }
@@ -464,22 +581,13 @@ public class GameService {
     private void handleGameEnd(GameState completedGame) {
         System.out.println("Handling game end for match " + completedGame.getMatchId());
         String winnerId = getGameWinner(completedGame.getMatchId());
-        try (Connection conn = dbManager.getConnection()) {
-            String sqlUpdate = "UPDATE games SET status = 'COMPLETED', winner_id = ?, player1_score = ?, player2_score = ?, completed_rounds = ?, completed_at = NOW() WHERE match_id = ?";
-            try (PreparedStatement stmt = conn.prepareStatement(sqlUpdate)) {
-                if (winnerId != null) stmt.setInt(1, Integer.parseInt(winnerId));
-                else stmt.setNull(1, java.sql.Types.INTEGER);
-                stmt.setInt(2, completedGame.getPlayer1Score());
-                stmt.setInt(3, completedGame.getPlayer2Score());
-                stmt.setInt(4, completedGame.getCurrentRound());
-                stmt.setString(5, completedGame.getMatchId());
-                stmt.executeUpdate();
-            }
-            String sqlCall = "{CALL update_user_stats_after_game(?)}";
-            try (CallableStatement cstmt = conn.prepareCall(sqlCall)) {
-                cstmt.setString(1, completedGame.getMatchId());
-                cstmt.execute();
-            }
+        RatingEngine.GameRatingResult ratings = applyRatings(completedGame.getPlayer1Id(), completedGame.getPlayer2Id(), winnerId);
+        long completedAt = completedAtNow();
+        try {
+            gameRepository.completeGame(toResultRecord(completedGame.getMatchId(), winnerId,
+                    completedGame.getPlayer1Score(), completedGame.getPlayer2Score(), completedGame.getCurrentRound(),
+                    ratings, completedAt));
+            // user_profiles (W/L, ELO, streak) do RatingEngine ghi theo lô, không cần CALL procedure
             System.out.println("   Persisted final game result to DB for match: " + completedGame.getMatchId());
         } catch (SQLException e) {
             e.printStackTrace();
@@ -491,6 +599,7 @@ public class GameService {
         gameEndPayload.put("winnerId", winnerId);
         notifyPlayer(completedGame.getPlayer1Id(), MessageProtocol.Type.GAME_END, gameEndPayload);
         notifyPlayer(completedGame.getPlayer2Id(), MessageProtocol.Type.GAME_END, gameEndPayload);
+        fireGameEnd(completedGame, winnerId, false, completedAt, ratings);
     }
 
 
@@ -500,6 +609,8 @@ public class GameService {
         if (lock == null) return;
         GameState gameSnapshotForEnd = null;
         String winningPlayerId = null;
+        RatingEngine.GameRatingResult ratings = null;
+        long completedAt = completedAtNow();
         lock.lock();
         try {
             GameState game = activeGames.get(matchId);
@@ -507,18 +618,10 @@ public class GameService {
             System.out.println("Player " + forfeitingPlayerId + " forfeited match " + matchId);
             game.setComplete(true);
             winningPlayerId = forfeitingPlayerId.equals(game.getPlayer1Id()) ? game.getPlayer2Id() : game.getPlayer1Id();
-            try (Connection conn = dbManager.getConnection()) {
-                String sqlUpdate = "UPDATE games SET status = 'ABANDONED', winner_id = ?, completed_at = NOW() WHERE match_id = ?";
-                try (PreparedStatement stmt = conn.prepareStatement(sqlUpdate)) {
-                    stmt.setInt(1, Integer.parseInt(winningPlayerId));
-                    stmt.setString(2, matchId);
-                    stmt.executeUpdate();
-                }
-                String sqlCall = "{CALL update_user_stats_after_game(?)}";
-                try (CallableStatement cstmt = conn.prepareCall(sqlCall)) {
-                    cstmt.setString(1, matchId);
-                    cstmt.execute();
-                }
+            ratings = applyRatings(game.getPlayer1Id(), game.getPlayer2Id(), winningPlayerId);
+            try {
+                gameRepository.abandonGame(toResultRecord(matchId, winningPlayerId,
+                        game.getPlayer1Score(), game.getPlayer2Score(), game.getCurrentRound(), ratings, completedAt));
                 System.out.println("   Persisted forfeit game result to DB for match: " + matchId);
             } catch (SQLException e) {
 
@@ -537,10 +640,44 @@ public class GameService {
             gameEndPayload.put("player2Score", gameSnapshotForEnd.getPlayer2Score());
             // CHỈ GỬI ĐẾN NGƯỜI THẮNG winningPlayerId (vì người kia đã disconnect)
             notifyPlayer(winningPlayerId, MessageProtocol.Type.GAME_END, gameEndPayload);
+            fireGameEnd(gameSnapshotForEnd, winningPlayerId, true, completedAt, ratings);
         }
         cleanupGame(matchId);
     }
 
+    /**
+     * Tính ELO + stats trong bộ nhớ (RatingEngine) và cập nhật rating trong session
+     * để lần ghép trận tiếp theo dùng rating mới. Trận bị hoãn: giữ rating cũ trong session.
+     */
+    private RatingEngine.GameRatingResult applyRatings(String player1Id, String player2Id, String winnerId) {
+        RatingEngine.GameRatingResult result = ratingEngine.applyGameResult(player1Id, player2Id, winnerId);
+        if (!result.isApplied()) return result;
+        updateSessionRating(player1Id, result.getPlayer1After());
+        updateSessionRating(player2Id, result.getPlayer2After());
+        return result;
+    }
+
+    private void updateSessionRating(String userId, double rating) {
+        if (sessionManager == null) return;
+        SessionManager.SessionContext ctx = sessionManager.getSessionByUserId(userId);
+        if (ctx != null) ctx.setRating(rating);
+    }
+
+    private static GameResultRecord toResultRecord(String matchId, String winnerId, int player1Score, int player2Score,
+                                                   int completedRounds, RatingEngine.GameRatingResult r, long completedAtMillis) {
+        return new GameResultRecord(matchId, winnerId != null ? Integer.valueOf(winnerId) : null,
+                player1Score, player2Score, completedRounds,
+                r.getPlayer1Before(), r.getPlayer1After(), r.getPlayer2Before(), r.getPlayer2After(), completedAtMillis);
+    }
+
+    /**
+     * Thời điểm kết thúc tròn giây: cùng một giá trị ghi vào games.completed_at (TIMESTAMP không có phần
+     * lẻ giây) và gửi cho listener, để con trỏ phân trang lịch sử đấu trong bộ nhớ khớp với DB.
+     */
+    private static long completedAtNow() {
+        return System.currentTimeMillis() / 1000 * 1000;
+    }
+
     /* Gửi thông báo cho người chơi. */
     private void notifyPlayer(String userId, String messageType, Object payload) {
         ClientConnectionHandler handler = activeConnections.get(userId);
@@ -594,43 +731,19 @@ public class GameService {
 
     /*  Lưu game mới vào DB. */
     private void persistNewGame(GameState game) throws SQLException {
-        String sql = "INSERT INTO games (match_id, player1_id, player2_id, game_mode, total_rounds, status, started_at) " +
-                "VALUES (?, ?, ?, 'QUICK', ?, 'IN_PROGRESS', NOW())";
-        try (Connection conn = dbManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, game.getMatchId());
-            stmt.setInt(2, Integer.parseInt(game.getPlayer1Id()));
-            stmt.setInt(3, Integer.parseInt(game.getPlayer2Id()));
-            stmt.setInt(4, GameConstants.TOTAL_ROUNDS);
-            stmt.executeUpdate();
-        }
+        gameRepository.createGame(game.getMatchId(), Integer.parseInt(game.getPlayer1Id()),
+                Integer.parseInt(game.getPlayer2Id()), GameConstants.TOTAL_ROUNDS);
     }
 
     /* Lưu kết quả round vào DB. */
     private void persistRoundResult(GameState game, CardDto p1Card, CardDto p2Card, int p1RoundScore, int p2RoundScore) throws SQLException {
-        String sql = "INSERT INTO game_rounds (match_id, round_number, " +
-                "player1_card_id, player1_card_value, player1_is_auto_picked, " +
-                "player2_card_id, player2_card_value, player2_is_auto_picked, " +
-                "round_winner_id, player1_round_score, player2_round_score, completed_at) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, NOW())";
-        String roundWinnerId = null;
-        if (p1RoundScore > p2RoundScore) roundWinnerId = game.getPlayer1Id();
-        else if (p2RoundScore > p1RoundScore) roundWinnerId = game.getPlayer2Id();
-        try (Connection conn = dbManager.getConnection(); PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, game.getMatchId());
-            stmt.setInt(2, game.getCurrentRound());
-            stmt.setInt(3, p1Card.getCardId());
-            stmt.setInt(4, p1Card.getValue());
-            stmt.setBoolean(5, game.isPlayer1AutoPicked());
-            stmt.setInt(6, p2Card.getCardId());
-            stmt.setInt(7, p2Card.getValue());
-            stmt.setBoolean(8, game.isPlayer2AutoPicked());
-            if (roundWinnerId != null) stmt.setInt(9, Integer.parseInt(roundWinnerId));
-            else stmt.setNull(9, java.sql.Types.INTEGER);
-            stmt.setInt(10, p1RoundScore);
-            stmt.setInt(11, p2RoundScore);
-            stmt.executeUpdate();
-        }
+        Integer roundWinnerId = null;
+        if (p1RoundScore > p2RoundScore) roundWinnerId = Integer.valueOf(game.getPlayer1Id());
+        else if (p2RoundScore > p1RoundScore) roundWinnerId = Integer.valueOf(game.getPlayer2Id());
+        gameRepository.saveRound(new GameRoundRecord(game.getMatchId(), game.getCurrentRound(),
+                p1Card.getCardId(), p1Card.getValue(), game.isPlayer1AutoPicked(),
+                p2Card.getCardId(), p2Card.getValue(), game.isPlayer2AutoPicked(),
+                roundWinnerId, p1RoundScore, p2RoundScore));
     }
 
     public GameState getGameState(String matchId) {
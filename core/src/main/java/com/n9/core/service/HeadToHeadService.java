@@ -0,0 +1,242 @@
+package com.n9.core.service;
+
+import com.n9.core.metrics.LatencyHistogram;
+import com.n9.core.metrics.MetricsRegistry;
+import com.n9.core.repository.GameRepository;
+import com.n9.core.repository.HeadToHeadRecord;
+import com.n9.core.repository.MatchHistoryRecord;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HeadToHeadService - Thành tích đối đầu giữa hai người chơi (LOBBY.GET_HEAD_TO_HEAD),
+ * xem trước khi nhận GAME.CHALLENGE_OFFER.
+ *
+ * Không truy vấn games cho mỗi lời thách đấu:
+ * - LRU tối đa MAX_CACHED_PAIRS cặp, khóa = (userId nhỏ, userId lớn). Cặp chưa có: gộp một lần
+ *   từ DB (GameRepository.findHeadToHead) rồi giữ lại.
+ * - Mỗi trận kết thúc cộng thẳng vào tổng của cặp nếu cặp đang trong cache: O(1), không đọc DB.
+ * - Trận kết thúc trong lúc cặp đang được nạp: giữ tạm, khi nạp xong chỉ cộng những trận
+ *   chưa có trong kết quả truy vấn (so với recentMatchIds) → không đếm trùng, không sót.
+ * - GameService ghi kết quả vào DB TRƯỚC khi phát sự kiện: truy vấn nạp có thể đã gồm một ván
+ *   mà sự kiện của nó đến SAU khi nạp xong. Aggregate giữ recentMatchIds thêm RECENT_WINDOW_MS
+ *   sau khi nạp và bỏ qua sự kiện trùng trong khoảng đó.
+ */
+public class HeadToHeadService implements GameEndListener {
+
+    static final int MAX_CACHED_PAIRS = 10_000;
+    /** Sự kiện đến trong lúc nạp luôn thuộc các ván kết thúc trong khoảng này trước khi nạp. */
+    private static final long RECENT_WINDOW_MS = 60_000;
+
+    /** Tổng đối đầu của một cặp, theo hướng low (userId nhỏ) vs high. */
+    static final class Aggregate {
+        final int lowId;
+        final int highId;
+        int games;
+        int lowWins;
+        int highWins;
+        int scoredGames;
+        long lowScore;
+        long highScore;
+        Long lastPlayedMillis;
+        boolean loaded;
+        List<MatchHistoryRecord> pending = new ArrayList<>(); // trận đến trong lúc nạp
+        Set<String> countedMatchIds;  // ván gần đây đã có trong kết quả nạp, null khi hết hạn
+        long countedUntilMillis;
+
+        Aggregate(int lowId, int highId) {
+            this.lowId = lowId;
+            this.highId = highId;
+        }
+
+        void load(HeadToHeadRecord record, long nowMillis) {
+            boolean lowView = record.getUserId() == lowId;
+            games = record.getGames();
+            lowWins = lowView ? record.getWins() : record.getLosses();
+            highWins = lowView ? record.getLosses() : record.getWins();
+            scoredGames = record.getScoredGames();
+            lowScore = lowView ? record.getScoreTotal() : record.getOpponentScoreTotal();
+            highScore = lowView ? record.getOpponentScoreTotal() : record.getScoreTotal();
+            lastPlayedMillis = record.getLastPlayedMillis();
+            countedMatchIds = new HashSet<>(record.getRecentMatchIds());
+            countedUntilMillis = nowMillis + RECENT_WINDOW_MS;
+            for (MatchHistoryRecord game : pending) {
+                applyOnce(game, nowMillis);
+            }
+            pending = null;
+            loaded = true;
+        }
+
+        /** Cộng trận nếu kết quả nạp chưa gồm nó (mỗi sự kiện chỉ đến một lần nên xóa khỏi tập). */
+        void applyOnce(MatchHistoryRecord game, long nowMillis) {
+            if (countedMatchIds != null && nowMillis > countedUntilMillis) {
+                countedMatchIds = null;
+            }
+            if (countedMatchIds != null && countedMatchIds.remove(game.getMatchId())) {
+                return;
+            }
+            apply(game);
+        }
+
+        void apply(MatchHistoryRecord game) {
+            boolean lowIsPlayer1 = game.getPlayer1Id() == lowId;
+            games++;
+            Integer winnerId = game.getWinnerId();
+            if (winnerId != null && winnerId == lowId) lowWins++;
+            if (winnerId != null && winnerId == highId) highWins++;
+            if (!game.isAbandoned()) {
+                scoredGames++;
+                lowScore += lowIsPlayer1 ? game.getPlayer1Score() : game.getPlayer2Score();
+                highScore += lowIsPlayer1 ? game.getPlayer2Score() : game.getPlayer1Score();
+            }
+            if (lastPlayedMillis == null || game.getCompletedAtMillis() > lastPlayedMillis) {
+                lastPlayedMillis = game.getCompletedAtMillis();
+            }
+        }
+
+        /** Bản sao nhìn từ phía userId. */
+        HeadToHeadRecord view(int userId) {
+            boolean lowView = userId == lowId;
+            return new HeadToHeadRecord(userId, lowView ? highId : lowId, games,
+                    lowView ? lowWins : highWins, lowView ? highWins : lowWins, scoredGames,
+                    lowView ? lowScore : highScore, lowView ? highScore : lowScore, lastPlayedMillis, null);
+        }
+    }
+
+    private final GameRepository gameRepository;
+
+    // LRU theo thứ tự truy cập. Mọi truy cập nằm trong synchronized (this).
+    private final LinkedHashMap<Long, Aggregate> pairs =
+            new LinkedHashMap<>(1024, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Aggregate> eldest) {
+                    return size() > MAX_CACHED_PAIRS;
+                }
+            };
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LatencyHistogram loadLatency;
+
+    public HeadToHeadService(GameRepository gameRepository) {
+        this.gameRepository = gameRepository;
+
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        this.loadLatency = metrics.histogram("headToHead.load");
+        metrics.gauge("headToHead.cachedPairs", this::getCachedPairs);
+        metrics.gauge("headToHead.hits", hits::sum);
+        metrics.gauge("headToHead.loads", loads::sum);
+    }
+
+    @Override
+    public void onGameEnd(GameEndEvent event) {
+        MatchHistoryRecord game = event.toHistoryRecord();
+        Aggregate aggregate;
+        synchronized (this) {
+            aggregate = pairs.get(pairKey(game.getPlayer1Id(), game.getPlayer2Id()));
+        }
+        if (aggregate == null) {
+            return; // cặp chưa được xem, lần xem đầu sẽ nạp từ DB
+        }
+        synchronized (aggregate) {
+            if (aggregate.loaded) {
+                aggregate.applyOnce(game, System.currentTimeMillis());
+            } else {
+                aggregate.pending.add(game);
+            }
+        }
+    }
+
+    /**
+     * Đối đầu userId vs opponentId: games, wins, losses, draws, avgScore, opponentAvgScore, lastPlayedAt.
+     */
+    public Map<String, Object> getHeadToHead(int userId, int opponentId) throws SQLException {
+        if (userId == opponentId) {
+            throw new IllegalArgumentException("Cannot compare a player with themselves");
+        }
+        return toMap(find(userId, opponentId));
+    }
+
+    HeadToHeadRecord find(int userId, int opponentId) throws SQLException {
+        long key = pairKey(userId, opponentId);
+        Aggregate aggregate;
+        boolean created = false;
+        synchronized (this) {
+            aggregate = pairs.get(key);
+            if (aggregate == null) {
+                aggregate = new Aggregate(Math.min(userId, opponentId), Math.max(userId, opponentId));
+                pairs.put(key, aggregate);
+                created = true;
+            }
+        }
+        if (!created) {
+            synchronized (aggregate) {
+                if (aggregate.loaded) {
+                    hits.increment();
+                    return aggregate.view(userId);
+                }
+            }
+            // Một request khác đang nạp cặp này: đọc thẳng DB, không chờ
+            return loadFromDatabase(userId, opponentId);
+        }
+
+        HeadToHeadRecord record;
+        try {
+            record = loadFromDatabase(userId, opponentId);
+        } catch (SQLException | RuntimeException e) {
+            synchronized (this) {
+                pairs.remove(key, aggregate);
+            }
+            throw e;
+        }
+        synchronized (aggregate) {
+            aggregate.load(record, System.currentTimeMillis());
+            return aggregate.view(userId);
+        }
+    }
+
+    public synchronized int getCachedPairs() {
+        return pairs.size();
+    }
+
+    // ============================
+    // NỘI BỘ
+    // ============================
+
+    private HeadToHeadRecord loadFromDatabase(int userId, int opponentId) throws SQLException {
+        long startNanos = System.nanoTime();
+        HeadToHeadRecord record = gameRepository.findHeadToHead(userId, opponentId,
+                System.currentTimeMillis() - RECENT_WINDOW_MS);
+        loadLatency.recordNanos(System.nanoTime() - startNanos);
+        loads.increment();
+        return record;
+    }
+
+    private static long pairKey(int a, int b) {
+        return ((long) Math.min(a, b) << 32) | (Math.max(a, b) & 0xFFFFFFFFL);
+    }
+
+    private static Map<String, Object> toMap(HeadToHeadRecord record) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("opponentId", record.getOpponentId());
+        result.put("games", record.getGames());
+        result.put("wins", record.getWins());
+        result.put("losses", record.getLosses());
+        result.put("draws", record.getDraws());
+        result.put("avgScore", average(record.getScoreTotal(), record.getScoredGames()));
+        result.put("opponentAvgScore", average(record.getOpponentScoreTotal(), record.getScoredGames()));
+        result.put("lastPlayedAt", record.getLastPlayedMillis());
+        return result;
+    }
+
+    /** null nếu chưa có ván nào có điểm. */
+    private static Double average(long total, int games) {
+        return games == 0 ? null : Math.round(total * 100.0 / games) / 100.0;
+    }
+}
@@ -0,0 +1,137 @@
+package com.n9.core.service;
+
+import com.n9.core.metrics.MetricsRegistry;
+import com.n9.core.repository.UserRepository;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LastLoginFlusher - Gom các lần cập nhật users.last_login và ghi theo lô.
+ *
+ * Thay cho việc tạo một Thread mới + lấy một connection cho MỖI lần login:
+ * - record() chỉ ghi thời điểm login mới nhất của userId vào ConcurrentHashMap
+ *   (nhiều lần login của cùng user trong 1 chu kỳ gộp thành 1 dòng)
+ * - flush() chạy định kỳ trên luồng riêng (không phải scheduler của ván đấu: UPDATE có thể phải chờ
+ *   bulkhead SESSION), ghi tất cả bằng UPDATE ... CASE theo lô
+ * - Bộ nhớ bị chặn: quá PENDING_SOFT_LIMIT thì kích hoạt flush sớm,
+ *   quá PENDING_HARD_LIMIT thì bỏ bản ghi (last_login chỉ là thông tin hiển thị)
+ * - shutdown() flush nốt phần còn lại trước khi đóng pool
+ */
+public class LastLoginFlusher {
+
+    private static final long FLUSH_INTERVAL_MS = 5_000;
+    private static final int BATCH_SIZE = 500;
+    private static final int PENDING_SOFT_LIMIT = 10_000;
+    private static final int PENDING_HARD_LIMIT = 50_000;
+
+    private final UserRepository userRepository;
+    private final ConcurrentHashMap<Integer, Long> pendingLogins = new ConcurrentHashMap<>();
+    private final AtomicBoolean earlyFlushScheduled = new AtomicBoolean(false);
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final Object flushLock = new Object();
+    private final ScheduledExecutorService flushExecutor;
+    private volatile boolean started = false;
+
+    public LastLoginFlusher(UserRepository userRepository) {
+        this.userRepository = userRepository;
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "last-login-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        MetricsRegistry.getInstance().gauge("auth.lastLogin.pending", this::getPendingCount);
+        MetricsRegistry.getInstance().gauge("auth.lastLogin.dropped", this::getDroppedCount);
+    }
+
+    public void start() {
+        started = true;
+        flushExecutor.scheduleWithFixedDelay(this::flushQuietly, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Ghi nhận user vừa đăng nhập (O(1), không chạm DB).
+     */
+    public void record(int userId) {
+        int size = pendingLogins.size();
+        if (size >= PENDING_HARD_LIMIT && !pendingLogins.containsKey(userId)) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        pendingLogins.merge(userId, System.currentTimeMillis(), Math::max);
+
+        if (size >= PENDING_SOFT_LIMIT && started && earlyFlushScheduled.compareAndSet(false, true)) {
+            flushExecutor.execute(() -> {
+                try {
+                    flushQuietly();
+                } finally {
+                    earlyFlushScheduled.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Ghi toàn bộ các login đang chờ xuống DB.
+     *
+     * @return số user đã được cập nhật
+     */
+    public int flush() throws SQLException {
+        synchronized (flushLock) {
+            if (pendingLogins.isEmpty()) return 0;
+
+            // Snapshot rồi remove(key, value): login mới hơn đến trong lúc flush sẽ được giữ lại cho lần sau
+            List<Map.Entry<Integer, Long>> batch = new ArrayList<>(pendingLogins.size());
+            for (Map.Entry<Integer, Long> entry : pendingLogins.entrySet()) {
+                batch.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+
+            int written = 0;
+            for (int from = 0; from < batch.size(); from += BATCH_SIZE) {
+                List<Map.Entry<Integer, Long>> chunk = batch.subList(from, Math.min(batch.size(), from + BATCH_SIZE));
+                userRepository.updateLastLogins(chunk); // một câu UPDATE ... CASE cho cả chunk
+                for (Map.Entry<Integer, Long> entry : chunk) {
+                    pendingLogins.remove(entry.getKey(), entry.getValue());
+                }
+                written += chunk.size();
+            }
+            return written;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to flush last_login batch: " + e.getMessage());
+        } catch (RuntimeException e) {
+            // Lọt ra scheduleWithFixedDelay sẽ hủy mọi lần flush sau mà không báo gì
+            System.err.println("❌ Unexpected error flushing last_login batch: " + e);
+            e.printStackTrace();
+        }
+    }
+
+    public int getPendingCount() {
+        return pendingLogins.size();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Flush lần cuối (gọi trong shutdown hook, TRƯỚC repositories.shutdown()).
+     */
+    public void shutdown() {
+        flushExecutor.shutdownNow();
+        flushQuietly();
+    }
+}
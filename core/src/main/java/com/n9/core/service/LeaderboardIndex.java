@@ -0,0 +1,423 @@
+package com.n9.core.service;
+
+import com.n9.core.repository.StatsRepository;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * LeaderboardIndex - Bảng xếp hạng trong bộ nhớ (order-statistic skip list).
+ *
+ * Thứ tự giống truy vấn SQL cũ: games_won DESC, games_played ASC, username ASC (không phân biệt
+ * hoa thường như collation utf8mb4_unicode_ci), cuối cùng user_id để khóa luôn duy nhất.
+ * Chỉ gồm người chơi có games_played > 0.
+ *
+ * Mỗi tầng của skip list lưu span (số node bị nhảy qua) nên:
+ * - rankOf(userId): O(log n) - thay cho ROW_NUMBER() OVER (...) trên toàn bảng
+ * - page(offset, limit): O(log n + limit) - thay cho LIMIT/OFFSET (chậm dần ở trang sâu)
+ * - neighbourhood(userId, k): O(log n + k) - "xung quanh tôi"
+ * - update sau mỗi trận: O(log n)
+ *
+ * Nạp một lần lúc khởi động (stream bảng), sau đó cập nhật qua GameEndListener.
+ */
+public class LeaderboardIndex implements GameEndListener {
+
+    /**
+     * Một dòng bảng xếp hạng. Các trường dùng để sắp xếp là bất biến: khi stats đổi,
+     * entry cũ bị xóa và entry mới được chèn.
+     */
+    public static class Entry {
+        private final int userId;
+        private final String username;
+        private final String usernameKey;
+        private final int gamesPlayed;
+        private final int gamesWon;
+        private final int gamesLost;
+        private volatile Long lastLoginMillis;
+
+        Entry(int userId, String username, int gamesPlayed, int gamesWon, int gamesLost, Long lastLoginMillis) {
+            this.userId = userId;
+            this.username = username;
+            this.usernameKey = username == null ? "" : username.toLowerCase(Locale.ROOT);
+            this.gamesPlayed = gamesPlayed;
+            this.gamesWon = gamesWon;
+            this.gamesLost = gamesLost;
+            this.lastLoginMillis = lastLoginMillis;
+        }
+
+        public int getUserId() { return userId; }
+        public String getUsername() { return username; }
+        public int getGamesPlayed() { return gamesPlayed; }
+        public int getGamesWon() { return gamesWon; }
+        public int getGamesLost() { return gamesLost; }
+        public Long getLastLoginMillis() { return lastLoginMillis; }
+
+        /** Tỷ lệ thắng (%) làm tròn 2 chữ số, giống ROUND(games_won * 100.0 / games_played, 2). */
+        public double getWinRate() {
+            return gamesPlayed > 0 ? Math.round(gamesWon * 10000.0 / gamesPlayed) / 100.0 : 0.0;
+        }
+    }
+
+    /** Một dòng kèm rank (1-based) tại thời điểm đọc. */
+    public static class RankedEntry {
+        private final int rank;
+        private final Entry entry;
+
+        RankedEntry(int rank, Entry entry) {
+            this.rank = rank;
+            this.entry = entry;
+        }
+
+        public int getRank() { return rank; }
+        public Entry getEntry() { return entry; }
+    }
+
+    static final Comparator<Entry> ORDER = Comparator
+            .comparingInt((Entry e) -> -e.gamesWon)
+            .thenComparingInt(e -> e.gamesPlayed)
+            .thenComparing(e -> e.usernameKey)
+            .thenComparingInt(e -> e.userId);
+
+    private static final int MAX_LEVEL = 32;
+
+    private static final class Node {
+        final Entry entry;
+        final Node[] next;
+        final int[] span;
+
+        Node(int level, Entry entry) {
+            this.entry = entry;
+            this.next = new Node[level];
+            this.span = new int[level];
+        }
+    }
+
+    private final StatsRepository statsRepository;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final HashMap<Integer, Entry> byUserId = new HashMap<>();
+    private Node head = new Node(MAX_LEVEL, null);
+    private int level = 1;
+    private int length = 0;
+    private volatile boolean loaded = false;
+    // Tăng mỗi khi thứ tự/stats thay đổi (trong write lock) → khóa cache trang leaderboard
+    private volatile long version = 0;
+
+    public LeaderboardIndex(StatsRepository statsRepository) {
+        this.statsRepository = statsRepository;
+    }
+
+    /**
+     * Stream toàn bộ người chơi đã có trận vào index.
+     */
+    public void loadFromDatabase() throws SQLException {
+        long startedAt = System.currentTimeMillis();
+        List<Entry> entries = new ArrayList<>();
+        statsRepository.forEachRankedPlayer(r -> entries.add(new Entry(r.getUserId(), r.getUsername(),
+                r.getGamesPlayed(), r.getGamesWon(), r.getGamesLost(), r.getLastLoginMillis())));
+        lock.writeLock().lock();
+        try {
+            clear();
+            for (Entry entry : entries) {
+                putInternal(entry);
+            }
+            version++;
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        System.out.println("✅ LeaderboardIndex loaded " + entries.size() + " players in "
+                + (System.currentTimeMillis() - startedAt) + " ms");
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /** Đánh dấu đã nạp khi dữ liệu được đưa vào bằng update() (benchmark / công cụ test không có DB). */
+    void markLoaded() {
+        loaded = true;
+    }
+
+    /**
+     * Phiên bản dữ liệu hiện tại. Đọc version TRƯỚC khi đọc dữ liệu: dữ liệu đọc được
+     * không bao giờ cũ hơn version đó.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Cập nhật stats của một người chơi (xóa vị trí cũ, chèn vị trí mới). O(log n).
+     *
+     * @param username null = giữ username đang có trong index
+     */
+    public void update(int userId, String username, int gamesPlayed, int gamesWon, int gamesLost) {
+        lock.writeLock().lock();
+        try {
+            Entry old = byUserId.get(userId);
+            String name = username != null ? username : (old != null ? old.username : null);
+            Long lastLogin = old != null ? old.lastLoginMillis : null;
+            if (old != null) {
+                removeInternal(old);
+            }
+            if (gamesPlayed > 0 && name != null) {
+                putInternal(new Entry(userId, name, gamesPlayed, gamesWon, gamesLost, lastLogin));
+            }
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Cập nhật last_login (không ảnh hưởng thứ tự, không đổi version: trang cache đọc lại khi trả).
+     */
+    public void touchLastLogin(int userId, long lastLoginMillis) {
+        lock.readLock().lock();
+        try {
+            Entry entry = byUserId.get(userId);
+            if (entry != null) entry.lastLoginMillis = lastLoginMillis;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Chỉ nhận stats RatingEngine đã nạp từ DB. Trận bị hoãn (chưa áp) bỏ qua ở đây
+     * và được cập nhật qua onDeferredResult khi RatingEngine áp lại.
+     */
+    @Override
+    public void onGameEnd(GameEndEvent event) {
+        RatingEngine.GameRatingResult ratings = event.getRatings();
+        if (ratings == null || !ratings.isApplied()) return;
+        RatingEngine.ProfileStats p1 = ratings.getPlayer1Stats();
+        RatingEngine.ProfileStats p2 = ratings.getPlayer2Stats();
+        update(p1.getUserId(), usernameOrNull(event.getPlayer1Username()), p1.getGamesPlayed(), p1.getGamesWon(), p1.getGamesLost());
+        update(p2.getUserId(), usernameOrNull(event.getPlayer2Username()), p2.getGamesPlayed(), p2.getGamesWon(), p2.getGamesLost());
+    }
+
+    /**
+     * Kết quả trận hoãn vừa được RatingEngine áp (RatingEngine.setDeferredResultListener).
+     * Không có username: người chơi chưa có trong index sẽ vào ở lần loadFromDatabase sau.
+     */
+    public void onDeferredResult(RatingEngine.GameRatingResult ratings) {
+        RatingEngine.ProfileStats p1 = ratings.getPlayer1Stats();
+        RatingEngine.ProfileStats p2 = ratings.getPlayer2Stats();
+        update(p1.getUserId(), null, p1.getGamesPlayed(), p1.getGamesWon(), p1.getGamesLost());
+        update(p2.getUserId(), null, p2.getGamesPlayed(), p2.getGamesWon(), p2.getGamesLost());
+    }
+
+    /**
+     * @return rank 1-based, hoặc -1 nếu user chưa có trong bảng xếp hạng
+     */
+    public int rankOf(int userId) {
+        lock.readLock().lock();
+        try {
+            Entry entry = byUserId.get(userId);
+            return entry != null ? rankInternal(entry) : -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Entry + rank của một user, hoặc null.
+     */
+    public RankedEntry get(int userId) {
+        lock.readLock().lock();
+        try {
+            Entry entry = byUserId.get(userId);
+            return entry != null ? new RankedEntry(rankInternal(entry), entry) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Một trang bảng xếp hạng. O(log n + limit).
+     */
+    public List<RankedEntry> page(int offset, int limit) {
+        if (offset < 0 || limit <= 0) return Collections.emptyList();
+        lock.readLock().lock();
+        try {
+            if (offset >= length) return Collections.emptyList();
+            List<RankedEntry> result = new ArrayList<>(Math.min(limit, length - offset));
+            Node node = nodeAtRank(offset + 1);
+            int rank = offset + 1;
+            while (node != null && result.size() < limit) {
+                result.add(new RankedEntry(rank++, node.entry));
+                node = node.next[0];
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * K người chơi phía trên + chính user + K người phía dưới, trong cùng một lần giữ lock.
+     * O(log n + K). Rỗng nếu user chưa có trong bảng xếp hạng.
+     */
+    public List<RankedEntry> neighbourhood(int userId, int k) {
+        lock.readLock().lock();
+        try {
+            Entry entry = byUserId.get(userId);
+            if (entry == null) return Collections.emptyList();
+            int rank = rankInternal(entry);
+            int from = Math.max(1, rank - k);
+            int to = Math.min(length, rank + k);
+            List<RankedEntry> result = new ArrayList<>(to - from + 1);
+            Node node = nodeAtRank(from);
+            for (int r = from; r <= to && node != null; r++) {
+                result.add(new RankedEntry(r, node.entry));
+                node = node.next[0];
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return length;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ============================
+    // SKIP LIST (gọi khi đang giữ lock)
+    // ============================
+
+    private void clear() {
+        head = new Node(MAX_LEVEL, null);
+        level = 1;
+        length = 0;
+        byUserId.clear();
+    }
+
+    private void putInternal(Entry entry) {
+        Entry old = byUserId.put(entry.userId, entry);
+        if (old != null) {
+            removeNode(old);
+        }
+        insertNode(entry);
+    }
+
+    private void removeInternal(Entry entry) {
+        if (byUserId.remove(entry.userId, entry)) {
+            removeNode(entry);
+        }
+    }
+
+    private void insertNode(Entry entry) {
+        Node[] update = new Node[MAX_LEVEL];
+        int[] rank = new int[MAX_LEVEL];
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            rank[i] = (i == level - 1) ? 0 : rank[i + 1];
+            while (x.next[i] != null && ORDER.compare(x.next[i].entry, entry) < 0) {
+                rank[i] += x.span[i];
+                x = x.next[i];
+            }
+            update[i] = x;
+        }
+        int newLevel = randomLevel();
+        if (newLevel > level) {
+            for (int i = level; i < newLevel; i++) {
+                rank[i] = 0;
+                update[i] = head;
+                head.span[i] = length;
+            }
+            level = newLevel;
+        }
+        Node node = new Node(newLevel, entry);
+        for (int i = 0; i < newLevel; i++) {
+            node.next[i] = update[i].next[i];
+            update[i].next[i] = node;
+            node.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+            update[i].span[i] = (rank[0] - rank[i]) + 1;
+        }
+        for (int i = newLevel; i < level; i++) {
+            update[i].span[i]++;
+        }
+        length++;
+    }
+
+    private void removeNode(Entry entry) {
+        Node[] update = new Node[MAX_LEVEL];
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && ORDER.compare(x.next[i].entry, entry) < 0) {
+                x = x.next[i];
+            }
+            update[i] = x;
+        }
+        Node target = x.next[0];
+        if (target == null || ORDER.compare(target.entry, entry) != 0) return;
+        for (int i = 0; i < level; i++) {
+            if (update[i].next[i] == target) {
+                update[i].span[i] += target.span[i] - 1;
+                update[i].next[i] = target.next[i];
+            } else {
+                update[i].span[i]--;
+            }
+        }
+        while (level > 1 && head.next[level - 1] == null) {
+            level--;
+        }
+        length--;
+    }
+
+    private int rankInternal(Entry entry) {
+        int rank = 0;
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && ORDER.compare(x.next[i].entry, entry) <= 0) {
+                rank += x.span[i];
+                x = x.next[i];
+            }
+            if (x != head && x.entry == entry) {
+                return rank;
+            }
+        }
+        return -1;
+    }
+
+    private Node nodeAtRank(int rank) {
+        int traversed = 0;
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && traversed + x.span[i] <= rank) {
+                traversed += x.span[i];
+                x = x.next[i];
+            }
+            if (traversed == rank) {
+                return x;
+            }
+        }
+        return null;
+    }
+
+    private static int randomLevel() {
+        int lvl = 1;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (lvl < MAX_LEVEL && random.nextInt(4) == 0) { // p = 1/4
+            lvl++;
+        }
+        return lvl;
+    }
+
+    private static String usernameOrNull(String username) {
+        return username == null || "Unknown".equals(username) ? null : username;
+    }
+}
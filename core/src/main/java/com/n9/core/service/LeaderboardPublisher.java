@@ -0,0 +1,282 @@
+package com.n9.core.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.n9.core.metrics.LatencyHistogram;
+import com.n9.core.metrics.MetricsRegistry;
+import com.n9.core.network.ClientConnectionHandler;
+import com.n9.shared.MessageProtocol;
+import com.n9.shared.protocol.MessageEnvelope;
+import com.n9.shared.protocol.MessageFactory;
+import com.n9.shared.util.JsonUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LeaderboardPublisher - Đẩy top-N leaderboard trực tiếp cho client đã đăng ký.
+ *
+ * Thay cho việc client tự GET_LEADERBOARD định kỳ:
+ * - LOBBY.LEADERBOARD_SUBSCRIBE trả về snapshot top-N + seq
+ * - Mỗi PUSH_INTERVAL_MS, so top-N hiện tại (thứ hạng, số trận, cờ online) với lần trước,
+ *   chỉ gửi các dòng thay đổi + userId rơi khỏi top-N (LOBBY.LEADERBOARD_DELTA).
+ *   Mọi thay đổi trong một chu kỳ gộp thành tối đa một push cho mỗi subscriber.
+ * - Subscriber được nhóm theo topN: mỗi nhóm diff một lần, payload delta serialize một lần,
+ *   chỉ envelope (sessionId) là riêng cho từng người.
+ *
+ * seq tăng 1 sau mỗi delta của nhóm; client bỏ qua delta có seq <= seq của snapshot,
+ * thấy seq nhảy cóc thì subscribe lại để lấy snapshot mới.
+ */
+public class LeaderboardPublisher {
+
+    public static final int DEFAULT_TOP_N = 20;
+    public static final int MAX_TOP_N = 100;
+    private static final long PUSH_INTERVAL_MS = 1_000;
+
+    /** Trạng thái một dòng top-N tại lần push trước. */
+    private static final class Row {
+        final int rank;
+        final int userId;
+        final String username;
+        final int gamesPlayed;
+        final int gamesWon;
+        final int gamesLost;
+        final double winRate;
+        final boolean online;
+
+        Row(LeaderboardIndex.RankedEntry ranked, boolean online) {
+            LeaderboardIndex.Entry entry = ranked.getEntry();
+            this.rank = ranked.getRank();
+            this.userId = entry.getUserId();
+            this.username = entry.getUsername();
+            this.gamesPlayed = entry.getGamesPlayed();
+            this.gamesWon = entry.getGamesWon();
+            this.gamesLost = entry.getGamesLost();
+            this.winRate = entry.getWinRate();
+            this.online = online;
+        }
+
+        boolean sameAs(Row other) {
+            return other != null && rank == other.rank && gamesPlayed == other.gamesPlayed
+                    && gamesWon == other.gamesWon && gamesLost == other.gamesLost
+                    && online == other.online && Objects.equals(username, other.username);
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("rank", rank);
+            map.put("userId", userId);
+            map.put("username", username);
+            map.put("gamesPlayed", gamesPlayed);
+            map.put("gamesWon", gamesWon);
+            map.put("gamesLost", gamesLost);
+            map.put("winRate", winRate);
+            map.put("online", online);
+            return map;
+        }
+    }
+
+    /** Các subscriber cùng topN: dùng chung một lần diff và một payload. */
+    private static final class Group {
+        final int topN;
+        final Set<String> subscribers = ConcurrentHashMap.newKeySet();
+        Map<Integer, Row> lastRows;   // userId -> Row, chỉ truy cập trong synchronized(group)
+        long seq;
+
+        Group(int topN) {
+            this.topN = topN;
+        }
+    }
+
+    private final LeaderboardIndex leaderboardIndex;
+    private final SessionManager sessionManager;
+    private final ConcurrentHashMap<String, ClientConnectionHandler> activeConnections;
+
+    private final ConcurrentHashMap<Integer, Group> groups = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Integer> topNByUser = new ConcurrentHashMap<>();
+    private final LongAdder deltasSerialized = new LongAdder();
+    private final LongAdder pushesSent = new LongAdder();
+    private final LatencyHistogram tickLatency;
+
+    public LeaderboardPublisher(LeaderboardIndex leaderboardIndex, SessionManager sessionManager,
+                                ConcurrentHashMap<String, ClientConnectionHandler> activeConnections) {
+        this.leaderboardIndex = leaderboardIndex;
+        this.sessionManager = sessionManager;
+        this.activeConnections = activeConnections;
+
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        this.tickLatency = metrics.histogram("leaderboard.push.tick");
+        metrics.gauge("leaderboard.push.subscribers", topNByUser::size);
+        metrics.gauge("leaderboard.push.deltasSerialized", deltasSerialized::sum);
+        metrics.gauge("leaderboard.push.sent", pushesSent::sum);
+    }
+
+    public void start(ScheduledExecutorService scheduler) {
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                publishDeltas();
+            } catch (Exception e) {
+                System.err.println("❌ Leaderboard push failed: " + e.getMessage());
+            }
+        }, PUSH_INTERVAL_MS, PUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Đăng ký (hoặc đổi topN) cho user. Trả về snapshot: topN, seq, rows.
+     */
+    public Map<String, Object> subscribe(String userId, int requestedTopN) {
+        int topN = Math.max(1, Math.min(MAX_TOP_N, requestedTopN));
+        Integer previous = topNByUser.put(userId, topN);
+        if (previous != null && previous != topN) {
+            leaveGroup(userId, previous);
+        }
+
+        while (true) {
+            Group group = groups.computeIfAbsent(topN, Group::new);
+            synchronized (group) {
+                if (groups.get(topN) != group) {
+                    continue; // nhóm vừa bị gỡ do hết subscriber
+                }
+                group.subscribers.add(userId);
+                if (group.lastRows == null) {
+                    group.lastRows = computeRows(leaderboardIndex.page(0, topN));
+                }
+                List<Map<String, Object>> rows = new ArrayList<>(group.lastRows.size());
+                for (Row row : group.lastRows.values()) {
+                    rows.add(row.toMap());
+                }
+                Map<String, Object> snapshot = new HashMap<>();
+                snapshot.put("topN", topN);
+                snapshot.put("seq", group.seq);
+                snapshot.put("rows", rows);
+                snapshot.put("intervalMs", PUSH_INTERVAL_MS);
+                return snapshot;
+            }
+        }
+    }
+
+    public void unsubscribe(String userId) {
+        Integer topN = topNByUser.remove(userId);
+        if (topN != null) {
+            leaveGroup(userId, topN);
+        }
+    }
+
+    /**
+     * Một chu kỳ push: đọc top-N lớn nhất một lần, mỗi nhóm lấy phần đầu tương ứng.
+     */
+    void publishDeltas() {
+        if (groups.isEmpty()) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        int maxTopN = 0;
+        for (Integer topN : groups.keySet()) {
+            maxTopN = Math.max(maxTopN, topN);
+        }
+        List<LeaderboardIndex.RankedEntry> top = leaderboardIndex.page(0, maxTopN);
+
+        for (Group group : groups.values()) {
+            String payloadJson;
+            synchronized (group) {
+                payloadJson = diff(group, top.subList(0, Math.min(group.topN, top.size())));
+            }
+            if (payloadJson != null) {
+                fanOut(group, payloadJson);
+            }
+        }
+        tickLatency.recordNanos(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * So với lần trước, trả về payload delta đã serialize hoặc null nếu không có gì đổi.
+     */
+    private String diff(Group group, List<LeaderboardIndex.RankedEntry> current) {
+        Map<Integer, Row> rows = computeRows(current);
+        Map<Integer, Row> previous = group.lastRows != null ? group.lastRows : Map.of();
+
+        List<Map<String, Object>> changed = new ArrayList<>();
+        for (Row row : rows.values()) {
+            if (!row.sameAs(previous.get(row.userId))) {
+                changed.add(row.toMap());
+            }
+        }
+        List<Integer> removed = new ArrayList<>();
+        for (Integer userId : previous.keySet()) {
+            if (!rows.containsKey(userId)) {
+                removed.add(userId);
+            }
+        }
+        group.lastRows = rows;
+        if (changed.isEmpty() && removed.isEmpty()) {
+            return null;
+        }
+
+        group.seq++;
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("topN", group.topN);
+        payload.put("seq", group.seq);
+        payload.put("rows", changed);
+        payload.put("removed", removed);
+        try {
+            String json = JsonUtils.toJson(payload);
+            deltasSerialized.increment();
+            return json;
+        } catch (JsonProcessingException e) {
+            System.err.println("❌ Failed to serialize leaderboard delta: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void fanOut(Group group, String payloadJson) {
+        RawValue payload = new RawValue(payloadJson);
+        for (String userId : group.subscribers) {
+            SessionManager.SessionContext ctx = sessionManager.getSessionByUserId(userId);
+            ClientConnectionHandler handler = activeConnections.get(userId);
+            if (ctx == null || handler == null) {
+                unsubscribe(userId); // đã logout/mất kết nối
+                continue;
+            }
+            MessageEnvelope envelope = MessageFactory.createNotification(
+                    MessageProtocol.Type.LOBBY_LEADERBOARD_DELTA, payload);
+            envelope.setSessionId(ctx.getSessionId());
+            try {
+                handler.sendMessage(JsonUtils.toJson(envelope));
+                pushesSent.increment();
+            } catch (JsonProcessingException e) {
+                System.err.println("❌ Failed to push leaderboard delta to " + userId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private Map<Integer, Row> computeRows(List<LeaderboardIndex.RankedEntry> ranked) {
+        Map<Integer, Row> rows = new LinkedHashMap<>();
+        for (LeaderboardIndex.RankedEntry entry : ranked) {
+            int userId = entry.getEntry().getUserId();
+            rows.put(userId, new Row(entry, sessionManager.isUserOnline(String.valueOf(userId))));
+        }
+        return rows;
+    }
+
+    private void leaveGroup(String userId, int topN) {
+        Group group = groups.get(topN);
+        if (group == null) {
+            return;
+        }
+        synchronized (group) {
+            group.subscribers.remove(userId);
+            if (group.subscribers.isEmpty()) {
+                groups.remove(topN, group);
+            }
+        }
+    }
+}
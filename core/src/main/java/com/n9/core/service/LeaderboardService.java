@@ -1,15 +1,22 @@
 package com.n9.core.service;
 
-import com.n9.core.database.DatabaseManager;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.n9.core.metrics.MetricsRegistry;
+import com.n9.core.repository.PlayerStatsRecord;
+import com.n9.core.repository.StatsRepository;
+import com.n9.shared.util.JsonUtils;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Service xử lý logic Bảng Xếp Hạng (Leaderboard).
@@ -19,18 +26,182 @@ import java.util.Map;
  * - Hỗ trợ phân trang (pagination)
  * - Tính toán rank cho từng user
  * 
+ * Đọc từ LeaderboardIndex (trong bộ nhớ, O(log n)) khi index đã nạp;
+ * truy vấn SQL bên dưới chỉ còn là đường dự phòng lúc index chưa sẵn sàng.
+ * 
+ * Trang leaderboard (LOBBY.GET_LEADERBOARD_REQUEST) được cache ở dạng đã serialize, khóa
+ * (limit, offset, version của index). Version đổi khi có trận kết thúc → trang cũ tự hết hiệu lực.
+ * Nhiều request trượt cache cùng khóa chỉ dựng trang một lần (single-flight).
+ * Phần thay đổi mà không đổi version - cờ online (SessionManager) và lastLogin (touchLastLogin
+ * sửa tại chỗ trong index) - được ghép lúc trả trang.
+ * 
+ * Bảng ngày/tuần/mùa (payload "window") đọc thẳng từ WindowedLeaderboards, không cache trang.
+ * 
  * @author Solution Architect
  * @version 1.0.0
  * @since 2025-11-04
  */
 public class LeaderboardService {
 
-    private final DatabaseManager dbManager;
+    private final StatsRepository statsRepository;
     private final SessionManager sessionManager;
+    private final LeaderboardIndex leaderboardIndex;
+    private final WindowedLeaderboards windowedLeaderboards;
+
+    private static final int MAX_CACHED_PAGES = 1_000;
+    private static final int DEFAULT_NEIGHBOURHOOD_K = 10;
+    private static final int MAX_NEIGHBOURHOOD_K = 50;
+
+    /**
+     * Trang đã serialize. Mỗi dòng là JSON thiếu dấu đóng và các trường lastLogin/online.
+     */
+    private static final class CachedPage {
+        final long version;
+        final int totalPlayers;
+        final String[] rowPrefixes;     // {"rank":1,"userId":5,...,"winRate":60.0
+        final LeaderboardIndex.Entry[] entries; // đọc lastLogin mới nhất lúc trả trang
 
-    public LeaderboardService(DatabaseManager dbManager, SessionManager sessionManager) {
-        this.dbManager = dbManager;
+        CachedPage(long version, int totalPlayers, int rows) {
+            this.version = version;
+            this.totalPlayers = totalPlayers;
+            this.rowPrefixes = new String[rows];
+            this.entries = new LeaderboardIndex.Entry[rows];
+        }
+    }
+
+    private final ConcurrentHashMap<String, CompletableFuture<CachedPage>> pageCache = new ConcurrentHashMap<>();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+
+    public LeaderboardService(StatsRepository statsRepository, SessionManager sessionManager, LeaderboardIndex leaderboardIndex,
+                              WindowedLeaderboards windowedLeaderboards) {
+        this.statsRepository = statsRepository;
         this.sessionManager = sessionManager;
+        this.leaderboardIndex = leaderboardIndex;
+        this.windowedLeaderboards = windowedLeaderboards;
+
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        metrics.gauge("leaderboard.pageCache.hits", cacheHits::sum);
+        metrics.gauge("leaderboard.pageCache.misses", cacheMisses::sum);
+        metrics.gauge("leaderboard.pageCache.size", pageCache::size);
+    }
+
+    /**
+     * Payload cho LOBBY.GET_LEADERBOARD_SUCCESS: { leaderboard, totalPlayers, limit, offset }.
+     * Dùng cache trang khi index đã nạp; "leaderboard" là JSON dựng sẵn (RawValue).
+     */
+    public Map<String, Object> getLeaderboardPayload(int limit, int offset) throws SQLException {
+        if (limit <= 0 || limit > 100) {
+            limit = 100;
+        }
+        if (offset < 0) {
+            offset = 0;
+        }
+
+        Map<String, Object> responsePayload = new HashMap<>();
+        responsePayload.put("limit", limit);
+        responsePayload.put("offset", offset);
+
+        if (!leaderboardIndex.isLoaded()) {
+            responsePayload.put("leaderboard", getTopPlayers(limit, offset));
+            responsePayload.put("totalPlayers", getTotalPlayersCount());
+            return responsePayload;
+        }
+
+        CachedPage page = getCachedPage(limit, offset);
+        responsePayload.put("leaderboard", new RawValue(renderRows(page)));
+        responsePayload.put("totalPlayers", page.totalPlayers);
+        return responsePayload;
+    }
+
+    /**
+     * Payload cho bảng theo khung thời gian: { window, period, leaderboard, totalPlayers, limit, offset }.
+     * 
+     * @param previous true = khung vừa kết thúc (hôm qua / tuần trước / mùa trước)
+     */
+    public Map<String, Object> getWindowLeaderboardPayload(WindowedLeaderboards.Window window, boolean previous,
+                                                           int limit, int offset) {
+        if (limit <= 0 || limit > 100) {
+            limit = 100;
+        }
+        if (offset < 0) {
+            offset = 0;
+        }
+
+        WindowedLeaderboards.Period period = previous
+            ? windowedLeaderboards.previousPeriod(window)
+            : windowedLeaderboards.currentPeriod(window);
+
+        List<Map<String, Object>> leaderboard = new ArrayList<>();
+        int totalPlayers = 0;
+        if (period != null) {
+            for (LeaderboardIndex.RankedEntry ranked : period.getIndex().page(offset, limit)) {
+                leaderboard.add(toWindowPlayerMap(ranked));
+            }
+            totalPlayers = period.getIndex().size();
+        }
+
+        Map<String, Object> responsePayload = new HashMap<>();
+        responsePayload.put("window", window.name());
+        responsePayload.put("period", period != null ? period.getKey() : null);
+        responsePayload.put("leaderboard", leaderboard);
+        responsePayload.put("totalPlayers", totalPlayers);
+        responsePayload.put("limit", limit);
+        responsePayload.put("offset", offset);
+        return responsePayload;
+    }
+
+    /**
+     * Rank của user trong khung hiện tại, hoặc null nếu user chưa chơi trận nào trong khung.
+     */
+    public Map<String, Object> getWindowUserRank(WindowedLeaderboards.Window window, int userId) {
+        WindowedLeaderboards.Period period = windowedLeaderboards.currentPeriod(window);
+        LeaderboardIndex.RankedEntry ranked = period.getIndex().get(userId);
+        if (ranked == null) {
+            return null;
+        }
+        Map<String, Object> player = toWindowPlayerMap(ranked);
+        player.put("window", window.name());
+        player.put("period", period.getKey());
+        return player;
+    }
+
+    /**
+     * Vùng xếp hạng quanh user ("xung quanh tôi"): K người phía trên và K người phía dưới.
+     * Chỉ đọc index trong bộ nhớ, không truy cập DB.
+     * 
+     * @return { rank, totalPlayers, k, players } - rank = null nếu user chưa chơi trận nào
+     */
+    public Map<String, Object> getRankNeighbourhood(int userId, int k) {
+        if (!leaderboardIndex.isLoaded()) {
+            throw new IllegalStateException("Leaderboard index is not loaded yet");
+        }
+        if (k <= 0 || k > MAX_NEIGHBOURHOOD_K) {
+            k = DEFAULT_NEIGHBOURHOOD_K;
+        }
+
+        List<Map<String, Object>> players = new ArrayList<>();
+        Integer rank = null;
+        for (LeaderboardIndex.RankedEntry ranked : leaderboardIndex.neighbourhood(userId, k)) {
+            players.add(toPlayerMap(ranked));
+            if (ranked.getEntry().getUserId() == userId) {
+                rank = ranked.getRank();
+            }
+        }
+
+        Map<String, Object> responsePayload = new HashMap<>();
+        responsePayload.put("rank", rank);
+        responsePayload.put("totalPlayers", leaderboardIndex.size());
+        responsePayload.put("k", k);
+        responsePayload.put("players", players);
+        return responsePayload;
+    }
+
+    /**
+     * Gọi khi user đăng nhập: cập nhật lastLogin hiển thị trên bảng xếp hạng.
+     */
+    public void onUserLogin(String userId) {
+        leaderboardIndex.touchLastLogin(Integer.parseInt(userId), System.currentTimeMillis());
     }
 
     /**
@@ -50,74 +221,19 @@ public class LeaderboardService {
             offset = 0;
         }
 
-        List<Map<String, Object>> leaderboard = new ArrayList<>();
-
-        // SQL Query tận dụng index idx_games_won
-        String sql = 
-            "SELECT " +
-            "    u.user_id, " +
-            "    u.username, " +
-            "    p.games_played, " +
-            "    p.games_won, " +
-            "    p.games_lost, " +
-            "    CASE " +
-            "        WHEN p.games_played > 0 THEN ROUND((p.games_won * 100.0 / p.games_played), 2) " +
-            "        ELSE 0.00 " +
-            "    END AS win_rate, " +
-            "    u.last_login " +
-            "FROM users u " +
-            "INNER JOIN user_profiles p ON u.user_id = p.user_id " +
-            "WHERE p.games_played > 0 " + // Chỉ lấy user đã chơi ít nhất 1 trận
-            "ORDER BY p.games_won DESC, p.games_played ASC, u.username ASC " + // Sắp xếp: Thắng nhiều → Chơi ít → Tên A-Z
-            "LIMIT ? OFFSET ?";
-
-        try (Connection conn = dbManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setInt(1, limit);
-            stmt.setInt(2, offset);
-
-            try (ResultSet rs = stmt.executeQuery()) {
-                int rank = offset + 1; // Rank bắt đầu từ offset + 1
-
-                while (rs.next()) {
-                    Map<String, Object> player = new HashMap<>();
-                    
-                    // Basic Info
-                    int userIdInt = rs.getInt("user_id");
-                    String userIdStr = String.valueOf(userIdInt);
-                    
-                    player.put("rank", rank);
-                    player.put("userId", userIdInt);
-                    player.put("username", rs.getString("username"));
-                    
-                    // Stats
-                    player.put("gamesPlayed", rs.getInt("games_played"));
-                    player.put("gamesWon", rs.getInt("games_won"));
-                    player.put("gamesLost", rs.getInt("games_lost"));
-                    player.put("winRate", rs.getDouble("win_rate")); // Đã tính sẵn trong SQL
-                    
-                    boolean isOnline = sessionManager.isUserOnline(userIdStr);
-                    player.put("online", isOnline);
-                    
-                    // Last Login/Last Seen
-                    java.sql.Timestamp lastLogin = rs.getTimestamp("last_login");
-                    if (isOnline) {
-                        // Nếu đang online, không cần lastSeenTimestamp
-                        player.put("lastLogin", lastLogin != null ? lastLogin.toString() : null);
-                        player.put("lastSeenTimestamp", null);
-                    } else {
-                        // Nếu offline, convert lastLogin thành timestamp cho frontend
-                        player.put("lastLogin", lastLogin != null ? lastLogin.toString() : null);
-                        player.put("lastSeenTimestamp", lastLogin != null ? lastLogin.getTime() : null);
-                    }
-                    
-                    leaderboard.add(player);
-                    rank++;
-                }
+        if (leaderboardIndex.isLoaded()) {
+            List<Map<String, Object>> leaderboard = new ArrayList<>();
+            for (LeaderboardIndex.RankedEntry ranked : leaderboardIndex.page(offset, limit)) {
+                leaderboard.add(toPlayerMap(ranked));
             }
+            return leaderboard;
         }
 
+        // Index chưa nạp: đọc thẳng DB (repository giữ ORDER BY giống index)
+        List<Map<String, Object>> leaderboard = new ArrayList<>();
+        for (PlayerStatsRecord record : statsRepository.findTopPlayers(limit, offset)) {
+            leaderboard.add(toPlayerMap(toRankedEntry(record)));
+        }
         return leaderboard;
     }
 
@@ -129,90 +245,155 @@ public class LeaderboardService {
      * @throws SQLException Nếu có lỗi database
      */
     public Map<String, Object> getUserRank(int userId) throws SQLException {
-        String sql = 
-            "SELECT " +
-            "    ranked.user_rank, " +
-            "    ranked.user_id, " +
-            "    ranked.username, " +
-            "    ranked.games_played, " +
-            "    ranked.games_won, " +
-            "    ranked.games_lost, " +
-            "    ranked.win_rate, " +
-            "    ranked.last_login " +
-            "FROM ( " +
-            "    SELECT " +
-            "        ROW_NUMBER() OVER (ORDER BY p.games_won DESC, p.games_played ASC, u.username ASC) AS user_rank, " +
-            "        u.user_id, " +
-            "        u.username, " +
-            "        p.games_played, " +
-            "        p.games_won, " +
-            "        p.games_lost, " +
-            "        CASE " +
-            "            WHEN p.games_played > 0 THEN ROUND((p.games_won * 100.0 / p.games_played), 2) " +
-            "            ELSE 0.00 " +
-            "        END AS win_rate, " +
-            "        u.last_login " +
-            "    FROM users u " +
-            "    INNER JOIN user_profiles p ON u.user_id = p.user_id " +
-            "    WHERE p.games_played > 0 " +
-            ") AS ranked " +
-            "WHERE ranked.user_id = ?";
-
-        try (Connection conn = dbManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setInt(1, userId);
-
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    Map<String, Object> userInfo = new HashMap<>();
-                    
-                    int userIdInt = rs.getInt("user_id");
-                    String userIdStr = String.valueOf(userIdInt);
-                    
-                    userInfo.put("rank", rs.getInt("user_rank"));
-                    userInfo.put("userId", userIdInt);
-                    userInfo.put("username", rs.getString("username"));
-                    userInfo.put("gamesPlayed", rs.getInt("games_played"));
-                    userInfo.put("gamesWon", rs.getInt("games_won"));
-                    userInfo.put("gamesLost", rs.getInt("games_lost"));
-                    userInfo.put("winRate", rs.getDouble("win_rate"));
-                    
-                    boolean isOnline = sessionManager.isUserOnline(userIdStr);
-                    userInfo.put("online", isOnline);
-                    
-                    java.sql.Timestamp lastLogin = rs.getTimestamp("last_login");
-                    userInfo.put("lastLogin", lastLogin != null ? lastLogin.toString() : null);
-                    if (isOnline) {
-                        userInfo.put("lastSeenTimestamp", null);
-                    } else {
-                        userInfo.put("lastSeenTimestamp", lastLogin != null ? lastLogin.getTime() : null);
-                    }
-                    
-                    return userInfo;
+        if (leaderboardIndex.isLoaded()) {
+            LeaderboardIndex.RankedEntry ranked = leaderboardIndex.get(userId);
+            return ranked != null ? toPlayerMap(ranked) : null;
+        }
+
+        PlayerStatsRecord record = statsRepository.findRankedPlayer(userId);
+        return record != null ? toPlayerMap(toRankedEntry(record)) : null; // null: không tồn tại hoặc chưa chơi trận nào
+    }
+
+
+    public int getTotalPlayersCount() throws SQLException {
+        if (leaderboardIndex.isLoaded()) {
+            return leaderboardIndex.size();
+        }
+
+        return statsRepository.countRankedPlayers();
+    }
+
+    private CachedPage getCachedPage(int limit, int offset) {
+        long version = leaderboardIndex.getVersion(); // đọc trước khi dựng trang
+        String key = limit + ":" + offset + ":" + version;
+
+        CompletableFuture<CachedPage> future = pageCache.get(key);
+        if (future != null) {
+            cacheHits.increment();
+        } else {
+            CompletableFuture<CachedPage> created = new CompletableFuture<>();
+            future = pageCache.putIfAbsent(key, created);
+            if (future != null) {
+                cacheHits.increment(); // request khác đang dựng cùng trang → chờ chung kết quả
+            } else {
+                cacheMisses.increment();
+                future = created;
+                try {
+                    created.complete(buildPage(limit, offset, version));
+                } catch (RuntimeException | JsonProcessingException e) {
+                    pageCache.remove(key, created);
+                    created.completeExceptionally(e);
                 }
+                evictStalePages(version);
             }
         }
 
-        return null; // User không tồn tại hoặc chưa chơi trận nào
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Failed to build leaderboard page", e.getCause());
+        }
     }
 
+    private CachedPage buildPage(int limit, int offset, long version) throws JsonProcessingException {
+        List<LeaderboardIndex.RankedEntry> rows = leaderboardIndex.page(offset, limit);
+        CachedPage page = new CachedPage(version, leaderboardIndex.size(), rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            LeaderboardIndex.RankedEntry ranked = rows.get(i);
+            LeaderboardIndex.Entry entry = ranked.getEntry();
 
-    public int getTotalPlayersCount() throws SQLException {
-        String sql = 
-            "SELECT COUNT(*) AS total " +
-            "FROM user_profiles " +
-            "WHERE games_played > 0";
-
-        try (Connection conn = dbManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
-            
-            if (rs.next()) {
-                return rs.getInt("total");
+            Map<String, Object> staticFields = new LinkedHashMap<>();
+            staticFields.put("rank", ranked.getRank());
+            staticFields.put("userId", entry.getUserId());
+            staticFields.put("username", entry.getUsername());
+            staticFields.put("gamesPlayed", entry.getGamesPlayed());
+            staticFields.put("gamesWon", entry.getGamesWon());
+            staticFields.put("gamesLost", entry.getGamesLost());
+            staticFields.put("winRate", entry.getWinRate());
+
+            String json = JsonUtils.toJson(staticFields);
+            page.rowPrefixes[i] = json.substring(0, json.length() - 1); // bỏ '}' để ghép lastLogin/online
+            page.entries[i] = entry;
+        }
+        return page;
+    }
+
+    /**
+     * Ghép lastLogin (đọc từ entry của index) và cờ online/lastSeenTimestamp (SessionManager)
+     * vào các dòng đã serialize.
+     */
+    private String renderRows(CachedPage page) {
+        StringBuilder sb = new StringBuilder(page.rowPrefixes.length * 192 + 2);
+        sb.append('[');
+        for (int i = 0; i < page.rowPrefixes.length; i++) {
+            if (i > 0) sb.append(',');
+            LeaderboardIndex.Entry entry = page.entries[i];
+            Long lastLogin = entry.getLastLoginMillis();
+            boolean isOnline = sessionManager.isUserOnline(String.valueOf(entry.getUserId()));
+            Long lastSeen = isOnline ? null : lastLogin;
+            sb.append(page.rowPrefixes[i]).append(",\"lastLogin\":");
+            if (lastLogin != null) {
+                sb.append('"').append(new java.sql.Timestamp(lastLogin)).append('"');
+            } else {
+                sb.append("null");
             }
+            sb.append(",\"online\":").append(isOnline)
+              .append(",\"lastSeenTimestamp\":").append(lastSeen)
+              .append('}');
+        }
+        return sb.append(']').toString();
+    }
+
+    private void evictStalePages(long currentVersion) {
+        if (pageCache.size() > MAX_CACHED_PAGES) {
+            pageCache.clear();
+            return;
         }
+        pageCache.values().removeIf(f -> f.isDone() && !f.isCompletedExceptionally()
+                && f.join().version < currentVersion);
+    }
 
-        return 0;
+    private static LeaderboardIndex.RankedEntry toRankedEntry(PlayerStatsRecord r) {
+        return new LeaderboardIndex.RankedEntry(r.getRank(), new LeaderboardIndex.Entry(r.getUserId(), r.getUsername(),
+                r.getGamesPlayed(), r.getGamesWon(), r.getGamesLost(), r.getLastLoginMillis()));
+    }
+
+    /**
+     * Chuyển một dòng của index sang Map cùng định dạng với kết quả SQL.
+     */
+    private Map<String, Object> toPlayerMap(LeaderboardIndex.RankedEntry ranked) {
+        LeaderboardIndex.Entry entry = ranked.getEntry();
+        Map<String, Object> player = new HashMap<>();
+        player.put("rank", ranked.getRank());
+        player.put("userId", entry.getUserId());
+        player.put("username", entry.getUsername());
+        player.put("gamesPlayed", entry.getGamesPlayed());
+        player.put("gamesWon", entry.getGamesWon());
+        player.put("gamesLost", entry.getGamesLost());
+        player.put("winRate", entry.getWinRate());
+
+        boolean isOnline = sessionManager.isUserOnline(String.valueOf(entry.getUserId()));
+        player.put("online", isOnline);
+
+        Long lastLogin = entry.getLastLoginMillis();
+        player.put("lastLogin", lastLogin != null ? new java.sql.Timestamp(lastLogin).toString() : null);
+        player.put("lastSeenTimestamp", isOnline ? null : lastLogin);
+        return player;
+    }
+
+    /**
+     * Dòng của bảng theo khung; lastLogin lấy từ index all-time (index theo khung không giữ).
+     */
+    private Map<String, Object> toWindowPlayerMap(LeaderboardIndex.RankedEntry ranked) {
+        Map<String, Object> player = toPlayerMap(ranked);
+        LeaderboardIndex.RankedEntry allTime = leaderboardIndex.get(ranked.getEntry().getUserId());
+        Long lastLogin = allTime != null ? allTime.getEntry().getLastLoginMillis() : null;
+        if (lastLogin != null) {
+            player.put("lastLogin", new java.sql.Timestamp(lastLogin).toString());
+            if (!Boolean.TRUE.equals(player.get("online"))) {
+                player.put("lastSeenTimestamp", lastLogin);
+            }
+        }
+        return player;
     }
 }
@@ -0,0 +1,303 @@
+package com.n9.core.service;
+
+import com.n9.core.metrics.LatencyHistogram;
+import com.n9.core.metrics.MetricsRegistry;
+import com.n9.core.repository.GameRepository;
+import com.n9.core.repository.MatchHistoryRecord;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MatchHistoryService - Lịch sử đấu của người chơi, phân trang keyset.
+ *
+ * Con trỏ trang là (completedAt, matchId) của ván cuối trang trước, không dùng OFFSET:
+ * trang thứ 100 đọc bằng một range scan trên index (playerN_id, completed_at, match_id) như trang đầu.
+ *
+ * Mỗi user online giữ RECENT_CAPACITY ván gần nhất trong bộ đệm vòng (ArrayDeque, mới ở đầu):
+ * - Bộ đệm được tạo và nạp từ DB (một lần, trên luồng nền) khi user đăng nhập hoặc vừa đấu xong;
+ *   sau đó mỗi trận kết thúc được đẩy vào đầu bộ đệm → trang đầu (và các trang nằm trong bộ đệm)
+ *   không chạm MySQL. Hàng đợi nạp đầy thì bỏ qua: request đầu tiên tự nạp như cũ.
+ * - Trang vượt quá bộ đệm đọc DB với cùng con trỏ, nên ranh giới bộ đệm/DB không trùng, không sót.
+ * - Bộ đệm của user đã offline được dọn mỗi SWEEP_INTERVAL_MS.
+ */
+public class MatchHistoryService implements GameEndListener {
+
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 50;
+    static final int RECENT_CAPACITY = 50;
+    private static final long SWEEP_INTERVAL_MS = 60_000;
+    private static final int SEED_QUEUE_CAPACITY = 10_000;
+
+    /** RECENT_CAPACITY ván gần nhất của một user, mới trước. */
+    static final class RecentGames {
+        private final int capacity;
+        private final ArrayDeque<MatchHistoryRecord> games;
+        private boolean seeded;
+        private boolean seeding;    // đã xếp lịch nạp nền, tránh nạp trùng
+        private boolean complete;   // bộ đệm chứa toàn bộ lịch sử của user (ít hơn capacity ván)
+
+        RecentGames(int capacity) {
+            this.capacity = capacity;
+            this.games = new ArrayDeque<>(capacity);
+        }
+
+        synchronized boolean isSeeded() {
+            return seeded;
+        }
+
+        /** true nếu người gọi được giao việc nạp nền (chưa nạp và chưa ai nhận). */
+        synchronized boolean claimSeed() {
+            if (seeded || seeding) return false;
+            seeding = true;
+            return true;
+        }
+
+        synchronized void releaseSeed() {
+            seeding = false;
+        }
+
+        /** Gộp kết quả nạp từ DB với các ván đến trong lúc đang nạp. */
+        synchronized void seed(List<MatchHistoryRecord> rows, boolean wholeHistory) {
+            List<MatchHistoryRecord> merged = new ArrayList<>(games);
+            merged.addAll(rows);
+            Map<String, MatchHistoryRecord> unique = new HashMap<>();
+            for (MatchHistoryRecord game : merged) {
+                unique.putIfAbsent(game.getMatchId(), game);
+            }
+            List<MatchHistoryRecord> sorted = new ArrayList<>(unique.values());
+            sorted.sort(MatchHistoryRecord::compareNewestFirst);
+            games.clear();
+            for (MatchHistoryRecord game : sorted) {
+                if (games.size() == capacity) break;
+                games.addLast(game);
+            }
+            complete = wholeHistory && sorted.size() <= capacity;
+            seeded = true;
+        }
+
+        synchronized void add(MatchHistoryRecord game) {
+            MatchHistoryRecord newest = games.peekFirst();
+            if (newest == null || game.compareNewestFirst(newest) < 0) {
+                games.addFirst(game); // trường hợp thường gặp: ván vừa kết thúc là ván mới nhất
+            } else {
+                for (MatchHistoryRecord existing : games) {
+                    if (existing.getMatchId().equals(game.getMatchId())) return;
+                }
+                List<MatchHistoryRecord> sorted = new ArrayList<>(games);
+                sorted.add(game);
+                sorted.sort(MatchHistoryRecord::compareNewestFirst);
+                games.clear();
+                games.addAll(sorted);
+            }
+            if (games.size() > capacity) {
+                games.pollLast();
+                complete = false;
+            }
+        }
+
+        /**
+         * Trang sau con trỏ, hoặc null nếu bộ đệm không trả lời đủ (phải đọc DB).
+         */
+        synchronized List<MatchHistoryRecord> page(Long beforeCompletedAtMillis, String beforeMatchId, int limit) {
+            if (!seeded) return null;
+            List<MatchHistoryRecord> page = new ArrayList<>(limit);
+            for (MatchHistoryRecord game : games) {
+                if (beforeCompletedAtMillis != null && !game.isOlderThan(beforeCompletedAtMillis, beforeMatchId)) {
+                    continue;
+                }
+                page.add(game);
+                if (page.size() == limit) return page;
+            }
+            return complete ? page : null; // trang ngắn chỉ đúng khi bộ đệm là toàn bộ lịch sử
+        }
+
+        synchronized int size() {
+            return games.size();
+        }
+    }
+
+    private final GameRepository gameRepository;
+    private final SessionManager sessionManager;
+    private final ConcurrentHashMap<Integer, RecentGames> recent = new ConcurrentHashMap<>();
+    private final LongAdder cachePages = new LongAdder();
+    private final LongAdder dbPages = new LongAdder();
+    private final LongAdder seeds = new LongAdder();
+    private final LatencyHistogram dbLatency;
+    // Nạp bộ đệm lúc đăng nhập / kết thúc trận: không chạy trên luồng login hay scheduler của ván đấu
+    private final ThreadPoolExecutor seedExecutor;
+
+    public MatchHistoryService(GameRepository gameRepository, SessionManager sessionManager) {
+        this.gameRepository = gameRepository;
+        this.sessionManager = sessionManager;
+        this.seedExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(SEED_QUEUE_CAPACITY), r -> {
+                    Thread t = new Thread(r, "match-history-seed");
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        this.dbLatency = metrics.histogram("matchHistory.db");
+        metrics.gauge("matchHistory.cachedUsers", recent::size);
+        metrics.gauge("matchHistory.cachePages", cachePages::sum);
+        metrics.gauge("matchHistory.dbPages", dbPages::sum);
+        metrics.gauge("matchHistory.seeds", seeds::sum);
+        metrics.gauge("matchHistory.seedQueue", () -> seedExecutor.getQueue().size());
+    }
+
+    public void start(ScheduledExecutorService scheduler) {
+        scheduler.scheduleWithFixedDelay(this::evictOffline, SWEEP_INTERVAL_MS, SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gọi khi user đăng nhập: nạp nền bộ đệm để trang đầu không phải đọc DB.
+     */
+    public void onUserLogin(String userId) {
+        int id = Integer.parseInt(userId);
+        prefetch(id, recent.computeIfAbsent(id, key -> new RecentGames(RECENT_CAPACITY)));
+    }
+
+    @Override
+    public void onGameEnd(GameEndEvent event) {
+        MatchHistoryRecord game = event.toHistoryRecord();
+        addGame(game.getPlayer1Id(), game);
+        addGame(game.getPlayer2Id(), game);
+    }
+
+    /**
+     * Một trang lịch sử của user. cursor = nextCursor của trang trước, null = trang đầu.
+     * Trả về: games, nextCursor (null nếu hết), limit.
+     */
+    public Map<String, Object> getMatchHistory(int userId, String cursor, int limit) throws SQLException {
+        int pageSize = Math.max(1, Math.min(MAX_PAGE_SIZE, limit));
+        Long beforeCompletedAt = null;
+        String beforeMatchId = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            int sep = cursor.indexOf(':');
+            if (sep <= 0 || sep == cursor.length() - 1) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            try {
+                beforeCompletedAt = Long.parseLong(cursor.substring(0, sep));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            beforeMatchId = cursor.substring(sep + 1);
+        }
+
+        List<MatchHistoryRecord> page = recentGames(userId).page(beforeCompletedAt, beforeMatchId, pageSize);
+        if (page != null) {
+            cachePages.increment();
+        } else {
+            long startNanos = System.nanoTime();
+            page = gameRepository.findMatchHistory(userId, beforeCompletedAt, beforeMatchId, pageSize);
+            dbLatency.recordNanos(System.nanoTime() - startNanos);
+            dbPages.increment();
+        }
+
+        List<Map<String, Object>> games = new ArrayList<>(page.size());
+        for (MatchHistoryRecord game : page) {
+            games.add(toView(game, userId));
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("games", games);
+        result.put("limit", pageSize);
+        if (page.size() == pageSize) {
+            MatchHistoryRecord last = page.get(page.size() - 1);
+            result.put("nextCursor", last.getCompletedAtMillis() + ":" + last.getMatchId());
+        } else {
+            result.put("nextCursor", null);
+        }
+        return result;
+    }
+
+    /** true nếu bộ đệm của user đã nạp xong (trang đầu không cần đọc DB). */
+    boolean isCached(int userId) {
+        RecentGames games = recent.get(userId);
+        return games != null && games.isSeeded();
+    }
+
+    // ============================
+    // NỘI BỘ
+    // ============================
+
+    /** Bộ đệm của user; chưa nạp xong (nạp nền lỗi / bị bỏ) thì nạp ngay (không giữ khóa trong lúc truy vấn). */
+    private RecentGames recentGames(int userId) throws SQLException {
+        RecentGames games = recent.computeIfAbsent(userId, id -> new RecentGames(RECENT_CAPACITY));
+        if (!games.isSeeded()) {
+            seed(userId, games);
+        }
+        return games;
+    }
+
+    /** Ván vừa kết thúc vào bộ đệm của người chơi còn online; bộ đệm mới thì nạp nền phần cũ hơn. */
+    private void addGame(int userId, MatchHistoryRecord game) {
+        if (!sessionManager.isUserOnline(String.valueOf(userId))) {
+            RecentGames existing = recent.get(userId);
+            if (existing != null) existing.add(game);
+            return;
+        }
+        RecentGames games = recent.computeIfAbsent(userId, id -> new RecentGames(RECENT_CAPACITY));
+        games.add(game);
+        prefetch(userId, games);
+    }
+
+    private void prefetch(int userId, RecentGames games) {
+        if (!games.claimSeed()) return;
+        try {
+            seedExecutor.execute(() -> {
+                try {
+                    seed(userId, games);
+                } catch (SQLException | RuntimeException e) {
+                    System.err.println("❌ Failed to prefetch match history for user " + userId + ": " + e.getMessage());
+                } finally {
+                    games.releaseSeed();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            games.releaseSeed(); // hàng đợi đầy: request đầu tiên tự nạp
+        }
+    }
+
+    private void seed(int userId, RecentGames games) throws SQLException {
+        long startNanos = System.nanoTime();
+        List<MatchHistoryRecord> rows = gameRepository.findMatchHistory(userId, null, null, RECENT_CAPACITY);
+        dbLatency.recordNanos(System.nanoTime() - startNanos);
+        games.seed(rows, rows.size() < RECENT_CAPACITY);
+        seeds.increment();
+    }
+
+    private void evictOffline() {
+        recent.keySet().removeIf(userId -> !sessionManager.isUserOnline(String.valueOf(userId)));
+    }
+
+    /** Dòng lịch sử nhìn từ phía userId. */
+    private static Map<String, Object> toView(MatchHistoryRecord game, int userId) {
+        boolean isPlayer1 = game.getPlayer1Id() == userId;
+        Integer winnerId = game.getWinnerId();
+        String result = winnerId == null ? "DRAW" : winnerId == userId ? "WIN" : "LOSS";
+        Map<String, Object> view = new LinkedHashMap<>();
+        view.put("matchId", game.getMatchId());
+        view.put("opponentId", isPlayer1 ? game.getPlayer2Id() : game.getPlayer1Id());
+        view.put("opponentUsername", isPlayer1 ? game.getPlayer2Username() : game.getPlayer1Username());
+        view.put("result", result);
+        view.put("myScore", isPlayer1 ? game.getPlayer1Score() : game.getPlayer2Score());
+        view.put("opponentScore", isPlayer1 ? game.getPlayer2Score() : game.getPlayer1Score());
+        view.put("forfeited", game.isAbandoned());
+        view.put("completedAt", game.getCompletedAtMillis());
+        return view;
+    }
+}
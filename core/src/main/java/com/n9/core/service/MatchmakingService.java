@@ -1,6 +1,8 @@
 package com.n9.core.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.n9.core.metrics.LatencyHistogram;
+import com.n9.core.metrics.MetricsRegistry;
 import com.n9.core.network.ClientConnectionHandler;
 import com.n9.shared.MessageProtocol; // Đổi tên nếu bạn đã đổi
 import com.n9.shared.protocol.MessageEnvelope;
@@ -8,15 +10,15 @@ import com.n9.shared.protocol.MessageFactory;
 import com.n9.shared.util.IdUtils;
 import com.n9.shared.util.JsonUtils;
 
-import java.util.Collection; // THÊM
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 public class MatchmakingService {
@@ -26,8 +28,35 @@ public class MatchmakingService {
     private final ConcurrentHashMap<String, ClientConnectionHandler> activeConnections;
     private final ScheduledExecutorService scheduler;
 
-    private final Queue<String> matchmakingQueue = new ConcurrentLinkedQueue<>(); // Ai vào hàng đợi trước phải được ghép cặp trước
-    private final Set<String> usersInQueue = ConcurrentHashMap.newKeySet();  // dùng để tìm kiếm user cho nhanh, vì Queue tìm theo O(n)
+    // Hàng đợi sắp theo current_rating, cửa sổ rating nới rộng theo thời gian chờ.
+    // offer() tìm đối thủ gần nhất trong O(log n); remove(userId) không cần duyệt hàng đợi.
+    private final RatingMatchQueue matchmakingQueue = new RatingMatchQueue();
+
+    private final LatencyHistogram timeInQueueHistogram;
+    private final LatencyHistogram cancelledTimeInQueueHistogram;
+    private final LatencyHistogram matchFoundToStartHistogram;
+
+    /** Giới hạn trên thời gian chờ GAME.READY (trước đây là delay cố định 2 giây). */
+    public static final long MATCH_READY_TIMEOUT_MS = 2_000;
+
+    // Trận đã ghép, đang chờ cả hai GAME.READY trước khi initializeGame
+    private final ConcurrentHashMap<String, PendingMatch> pendingMatches = new ConcurrentHashMap<>();
+
+    private static final class PendingMatch {
+        final String matchId;
+        final String player1Id;
+        final String player2Id;
+        final long createdAtNanos = System.nanoTime();
+        final Set<String> readyPlayers = ConcurrentHashMap.newKeySet();
+        final AtomicBoolean started = new AtomicBoolean(false); // ready và timeout: chỉ một bên khởi tạo game
+        volatile ScheduledFuture<?> timeout;
+
+        PendingMatch(String matchId, String player1Id, String player2Id) {
+            this.matchId = matchId;
+            this.player1Id = player1Id;
+            this.player2Id = player2Id;
+        }
+    }
 
     public MatchmakingService(
             GameService gameService,
@@ -39,39 +68,76 @@ public class MatchmakingService {
         this.sessionManager = sessionManager;
         this.activeConnections = activeConnections;
         this.scheduler = scheduler;
+
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        this.timeInQueueHistogram = metrics.histogram("matchmaking.timeInQueue");
+        this.cancelledTimeInQueueHistogram = metrics.histogram("matchmaking.timeInQueue.cancelled");
+        this.matchFoundToStartHistogram = metrics.histogram("game.phase.matchFoundToStart");
+        metrics.gauge("matchmaking.queueSize", this::getQueueSize);
     }
 
     public void startMatchmakingLoop() {
-        // scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit)
-        // initialDelay: Thời gian chờ trước khi chạy lần đầu tiên.
-        // period: Chu kỳ lặp lại.
+        // Người mới vào được ghép ngay trong requestMatch (nếu có đối thủ trong cửa sổ gốc).
+        // Vòng lặp này ghép những người đã chờ đủ lâu để cửa sổ rating nới rộng.
         scheduler.scheduleAtFixedRate(this::tryMatchmaking, 1, 1, TimeUnit.SECONDS);
     }
 
     public boolean requestMatch(String userId) {
-        if (usersInQueue.contains(userId)) {
+        if (matchmakingQueue.contains(userId)) {
             return false;
         }
-        if (usersInQueue.add(userId)) {
-            matchmakingQueue.offer(userId); // thêm vào cuối hàng đợi
-            return true;
+        RatingMatchQueue.Pairing pairing;
+        try {
+            pairing = matchmakingQueue.offer(userId, getRatingForId(userId), System.nanoTime());
+        } catch (IllegalStateException e) {
+            return false; // đã có trong hàng đợi (request trùng đến cùng lúc)
+        }
+        if (pairing != null) {
+            // Có đối thủ phù hợp → ghép ngay, không chờ tick tiếp theo
+            startMatch(pairing);
         }
-        return false;
+        return true;
     }
 
     public void cancelMatch(String userId) {
-        if (usersInQueue.remove(userId)) {
-            matchmakingQueue.remove(userId);
+        RatingMatchQueue.QueuedPlayer removed = matchmakingQueue.remove(userId);
+        if (removed != null) {
+            cancelledTimeInQueueHistogram.recordNanos(System.nanoTime() - removed.getEnqueuedAtNanos());
         }
     }
 
     // Kiểm tra user có đang trong queue không (dùng cho Challenge validation)
     public boolean isUserInQueue(String userId) {
-        return usersInQueue.contains(userId);
+        return matchmakingQueue.contains(userId);
+    }
+
+    public int getQueueSize() {
+        return matchmakingQueue.size();
     }
 
     // Tạo direct match (bypass queue) cho challenge system
     public void createDirectMatch(String player1Id, String player2Id) {
+        startMatch(player1Id, player2Id);
+    }
+
+    private void tryMatchmaking() {
+        try {
+            for (RatingMatchQueue.Pairing pairing : matchmakingQueue.sweep(System.nanoTime())) {
+                startMatch(pairing);
+            }
+        } catch (Exception e) {
+            e.printStackTrace(); // không để exception hủy lịch chạy định kỳ
+        }
+    }
+
+    private void startMatch(RatingMatchQueue.Pairing pairing) {
+        long now = System.nanoTime();
+        timeInQueueHistogram.recordNanos(now - pairing.getPlayer1().getEnqueuedAtNanos());
+        timeInQueueHistogram.recordNanos(now - pairing.getPlayer2().getEnqueuedAtNanos());
+        startMatch(pairing.getPlayer1().getUserId(), pairing.getPlayer2().getUserId());
+    }
+
+    private void startMatch(String player1Id, String player2Id) {
         String matchId = IdUtils.generateMatchId();
 
         String p1SessionId = getSessionIdForUser(player1Id);
@@ -83,50 +149,42 @@ public class MatchmakingService {
         String player1Username = getUsernameForId(player1Id);
         String player2Username = getUsernameForId(player2Id);
 
+        PendingMatch pending = new PendingMatch(matchId, player1Id, player2Id);
+        pendingMatches.put(matchId, pending);
+
         notifyPlayerMatchFound(player1Id, p1SessionId, matchId, player2Id, player2Username);
         notifyPlayerMatchFound(player2Id, p2SessionId, matchId, player1Id, player1Username);
 
-        scheduler.schedule(() -> {
-            GameService.GameState newGame = gameService.initializeGame(matchId, player1Id, player2Id);
-            if (newGame == null) {
-                System.err.println("❌ Failed to initialize game for match " + matchId);
-            }
-        }, 2, TimeUnit.SECONDS);
+        // Cả hai GAME.READY → bắt đầu ngay; timeout chỉ là giới hạn trên cho client cũ/chậm
+        pending.timeout = scheduler.schedule(() -> launchGame(pending), MATCH_READY_TIMEOUT_MS, TimeUnit.MILLISECONDS);
     }
 
-    private void tryMatchmaking() {
-        if (usersInQueue.size() >= 2) {
-            String player1Id = matchmakingQueue.poll(); // lấy và loại bỏ phần tử đầu tiên (đầu hàng).
-            String player2Id = matchmakingQueue.poll();
-
-            if (player1Id != null && player2Id != null) {
-                usersInQueue.remove(player1Id);
-                usersInQueue.remove(player2Id);
-
-                String matchId = IdUtils.generateMatchId();
-
-                String p1SessionId = getSessionIdForUser(player1Id);
-                String p2SessionId = getSessionIdForUser(player2Id);
-
-                sessionManager.setMatchId(p1SessionId, matchId);
-                sessionManager.setMatchId(p2SessionId, matchId);
-
-                String player1Username = getUsernameForId(player1Id);
-                String player2Username = getUsernameForId(player2Id);
+    /**
+     * Client đã hiển thị màn hình MATCH_FOUND và sẵn sàng (GAME.READY).
+     *
+     * @return false nếu trận không còn chờ hoặc user không thuộc trận
+     */
+    public boolean markReady(String matchId, String userId) {
+        PendingMatch pending = pendingMatches.get(matchId);
+        if (pending == null) return false;
+        if (!userId.equals(pending.player1Id) && !userId.equals(pending.player2Id)) return false;
+        pending.readyPlayers.add(userId);
+        if (pending.readyPlayers.size() == 2) {
+            launchGame(pending);
+        }
+        return true;
+    }
 
-                notifyPlayerMatchFound(player1Id, p1SessionId, matchId, player2Id, player2Username);
-                notifyPlayerMatchFound(player2Id, p2SessionId, matchId, player1Id, player1Username);
+    private void launchGame(PendingMatch pending) {
+        if (!pending.started.compareAndSet(false, true)) return;
+        pendingMatches.remove(pending.matchId);
+        ScheduledFuture<?> timeout = pending.timeout;
+        if (timeout != null) timeout.cancel(false);
+        matchFoundToStartHistogram.recordNanos(System.nanoTime() - pending.createdAtNanos);
 
-                scheduler.schedule(() -> {
-                    GameService.GameState newGame = gameService.initializeGame(matchId, player1Id, player2Id);
-                    if (newGame == null) {
-                        System.err.println("❌ Failed to initialize game for match " + matchId);
-                    }
-                }, 2, TimeUnit.SECONDS);
-            } else {
-                if (player1Id != null) matchmakingQueue.offer(player1Id);
-                if (player2Id != null) matchmakingQueue.offer(player2Id);
-            }
+        GameService.GameState newGame = gameService.initializeGame(pending.matchId, pending.player1Id, pending.player2Id);
+        if (newGame == null) {
+            System.err.println("❌ Failed to initialize game for match " + pending.matchId);
         }
     }
 
@@ -157,18 +215,19 @@ public class MatchmakingService {
 
     private String getSessionIdForUser(String userId) {
         if (sessionManager == null) return null;
-        for (SessionManager.SessionContext ctx : sessionManager.getAllSessions()) {
-            if (ctx.getUserId().equals(userId)) return ctx.getSessionId();
-        }
-        return null;
+        SessionManager.SessionContext ctx = sessionManager.getSessionByUserId(userId); // O(1) thay vì duyệt mọi session
+        return ctx != null ? ctx.getSessionId() : null;
+    }
+
+    private double getRatingForId(String userId) {
+        SessionManager.SessionContext ctx = sessionManager != null ? sessionManager.getSessionByUserId(userId) : null;
+        return ctx != null ? ctx.getRating() : SessionManager.DEFAULT_RATING;
     }
 
     private String getUsernameForId(String userId) {
         if (sessionManager == null) return "Unknown"; // Thêm kiểm tra an toàn
-        for (SessionManager.SessionContext ctx : sessionManager.getAllSessions()) {
-            if (ctx.getUserId().equals(userId)) return ctx.getUsername();
-        }
-        return "Unknown";
+        SessionManager.SessionContext ctx = sessionManager.getSessionByUserId(userId);
+        return ctx != null ? ctx.getUsername() : "Unknown";
     }
 }
 
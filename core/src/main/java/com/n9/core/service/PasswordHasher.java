@@ -0,0 +1,125 @@
+package com.n9.core.service;
+
+import com.n9.core.metrics.LatencyHistogram;
+import com.n9.core.metrics.MetricsRegistry;
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PasswordHasher - Pool riêng cho BCrypt (hashpw/checkpw).
+ *
+ * BCrypt tốn CPU, nếu chạy thẳng trên worker thread thì một đợt login dồn dập
+ * sẽ chiếm hết CPU của các request CARD_PLAY. Pool này:
+ * - Có số thread cố định = số core
+ * - Hàng đợi giới hạn; khi đầy → ném ServerBusyException (admission control)
+ * - Ghi histogram thời gian chờ trong hàng đợi và thời gian băm
+ */
+public class PasswordHasher {
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    private final ThreadPoolExecutor executor;
+    private final int threads;
+    private final LatencyHistogram queueWaitHistogram;
+    private final LatencyHistogram hashTimeHistogram;
+    private final AtomicInteger rejectedCount = new AtomicInteger();
+
+    public PasswordHasher() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public PasswordHasher(int threads, int queueCapacity) {
+        this.threads = Math.max(1, threads);
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread t = new Thread(r, "bcrypt-worker-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        this.executor = new ThreadPoolExecutor(
+                this.threads, this.threads,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                factory,
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        this.queueWaitHistogram = metrics.histogram("auth.bcrypt.queueWait");
+        this.hashTimeHistogram = metrics.histogram("auth.bcrypt.hashTime");
+        metrics.gauge("auth.bcrypt.queueDepth", () -> executor.getQueue().size());
+        metrics.gauge("auth.bcrypt.rejected", this::getRejectedCount);
+    }
+
+    /**
+     * Băm mật khẩu mới (dùng khi đăng ký).
+     */
+    public String hash(String password) {
+        return submit(() -> BCrypt.hashpw(password, BCrypt.gensalt()));
+    }
+
+    /**
+     * So khớp mật khẩu với hash đã lưu (dùng khi đăng nhập).
+     */
+    public boolean verify(String password, String storedHash) {
+        return submit(() -> BCrypt.checkpw(password, storedHash));
+    }
+
+    private <T> T submit(Callable<T> work) {
+        long enqueuedAt = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long startedAt = System.nanoTime();
+                queueWaitHistogram.recordNanos(startedAt - enqueuedAt);
+                try {
+                    return work.call();
+                } finally {
+                    hashTimeHistogram.recordNanos(System.nanoTime() - startedAt);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            throw new ServerBusyException("Server busy, please retry later.", estimateRetryAfterSeconds());
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new IllegalStateException("Interrupted while waiting for password hashing.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException re) throw re;
+            throw new IllegalStateException("Password hashing failed.", cause);
+        }
+    }
+
+    /**
+     * Ước lượng thời gian xả hết hàng đợi hiện tại: queued * hashTime / threads.
+     */
+    private int estimateRetryAfterSeconds() {
+        double meanMs = hashTimeHistogram.getMeanMillis();
+        if (meanMs <= 0) meanMs = 100.0;
+        double drainMs = executor.getQueue().size() * meanMs / threads;
+        return (int) Math.max(1, Math.ceil(drainMs / 1000.0));
+    }
+
+    public int getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,263 @@
+package com.n9.core.service;
+
+import com.n9.core.metrics.MetricsRegistry;
+import com.n9.core.repository.StatsRepository;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RankTierService - Gán user_profiles.rank_tier theo phần trăm rating.
+ *
+ * Không sắp xếp toàn bộ người chơi để tính percentile chính xác:
+ * - KllSketch giữ phân phối current_rating (chỉ người đã chơi), từ đó suy ra 4 ngưỡng rating
+ *   ứng với TIER_PERCENTILES. Gán bậc cho một người = so rating với 4 ngưỡng: O(1).
+ * - Mỗi trận kết thúc: rating mới của 2 người được đưa vào sketch, bậc tính lại ngay,
+ *   bậc thay đổi được ghi user_profiles theo lô mỗi FLUSH_INTERVAL_MS.
+ *   (sketch chỉ thêm, không xóa giá trị cũ → lệch nhẹ về người chơi nhiều; job re-tier định kỳ
+ *   dựng lại sketch từ DB để hết lệch.)
+ * - Job re-tier (retierAll) stream user_profiles 2 lượt (StatsRepository.forEachProfile):
+ *   lượt 1 dựng sketch mới, lượt 2 gom những dòng có bậc thay đổi rồi UPDATE sau khi cursor đóng
+ *   (chỉ giữ một connection LEADERBOARD mỗi lúc). Chạy trên luồng riêng để không chặn scheduler chung.
+ * - Flush theo lô và làm mới ngưỡng chạy trên luồng "rank-tier-flush" (UPDATE có thể phải chờ
+ *   bulkhead LEADERBOARD), tách khỏi job re-tier để job dài không làm trễ flush.
+ */
+public class RankTierService implements GameEndListener {
+
+    public enum Tier { BRONZE, SILVER, GOLD, PLATINUM, DIAMOND }
+
+    /** Phần trăm bắt đầu của SILVER, GOLD, PLATINUM, DIAMOND (top 60% / 30% / 10% / 3%). */
+    private static final double[] TIER_PERCENTILES = {0.40, 0.70, 0.90, 0.97};
+    private static final int SKETCH_K = 200;
+    private static final long CUTOFF_REFRESH_MS = 60_000;
+    private static final long FLUSH_INTERVAL_MS = 5_000;
+    private static final long RETIER_INTERVAL_HOURS = 24;
+    private static final int BATCH_SIZE = 500;
+
+    private final StatsRepository statsRepository;
+    private final ExecutorService retierExecutor;
+    private final ScheduledExecutorService flushExecutor;
+
+    private KllSketch sketch = new KllSketch(SKETCH_K);   // guarded by this
+    private KllSketch duringRebuild = null;              // cập nhật đến trong lúc job đang dựng sketch mới
+    private volatile double[] cutoffs = null;            // null = chưa đủ dữ liệu → BRONZE
+
+    private final ConcurrentHashMap<Integer, Tier> knownTiers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Tier> pendingTiers = new ConcurrentHashMap<>();
+    private final AtomicBoolean retierRunning = new AtomicBoolean(false);
+    private final AtomicLong lastRetierRows = new AtomicLong();
+
+    public RankTierService(StatsRepository statsRepository) {
+        this.statsRepository = statsRepository;
+        this.retierExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "rank-tier-job");
+            t.setDaemon(true);
+            return t;
+        });
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rank-tier-flush");
+            t.setDaemon(true);
+            return t;
+        });
+
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        metrics.gauge("rankTier.pending", pendingTiers::size);
+        metrics.gauge("rankTier.sketchCount", this::getSketchCount);
+        metrics.gauge("rankTier.lastRetierRows", lastRetierRows::get);
+    }
+
+    public void start() {
+        flushExecutor.scheduleWithFixedDelay(this::refreshCutoffs, CUTOFF_REFRESH_MS, CUTOFF_REFRESH_MS, TimeUnit.MILLISECONDS);
+        flushExecutor.scheduleWithFixedDelay(this::flushQuietly, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        // Job đầy đủ: ngay khi khởi động rồi mỗi ngày một lần (chỉ đẩy việc sang luồng re-tier)
+        flushExecutor.scheduleWithFixedDelay(this::submitRetier, 0, RETIER_INTERVAL_HOURS, TimeUnit.HOURS);
+    }
+
+    /**
+     * Bậc ứng với rating theo ngưỡng hiện tại. O(1).
+     */
+    public Tier tierFor(double rating) {
+        double[] current = cutoffs;
+        if (current == null) return Tier.BRONZE;
+        Tier[] tiers = Tier.values();
+        for (int i = current.length - 1; i >= 0; i--) {
+            if (rating > current[i]) return tiers[i + 1];
+        }
+        return Tier.BRONZE;
+    }
+
+    @Override
+    public void onGameEnd(GameEndEvent event) {
+        RatingEngine.GameRatingResult ratings = event.getRatings();
+        if (ratings == null || !ratings.isApplied()) return; // trận hoãn: tier cập nhật ở lần re-tier sau
+        RatingEngine.ProfileStats p1 = ratings.getPlayer1Stats();
+        RatingEngine.ProfileStats p2 = ratings.getPlayer2Stats();
+        synchronized (this) {
+            sketch.update(p1.getRating());
+            sketch.update(p2.getRating());
+            if (duringRebuild != null) {
+                duringRebuild.update(p1.getRating());
+                duringRebuild.update(p2.getRating());
+            }
+        }
+        assign(p1.getUserId(), p1.getRating());
+        assign(p2.getUserId(), p2.getRating());
+    }
+
+    /**
+     * Re-tier toàn bộ user_profiles. Trả về số dòng đã đổi bậc.
+     */
+    public int retierAll() throws SQLException {
+        if (!retierRunning.compareAndSet(false, true)) {
+            return 0; // đang chạy
+        }
+        long startedAt = System.currentTimeMillis();
+        try {
+            synchronized (this) {
+                duringRebuild = new KllSketch(SKETCH_K);
+            }
+
+            // Lượt 1: dựng sketch từ DB
+            KllSketch rebuilt = new KllSketch(SKETCH_K);
+            statsRepository.forEachProfile(profile -> {
+                if (profile.getGamesPlayed() > 0) {
+                    rebuilt.update(profile.getRating());
+                }
+            });
+            synchronized (this) {
+                rebuilt.merge(duringRebuild);
+                duringRebuild = null;
+                sketch = rebuilt;
+            }
+            refreshCutoffs();
+
+            // Lượt 2: stream lại, chỉ giữ dòng đổi bậc (int + byte mỗi dòng). Ghi SAU khi cursor đóng:
+            // cả hai đều lấy quota LEADERBOARD, giữ cursor mà xin thêm connection sẽ kẹt khi bulkhead chật.
+            int[][] changedIds = {new int[1024]};
+            byte[][] changedTiers = {new byte[1024]};
+            int[] changed = {0};
+            statsRepository.forEachProfile(profile -> {
+                int userId = profile.getUserId();
+                Tier tier = profile.getGamesPlayed() > 0 ? tierFor(profile.getRating()) : Tier.BRONZE;
+                knownTiers.remove(userId); // DB giờ là nguồn chuẩn cho user này
+                if (tier.name().equals(profile.getRankTier())) {
+                    return;
+                }
+                int n = changed[0];
+                if (n == changedIds[0].length) {
+                    changedIds[0] = Arrays.copyOf(changedIds[0], n * 2);
+                    changedTiers[0] = Arrays.copyOf(changedTiers[0], n * 2);
+                }
+                changedIds[0][n] = userId;
+                changedTiers[0][n] = (byte) tier.ordinal();
+                changed[0] = n + 1;
+            });
+
+            Tier[] tiers = Tier.values();
+            Map<Integer, String> pending = new HashMap<>();
+            for (int i = 0; i < changed[0]; i++) {
+                int userId = changedIds[0][i];
+                if (knownTiers.containsKey(userId)) continue; // trận kết thúc sau lượt 2 đã gán bậc mới hơn
+                pending.put(userId, tiers[changedTiers[0][i]].name());
+                if (pending.size() == BATCH_SIZE) {
+                    statsRepository.updateRankTiers(pending);
+                    pending.clear();
+                }
+            }
+            if (!pending.isEmpty()) {
+                statsRepository.updateRankTiers(pending);
+            }
+            lastRetierRows.set(changed[0]);
+            System.out.println("✅ Rank tiers recomputed: " + changed[0] + " players changed tier in "
+                    + (System.currentTimeMillis() - startedAt) + " ms");
+            return changed[0];
+        } finally {
+            synchronized (this) {
+                duringRebuild = null;
+            }
+            retierRunning.set(false);
+        }
+    }
+
+    /**
+     * Ghi các bậc thay đổi từ game-end theo lô.
+     */
+    public int flush() throws SQLException {
+        if (pendingTiers.isEmpty()) return 0;
+        Map<Integer, Tier> batch = new HashMap<>(pendingTiers);
+        Map<Integer, String> names = new HashMap<>();
+        batch.forEach((userId, tier) -> names.put(userId, tier.name()));
+        statsRepository.updateRankTiers(names);
+        // Chỉ xóa nếu chưa có giá trị mới hơn trong lúc đang flush
+        batch.forEach(pendingTiers::remove);
+        return batch.size();
+    }
+
+    public void shutdown() {
+        flushExecutor.shutdownNow();
+        retierExecutor.shutdownNow();
+        flushQuietly();
+    }
+
+    public synchronized long getSketchCount() {
+        return sketch.getCount();
+    }
+
+    // ============================
+    // NỘI BỘ
+    // ============================
+
+    private void assign(int userId, double rating) {
+        Tier tier = tierFor(rating);
+        Tier previous = knownTiers.put(userId, tier);
+        if (previous != tier) {
+            pendingTiers.put(userId, tier);
+        }
+    }
+
+    private void refreshCutoffs() {
+        double[] next;
+        synchronized (this) {
+            if (sketch.getCount() < TIER_PERCENTILES.length * 10L) {
+                return; // quá ít người chơi để chia bậc có ý nghĩa
+            }
+            next = sketch.quantiles(TIER_PERCENTILES);
+        }
+        cutoffs = next;
+    }
+
+    private void submitRetier() {
+        retierExecutor.submit(() -> {
+            try {
+                retierAll();
+            } catch (SQLException e) {
+                System.err.println("❌ Rank tier job failed: " + e.getMessage());
+            } catch (RuntimeException e) {
+                // submit() giữ ngoại lệ trong Future không ai đọc: phải tự log
+                System.err.println("❌ Unexpected error in rank tier job: " + e);
+                e.printStackTrace();
+            }
+        });
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to flush rank tiers: " + e.getMessage());
+        } catch (RuntimeException e) {
+            // Lọt ra scheduleWithFixedDelay sẽ hủy mọi lần flush sau mà không báo gì
+            System.err.println("❌ Unexpected error flushing rank tiers: " + e);
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package com.n9.core.service;
+
+import com.n9.core.metrics.MetricsRegistry;
+import com.n9.core.repository.ProfileRecord;
+import com.n9.core.repository.StatsRepository;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * RatingEngine - Tính ELO + thống kê trận đấu trong bộ nhớ, ghi xuống user_profiles theo lô.
+ *
+ * Thay cho CALL update_user_stats_after_game (1 SELECT + tối đa 3 UPDATE mỗi trận):
+ * - Profile (rating, peak, W/L/D, win streak) được cache trong LRU, nạp bằng 1 SELECT ... IN
+ *   cho các user chưa có trong cache (warm lúc bắt đầu trận)
+ * - Kết thúc trận: tính delta ELO + streak trong bộ nhớ, đánh dấu profile "dirty"
+ * - flush() định kỳ ghi giá trị tuyệt đối của tất cả profile dirty bằng một batch (StatsRepository)
+ *   → nhiều trận của cùng người chơi trong một chu kỳ chỉ tốn 1 dòng UPDATE
+ *
+ * Rating trước/sau trận được trả về cho GameService để ghi vào games.player*_rating_before/after
+ * ngay trong câu UPDATE games đã có sẵn (không tốn thêm câu lệnh).
+ *
+ * Chỉ áp kết quả lên profile đã nạp được từ DB (flush ghi giá trị tuyệt đối, áp lên profile mặc định
+ * sẽ xóa rating/lịch sử thật). Không nạp được → kết quả bị giữ lại và áp lại ở lần flush sau.
+ */
+public class RatingEngine {
+
+    public static final double DEFAULT_RATING = SessionManager.DEFAULT_RATING;
+    private static final double K_FACTOR = 32.0;
+    private static final long FLUSH_INTERVAL_MS = 5_000;
+    private static final int MAX_CACHED_PROFILES = 100_000;
+
+    /**
+     * Thống kê của một người chơi (bản sao trong bộ nhớ của một dòng user_profiles).
+     */
+    public static class ProfileStats {
+        private final int userId;
+        private double rating = DEFAULT_RATING;
+        private double peakRating = DEFAULT_RATING;
+        private int gamesPlayed;
+        private int gamesWon;
+        private int gamesLost;
+        private int gamesDrawn;
+        private int winStreakCurrent;
+        private int winStreakBest;
+
+        ProfileStats(int userId) {
+            this.userId = userId;
+        }
+
+        ProfileStats copy() {
+            ProfileStats c = new ProfileStats(userId);
+            c.rating = rating;
+            c.peakRating = peakRating;
+            c.gamesPlayed = gamesPlayed;
+            c.gamesWon = gamesWon;
+            c.gamesLost = gamesLost;
+            c.gamesDrawn = gamesDrawn;
+            c.winStreakCurrent = winStreakCurrent;
+            c.winStreakBest = winStreakBest;
+            return c;
+        }
+
+        public int getUserId() { return userId; }
+        public double getRating() { return rating; }
+        public double getPeakRating() { return peakRating; }
+        public int getGamesPlayed() { return gamesPlayed; }
+        public int getGamesWon() { return gamesWon; }
+        public int getGamesLost() { return gamesLost; }
+        public int getGamesDrawn() { return gamesDrawn; }
+        public int getWinStreakCurrent() { return winStreakCurrent; }
+        public int getWinStreakBest() { return winStreakBest; }
+    }
+
+    /**
+     * Kết quả áp dụng một trận: rating trước/sau của hai người chơi + bản sao stats sau trận.
+     * Trận bị hoãn (chưa nạp được profile): rating và stats đều null.
+     */
+    public static class GameRatingResult {
+        private static final GameRatingResult DEFERRED = new GameRatingResult(null, null, null, null, null, null);
+
+        private final Double player1Before, player1After, player2Before, player2After;
+        private final ProfileStats player1Stats, player2Stats;
+
+        GameRatingResult(Double p1Before, Double p1After, Double p2Before, Double p2After,
+                         ProfileStats p1Stats, ProfileStats p2Stats) {
+            this.player1Before = p1Before;
+            this.player1After = p1After;
+            this.player2Before = p2Before;
+            this.player2After = p2After;
+            this.player1Stats = p1Stats;
+            this.player2Stats = p2Stats;
+        }
+
+        /** false nếu kết quả đang chờ nạp profile (chưa áp, chưa có rating/stats). */
+        public boolean isApplied() { return player1Stats != null; }
+        public Double getPlayer1Before() { return player1Before; }
+        public Double getPlayer1After() { return player1After; }
+        public Double getPlayer2Before() { return player2Before; }
+        public Double getPlayer2After() { return player2After; }
+        public ProfileStats getPlayer1Stats() { return player1Stats; }
+        public ProfileStats getPlayer2Stats() { return player2Stats; }
+    }
+
+    /**
+     * Trận chưa áp được vì chưa nạp được profile, chờ lần flush sau.
+     */
+    private static class PendingResult {
+        final int player1Id, player2Id;
+        final String winnerId;
+
+        PendingResult(int player1Id, int player2Id, String winnerId) {
+            this.player1Id = player1Id;
+            this.player2Id = player2Id;
+            this.winnerId = winnerId;
+        }
+    }
+
+    private final StatsRepository statsRepository;
+
+    // LRU theo thứ tự truy cập. Mọi truy cập nằm trong synchronized (this).
+    private final LinkedHashMap<Integer, ProfileStats> profileCache =
+            new LinkedHashMap<>(1024, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, ProfileStats> eldest) {
+                    // Profile dirty vẫn nằm trong dirtyProfiles nên bị loại khỏi cache cũng không mất dữ liệu
+                    return size() > MAX_CACHED_PROFILES;
+                }
+            };
+    // userId -> bản sao stats chờ ghi (giá trị tuyệt đối, ghi đè nhau được)
+    private final HashMap<Integer, ProfileStats> dirtyProfiles = new HashMap<>();
+    // Trận hoãn theo thứ tự kết thúc. Truy cập trong synchronized (this).
+    private final List<PendingResult> pendingResults = new ArrayList<>();
+    private final Object flushLock = new Object();
+    private volatile Consumer<GameRatingResult> deferredResultListener;
+    // Luồng riêng: flush chờ bulkhead/pool, không được chặn scheduler của ván đấu/ghép trận
+    private final ScheduledExecutorService flushExecutor;
+
+    public RatingEngine(StatsRepository statsRepository) {
+        this.statsRepository = statsRepository;
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rating-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        MetricsRegistry.getInstance().gauge("rating.dirtyProfiles", this::getDirtyCount);
+        MetricsRegistry.getInstance().gauge("rating.pendingResults", this::getPendingCount);
+    }
+
+    /**
+     * Nhận kết quả của trận hoãn khi được áp lại (GameEndEvent của trận đó đã phát với kết quả chưa áp).
+     */
+    public void setDeferredResultListener(Consumer<GameRatingResult> listener) {
+        this.deferredResultListener = listener;
+    }
+
+    public void start() {
+        flushExecutor.scheduleWithFixedDelay(this::flushQuietly, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Nạp trước profile (gọi lúc bắt đầu trận) để lúc kết thúc trận không phải chờ DB.
+     * Chạy trên luồng flush: người gọi (tick ghép trận) không chờ SELECT.
+     */
+    public void preload(String... userIds) {
+        List<Integer> ids = new ArrayList<>();
+        for (String userId : userIds) {
+            if (userId != null) ids.add(Integer.parseInt(userId));
+        }
+        flushExecutor.execute(() -> {
+            try {
+                ensureLoaded(ids);
+            } catch (SQLException e) {
+                System.err.println("❌ Failed to preload profiles: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Áp dụng kết quả trận: cập nhật ELO, W/L/D, streak trong bộ nhớ và đánh dấu chờ ghi.
+     * Không nạp được profile → giữ trận lại (áp ở lần flush sau), trả về kết quả chưa áp.
+     *
+     * @param winnerId userId người thắng, null nếu hòa
+     */
+    public GameRatingResult applyGameResult(String player1Id, String player2Id, String winnerId) {
+        int p1 = Integer.parseInt(player1Id);
+        int p2 = Integer.parseInt(player2Id);
+        try {
+            ensureLoaded(List.of(p1, p2));
+        } catch (SQLException e) {
+            // Không đọc được DB: không chặn kết thúc trận, nhưng cũng không tính trên profile mặc định
+            System.err.println("❌ Failed to load profiles for rating, deferring: " + e.getMessage());
+        }
+
+        synchronized (this) {
+            GameRatingResult result = applyIfLoaded(p1, p2, winnerId);
+            if (result != null) return result;
+            pendingResults.add(new PendingResult(p1, p2, winnerId));
+            return GameRatingResult.DEFERRED;
+        }
+    }
+
+    /**
+     * Rating hiện tại (cache), hoặc null nếu chưa nạp.
+     */
+    public synchronized Double getCachedRating(String userId) {
+        ProfileStats stats = profileCache.get(Integer.parseInt(userId));
+        return stats != null ? stats.rating : null;
+    }
+
+    /**
+     * Áp lại các trận hoãn (nếu nạp được profile) rồi ghi tất cả profile dirty xuống user_profiles
+     * trong một batch (một transaction).
+     *
+     * @return số profile đã ghi
+     */
+    public int flush() throws SQLException {
+        synchronized (flushLock) {
+            retryPending();
+
+            Map<Integer, ProfileStats> batch;
+            synchronized (this) {
+                if (dirtyProfiles.isEmpty()) return 0;
+                batch = new HashMap<>(dirtyProfiles);
+            }
+
+            List<ProfileRecord> records = new ArrayList<>(batch.size());
+            for (ProfileStats s : batch.values()) {
+                records.add(new ProfileRecord(s.userId, s.rating, s.peakRating, s.gamesPlayed, s.gamesWon,
+                        s.gamesLost, s.gamesDrawn, s.winStreakCurrent, s.winStreakBest, null));
+            }
+            statsRepository.saveProfiles(records);
+
+            synchronized (this) {
+                // Chỉ xóa nếu chưa có trận mới ghi đè trong lúc đang flush
+                batch.forEach((userId, snap) -> dirtyProfiles.remove(userId, snap));
+            }
+            return batch.size();
+        }
+    }
+
+    public synchronized int getDirtyCount() {
+        return dirtyProfiles.size();
+    }
+
+    public synchronized int getPendingCount() {
+        return pendingResults.size();
+    }
+
+    /**
+     * Flush lần cuối (shutdown hook, TRƯỚC repositories.shutdown()).
+     */
+    public void shutdown() {
+        flushExecutor.shutdownNow();
+        flushQuietly();
+        int pending = getPendingCount();
+        if (pending > 0) {
+            System.err.println("⚠️ " + pending + " game results not applied to ratings (profiles could not be loaded)");
+        }
+    }
+
+    // ============================
+    // NỘI BỘ
+    // ============================
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to flush profile stats: " + e.getMessage());
+        } catch (RuntimeException e) {
+            // Lọt ra scheduleWithFixedDelay sẽ hủy mọi lần flush (và áp lại trận hoãn) sau đó
+            System.err.println("❌ Unexpected error flushing profile stats: " + e);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Áp các trận hoãn theo thứ tự kết thúc. Vẫn không nạp được → giữ lại, giữ nguyên thứ tự.
+     */
+    private void retryPending() {
+        List<PendingResult> parked;
+        synchronized (this) {
+            if (pendingResults.isEmpty()) return;
+            parked = new ArrayList<>(pendingResults);
+            pendingResults.clear();
+        }
+        List<Integer> ids = new ArrayList<>();
+        for (PendingResult p : parked) {
+            ids.add(p.player1Id);
+            ids.add(p.player2Id);
+        }
+        try {
+            ensureLoaded(ids);
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to load profiles for " + parked.size() + " deferred results: " + e.getMessage());
+        }
+
+        List<GameRatingResult> applied = new ArrayList<>();
+        synchronized (this) {
+            List<PendingResult> stillParked = new ArrayList<>();
+            for (PendingResult p : parked) {
+                GameRatingResult result = applyIfLoaded(p.player1Id, p.player2Id, p.winnerId);
+                if (result != null) applied.add(result);
+                else stillParked.add(p);
+            }
+            pendingResults.addAll(0, stillParked); // trận hoãn mới hơn (nếu có) đứng sau
+        }
+        Consumer<GameRatingResult> listener = deferredResultListener;
+        if (listener == null) return;
+        for (GameRatingResult result : applied) {
+            try {
+                listener.accept(result);
+            } catch (RuntimeException e) {
+                System.err.println("❌ Deferred rating listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Tính trận nếu cả hai profile đã nạp (có trong cache), ngược lại trả về null. Gọi trong synchronized (this).
+     */
+    private GameRatingResult applyIfLoaded(int p1, int p2, String winnerId) {
+        ProfileStats s1 = profileCache.get(p1);
+        ProfileStats s2 = profileCache.get(p2);
+        if (s1 == null || s2 == null) return null;
+        double r1 = s1.rating, r2 = s2.rating;
+
+        double score1 = winnerId == null ? 0.5 : (Integer.parseInt(winnerId) == p1 ? 1.0 : 0.0);
+        double expected1 = expectedScore(r1, r2);
+        double delta = round2(K_FACTOR * (score1 - expected1));
+
+        applyOutcome(s1, r1 + delta, score1);
+        applyOutcome(s2, r2 - delta, 1.0 - score1);
+
+        ProfileStats snap1 = s1.copy();
+        ProfileStats snap2 = s2.copy();
+        dirtyProfiles.put(p1, snap1);
+        dirtyProfiles.put(p2, snap2);
+        return new GameRatingResult(r1, s1.rating, r2, s2.rating, snap1, snap2);
+    }
+
+    private void ensureLoaded(Collection<Integer> userIds) throws SQLException {
+        List<Integer> missing = new ArrayList<>();
+        synchronized (this) {
+            for (Integer id : userIds) {
+                if (profileCache.containsKey(id)) continue;
+                ProfileStats pending = dirtyProfiles.get(id);
+                if (pending != null) {
+                    // Bị loại khỏi cache nhưng chưa flush: dùng lại bản chờ ghi, không đọc DB (tránh dữ liệu cũ)
+                    profileCache.put(id, pending.copy());
+                } else {
+                    missing.add(id);
+                }
+            }
+        }
+        if (missing.isEmpty()) return;
+
+        Map<Integer, ProfileRecord> rows = statsRepository.findProfiles(missing);
+        List<ProfileStats> loaded = new ArrayList<>();
+        for (Integer id : missing) {
+            if (!rows.containsKey(id)) {
+                loaded.add(new ProfileStats(id)); // đọc thành công nhưng chưa có dòng: người chơi mới
+            }
+        }
+        for (ProfileRecord r : rows.values()) {
+            ProfileStats s = new ProfileStats(r.getUserId());
+            s.rating = r.getRating();
+            s.peakRating = r.getPeakRating();
+            s.gamesPlayed = r.getGamesPlayed();
+            s.gamesWon = r.getGamesWon();
+            s.gamesLost = r.getGamesLost();
+            s.gamesDrawn = r.getGamesDrawn();
+            s.winStreakCurrent = r.getWinStreakCurrent();
+            s.winStreakBest = r.getWinStreakBest();
+            loaded.add(s);
+        }
+        synchronized (this) {
+            for (ProfileStats s : loaded) {
+                profileCache.putIfAbsent(s.userId, s); // trận khác có thể đã nạp trong lúc query
+            }
+        }
+    }
+
+    private static void applyOutcome(ProfileStats s, double newRating, double score) {
+        s.rating = round2(newRating);
+        s.peakRating = Math.max(s.peakRating, s.rating);
+        s.gamesPlayed++;
+        if (score == 1.0) {
+            s.gamesWon++;
+            s.winStreakCurrent++;
+            s.winStreakBest = Math.max(s.winStreakBest, s.winStreakCurrent);
+        } else if (score == 0.0) {
+            s.gamesLost++;
+            s.winStreakCurrent = 0;
+        } else {
+            s.gamesDrawn++;
+            s.winStreakCurrent = 0;
+        }
+    }
+
+    /**
+     * Xác suất thắng kỳ vọng của A trước B theo công thức ELO.
+     */
+    static double expectedScore(double ratingA, double ratingB) {
+        return 1.0 / (1.0 + Math.pow(10.0, (ratingB - ratingA) / 400.0));
+    }
+
+    private static double round2(double v) {
+        return Math.round(v * 100.0) / 100.0; // khớp DECIMAL(10,2)
+    }
+}
@@ -0,0 +1,258 @@
+package com.n9.core.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * RatingMatchQueue - Hàng đợi ghép trận theo rating (user_profiles.current_rating).
+ *
+ * Cấu trúc:
+ * - TreeSet sắp theo (rating, thứ tự vào hàng) → tìm đối thủ gần rating nhất bằng
+ *   lower()/higher() trong O(log n), không duyệt hàng đợi
+ * - HashMap userId → entry để cancel/contains trong O(1) + O(log n)
+ *
+ * Cửa sổ rating chấp nhận được nới rộng theo thời gian chờ:
+ *   window = min(maxWindow, baseWindow + growthPerSecond * waitSeconds)
+ * Hai người chỉ ghép khi chênh lệch nằm trong cửa sổ của CẢ HAI.
+ *
+ * Người mới vào được ghép ngay nếu có đối thủ trong baseWindow (offer).
+ * Người đã chờ lâu (cửa sổ đã nới) được ghép ở sweep() định kỳ, không duyệt hàng đợi:
+ * - Mỗi khi hai người trở thành liền kề theo rating (offer/remove), tính trước thời điểm
+ *   cặp đó đủ điều kiện (cửa sổ của người vào SAU nới tới chênh lệch) và đưa vào dueChecks
+ * - Cặp hết liền kề (ghép/hủy, có người chen giữa) bị gỡ ngay: dueChecks chỉ có tối đa n - 1 cặp
+ * - sweep() chỉ lấy các cặp đã đến hạn: O(k log n) với k cặp đến hạn, không phải O(n)
+ *
+ * Không thread-safe riêng lẻ: mọi method đều synchronized.
+ */
+public class RatingMatchQueue {
+
+    public static final double DEFAULT_BASE_WINDOW = 50.0;
+    public static final double DEFAULT_GROWTH_PER_SECOND = 10.0;
+    public static final double DEFAULT_MAX_WINDOW = 400.0;
+
+    public static class QueuedPlayer {
+        private final String userId;
+        private final double rating;
+        private final long enqueuedAtNanos;
+        private final long seq;
+        // Cặp (this, người liền trên) đang chờ đến hạn, null nếu không có
+        private PairCheck upperCheck;
+
+        QueuedPlayer(String userId, double rating, long enqueuedAtNanos, long seq) {
+            this.userId = userId;
+            this.rating = rating;
+            this.enqueuedAtNanos = enqueuedAtNanos;
+            this.seq = seq;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public double getRating() {
+            return rating;
+        }
+
+        public long getEnqueuedAtNanos() {
+            return enqueuedAtNanos;
+        }
+    }
+
+    public static class Pairing {
+        private final QueuedPlayer player1;
+        private final QueuedPlayer player2;
+
+        Pairing(QueuedPlayer player1, QueuedPlayer player2) {
+            this.player1 = player1;
+            this.player2 = player2;
+        }
+
+        /** Người vào hàng trước. */
+        public QueuedPlayer getPlayer1() {
+            return player1;
+        }
+
+        public QueuedPlayer getPlayer2() {
+            return player2;
+        }
+    }
+
+    /**
+     * Hai người liền kề theo rating (lower < upper) và thời điểm cặp đủ điều kiện ghép.
+     */
+    private static final class PairCheck {
+        final QueuedPlayer lower;
+        final QueuedPlayer upper;
+        final long dueNanos;
+
+        PairCheck(QueuedPlayer lower, QueuedPlayer upper, long dueNanos) {
+            this.lower = lower;
+            this.upper = upper;
+            this.dueNanos = dueNanos;
+        }
+    }
+
+    private static final Comparator<QueuedPlayer> BY_RATING = Comparator
+            .comparingDouble(QueuedPlayer::getRating)
+            .thenComparingLong(p -> p.seq);
+
+    private final TreeSet<QueuedPlayer> byRating = new TreeSet<>(BY_RATING);
+    private final HashMap<String, QueuedPlayer> byUserId = new HashMap<>();
+    // Mỗi người là lower của tối đa một cặp nên (dueNanos, lower.seq) là khóa duy nhất
+    private final TreeSet<PairCheck> dueChecks = new TreeSet<>(
+            Comparator.comparingLong((PairCheck c) -> c.dueNanos).thenComparingLong(c -> c.lower.seq));
+    private final double baseWindow;
+    private final double growthPerSecond;
+    private final double maxWindow;
+    private long nextSeq = 0;
+
+    public RatingMatchQueue() {
+        this(DEFAULT_BASE_WINDOW, DEFAULT_GROWTH_PER_SECOND, DEFAULT_MAX_WINDOW);
+    }
+
+    public RatingMatchQueue(double baseWindow, double growthPerSecond, double maxWindow) {
+        this.baseWindow = baseWindow;
+        this.growthPerSecond = growthPerSecond;
+        this.maxWindow = maxWindow;
+    }
+
+    /**
+     * Thêm người chơi vào hàng đợi và thử ghép ngay với đối thủ gần nhất (O(log n)).
+     *
+     * @return Pairing nếu ghép được; null nếu người chơi đã được xếp hàng chờ
+     * @throws IllegalStateException nếu userId đã có trong hàng đợi
+     */
+    public synchronized Pairing offer(String userId, double rating, long nowNanos) {
+        if (byUserId.containsKey(userId)) {
+            throw new IllegalStateException("User already queued: " + userId);
+        }
+        QueuedPlayer arriving = new QueuedPlayer(userId, rating, nowNanos, nextSeq++);
+
+        QueuedPlayer best = null;
+        double bestDiff = Double.MAX_VALUE;
+        // arriving có seq lớn nhất nên lower() gồm cả người cùng rating vào trước
+        QueuedPlayer below = byRating.lower(arriving);
+        QueuedPlayer above = byRating.higher(arriving);
+        for (QueuedPlayer candidate : new QueuedPlayer[]{below, above}) {
+            if (candidate == null) continue;
+            double diff = Math.abs(candidate.rating - rating);
+            if (diff < bestDiff && acceptable(diff, arriving, candidate, nowNanos)) {
+                best = candidate;
+                bestDiff = diff;
+            }
+        }
+
+        if (best != null) {
+            removeEntry(best);
+            return new Pairing(best, arriving);
+        }
+        byRating.add(arriving);
+        byUserId.put(userId, arriving);
+        unschedule(below);
+        schedule(below, arriving);
+        schedule(arriving, above);
+        return null;
+    }
+
+    /**
+     * Ghép các cặp liền kề (theo rating) mà cửa sổ đã nới đủ rộng, cặp đến hạn sớm nhất trước.
+     * Chỉ chạm các cặp đã đến hạn: O(k log n), không duyệt hàng đợi.
+     */
+    public synchronized List<Pairing> sweep(long nowNanos) {
+        List<Pairing> pairs = new ArrayList<>();
+        while (!dueChecks.isEmpty() && dueChecks.first().dueNanos <= nowNanos) {
+            PairCheck check = dueChecks.pollFirst();
+            QueuedPlayer lower = check.lower;
+            QueuedPlayer upper = check.upper;
+            lower.upperCheck = null;
+            if (!acceptable(upper.rating - lower.rating, lower, upper, nowNanos)) {
+                add(new PairCheck(lower, upper, nowNanos + 1_000_000)); // làm tròn số thực
+                continue;
+            }
+            pairs.add(lower.seq < upper.seq ? new Pairing(lower, upper) : new Pairing(upper, lower));
+            removeEntry(lower);
+            removeEntry(upper);
+        }
+        return pairs;
+    }
+
+    /**
+     * @return entry đã bị xóa, hoặc null nếu user không có trong hàng đợi
+     */
+    public synchronized QueuedPlayer remove(String userId) {
+        QueuedPlayer entry = byUserId.get(userId);
+        if (entry != null) removeEntry(entry);
+        return entry;
+    }
+
+    public synchronized boolean contains(String userId) {
+        return byUserId.containsKey(userId);
+    }
+
+    public synchronized int size() {
+        return byUserId.size();
+    }
+
+    /**
+     * Số cặp liền kề đang chờ đến hạn (≤ size() - 1).
+     */
+    public synchronized int pendingChecks() {
+        return dueChecks.size();
+    }
+
+    /**
+     * Cửa sổ rating hiện tại của một người chơi.
+     */
+    public double windowFor(QueuedPlayer player, long nowNanos) {
+        double waitSeconds = Math.max(0, nowNanos - player.enqueuedAtNanos) / 1_000_000_000.0;
+        return Math.min(maxWindow, baseWindow + growthPerSecond * waitSeconds);
+    }
+
+    private boolean acceptable(double diff, QueuedPlayer a, QueuedPlayer b, long nowNanos) {
+        return diff <= windowFor(a, nowNanos) && diff <= windowFor(b, nowNanos);
+    }
+
+    private void removeEntry(QueuedPlayer entry) {
+        QueuedPlayer below = byRating.lower(entry);
+        QueuedPlayer above = byRating.higher(entry);
+        byRating.remove(entry);
+        byUserId.remove(entry.userId);
+        unschedule(entry);
+        unschedule(below);
+        schedule(below, above);
+    }
+
+    /**
+     * Đưa cặp vừa trở thành liền kề vào dueChecks với thời điểm đủ điều kiện; bỏ qua nếu không bao giờ đủ.
+     * Cửa sổ chỉ nới theo thời gian nên mốc là lúc cửa sổ của người vào SAU chạm chênh lệch.
+     */
+    private void schedule(QueuedPlayer lower, QueuedPlayer upper) {
+        if (lower == null || upper == null) return;
+        double diff = upper.rating - lower.rating;
+        if (diff > maxWindow) return;
+        long later = Math.max(lower.enqueuedAtNanos, upper.enqueuedAtNanos);
+        long due = later;
+        if (diff > baseWindow) {
+            if (growthPerSecond <= 0) return;
+            due += (long) Math.ceil((diff - baseWindow) / growthPerSecond * 1_000_000_000.0);
+        }
+        add(new PairCheck(lower, upper, due));
+    }
+
+    private void add(PairCheck check) {
+        check.lower.upperCheck = check;
+        dueChecks.add(check);
+    }
+
+    /**
+     * Gỡ cặp (player, người liền trên) khi hai người không còn liền kề.
+     */
+    private void unschedule(QueuedPlayer player) {
+        if (player == null || player.upperCheck == null) return;
+        dueChecks.remove(player.upperCheck);
+        player.upperCheck = null;
+    }
+}
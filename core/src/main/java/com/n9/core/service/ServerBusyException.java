@@ -0,0 +1,19 @@
+package com.n9.core.service;
+
+/**
+ * Ném ra khi một tài nguyên bị giới hạn (ví dụ: pool băm mật khẩu) đã đầy.
+ * ClientConnectionHandler chuyển exception này thành response "server busy, retry after".
+ */
+public class ServerBusyException extends RuntimeException {
+
+    private final int retryAfterSeconds;
+
+    public ServerBusyException(String message, int retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -1,9 +1,7 @@
 package com.n9.core.service;
 
-import com.n9.core.database.DatabaseManager;
+import com.n9.core.repository.SessionRepository;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.Collection;
 import java.util.UUID;
@@ -14,12 +12,16 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class SessionManager {
 
+    /** Rating mặc định (khớp DEFAULT của user_profiles.current_rating). */
+    public static final double DEFAULT_RATING = 1000.0;
+
     public static class SessionContext {
         private final String sessionId;
         private final String userId;
         private final String username;
         private String currentMatchId;
         private String challengeId; // Thêm challengeId
+        private volatile double rating = DEFAULT_RATING; // current_rating, dùng cho matchmaking
         private long lastActivityTimestamp;
 
         public SessionContext(String sid, String uid, String uname) {
@@ -60,14 +62,22 @@ public class SessionManager {
         public void setChallengeId(String cid) {
             this.challengeId = cid;
         }
+
+        public double getRating() {
+            return rating;
+        }
+
+        public void setRating(double rating) {
+            this.rating = rating;
+        }
     }
 
     private final ConcurrentHashMap<String, SessionContext> activeSessions;
     private final ConcurrentHashMap<String, SessionContext> userSessionMap; // Map tra cứu ngược: userId -> SessionContext
-    private final DatabaseManager dbManager;
+    private final SessionRepository sessionRepository;
 
-    public SessionManager(DatabaseManager dbManager) {
-        this.dbManager = dbManager;
+    public SessionManager(SessionRepository sessionRepository) {
+        this.sessionRepository = sessionRepository;
         this.activeSessions = new ConcurrentHashMap<>();
         this.userSessionMap = new ConcurrentHashMap<>(); // Khởi tạo
     }
@@ -147,26 +157,11 @@ public class SessionManager {
 
 
     private void persistSessionToDB(String sessionId, String userId) throws SQLException {
-        String sql = """
-                INSERT INTO active_sessions (session_id, user_id, status, last_heartbeat)
-                VALUES (?, ?, 'IN_LOBBY', NOW())
-                ON DUPLICATE KEY UPDATE last_heartbeat = NOW(), status = 'IN_LOBBY'
-                """;
-        try (Connection conn = dbManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, sessionId);
-            stmt.setInt(2, Integer.parseInt(userId));
-            stmt.executeUpdate();
-        }
+        sessionRepository.saveSession(sessionId, Integer.parseInt(userId));
     }
 
     private void deleteSessionFromDB(String sessionId) throws SQLException {
-        String sql = "DELETE FROM active_sessions WHERE session_id = ?";
-        try (Connection conn = dbManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, sessionId);
-            stmt.executeUpdate();
-        }
+        sessionRepository.deleteSession(sessionId);
     }
 
     /**
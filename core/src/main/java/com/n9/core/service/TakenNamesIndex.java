@@ -0,0 +1,87 @@
+package com.n9.core.service;
+
+import com.n9.core.repository.UserRepository;
+
+import java.sql.SQLException;
+import java.util.Locale;
+
+/**
+ * TakenNamesIndex - Bloom filter của username/email đã được đăng ký.
+ *
+ * - Nạp một lần lúc khởi động bằng cách stream bảng users (server-side cursor)
+ * - Cập nhật ngay sau mỗi lần INSERT user thành công
+ * - Cho phép AuthService.register bỏ qua SELECT kiểm tra trùng khi chắc chắn tên mới,
+ *   và trả lời AUTH.CHECK_USERNAME không cần chạm MySQL
+ *
+ * So sánh không phân biệt hoa thường (khớp collation utf8mb4_unicode_ci của cột).
+ */
+public class TakenNamesIndex {
+
+    private static final long MIN_EXPECTED_USERS = 1_000_000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final UserRepository userRepository;
+    private volatile BloomFilter usernames;
+    private volatile BloomFilter emails;
+    private volatile boolean loaded = false;
+
+    public TakenNamesIndex(UserRepository userRepository) {
+        this.userRepository = userRepository;
+        this.usernames = new BloomFilter(MIN_EXPECTED_USERS, FALSE_POSITIVE_RATE);
+        this.emails = new BloomFilter(MIN_EXPECTED_USERS, FALSE_POSITIVE_RATE);
+    }
+
+    /**
+     * Stream toàn bộ users vào filter. Dung lượng filter = max(1M, 2 x số user hiện tại).
+     */
+    public void loadFromDatabase() throws SQLException {
+        long startedAt = System.currentTimeMillis();
+        long userCount = userRepository.countUsers();
+
+        long expected = Math.max(MIN_EXPECTED_USERS, userCount * 2);
+        BloomFilter newUsernames = new BloomFilter(expected, FALSE_POSITIVE_RATE);
+        BloomFilter newEmails = new BloomFilter(expected, FALSE_POSITIVE_RATE);
+
+        // Repository stream từng dòng, không nạp cả bảng vào heap
+        userRepository.forEachUsernameAndEmail((username, email) -> {
+            newUsernames.put(normalize(username));
+            newEmails.put(normalize(email));
+        });
+
+        this.usernames = newUsernames;
+        this.emails = newEmails;
+        this.loaded = true;
+        System.out.println("✅ TakenNamesIndex loaded " + userCount + " users in "
+                + (System.currentTimeMillis() - startedAt) + " ms");
+    }
+
+    /**
+     * @return false nếu username CHẮC CHẮN chưa có ai dùng
+     */
+    public boolean mightContainUsername(String username) {
+        return !loaded || usernames.mightContain(normalize(username));
+    }
+
+    /**
+     * @return false nếu email CHẮC CHẮN chưa có ai dùng
+     */
+    public boolean mightContainEmail(String email) {
+        return !loaded || emails.mightContain(normalize(email));
+    }
+
+    /**
+     * Gọi sau khi INSERT user thành công (hoặc khi DB báo trùng).
+     */
+    public void add(String username, String email) {
+        if (username != null) usernames.put(normalize(username));
+        if (email != null) emails.put(normalize(email));
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+}
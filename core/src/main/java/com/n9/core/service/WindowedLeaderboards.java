@@ -0,0 +1,359 @@
+package com.n9.core.service;
+
+import com.n9.core.repository.PlayerStatsRecord;
+import com.n9.core.repository.StatsRepository;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * WindowedLeaderboards - Bảng xếp hạng theo ngày / tuần / mùa, cập nhật tăng dần.
+ *
+ * Không GROUP BY trên bảng games:
+ * - Mỗi loại khung giữ một LeaderboardIndex cho khung hiện tại (và khung liền trước để nhận
+ *   kết quả đến trễ ngay sau mốc chuyển). Mỗi trận kết thúc cộng dồn W/L vào khung chứa
+ *   completedAt: O(log n). Top N / rank của user: O(log n) như bảng all-time.
+ * - Khi sang khung mới (theo UTC), luồng phát hiện chỉ đổi Period trong bộ nhớ; khung cũ nhất
+ *   được checkpoint nốt (và bảng ngày hết hạn bị xóa) trên luồng checkpoint.
+ * - Các dòng thay đổi được ghi vào leaderboard_window_stats mỗi CHECKPOINT_INTERVAL_MS
+ *   (giá trị tuyệt đối, ghi lại nhiều lần vẫn đúng); khởi động thì nạp lại từ bảng này.
+ * - Mọi việc ghi DB chạy trên luồng "window-checkpoint" riêng (chờ bulkhead LEADERBOARD), không
+ *   chặn scheduler của ván đấu hay luồng xử lý request.
+ *
+ * Mùa = quý dương lịch (2025-Q4).
+ */
+public class WindowedLeaderboards implements GameEndListener {
+
+    public enum Window {
+        DAILY, WEEKLY, SEASON;
+
+        /** Khóa khung chứa thời điểm epochMillis (UTC). */
+        public String periodKey(long epochMillis) {
+            return periodKey(Instant.ofEpochMilli(epochMillis).atZone(ZoneOffset.UTC).toLocalDate());
+        }
+
+        /** Khóa khung liền trước khung chứa epochMillis. */
+        public String previousPeriodKey(long epochMillis) {
+            LocalDate date = Instant.ofEpochMilli(epochMillis).atZone(ZoneOffset.UTC).toLocalDate();
+            switch (this) {
+                case DAILY:
+                    return periodKey(date.minusDays(1));
+                case WEEKLY:
+                    return periodKey(date.minusWeeks(1));
+                default:
+                    return periodKey(date.minusMonths(3));
+            }
+        }
+
+        private String periodKey(LocalDate date) {
+            switch (this) {
+                case DAILY:
+                    return date.toString();
+                case WEEKLY:
+                    return String.format("%d-W%02d",
+                            date.get(IsoFields.WEEK_BASED_YEAR), date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+                default:
+                    return date.getYear() + "-Q" + date.get(IsoFields.QUARTER_OF_YEAR);
+            }
+        }
+
+        /** null nếu không phải tên khung hợp lệ (ALL_TIME, rỗng...). */
+        public static Window parse(String value) {
+            if (value == null) return null;
+            try {
+                return Window.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    private static final long CHECKPOINT_INTERVAL_MS = 30_000;
+    private static final int DAILY_RETENTION_DAYS = 35;
+
+    /** Một khung cụ thể: index xếp hạng + các user cần checkpoint. */
+    public static final class Period {
+        final Window window;
+        final String key;
+        final LeaderboardIndex index = new LeaderboardIndex(null);
+        final Set<Integer> dirtyUsers = ConcurrentHashMap.newKeySet();
+
+        Period(Window window, String key) {
+            this.window = window;
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public LeaderboardIndex getIndex() {
+            return index;
+        }
+    }
+
+    /** Khung hiện tại + khung liền trước của một loại. */
+    private static final class WindowState {
+        Period current;
+        Period previous;
+    }
+
+    private final StatsRepository statsRepository;
+    private final LeaderboardIndex allTimeIndex; // lấy username khi sự kiện thiếu
+    private final Map<Window, WindowState> windows = new EnumMap<>(Window.class);
+    private final ConcurrentLinkedQueue<Period> evictedPeriods = new ConcurrentLinkedQueue<>(); // chờ checkpoint nốt
+    private final AtomicBoolean dailyPurgeDue = new AtomicBoolean(false);
+    private final ScheduledExecutorService checkpointExecutor;
+
+    public WindowedLeaderboards(StatsRepository statsRepository, LeaderboardIndex allTimeIndex) {
+        this.statsRepository = statsRepository;
+        this.allTimeIndex = allTimeIndex;
+        this.checkpointExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "window-checkpoint");
+            t.setDaemon(true);
+            return t;
+        });
+        long now = System.currentTimeMillis();
+        for (Window window : Window.values()) {
+            WindowState state = new WindowState();
+            state.current = new Period(window, window.periodKey(now));
+            windows.put(window, state);
+        }
+    }
+
+    /**
+     * Nạp checkpoint của khung hiện tại và khung liền trước (stream, không giữ ResultSet trong bộ nhớ).
+     */
+    public void loadFromDatabase() throws SQLException {
+        long startedAt = System.currentTimeMillis();
+        int rows = 0;
+        for (Window window : Window.values()) {
+            Period current = currentPeriod(window, startedAt);
+            Period previous = new Period(window, window.previousPeriodKey(startedAt));
+            rows += loadPeriod(current);
+            rows += loadPeriod(previous);
+            WindowState state = windows.get(window);
+            synchronized (state) {
+                if (state.previous == null) state.previous = previous;
+            }
+        }
+        System.out.println("✅ WindowedLeaderboards loaded " + rows + " rows in "
+                + (System.currentTimeMillis() - startedAt) + " ms");
+    }
+
+    public void start() {
+        checkpointExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                for (Window window : Window.values()) {
+                    currentPeriod(window, System.currentTimeMillis()); // xoay khung kể cả khi không có trận
+                }
+                checkpoint();
+            } catch (Exception e) {
+                System.err.println("❌ Failed to checkpoint windowed leaderboards: " + e.getMessage());
+            }
+        }, CHECKPOINT_INTERVAL_MS, CHECKPOINT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onGameEnd(GameEndEvent event) {
+        String winnerId = event.getWinnerId();
+        long completedAt = event.getCompletedAtMillis();
+        for (Window window : Window.values()) {
+            Period period = periodFor(window, completedAt);
+            if (period == null) {
+                continue; // quá trễ, khung đã bị bỏ
+            }
+            record(period, event.getPlayer1Id(), event.getPlayer1Username(), winnerId);
+            record(period, event.getPlayer2Id(), event.getPlayer2Username(), winnerId);
+        }
+    }
+
+    /**
+     * Khung hiện tại của một loại (đã xoay nếu vừa qua mốc).
+     */
+    public Period currentPeriod(Window window) {
+        return currentPeriod(window, System.currentTimeMillis());
+    }
+
+    /**
+     * Khung đã kết thúc gần nhất, hoặc null (ví dụ ngay sau khi khởi động).
+     */
+    public Period previousPeriod(Window window) {
+        WindowState state = windows.get(window);
+        synchronized (state) {
+            return state.previous;
+        }
+    }
+
+    /**
+     * Ghi nốt các khung vừa bị bỏ, rồi các dòng thay đổi của mọi khung còn trong bộ nhớ.
+     */
+    public int checkpoint() throws SQLException {
+        finishRollovers();
+        List<Period> periods = new ArrayList<>();
+        for (WindowState state : windows.values()) {
+            synchronized (state) {
+                if (state.previous != null) periods.add(state.previous);
+                periods.add(state.current);
+            }
+        }
+        int written = 0;
+        for (Period period : periods) {
+            written += checkpoint(period);
+        }
+        return written;
+    }
+
+    public void shutdown() {
+        checkpointExecutor.shutdownNow();
+        try {
+            checkpoint();
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to checkpoint windowed leaderboards: " + e.getMessage());
+        }
+    }
+
+    // ============================
+    // NỘI BỘ
+    // ============================
+
+    private void record(Period period, String playerId, String username, String winnerId) {
+        if (playerId == null) return;
+        int userId = Integer.parseInt(playerId);
+        String name = username == null || "Unknown".equals(username) ? null : username;
+        synchronized (period) { // đọc-cộng-ghi phải nguyên tử với nhau
+            LeaderboardIndex.RankedEntry existing = period.index.get(userId);
+            if (existing == null && name == null) {
+                LeaderboardIndex.RankedEntry allTime = allTimeIndex.get(userId);
+                name = allTime != null ? allTime.getEntry().getUsername() : playerId;
+            }
+            int played = existing != null ? existing.getEntry().getGamesPlayed() : 0;
+            int won = existing != null ? existing.getEntry().getGamesWon() : 0;
+            int lost = existing != null ? existing.getEntry().getGamesLost() : 0;
+            if (winnerId != null) {
+                if (winnerId.equals(playerId)) won++;
+                else lost++;
+            }
+            period.index.update(userId, name, played + 1, won, lost);
+        }
+        period.dirtyUsers.add(userId);
+    }
+
+    private Period periodFor(Window window, long epochMillis) {
+        String key = window.periodKey(epochMillis);
+        Period current = currentPeriod(window, System.currentTimeMillis());
+        if (current.key.equals(key)) {
+            return current;
+        }
+        WindowState state = windows.get(window);
+        synchronized (state) {
+            return state.previous != null && state.previous.key.equals(key) ? state.previous : null;
+        }
+    }
+
+    private Period currentPeriod(Window window, long nowMillis) {
+        String key = window.periodKey(nowMillis);
+        WindowState state = windows.get(window);
+        Period evicted;
+        synchronized (state) {
+            if (state.current.key.equals(key)) {
+                return state.current;
+            }
+            evicted = state.previous;
+            state.previous = state.current;
+            state.current = new Period(window, key);
+        }
+        System.out.println("🔄 " + window + " leaderboard rolled over to " + key);
+        // Luồng gọi có thể là scheduler của ván đấu (onGameEnd) hoặc luồng request: chỉ xếp việc ghi
+        if (evicted != null) {
+            evictedPeriods.add(evicted);
+        }
+        if (window == Window.DAILY) {
+            dailyPurgeDue.set(true);
+        }
+        try {
+            checkpointExecutor.execute(this::finishRollovers);
+        } catch (RejectedExecutionException e) {
+            // Đang tắt: shutdown() gọi checkpoint() và ghi nốt hàng đợi
+        }
+        return state.current;
+    }
+
+    /**
+     * Checkpoint nốt các khung đã bị bỏ khỏi bộ nhớ và xóa bảng ngày hết hạn nếu vừa qua mốc ngày.
+     */
+    private void finishRollovers() {
+        Period evicted;
+        while ((evicted = evictedPeriods.poll()) != null) {
+            try {
+                checkpoint(evicted);
+            } catch (SQLException e) {
+                System.err.println("❌ Failed to checkpoint evicted " + evicted.window + " " + evicted.key + ": " + e.getMessage());
+            }
+        }
+        if (dailyPurgeDue.compareAndSet(true, false)) {
+            purgeExpiredDaily();
+        }
+    }
+
+    private int checkpoint(Period period) throws SQLException {
+        if (period.dirtyUsers.isEmpty()) return 0;
+        List<Integer> userIds = new ArrayList<>(period.dirtyUsers);
+        // Xóa trước khi đọc giá trị: trận đến sau sẽ đánh dấu lại → không mất cập nhật
+        period.dirtyUsers.removeAll(userIds);
+
+        List<PlayerStatsRecord> rows = new ArrayList<>(userIds.size());
+        for (Integer userId : userIds) {
+            LeaderboardIndex.RankedEntry ranked = period.index.get(userId);
+            if (ranked == null) continue;
+            LeaderboardIndex.Entry entry = ranked.getEntry();
+            rows.add(new PlayerStatsRecord(0, userId, entry.getUsername(),
+                    entry.getGamesPlayed(), entry.getGamesWon(), entry.getGamesLost(), null));
+        }
+        try {
+            statsRepository.saveWindowStats(period.window.name(), period.key, rows);
+        } catch (SQLException e) {
+            period.dirtyUsers.addAll(userIds); // thử lại ở chu kỳ sau
+            throw e;
+        }
+        return userIds.size();
+    }
+
+    private int loadPeriod(Period period) throws SQLException {
+        int[] rows = {0};
+        statsRepository.forEachWindowStat(period.window.name(), period.key, r -> {
+            period.index.update(r.getUserId(), r.getUsername(), r.getGamesPlayed(), r.getGamesWon(), r.getGamesLost());
+            rows[0]++;
+        });
+        return rows[0];
+    }
+
+    private void purgeExpiredDaily() {
+        Timestamp cutoff = new Timestamp(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(DAILY_RETENTION_DAYS));
+        try {
+            int deleted = statsRepository.purgeWindowStats(Window.DAILY.name(), cutoff);
+            if (deleted > 0) {
+                System.out.println("🧹 Purged " + deleted + " expired daily leaderboard rows");
+            }
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to purge daily leaderboard rows: " + e.getMessage());
+        }
+    }
+}
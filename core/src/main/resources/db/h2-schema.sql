@@ -0,0 +1,145 @@
+-- ============================================
+-- Schema rút gọn cho H2 nhúng (MODE=MySQL) - dev / test, không dùng cho production
+-- Chỉ gồm các bảng và cột mà repository JDBC đọc/ghi. Nguồn chuẩn: core/db/DB_SCRIPT.sql
+-- Không có trigger: JdbcUserRepository (SqlDialect.H2) tự INSERT user_profiles.
+-- Tên unique constraint chứa "username" / "email" để AuthService phân biệt lỗi trùng.
+-- ============================================
+
+CREATE TABLE IF NOT EXISTS users (
+    user_id INT AUTO_INCREMENT PRIMARY KEY,
+    username VARCHAR(50) NOT NULL,
+    email VARCHAR(100) NOT NULL,
+    password_hash VARCHAR(255) NOT NULL,
+    status VARCHAR(20) DEFAULT 'ACTIVE',
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    last_login TIMESTAMP NULL,
+    CONSTRAINT uk_users_username UNIQUE (username),
+    CONSTRAINT uk_users_email UNIQUE (email)
+);
+
+CREATE TABLE IF NOT EXISTS user_profiles (
+    user_id INT PRIMARY KEY,
+    display_name VARCHAR(100),
+    games_played INT DEFAULT 0,
+    games_won INT DEFAULT 0,
+    games_lost INT DEFAULT 0,
+    games_drawn INT DEFAULT 0,
+    rank_tier VARCHAR(10) DEFAULT 'BRONZE',
+    current_rating DECIMAL(10,2) DEFAULT 1000.00,
+    peak_rating DECIMAL(10,2) DEFAULT 1000.00,
+    total_score DECIMAL(12,2) DEFAULT 0.00,
+    win_streak_current INT DEFAULT 0,
+    win_streak_best INT DEFAULT 0,
+    FOREIGN KEY (user_id) REFERENCES users(user_id) ON DELETE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS idx_games_won ON user_profiles (games_won);
+
+CREATE TABLE IF NOT EXISTS games (
+    match_id VARCHAR(36) PRIMARY KEY,
+    player1_id INT NOT NULL,
+    player2_id INT NOT NULL,
+    game_mode VARCHAR(20) NOT NULL DEFAULT 'QUICK',
+    total_rounds INT DEFAULT 3,
+    status VARCHAR(20) NOT NULL DEFAULT 'WAITING_TO_START',
+    winner_id INT NULL,
+    player1_score INT DEFAULT 0,
+    player2_score INT DEFAULT 0,
+    completed_rounds INT DEFAULT 0,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    started_at TIMESTAMP NULL,
+    completed_at TIMESTAMP NULL,
+    player1_rating_before DECIMAL(10,2),
+    player1_rating_after DECIMAL(10,2),
+    player2_rating_before DECIMAL(10,2),
+    player2_rating_after DECIMAL(10,2),
+    FOREIGN KEY (player1_id) REFERENCES users(user_id) ON DELETE CASCADE,
+    FOREIGN KEY (player2_id) REFERENCES users(user_id) ON DELETE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS idx_player1_games ON games (player1_id, completed_at, match_id);
+CREATE INDEX IF NOT EXISTS idx_player2_games ON games (player2_id, completed_at, match_id);
+
+CREATE TABLE IF NOT EXISTS game_rounds (
+    round_id INT AUTO_INCREMENT PRIMARY KEY,
+    match_id VARCHAR(36) NOT NULL,
+    round_number INT NOT NULL,
+    player1_card_id INT,
+    player1_card_value INT,
+    player1_is_auto_picked BOOLEAN DEFAULT FALSE,
+    player2_card_id INT,
+    player2_card_value INT,
+    player2_is_auto_picked BOOLEAN DEFAULT FALSE,
+    round_winner_id INT,
+    player1_round_score INT DEFAULT 0,
+    player2_round_score INT DEFAULT 0,
+    started_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    completed_at TIMESTAMP NULL,
+    CONSTRAINT uk_game_round UNIQUE (match_id, round_number),
+    FOREIGN KEY (match_id) REFERENCES games(match_id) ON DELETE CASCADE
+);
+
+-- Bảng lưu trữ (MySQL: PartitionArchiver chuyển tháng cũ sang), H2 không phân vùng nên luôn rỗng
+-- nhưng cần có vì truy vấn đối đầu gộp games với games_archive.
+CREATE TABLE IF NOT EXISTS games_archive (
+    match_id VARCHAR(36) PRIMARY KEY,
+    player1_id INT NOT NULL,
+    player2_id INT NOT NULL,
+    game_mode VARCHAR(20) NOT NULL,
+    total_rounds INT,
+    status VARCHAR(20),
+    winner_id INT NULL,
+    player1_score INT,
+    player2_score INT,
+    completed_rounds INT,
+    created_at TIMESTAMP NOT NULL,
+    started_at TIMESTAMP NULL,
+    completed_at TIMESTAMP NULL,
+    player1_rating_before DECIMAL(10,2),
+    player1_rating_after DECIMAL(10,2),
+    player2_rating_before DECIMAL(10,2),
+    player2_rating_after DECIMAL(10,2)
+);
+
+CREATE INDEX IF NOT EXISTS idx_archive_players ON games_archive (player1_id, player2_id);
+
+CREATE TABLE IF NOT EXISTS game_rounds_archive (
+    match_id VARCHAR(36) NOT NULL,
+    round_number INT NOT NULL,
+    player1_card_id INT,
+    player1_card_value INT,
+    player1_is_auto_picked BOOLEAN,
+    player2_card_id INT,
+    player2_card_value INT,
+    player2_is_auto_picked BOOLEAN,
+    round_winner_id INT,
+    player1_round_score INT,
+    player2_round_score INT,
+    started_at TIMESTAMP NOT NULL,
+    completed_at TIMESTAMP NULL,
+    PRIMARY KEY (match_id, round_number)
+);
+
+CREATE TABLE IF NOT EXISTS active_sessions (
+    session_id VARCHAR(100) PRIMARY KEY,
+    user_id INT NOT NULL,
+    match_id VARCHAR(36),
+    status VARCHAR(20) DEFAULT 'CONNECTED',
+    last_heartbeat TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    last_activity TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    FOREIGN KEY (user_id) REFERENCES users(user_id) ON DELETE CASCADE
+);
+
+CREATE TABLE IF NOT EXISTS leaderboard_window_stats (
+    window_type VARCHAR(10) NOT NULL,
+    period_key VARCHAR(10) NOT NULL,
+    user_id INT NOT NULL,
+    games_played INT DEFAULT 0,
+    games_won INT DEFAULT 0,
+    games_lost INT DEFAULT 0,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    PRIMARY KEY (window_type, period_key, user_id),
+    FOREIGN KEY (user_id) REFERENCES users(user_id) ON DELETE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS idx_window_updated ON leaderboard_window_stats (window_type, updated_at);
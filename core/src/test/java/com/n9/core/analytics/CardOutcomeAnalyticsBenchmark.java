@@ -0,0 +1,302 @@
+package com.n9.core.analytics;
+
+import com.n9.shared.model.dto.game.CardDto;
+import com.n9.shared.util.CardUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Benchmark thống kê lá-vs-lá (CardOutcomeAnalytics), không cần DB.
+ *
+ * Run main() (tham số 1 = số hiệp, mặc định 100M; tham số 2 = số segment cho bước 4, 0 = bỏ qua;
+ * cần khoảng -Xmx2g và vài GB đĩa tạm):
+ * 1. Ghi 4 segment game_rounds.csv.gz đúng định dạng GameExporter (có dòng NULL, dòng cuối không '\n',
+ *    một dòng sai luật), nạp lại và so mọi truy vấn với RoundColumns dựng trực tiếp
+ * 2. Sinh N hiệp theo bộ bài CardUtils.generateDeck (mỗi ván rút 6 lá khác nhau, ~4% auto-pick)
+ * 3. Gộp song song, in thời gian / rounds/s, so với số đếm lúc sinh dữ liệu
+ * 4. Ghi N hiệp đó thành các segment game_rounds.csv.gz, nạp lại bằng CardOutcomeAnalytics.load
+ *    (đo thời gian nạp ở quy mô thật), gộp và so mọi truy vấn với bước 3; xóa file tạm
+ *
+ * Thoát với mã 1 nếu kết quả sai.
+ */
+public class CardOutcomeAnalyticsBenchmark {
+
+    private static final int FILES = 4;
+    private static final int ROUNDS_PER_FILE = 150_000;
+    private static final double AUTO_PICK_RATE = 0.04;
+    private static final int SCALE_FILES = 64;
+    private static final byte[] MATCH_ID_PREFIX = "00000000-0000-4000-8000-".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private static int[] deckValues;
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 100_000_000;
+        int scaleFiles = args.length > 1 ? Integer.parseInt(args[1]) : SCALE_FILES;
+        System.out.println("=== Card outcome analytics benchmark (" + rounds + " rounds) ===\n");
+        List<CardDto> deck = CardUtils.generateDeck();
+        deckValues = new int[deck.size()];
+        for (int i = 0; i < deckValues.length; i++) {
+            deckValues[i] = deck.get(i).getValue();
+        }
+
+        // 1. File xuất → nạp lại
+        Path directory = Files.createTempDirectory("card-outcomes");
+        SplittableRandom random = new SplittableRandom(11);
+        RoundColumns expected = new RoundColumns(FILES * ROUNDS_PER_FILE);
+        for (int f = 0; f < FILES; f++) {
+            Path segment = Files.createDirectories(directory.resolve(String.format("segment-%06d", f)));
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(
+                    Files.newOutputStream(segment.resolve(GameExporter.ROUNDS_FILE))), StandardCharsets.UTF_8))) {
+                out.write(String.join(",", GameExporter.ROUND_COLUMNS));
+                out.write('\n');
+                for (int i = 0; i < ROUNDS_PER_FILE / 3; i++) {
+                    writeGame(out, random, expected, "m-" + f + "-" + i);
+                }
+                out.write("m-null,1,,,0,7,7,0,,0,1,1700000000000\n"); // thiếu lá người chơi 1 → bỏ qua
+                out.write("m-bad,2,9,9,0,12,3,0,12,0,1,1700000000000"); // người chơi 2 thắng bằng lá nhỏ hơn, không '\n'
+                expected.add(2, 9, false, 3, false, RoundColumns.PLAYER2);
+            }
+        }
+        long startNanos = System.nanoTime();
+        RoundColumns loaded = CardOutcomeAnalytics.load(directory);
+        double loadSeconds = (System.nanoTime() - startNanos) / 1e9;
+        check(loaded.size() == expected.size(), "loaded " + loaded.size() + " rounds, expected " + expected.size());
+        check(loaded.getSkipped() == FILES, "skipped " + loaded.getSkipped() + " rows, expected " + FILES);
+        CardOutcomeReport fromFiles = CardOutcomeAnalytics.aggregate(loaded);
+        CardOutcomeReport direct = CardOutcomeAnalytics.aggregate(expected);
+        int queries = compareAll(fromFiles, direct);
+        check(fromFiles.getRuleMismatches() == FILES, "rule mismatches " + fromFiles.getRuleMismatches());
+        System.out.printf("1. Loaded %,d rounds from %d files in %.2f s (%,.0f rounds/s), %d queries match, %d rule mismatches%n",
+                loaded.size(), FILES, loadSeconds, loaded.size() / loadSeconds, queries, fromFiles.getRuleMismatches());
+
+        // 2. Sinh dữ liệu lớn
+        startNanos = System.nanoTime();
+        RoundColumns big = new RoundColumns(rounds);
+        long[] tally = new long[4]; // 9 gặp auto-pick: thắng, thua, hòa; số lượt auto-pick
+        int[] values = new int[6];
+        boolean[] autos = new boolean[6];
+        while (big.size() + 3 <= rounds) {
+            dealGame(random, values, autos);
+            for (int r = 0; r < 3; r++) {
+                int value1 = values[r];
+                int value2 = values[r + 3];
+                int outcome = value1 > value2 ? RoundColumns.PLAYER1 : value2 > value1 ? RoundColumns.PLAYER2 : RoundColumns.TIE;
+                big.add(r + 1, value1, autos[r], value2, autos[r + 3], outcome);
+                if (autos[r]) tally[3]++;
+                if (autos[r + 3]) tally[3]++;
+                if (value1 == 9 && autos[r + 3]) tally[outcome == RoundColumns.PLAYER1 ? 0 : outcome == RoundColumns.TIE ? 2 : 1]++;
+                if (value2 == 9 && autos[r]) tally[outcome == RoundColumns.PLAYER2 ? 0 : outcome == RoundColumns.TIE ? 2 : 1]++;
+            }
+        }
+        System.out.printf("2. Generated %,d rounds in %.1f s%n", big.size(), (System.nanoTime() - startNanos) / 1e9);
+
+        // 3. Gộp
+        CardOutcomeAnalytics.aggregate(big); // warm-up
+        startNanos = System.nanoTime();
+        CardOutcomeReport report = CardOutcomeAnalytics.aggregate(big);
+        double aggregateSeconds = (System.nanoTime() - startNanos) / 1e9;
+        startNanos = System.nanoTime();
+        CardOutcomeReport.Outcomes nineVsAuto = report.outcomes(0, 9, 0, null, true);
+        double queryMillis = (System.nanoTime() - startNanos) / 1e6;
+        check(report.getRounds() == big.size(), "aggregated " + report.getRounds() + " rounds");
+        check(nineVsAuto.getWins() == tally[0] && nineVsAuto.getLosses() == tally[1] && nineVsAuto.getTies() == tally[2],
+                "9 vs auto-picked differs from generator tally");
+        check(report.autoPickedMoves(0) == tally[3], "auto-picked moves differ");
+        check(report.getRuleMismatches() == 0, "generated data breaks the rule");
+        System.out.printf("3. Aggregated %,d rounds in %.3f s (%,.0f rounds/s) on %d cores%n",
+                big.size(), aggregateSeconds, big.size() / aggregateSeconds, Runtime.getRuntime().availableProcessors());
+        System.out.printf("   9 vs auto-picked: %,d moves, win %.1f%%, tie %.1f%% (query %.2f ms)%n",
+                nineVsAuto.getTotal(), nineVsAuto.getWinRate(), nineVsAuto.getTieRate(), queryMillis);
+
+        // 4. Nạp N hiệp từ file xuất
+        if (scaleFiles > 0) {
+            Path scaleDirectory = Files.createTempDirectory("card-outcomes-scale");
+            try {
+                startNanos = System.nanoTime();
+                long bytes = writeSegments(big, scaleDirectory, scaleFiles);
+                double writeSeconds = (System.nanoTime() - startNanos) / 1e9;
+                int generated = big.size();
+                big = null; // chỉ giữ một bản 2 byte / hiệp trong heap
+
+                startNanos = System.nanoTime();
+                RoundColumns reloaded = CardOutcomeAnalytics.load(scaleDirectory);
+                double scaleLoadSeconds = (System.nanoTime() - startNanos) / 1e9;
+                check(reloaded.size() == generated && reloaded.getSkipped() == 0,
+                        "reloaded " + reloaded.size() + " rounds (" + reloaded.getSkipped() + " skipped), expected " + generated);
+                int scaleQueries = compareAll(CardOutcomeAnalytics.aggregate(reloaded), report);
+                System.out.printf("4. Wrote %,d rounds as %d segments (%,d MB gzip) in %.1f s; "
+                                + "loaded in %.1f s (%,.0f rounds/s) on %d cores, %d queries match%n",
+                        generated, scaleFiles, bytes >> 20, writeSeconds, scaleLoadSeconds,
+                        generated / scaleLoadSeconds, Runtime.getRuntime().availableProcessors(), scaleQueries);
+            } finally {
+                deleteRecursively(scaleDirectory);
+            }
+        }
+
+        System.out.println("\n✅ Card outcome analytics OK");
+    }
+
+    /** Một ván 3 hiệp vào file và vào expected; ~1/500 ván bỏ dở sau hiệp 1. */
+    private static void writeGame(Writer out, SplittableRandom random, RoundColumns expected, String matchId) throws Exception {
+        int[] values = new int[6];
+        boolean[] autos = new boolean[6];
+        dealGame(random, values, autos);
+        int rounds = random.nextInt(500) == 0 ? 1 : 3;
+        for (int r = 0; r < rounds; r++) {
+            int value1 = values[r];
+            int value2 = values[r + 3];
+            int score1 = value1 > value2 ? 1 : 0;
+            int score2 = value2 > value1 ? 1 : 0;
+            out.write(matchId + "," + (r + 1) + "," + (value1 + 9) + "," + value1 + "," + (autos[r] ? 1 : 0) + ","
+                    + (value2 + 18) + "," + value2 + "," + (autos[r + 3] ? 1 : 0) + ","
+                    + (score1 > 0 ? "101" : score2 > 0 ? "202" : "") + "," + score1 + "," + score2 + ","
+                    + (1_700_000_000_000L + r) + "\n");
+            expected.add(r + 1, value1, autos[r], value2, autos[r + 3],
+                    score1 > score2 ? RoundColumns.PLAYER1 : score2 > score1 ? RoundColumns.PLAYER2 : RoundColumns.TIE);
+        }
+    }
+
+    /**
+     * Ghi các hiệp thành `files` segment game_rounds.csv.gz đúng định dạng GameExporter
+     * (match_id dạng UUID, mỗi 3 hiệp một ván; gzip mức nhanh nhất để bước ghi không quá lâu).
+     *
+     * @return tổng số byte đã nén
+     */
+    private static long writeSegments(RoundColumns rounds, Path directory, int files) throws IOException {
+        byte[] cards = rounds.cards();
+        byte[] flags = rounds.flags();
+        byte[] header = (String.join(",", GameExporter.ROUND_COLUMNS) + "\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] line = new byte[128];
+        int perFile = (rounds.size() + files - 1) / files;
+        long bytes = 0;
+        for (int f = 0; f < files; f++) {
+            Path segment = Files.createDirectories(directory.resolve(String.format("segment-%06d", f)));
+            Path file = segment.resolve(GameExporter.ROUNDS_FILE);
+            try (OutputStream out = new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(file), 1 << 16) {
+                {
+                    def.setLevel(Deflater.BEST_SPEED);
+                }
+            }, 1 << 16)) {
+                out.write(header);
+                int to = Math.min(rounds.size(), (f + 1) * perFile);
+                for (int i = f * perFile; i < to; i++) {
+                    int value1 = (cards[i] & 0xFF) >> 4;
+                    int value2 = cards[i] & 0x0F;
+                    int outcome = (flags[i] >> 4) & 0x3;
+                    int n = 0;
+                    System.arraycopy(MATCH_ID_PREFIX, 0, line, 0, MATCH_ID_PREFIX.length);
+                    n += MATCH_ID_PREFIX.length;
+                    long game = i / 3;
+                    for (int shift = 44; shift >= 0; shift -= 4) {
+                        line[n++] = HEX[(int) (game >> shift) & 0xF];
+                    }
+                    line[n++] = ',';
+                    n = writeNumber(line, n, (flags[i] & 0x3) + 1);
+                    line[n++] = ',';
+                    n = writeNumber(line, n, value1 + 9);
+                    line[n++] = ',';
+                    n = writeNumber(line, n, value1);
+                    line[n++] = ',';
+                    line[n++] = (byte) ((flags[i] & 1 << 2) != 0 ? '1' : '0');
+                    line[n++] = ',';
+                    n = writeNumber(line, n, value2 + 18);
+                    line[n++] = ',';
+                    n = writeNumber(line, n, value2);
+                    line[n++] = ',';
+                    line[n++] = (byte) ((flags[i] & 1 << 3) != 0 ? '1' : '0');
+                    line[n++] = ',';
+                    if (outcome != RoundColumns.TIE) {
+                        n = writeNumber(line, n, outcome == RoundColumns.PLAYER1 ? 101 : 202);
+                    }
+                    line[n++] = ',';
+                    line[n++] = (byte) (outcome == RoundColumns.PLAYER1 ? '1' : '0');
+                    line[n++] = ',';
+                    line[n++] = (byte) (outcome == RoundColumns.PLAYER2 ? '1' : '0');
+                    line[n++] = ',';
+                    n = writeNumber(line, n, 1_700_000_000_000L + i);
+                    line[n++] = '\n';
+                    out.write(line, 0, n);
+                }
+            }
+            bytes += Files.size(file);
+        }
+        return bytes;
+    }
+
+    /** Số không âm dạng thập phân vào buffer; trả về vị trí sau chữ số cuối. */
+    private static int writeNumber(byte[] buffer, int offset, long value) {
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) digits++;
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return offset + digits;
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /** Rút 6 lá khác nhau từ bộ 36 lá: 3 lá đầu của người chơi 1, 3 lá sau của người chơi 2. */
+    private static void dealGame(SplittableRandom random, int[] values, boolean[] autos) {
+        int[] deck = deckValues.clone();
+        for (int i = 0; i < 6; i++) {
+            int j = i + random.nextInt(deck.length - i);
+            int card = deck[j];
+            deck[j] = deck[i];
+            deck[i] = card;
+            values[i] = card;
+            autos[i] = random.nextDouble() < AUTO_PICK_RATE;
+        }
+    }
+
+    /** So mọi tổ hợp bộ lọc giữa hai report; trả về số truy vấn. */
+    private static int compareAll(CardOutcomeReport actual, CardOutcomeReport expected) {
+        Boolean[] autoFilters = {null, true, false};
+        int queries = 0;
+        for (int round = 0; round <= 3; round++) {
+            for (int mine = 0; mine <= 9; mine++) {
+                for (int opponent = 0; opponent <= 9; opponent++) {
+                    for (Boolean myAuto : autoFilters) {
+                        for (Boolean opponentAuto : autoFilters) {
+                            CardOutcomeReport.Outcomes a = actual.outcomes(round, mine, opponent, myAuto, opponentAuto);
+                            CardOutcomeReport.Outcomes e = expected.outcomes(round, mine, opponent, myAuto, opponentAuto);
+                            check(a.getWins() == e.getWins() && a.getLosses() == e.getLosses() && a.getTies() == e.getTies(),
+                                    "query differs: round " + round + ", " + mine + " vs " + opponent
+                                            + ", auto " + myAuto + "/" + opponentAuto);
+                            queries++;
+                        }
+                    }
+                }
+            }
+        }
+        return queries;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.err.println("❌ " + message);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.n9.core.analytics;
+
+import com.n9.core.database.H2Database;
+import com.n9.core.repository.GameResultRecord;
+import com.n9.core.repository.GameRoundRecord;
+import com.n9.core.repository.jdbc.JdbcGameRepository;
+import com.n9.core.repository.jdbc.JdbcUserRepository;
+import com.n9.core.repository.jdbc.SqlDialect;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Kiểm tra GameExporter trên H2 nhúng (không cần MySQL).
+ *
+ * Run main():
+ * 1. 2500 ván (UUID ngẫu nhiên), 3 hiệp / ván; một số ván bỏ dở, một số còn đang chơi
+ * 2. Xuất 1 segment rồi dừng (maxSegments = 1), giả lập segment dở dang bị bỏ lại
+ * 3. Chạy lại: đi tiếp từ checkpoint tới hết bảng
+ * 4. Đọc lại mọi file: đủ ván đã đóng, không trùng, đúng thứ tự match_id, hiệp khớp ván, giá trị khớp
+ * 5. Chạy lần nữa: không có gì mới, không tạo segment rỗng
+ *
+ * Thoát với mã 1 nếu kết quả sai.
+ */
+public class GameExportTest {
+
+    private static final int USERS = 50;
+    private static final int GAMES = 2_500;
+    private static final int CHUNK = 256;
+    private static final int SEGMENT = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Testing game export ===\n");
+        H2Database db = new H2Database("export-test");
+        JdbcUserRepository users = new JdbcUserRepository(db, SqlDialect.H2);
+        JdbcGameRepository games = new JdbcGameRepository(db, SqlDialect.H2);
+        for (int i = 1; i <= USERS; i++) {
+            users.createUser("player" + i, "player" + i + "@example.com", "hash", "player" + i);
+        }
+
+        // 1. Dữ liệu: matchId → "winner,score1,score2,status"
+        Random random = new Random(7);
+        Map<String, String> closed = new HashMap<>();
+        int closedRounds = 0;
+        for (int i = 0; i < GAMES; i++) {
+            String matchId = UUID.randomUUID().toString();
+            int player1 = 1 + random.nextInt(USERS);
+            int player2 = 1 + (player1 + random.nextInt(USERS - 1)) % USERS;
+            games.createGame(matchId, player1, player2, 3);
+            int rounds = i % 11 == 0 ? 1 : 3;
+            int score1 = 0;
+            int score2 = 0;
+            for (int round = 1; round <= rounds; round++) {
+                int value1 = 1 + random.nextInt(9);
+                int value2 = 1 + random.nextInt(9);
+                Integer roundWinner = value1 == value2 ? null : value1 > value2 ? player1 : player2;
+                score1 += value1 > value2 ? 1 : 0;
+                score2 += value2 > value1 ? 1 : 0;
+                games.saveRound(new GameRoundRecord(matchId, round, value1, value1, round == 2,
+                        value2, value2, false, roundWinner, value1 > value2 ? 1 : 0, value2 > value1 ? 1 : 0));
+            }
+            if (i % 50 == 7) {
+                continue; // đang chơi: không được xuất
+            }
+            Integer winner = score1 == score2 ? null : score1 > score2 ? player1 : player2;
+            GameResultRecord result = new GameResultRecord(matchId, winner, score1, score2, rounds,
+                    1000.0, 1000.0, 1000.0, 1000.0, 1_700_000_000_000L + i * 1000L);
+            if (rounds < 3) {
+                games.abandonGame(result);
+                closed.put(matchId, (winner != null ? winner : "") + ",0,0,ABANDONED");
+            } else {
+                games.completeGame(result);
+                closed.put(matchId, (winner != null ? winner : "") + "," + score1 + "," + score2 + ",COMPLETED");
+            }
+            closedRounds += rounds;
+        }
+        System.out.println("1. " + GAMES + " games, " + closed.size() + " closed with " + closedRounds + " rounds");
+
+        Path directory = Files.createTempDirectory("game-export");
+        GameExporter exporter = new GameExporter(db, SqlDialect.H2, directory, CHUNK, SEGMENT);
+
+        // 2. Một segment rồi dừng; lần chạy bị ngắt để lại segment dở dang
+        GameExporter.Result first = exporter.export(1);
+        check(first.getGames() == SEGMENT && !first.isFinished(), "first run exported " + first.getGames());
+        Path partial = Files.createDirectories(directory.resolve("segment-000001"));
+        Files.write(partial.resolve(GameExporter.GAMES_FILE + ".tmp"), new byte[]{1, 2, 3});
+        System.out.println("2. First run: " + first.getGames() + " games, stopped at " + first.getLastMatchId());
+
+        // 3. Chạy tiếp
+        GameExporter.Result second = exporter.export(0);
+        check(second.isFinished(), "second run did not finish");
+        check(first.getGames() + second.getGames() == closed.size(),
+                "exported " + (first.getGames() + second.getGames()) + " games, expected " + closed.size());
+        System.out.printf("3. Resumed: %d games, %d rounds (%.0f rows/s)%n",
+                second.getGames(), second.getRounds(), second.getRowsPerSecond());
+
+        // 4. Đọc lại
+        List<String> exportedIds = new ArrayList<>();
+        Map<String, Integer> roundsPerGame = new HashMap<>();
+        int segments = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "segment-*")) {
+            List<Path> sorted = new ArrayList<>();
+            entries.forEach(sorted::add);
+            sorted.sort(null);
+            for (Path segment : sorted) {
+                segments++;
+                for (String[] row : read(segment.resolve(GameExporter.GAMES_FILE), GameExporter.GAME_COLUMNS.length)) {
+                    String expected = closed.get(row[0]);
+                    check(expected != null, "exported a game that is not closed: " + row[0]);
+                    check(expected.equals(row[5] + "," + row[6] + "," + row[7] + "," + row[4]),
+                            "game " + row[0] + " exported as " + String.join(",", row) + ", expected " + expected);
+                    check(!row[12].isEmpty(), "missing completed_at for " + row[0]);
+                    exportedIds.add(row[0]);
+                }
+                String previous = "";
+                for (String[] row : read(segment.resolve(GameExporter.ROUNDS_FILE), GameExporter.ROUND_COLUMNS.length)) {
+                    check(closed.containsKey(row[0]), "round of a game that is not closed: " + row[0]);
+                    check(row[0].compareTo(previous) >= 0, "rounds out of match_id order");
+                    check(row[4].equals(row[1].equals("2") ? "1" : "0"), "wrong auto-pick flag: " + String.join(",", row));
+                    previous = row[0];
+                    roundsPerGame.merge(row[0], 1, Integer::sum);
+                }
+            }
+        }
+        List<String> expectedOrder = new ArrayList<>(closed.keySet());
+        expectedOrder.sort(null);
+        check(exportedIds.equals(expectedOrder), "games missing, duplicated or out of order");
+        int exportedRounds = roundsPerGame.values().stream().mapToInt(Integer::intValue).sum();
+        check(exportedRounds == closedRounds, "exported " + exportedRounds + " rounds, expected " + closedRounds);
+        System.out.println("4. Read back " + exportedIds.size() + " games and " + exportedRounds
+                + " rounds from " + segments + " segments");
+
+        // 5. Không còn gì mới
+        GameExporter.Result third = exporter.export(0);
+        check(third.getGames() == 0 && third.getSegments() == 0 && third.isFinished(), "third run exported data");
+        check(!Files.exists(directory.resolve(String.format("segment-%06d", segments))), "empty segment created");
+        System.out.println("5. Re-run is a no-op");
+
+        db.shutdown();
+        System.out.println("\n✅ Game export OK");
+    }
+
+    /** Các dòng dữ liệu (bỏ header) của một file CSV.gz; dữ liệu test không có giá trị cần quote. */
+    private static List<String[]> read(Path file, int columns) throws Exception {
+        List<String[]> rows = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            check(in.readLine().split(",").length == columns, "bad header in " + file);
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] row = line.split(",", -1);
+                check(row.length == columns, "bad row in " + file + ": " + line);
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.err.println("❌ " + message);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.n9.core.database;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import java.lang.reflect.Proxy;
+
+/**
+ * Kiểm tra PoolSizeController không cần MySQL: MXBean giả, mỗi bước đặt số thread chờ /
+ * connection đang dùng rồi gọi sample() và so kích thước pool mong đợi.
+ *
+ * Chạy: java -cp ... com.n9.core.database.AdaptivePoolSizingTest
+ */
+public class AdaptivePoolSizingTest {
+
+    private static final int MIN = 10;
+    private static final int MAX = 30;
+    private static final int SHRINK_AFTER = 3;
+
+    // Trạng thái pool giả
+    private static int maxPoolSize = MIN;
+    private static int minimumIdle = 2;
+    private static int active;
+    private static int total;
+    private static int awaiting;
+
+    public static void main(String[] args) {
+        System.out.println("=== Testing adaptive pool sizing ===\n");
+        Bulkhead gameplay = new Bulkhead(Workload.GAMEPLAY, MIN, 5_000);
+        PoolSizeController controller = new PoolSizeController(fakePool(), fakeConfig(), MIN, MAX, minimumIdle,
+                20, 2, SHRINK_AFTER, gameplay::resize);
+
+        // 1. Pool đang mở connection (total < max): có thread chờ nhưng chưa tăng
+        load(6, 6, 4);
+        expect(controller.sample(), MIN, "1. Warm-up with waiters");
+
+        // 2. Pool đầy, 5 thread chờ → tăng ít nhất 5
+        load(10, 10, 5);
+        expect(controller.sample(), 15, "2. Saturated, 5 waiters");
+        expect(gameplay.getSize(), 15, "   Gameplay bulkhead follows pool");
+
+        // 3. Tải kéo dài → dừng ở cận trên
+        for (int i = 0; i < 10; i++) {
+            load(maxPoolSize, maxPoolSize, 3);
+            controller.sample();
+        }
+        expect(maxPoolSize, MAX, "3. Sustained load capped");
+
+        // 4. Không ai chờ nhưng lấy connection chậm (ví dụ tạo connection mới chậm) → vẫn tăng
+        maxPoolSize = 12;
+        load(12, 12, 0);
+        controller.recordAcquire(50_000_000L);
+        controller.recordAcquire(40_000_000L);
+        expect(controller.sample(), 14, "4. Slow acquire, no waiters");
+
+        // 5. Tải giảm: bớt 1 sau mỗi SHRINK_AFTER lần lấy mẫu, không xuống dưới cận dưới
+        load(2, 14, 0);
+        for (int i = 1; i < SHRINK_AFTER; i++) {
+            expect(controller.sample(), 14, "5. Idle sample " + i + " (no shrink yet)");
+        }
+        expect(controller.sample(), 13, "   Idle sample " + SHRINK_AFTER);
+        for (int i = 0; i < 100; i++) {
+            controller.sample();
+        }
+        expect(maxPoolSize, MIN, "   Idle for long");
+        expect(gameplay.getSize(), MIN, "   Gameplay bulkhead follows pool");
+        if (minimumIdle > maxPoolSize) fail("minimumIdle " + minimumIdle + " > maximumPoolSize " + maxPoolSize);
+
+        // 6. Dùng trên 50% → không giảm
+        maxPoolSize = 20;
+        load(12, 20, 0);
+        for (int i = 0; i < SHRINK_AFTER * 2; i++) {
+            controller.sample();
+        }
+        expect(maxPoolSize, 20, "6. Busy but not saturated");
+
+        System.out.println("\nResizes: " + controller.getResizes());
+        System.out.println("✅ Adaptive pool sizing OK");
+    }
+
+    private static void load(int activeConnections, int totalConnections, int threadsAwaiting) {
+        active = activeConnections;
+        total = totalConnections;
+        awaiting = threadsAwaiting;
+    }
+
+    private static void expect(int actual, int expected, String step) {
+        System.out.println(step + ": " + actual);
+        if (actual != expected) fail(step + " expected " + expected + " but was " + actual);
+    }
+
+    /** HikariPoolMXBean giả: chỉ các getter controller dùng. */
+    private static HikariPoolMXBean fakePool() {
+        return (HikariPoolMXBean) Proxy.newProxyInstance(HikariPoolMXBean.class.getClassLoader(),
+                new Class<?>[]{HikariPoolMXBean.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getActiveConnections": return active;
+                        case "getIdleConnections": return total - active;
+                        case "getTotalConnections": return total;
+                        case "getThreadsAwaitingConnection": return awaiting;
+                        default: throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    /** HikariConfigMXBean giả: maximumPoolSize / minimumIdle. */
+    private static HikariConfigMXBean fakeConfig() {
+        return (HikariConfigMXBean) Proxy.newProxyInstance(HikariConfigMXBean.class.getClassLoader(),
+                new Class<?>[]{HikariConfigMXBean.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getMaximumPoolSize": return maxPoolSize;
+                        case "setMaximumPoolSize":
+                            if ((int) args[0] < minimumIdle) fail("maximumPoolSize set below minimumIdle");
+                            maxPoolSize = (int) args[0];
+                            return null;
+                        case "getMinimumIdle": return minimumIdle;
+                        case "setMinimumIdle": minimumIdle = (int) args[0]; return null;
+                        default: throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static void fail(String message) {
+        System.err.println("❌ " + message);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,99 @@
+package com.n9.core.database;
+
+import com.n9.core.metrics.MetricsRegistry;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Kiểm tra bulkhead không cần MySQL: "pool" giả 10 connection (Semaphore), các loại tải
+ * không phải GAMEPLAY bị giữ hết quota, GAMEPLAY vẫn phải lấy được connection ngay.
+ *
+ * Chạy: java -cp ... com.n9.core.database.BulkheadIsolationTest
+ */
+public class BulkheadIsolationTest {
+
+    private static final int POOL_SIZE = 10;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Testing per-workload bulkheads ===\n");
+        Semaphore pool = new Semaphore(POOL_SIZE);
+        Bulkhead.ConnectionSource source = () -> fakeConnection(pool);
+
+        Map<Workload, Bulkhead> bulkheads = new EnumMap<>(Workload.class);
+        for (Workload workload : Workload.values()) {
+            bulkheads.put(workload, new Bulkhead(workload, workload.getDefaultSize(), workload.getDefaultAcquireTimeoutMs()));
+        }
+
+        // 1. Chiếm hết quota AUTH, LEADERBOARD, SESSION (giống register burst + truy vấn rank chậm)
+        List<Connection> held = new ArrayList<>();
+        for (Workload workload : Workload.values()) {
+            if (workload == Workload.GAMEPLAY) continue;
+            for (int i = 0; i < workload.getDefaultSize(); i++) {
+                held.add(bulkheads.get(workload).acquire(source));
+            }
+        }
+        System.out.println("1. Held " + held.size() + " non-gameplay connections, pool free = " + pool.availablePermits());
+
+        // 2. Loại đã đầy bị từ chối sau acquireTimeout, không chờ 30s
+        long start = System.currentTimeMillis();
+        try {
+            bulkheads.get(Workload.LEADERBOARD).acquire(source);
+            fail("LEADERBOARD should be full");
+        } catch (SQLTransientConnectionException e) {
+            System.out.println("2. Rejected after " + (System.currentTimeMillis() - start) + " ms: " + e.getMessage());
+        }
+
+        // 3. GAMEPLAY vẫn còn phần dành riêng
+        List<Connection> gameplay = new ArrayList<>();
+        for (int i = 0; i < Workload.GAMEPLAY_RESERVED; i++) {
+            start = System.nanoTime();
+            gameplay.add(bulkheads.get(Workload.GAMEPLAY).acquire(source));
+            System.out.printf("3. Gameplay connection %d acquired in %.3f ms%n", i + 1, (System.nanoTime() - start) / 1e6);
+        }
+
+        // 4. close() trả permit đúng một lần
+        Connection first = held.get(0);
+        first.close();
+        first.close();
+        int authInUse = bulkheads.get(Workload.AUTH).getInUse();
+        System.out.println("4. AUTH in use after double close: " + authInUse);
+        if (authInUse != Workload.AUTH.getDefaultSize() - 1) fail("permit released twice or not at all");
+
+        for (Connection conn : held) conn.close();
+        for (Connection conn : gameplay) conn.close();
+        if (pool.availablePermits() != POOL_SIZE) fail("pool leaked " + (POOL_SIZE - pool.availablePermits()));
+
+        System.out.println("\n5. Metrics:");
+        MetricsRegistry.getInstance().snapshot().forEach((name, value) -> {
+            if (name.startsWith("db.bulkhead.")) System.out.println("   " + name + " = " + value);
+        });
+        System.out.println("\n✅ Bulkheads OK");
+    }
+
+    /** Connection giả: lấy một permit của pool, close() trả lại. */
+    private static Connection fakeConnection(Semaphore pool) throws SQLException {
+        if (!pool.tryAcquire()) throw new SQLException("fake pool exhausted");
+        boolean[] closed = {false};
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if ("close".equals(method.getName()) && !closed[0]) {
+                        closed[0] = true;
+                        pool.release();
+                    }
+                    return method.getName().equals("isClosed") ? closed[0] : null;
+                });
+    }
+
+    private static void fail(String message) {
+        System.err.println("❌ " + message);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,73 @@
+package com.n9.core.database;
+
+import com.n9.core.metrics.MetricsRegistry;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Kiểm tra định tuyến đọc/ghi của DatabaseManager với một MySQL thứ hai đứng thay replica.
+ *
+ * Ví dụ (replica local ở cổng 3307, cùng user/password với primary):
+ *   java -Ddb.replica.urls=jdbc:mysql://localhost:3307/cardgame_db?useSSL=false&serverTimezone=UTC&allowPublicKeyRetrieval=true \
+ *        -cp ... com.n9.core.database.ReadReplicaRoutingTest
+ *
+ * Kiểm tra:
+ * 1. getConnection() luôn tới primary
+ * 2. getReadConnection() tới replica khi replica fresh
+ * 3. Sau markWritten(userId), getReadConnection(userId) quay về primary (read-your-writes)
+ */
+public class ReadReplicaRoutingTest {
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Testing read/write routing ===\n");
+        if (System.getProperty("db.replica.urls") == null && System.getenv("DB_REPLICA_URLS") == null) {
+            System.err.println("❌ Set -Ddb.replica.urls to a second MySQL instance");
+            System.exit(1);
+        }
+
+        DatabaseManager db = DatabaseManager.getInstance();
+        Thread.sleep(3_000); // chờ lần đo trễ đầu tiên
+
+        String primary = serverId(db.getConnection());
+        String read = serverId(db.getReadConnection(Workload.LEADERBOARD));
+        System.out.println("1. primary=" + primary + ", read=" + read);
+        check(!primary.equals(read), "read pool should use the replica");
+
+        int userId = 1;
+        db.markWritten(userId);
+        String ownRead = serverId(db.getReadConnection(Workload.LEADERBOARD, userId));
+        System.out.println("2. read after write (user " + userId + ")=" + ownRead);
+        check(primary.equals(ownRead), "read-your-writes should hit the primary");
+
+        String otherRead = serverId(db.getReadConnection(Workload.LEADERBOARD, userId + 1));
+        System.out.println("3. read for another user=" + otherRead);
+        check(!primary.equals(otherRead), "unrelated reads should stay on the replica");
+
+        System.out.println("\n4. Metrics:");
+        MetricsRegistry.getInstance().snapshot().forEach((name, value) -> {
+            if (name.startsWith("db.")) System.out.println("   " + name + " = " + value);
+        });
+
+        db.printPoolStats();
+        db.shutdown();
+        System.out.println("\n✅ Routing OK");
+    }
+
+    /** @@hostname:@@port của server phía sau connection (đóng connection sau khi đọc). */
+    private static String serverId(Connection conn) throws Exception {
+        try (conn; Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT CONCAT(@@hostname, ':', @@port)")) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.err.println("❌ " + message);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,608 @@
+package com.n9.core.database;
+
+import com.n9.core.repository.HeadToHeadRecord;
+import com.n9.core.repository.MatchHistoryRecord;
+import com.n9.core.repository.PlayerStatsRecord;
+import com.n9.core.repository.jdbc.JdbcGameRepository;
+import com.n9.core.repository.jdbc.JdbcStatsRepository;
+import com.n9.core.repository.jdbc.SqlDialect;
+import com.n9.core.service.RatingEngine;
+import com.n9.shared.constants.GameConstants;
+import com.n9.shared.model.dto.game.CardDto;
+import com.n9.shared.util.CardUtils;
+import com.n9.shared.util.GameRuleUtils;
+import org.mindrot.jbcrypt.BCrypt;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sinh dữ liệu giả quy mô production (users, user_profiles, games, game_rounds) để đo
+ * truy vấn bảng xếp hạng và lịch sử đấu trên MySQL local hoặc H2 nhúng.
+ *
+ * Mô hình:
+ * - Mỗi người chơi có kỹ năng ẩn ~ N(0, 1) và mức hoạt động lệch (log-normal): ít người chơi rất nhiều
+ * - Ghép cặp như hàng chờ: người chơi A chọn theo mức hoạt động, B gần A theo rating hiện tại
+ *   (thứ tự rating sắp lại sau mỗi gen.users ván) → rating tách dần theo kỹ năng thật
+ * - Mỗi hiệp hai người rút từ bộ bài chung CardUtils.generateDeck như GameService: người giỏi hay chọn
+ *   lá lớn nhất còn lại, ít bị hết giờ (auto-pick = lá ngẫu nhiên); lá lớn hơn thắng (GameRuleUtils)
+ * - ~2% ván bỏ dở (ABANDONED, người ở lại thắng); ELO K=32 như RatingEngine, bậc theo 40/70/90/97%
+ *   như RankTierService; thời điểm ván trải đều trong gen.months tháng gần nhất (rơi vào nhiều phân vùng)
+ *
+ * Ghi: INSERT nhiều dòng (gen.batchRows dòng / câu) trên gen.writers connection song song.
+ * Mỗi task ghi ván trước rồi tới hiệp của chính các ván đó (H2 có FK game_rounds → games).
+ * user_id nối tiếp MAX(user_id) hiện có nên chạy thêm vào DB đang có dữ liệu được.
+ * MySQL: trigger after_user_insert đã tạo profile rỗng → profile cuối ghi bằng ON DUPLICATE KEY UPDATE.
+ * Mọi user có cùng mật khẩu gen.password (một hash BCrypt) để dùng cho load test đăng nhập.
+ *
+ * Chạy (mặc định MySQL theo database.properties, 1M users, 10M ván):
+ *   java -Dgen.users=2000000 -Dgen.games=20000000 -cp ... com.n9.core.database.SyntheticDataGenerator
+ *   java -Dgen.backend=h2 -Dgen.users=100000 -Dgen.games=1000000 -cp ... (H2 in-memory: dữ liệu nằm trong heap)
+ * gen.profile=true (mặc định): sau khi nạp, đo các truy vấn bảng xếp hạng / lịch sử đấu / đối đầu.
+ */
+public class SyntheticDataGenerator {
+
+    private static final String[] USER_COLUMNS = {
+            "user_id", "username", "email", "password_hash", "status", "created_at", "last_login"};
+    private static final String[] PROFILE_COLUMNS = {
+            "user_id", "display_name", "games_played", "games_won", "games_lost", "games_drawn", "rank_tier",
+            "current_rating", "peak_rating", "total_score", "win_streak_current", "win_streak_best"};
+    private static final String[] GAME_COLUMNS = {
+            "match_id", "player1_id", "player2_id", "game_mode", "total_rounds", "status", "winner_id",
+            "player1_score", "player2_score", "completed_rounds", "created_at", "started_at", "completed_at",
+            "player1_rating_before", "player1_rating_after", "player2_rating_before", "player2_rating_after"};
+    private static final String[] ROUND_COLUMNS = {
+            "match_id", "round_number", "player1_card_id", "player1_card_value", "player1_is_auto_picked",
+            "player2_card_id", "player2_card_value", "player2_is_auto_picked", "round_winner_id",
+            "player1_round_score", "player2_round_score", "started_at", "completed_at"};
+
+    private static final double K_FACTOR = 32.0;                   // như RatingEngine
+    private static final double[] TIER_PERCENTILES = {0.40, 0.70, 0.90, 0.97}; // như RankTierService
+    private static final String[] TIERS = {"BRONZE", "SILVER", "GOLD", "PLATINUM", "DIAMOND"};
+    private static final double ABANDON_RATE = 0.02;
+    private static final double BASE_AUTO_PICK_RATE = 0.04;
+    private static final long ROUND_MILLIS = 12_000;               // chọn bài + xem kết quả
+
+    private final ConnectionProvider db;
+    private final SqlDialect dialect;
+    private final int users;
+    private final long games;
+    private final int months;
+    private final int batchRows;
+    private final ThreadPoolExecutor writers;
+    private final SplittableRandom random;
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong pendingBatches = new AtomicLong();
+
+    // Bộ bài theo CardUtils.generateDeck: chỉ số = cardId - 1
+    private final int[] deckIds;
+    private final int[] deckValues;
+
+    // Trạng thái người chơi, chỉ số 0..users-1 (user_id = firstUserId + chỉ số)
+    private int firstUserId;
+    private double[] skill;
+    private double[] activityCumulative;
+    private int[] byRating;      // chỉ số người chơi sắp theo rating (bản chụp)
+    private int[] ratingRank;    // vị trí trong byRating
+    private double[] rating;
+    private double[] peakRating;
+    private int[] played, won, lost, drawn, streak, bestStreak, points, lastOpponent;
+
+    public SyntheticDataGenerator(ConnectionProvider db, SqlDialect dialect, int users, long games, int months,
+                                  int batchRows, int writerThreads, long seed) {
+        if (users < 2) {
+            throw new IllegalArgumentException("Need at least 2 users");
+        }
+        this.db = db;
+        this.dialect = dialect;
+        this.users = users;
+        this.games = games;
+        this.months = Math.max(1, months);
+        this.batchRows = Math.max(1, batchRows);
+        this.random = new SplittableRandom(seed);
+        // Hàng đợi ngắn + CallerRunsPolicy: luồng sinh tự ghi khi writer không theo kịp (giới hạn bộ nhớ)
+        this.writers = new ThreadPoolExecutor(writerThreads, writerThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(writerThreads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+
+        List<CardDto> deck = CardUtils.generateDeck();
+        deckIds = new int[deck.size()];
+        deckValues = new int[deck.size()];
+        for (int i = 0; i < deck.size(); i++) {
+            deckIds[i] = deck.get(i).getCardId();
+            deckValues[i] = deck.get(i).getValue();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String backend = System.getProperty("gen.backend", "mysql");
+        ConnectionProvider db;
+        SqlDialect dialect;
+        switch (backend) {
+            case "mysql":
+                db = DatabaseManager.getInstance();
+                dialect = SqlDialect.MYSQL;
+                break;
+            case "h2":
+                db = new H2Database("synthetic");
+                dialect = SqlDialect.H2;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown gen.backend: " + backend);
+        }
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(db, dialect,
+                Integer.getInteger("gen.users", 1_000_000),
+                Long.getLong("gen.games", 10_000_000L),
+                Integer.getInteger("gen.months", 6),
+                Integer.getInteger("gen.batchRows", 1_000),
+                Integer.getInteger("gen.writers", 4),
+                Long.getLong("gen.seed", 42L));
+        System.out.println("=== Synthetic data generator (" + backend + ") ===\n");
+        try {
+            generator.generate(System.getProperty("gen.password", "password123"));
+            if (Boolean.parseBoolean(System.getProperty("gen.profile", "true"))) {
+                generator.profileQueries();
+            }
+        } finally {
+            db.shutdown();
+        }
+    }
+
+    /** Sinh và ghi toàn bộ: users → games + game_rounds → user_profiles. */
+    public void generate(String password) throws Exception {
+        try {
+            long now = System.currentTimeMillis();
+            long windowStart = now - months * 30L * 24 * 3600 * 1000;
+            initPlayers();
+            writeUsers(BCrypt.hashpw(password, BCrypt.gensalt()), windowStart, now);
+            writeGames(windowStart, now);
+            writeProfiles();
+        } finally {
+            writers.shutdown();
+        }
+    }
+
+    // ============================
+    // NGƯỜI CHƠI
+    // ============================
+
+    private void initPlayers() throws SQLException {
+        try (Connection conn = db.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(user_id), 0) FROM users")) {
+            rs.next();
+            firstUserId = rs.getInt(1) + 1;
+        }
+        skill = new double[users];
+        activityCumulative = new double[users];
+        double total = 0;
+        for (int i = 0; i < users; i++) {
+            skill[i] = random.nextGaussian();
+            total += Math.exp(random.nextGaussian() * 1.2);   // log-normal: top 1% chơi ~15 lần trung vị
+            activityCumulative[i] = total;
+        }
+        byRating = new int[users];
+        ratingRank = new int[users];
+        rating = new double[users];
+        peakRating = new double[users];
+        Arrays.fill(rating, RatingEngine.DEFAULT_RATING);
+        Arrays.fill(peakRating, RatingEngine.DEFAULT_RATING);
+        played = new int[users];
+        won = new int[users];
+        lost = new int[users];
+        drawn = new int[users];
+        streak = new int[users];
+        bestStreak = new int[users];
+        points = new int[users];
+        lastOpponent = new int[users];
+        sortByRating();
+    }
+
+    /** Chụp lại thứ tự rating cho ghép cặp (cùng rating: ngẫu nhiên theo thứ tự chỉ số ban đầu). */
+    private void sortByRating() {
+        Integer[] order = new Integer[users];
+        for (int i = 0; i < users; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(rating[a], rating[b]));
+        for (int r = 0; r < users; r++) {
+            byRating[r] = order[r];
+            ratingRank[order[r]] = r;
+        }
+    }
+
+    private void writeUsers(String passwordHash, long windowStart, long now) throws Exception {
+        long startNanos = System.nanoTime();
+        List<Object[]> rows = new ArrayList<>(batchRows);
+        for (int i = 0; i < users; i++) {
+            int userId = firstUserId + i;
+            String username = "sim" + userId;
+            long createdAt = windowStart - (long) (random.nextDouble() * 365 * 24 * 3600 * 1000L);
+            long lastLogin = now - (long) (random.nextDouble() * (now - windowStart));
+            rows.add(new Object[]{userId, username, username + "@example.com", passwordHash, "ACTIVE",
+                    new Timestamp(createdAt), new Timestamp(lastLogin)});
+            if (rows.size() == batchRows) {
+                submit("users", USER_COLUMNS, rows, null, null, "");
+                rows = new ArrayList<>(batchRows);
+            }
+        }
+        submit("users", USER_COLUMNS, rows, null, null, "");
+        awaitWriters();
+        report("users", users, startNanos);
+    }
+
+    private void writeProfiles() throws Exception {
+        long startNanos = System.nanoTime();
+        double[] cutoffs = tierCutoffs();
+        // MySQL: trigger đã tạo profile rỗng khi INSERT users → cập nhật đè
+        String suffix = "";
+        if (dialect.createsProfileByTrigger()) {
+            StringBuilder update = new StringBuilder(" ON DUPLICATE KEY UPDATE ");
+            for (int c = 1; c < PROFILE_COLUMNS.length; c++) {
+                if (c > 1) update.append(", ");
+                update.append(PROFILE_COLUMNS[c]).append(" = VALUES(").append(PROFILE_COLUMNS[c]).append(')');
+            }
+            suffix = update.toString();
+        }
+        List<Object[]> rows = new ArrayList<>(batchRows);
+        for (int i = 0; i < users; i++) {
+            int userId = firstUserId + i;
+            String tier = TIERS[0];
+            if (played[i] > 0) {
+                for (int t = 0; t < cutoffs.length; t++) {
+                    if (rating[i] >= cutoffs[t]) tier = TIERS[t + 1];
+                }
+            }
+            rows.add(new Object[]{userId, "sim" + userId, played[i], won[i], lost[i], drawn[i], tier,
+                    rating[i], peakRating[i], points[i], streak[i], bestStreak[i]});
+            if (rows.size() == batchRows) {
+                submit("user_profiles", PROFILE_COLUMNS, rows, null, null, suffix);
+                rows = new ArrayList<>(batchRows);
+            }
+        }
+        submit("user_profiles", PROFILE_COLUMNS, rows, null, null, suffix);
+        awaitWriters();
+        report("user_profiles", users, startNanos);
+    }
+
+    /** Ngưỡng rating của SILVER..DIAMOND trên những người đã chơi. */
+    private double[] tierCutoffs() {
+        double[] ratings = new double[users];
+        int n = 0;
+        for (int i = 0; i < users; i++) {
+            if (played[i] > 0) ratings[n++] = rating[i];
+        }
+        Arrays.sort(ratings, 0, n);
+        double[] cutoffs = new double[TIER_PERCENTILES.length];
+        for (int t = 0; t < cutoffs.length; t++) {
+            cutoffs[t] = n == 0 ? Double.MAX_VALUE : ratings[(int) Math.min(n - 1, (long) (TIER_PERCENTILES[t] * n))];
+        }
+        return cutoffs;
+    }
+
+    // ============================
+    // VÁN ĐẤU
+    // ============================
+
+    private void writeGames(long windowStart, long now) throws Exception {
+        long startNanos = System.nanoTime();
+        long rounds = 0;
+        int window = Math.max(1, users / 200);   // đối thủ trong ±0.5% người chơi quanh rating của A
+        double spacing = (double) (now - windowStart - 3 * ROUND_MILLIS) / Math.max(1, games);
+        int[] available = new int[deckIds.length];
+        List<Object[]> gameRows = new ArrayList<>(batchRows);
+        List<Object[]> roundRows = new ArrayList<>(batchRows * GameConstants.TOTAL_ROUNDS);
+        for (long g = 0; g < games; g++) {
+            if (g > 0 && g % users == 0) {
+                sortByRating();
+            }
+            int a = pickByActivity();
+            int offset = 1 + random.nextInt(window);
+            int rank = ratingRank[a] + (random.nextBoolean() ? offset : -offset);
+            int b = byRating[Math.min(users - 1, Math.max(0, rank))];
+            if (b == a) b = byRating[ratingRank[a] == 0 ? 1 : ratingRank[a] - 1];
+            boolean aFirst = random.nextBoolean();
+            int p1 = aFirst ? a : b;
+            int p2 = aFirst ? b : a;
+            String matchId = new UUID(random.nextLong(), random.nextLong()).toString();
+            long createdAt = windowStart + (long) (g * spacing) + random.nextInt(1_000);
+
+            // Các hiệp trên bộ bài chung
+            for (int i = 0; i < available.length; i++) available[i] = i;
+            int remaining = available.length;
+            int score1 = 0;
+            int score2 = 0;
+            int roundsPlayed = GameConstants.TOTAL_ROUNDS;
+            int leaver = -1;
+            if (random.nextDouble() < ABANDON_RATE) {
+                roundsPlayed = random.nextInt(GameConstants.TOTAL_ROUNDS); // 0-2 hiệp rồi một người rời
+                leaver = random.nextBoolean() ? p1 : p2;
+            }
+            for (int r = 1; r <= roundsPlayed; r++) {
+                boolean p1PicksFirst = random.nextBoolean();
+                boolean auto1 = random.nextDouble() < autoPickRate(p1);
+                boolean auto2 = random.nextDouble() < autoPickRate(p2);
+                int card1, card2;
+                if (p1PicksFirst) {
+                    card1 = pickCard(available, remaining--, p1, auto1);
+                    card2 = pickCard(available, remaining--, p2, auto2);
+                } else {
+                    card2 = pickCard(available, remaining--, p2, auto2);
+                    card1 = pickCard(available, remaining--, p1, auto1);
+                }
+                int winner = GameRuleUtils.getRoundWinner(card(card1), card(card2));
+                int roundScore1 = winner == 1 ? GameConstants.POINTS_PER_WIN : 0;
+                int roundScore2 = winner == 2 ? GameConstants.POINTS_PER_WIN : 0;
+                score1 += roundScore1;
+                score2 += roundScore2;
+                long roundStart = createdAt + (r - 1) * ROUND_MILLIS;
+                roundRows.add(new Object[]{matchId, r,
+                        deckIds[card1], deckValues[card1], auto1,
+                        deckIds[card2], deckValues[card2], auto2,
+                        winner == 0 ? null : (Integer) userId(winner == 1 ? p1 : p2), roundScore1, roundScore2,
+                        new Timestamp(roundStart), new Timestamp(roundStart + ROUND_MILLIS - 2_000)});
+            }
+            rounds += roundsPlayed;
+            points[p1] += score1;
+            points[p2] += score2;
+
+            // Kết quả + ELO như GameService / RatingEngine
+            int winnerIndex;
+            if (leaver >= 0) {
+                winnerIndex = leaver == p1 ? p2 : p1;
+            } else {
+                int gameWinner = GameRuleUtils.getGameWinner(score1, score2);
+                winnerIndex = gameWinner == 1 ? p1 : gameWinner == 2 ? p2 : -1;
+            }
+            double before1 = rating[p1];
+            double before2 = rating[p2];
+            double result1 = winnerIndex == p1 ? 1.0 : winnerIndex == p2 ? 0.0 : 0.5;
+            double delta = round2(K_FACTOR * (result1 - 1.0 / (1.0 + Math.pow(10.0, (before2 - before1) / 400.0))));
+            applyOutcome(p1, before1 + delta, result1);
+            applyOutcome(p2, before2 - delta, 1.0 - result1);
+            lastOpponent[p1] = p2;
+            lastOpponent[p2] = p1;
+
+            long completedAt = createdAt + Math.max(1, roundsPlayed) * ROUND_MILLIS;
+            boolean abandoned = leaver >= 0;
+            gameRows.add(new Object[]{matchId, userId(p1), userId(p2), "QUICK", GameConstants.TOTAL_ROUNDS,
+                    abandoned ? "ABANDONED" : "COMPLETED",
+                    winnerIndex >= 0 ? userId(winnerIndex) : null,
+                    // Ván bỏ dở: abandonGame không ghi điểm / số hiệp (giữ mặc định 0)
+                    abandoned ? 0 : score1, abandoned ? 0 : score2, abandoned ? 0 : roundsPlayed,
+                    new Timestamp(createdAt), new Timestamp(createdAt), new Timestamp(completedAt),
+                    before1, rating[p1], before2, rating[p2]});
+
+            if (gameRows.size() == batchRows) {
+                submit("games", GAME_COLUMNS, gameRows, "game_rounds", roundRows, "");
+                gameRows = new ArrayList<>(batchRows);
+                roundRows = new ArrayList<>(batchRows * GameConstants.TOTAL_ROUNDS);
+                if ((g + 1) % (batchRows * 500L) == 0) {
+                    System.out.printf("   ... %,d games (%,.0f rows/s)%n", g + 1,
+                            rowsWritten.get() / ((System.nanoTime() - startNanos) / 1e9));
+                }
+            }
+        }
+        submit("games", GAME_COLUMNS, gameRows, "game_rounds", roundRows, "");
+        awaitWriters();
+        report("games", games, startNanos);
+        System.out.printf("   + %,d game_rounds%n", rounds);
+    }
+
+    /** Người chơi theo mức hoạt động (tìm nhị phân trên tổng tích lũy). */
+    private int pickByActivity() {
+        double target = random.nextDouble() * activityCumulative[users - 1];
+        int index = Arrays.binarySearch(activityCumulative, target);
+        return Math.min(users - 1, index >= 0 ? index : -index - 1);
+    }
+
+    /** Người giỏi ít hết giờ hơn: 4% ở kỹ năng trung bình. */
+    private double autoPickRate(int player) {
+        return Math.min(0.3, BASE_AUTO_PICK_RATE * Math.exp(-0.7 * skill[player]));
+    }
+
+    /**
+     * Rút một lá (chỉ số bộ bài) khỏi available[0..remaining): auto-pick hoặc chọn bừa → ngẫu nhiên,
+     * còn lại chọn lá lớn nhất với xác suất tăng theo kỹ năng.
+     */
+    private int pickCard(int[] available, int remaining, int player, boolean autoPicked) {
+        int slot = random.nextInt(remaining);
+        double bestChance = 0.1 + 0.8 / (1.0 + Math.exp(-skill[player]));
+        if (!autoPicked && random.nextDouble() < bestChance) {
+            for (int i = 0; i < remaining; i++) {
+                if (deckValues[available[i]] > deckValues[available[slot]]) slot = i;
+            }
+        }
+        int picked = available[slot];
+        available[slot] = available[remaining - 1];
+        return picked;
+    }
+
+    private CardDto card(int deckIndex) {
+        CardDto card = new CardDto();
+        card.setCardId(deckIds[deckIndex]);
+        card.setValue(deckValues[deckIndex]);
+        return card;
+    }
+
+    private void applyOutcome(int player, double newRating, double result) {
+        rating[player] = round2(newRating);
+        peakRating[player] = Math.max(peakRating[player], rating[player]);
+        played[player]++;
+        if (result == 1.0) {
+            won[player]++;
+            streak[player]++;
+            bestStreak[player] = Math.max(bestStreak[player], streak[player]);
+        } else if (result == 0.0) {
+            lost[player]++;
+            streak[player] = 0;
+        } else {
+            drawn[player]++;
+            streak[player] = 0;
+        }
+    }
+
+    private int userId(int player) {
+        return firstUserId + player;
+    }
+
+    // ============================
+    // GHI
+    // ============================
+
+    /**
+     * Đưa một lô cho writer; childRows (nếu có) ghi sau rows trên cùng connection.
+     */
+    private void submit(String table, String[] columns, List<Object[]> rows,
+                        String childTable, List<Object[]> childRows, String suffix) throws Exception {
+        checkFailure();
+        if (rows.isEmpty()) return;
+        pendingBatches.incrementAndGet();
+        writers.execute(() -> {
+            try (Connection conn = db.getConnection()) {
+                if (failure.get() != null) return;
+                insert(conn, table, columns, rows, suffix);
+                if (childTable != null) {
+                    insert(conn, childTable, ROUND_COLUMNS, childRows, "");
+                }
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                pendingBatches.decrementAndGet();
+            }
+        });
+    }
+
+    private void insert(Connection conn, String table, String[] columns, List<Object[]> rows, String suffix)
+            throws SQLException {
+        for (int from = 0; from < rows.size(); from += batchRows) {
+            int to = Math.min(rows.size(), from + batchRows);
+            try (PreparedStatement stmt = conn.prepareStatement(insertSql(table, columns, to - from, suffix))) {
+                int index = 1;
+                for (int r = from; r < to; r++) {
+                    for (Object value : rows.get(r)) {
+                        if (value == null) {
+                            stmt.setNull(index++, Types.NULL);
+                        } else {
+                            stmt.setObject(index++, value);
+                        }
+                    }
+                }
+                stmt.executeUpdate();
+            }
+            rowsWritten.addAndGet(to - from);
+        }
+    }
+
+    /** INSERT INTO t (c1, c2) VALUES (?, ?), (?, ?) ... */
+    private static String insertSql(String table, String[] columns, int rows, String suffix) {
+        String placeholders = "(" + String.join(", ", Collections.nCopies(columns.length, "?")) + ")";
+        StringBuilder sql = new StringBuilder(64 + rows * (placeholders.length() + 2));
+        sql.append("INSERT INTO ").append(table).append(" (").append(String.join(", ", columns)).append(") VALUES ");
+        for (int r = 0; r < rows; r++) {
+            if (r > 0) sql.append(", ");
+            sql.append(placeholders);
+        }
+        return sql.append(suffix).toString();
+    }
+
+    /** Chờ mọi lô đã đưa ghi xong (giữa các bảng: FK users → games → profiles trên H2). */
+    private void awaitWriters() throws Exception {
+        while (pendingBatches.get() > 0) {
+            Thread.sleep(20);
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() throws Exception {
+        Exception e = failure.get();
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    private void report(String table, long rows, long startNanos) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        System.out.printf("✅ %s: %,d rows in %.1f s (%,.0f rows/s written incl. child rows)%n",
+                table, rows, seconds, rowsWritten.getAndSet(0) / seconds);
+    }
+
+    // ============================
+    // ĐO TRUY VẤN
+    // ============================
+
+    /**
+     * Đo các truy vấn bảng xếp hạng / lịch sử đấu trên dữ liệu vừa sinh (lần đầu = cold, sau đó trung bình 5 lần).
+     */
+    public void profileQueries() throws Exception {
+        JdbcStatsRepository stats = new JdbcStatsRepository(db, dialect);
+        JdbcGameRepository gameRepository = new JdbcGameRepository(db, dialect);
+        int busiest = 0;
+        for (int i = 1; i < users; i++) {
+            if (played[i] > played[busiest]) busiest = i;
+        }
+        int busiestId = userId(busiest);
+        int opponentId = userId(lastOpponent[busiest]);
+        sortByRating();
+        int median = byRating[users / 2];
+        System.out.printf("%n📊 Query profile (busiest user %d: %,d games)%n", busiestId, played[busiest]);
+
+        time("countRankedPlayers", stats::countRankedPlayers);
+        time("findTopPlayers(50, 0)", () -> stats.findTopPlayers(50, 0));
+        time("findTopPlayers(50, 100000)", () -> stats.findTopPlayers(50, 100_000));
+        time("findRankedPlayer(busiest)", () -> stats.findRankedPlayer(busiestId));
+        time("findRankedPlayer(median)", () -> stats.findRankedPlayer(userId(median)));
+        time("findMatchHistory(busiest, first page)", () -> gameRepository.findMatchHistory(busiestId, null, null, 20));
+        time("findMatchHistory(busiest, page 50)", () -> {
+            List<MatchHistoryRecord> page = gameRepository.findMatchHistory(busiestId, null, null, 20);
+            for (int p = 1; p < 50 && page.size() == 20; p++) {
+                MatchHistoryRecord last = page.get(page.size() - 1);
+                page = gameRepository.findMatchHistory(busiestId, last.getCompletedAtMillis(), last.getMatchId(), 20);
+            }
+            return page;
+        });
+        long weekAgo = System.currentTimeMillis() - 7L * 24 * 3600 * 1000;
+        time("findHeadToHead(busiest, last opponent)", () -> gameRepository.findHeadToHead(busiestId, opponentId, weekAgo));
+
+        List<PlayerStatsRecord> top = stats.findTopPlayers(3, 0);
+        HeadToHeadRecord pair = gameRepository.findHeadToHead(busiestId, opponentId, weekAgo);
+        System.out.println("   Top 3: " + top.stream().map(p -> p.getUsername() + " " + p.getGamesWon() + "/"
+                + p.getGamesPlayed()).reduce((x, y) -> x + ", " + y).orElse("-"));
+        System.out.println("   Head-to-head busiest vs last opponent: " + pair.getGames() + " games, "
+                + pair.getWins() + " wins, " + pair.getLosses() + " losses");
+    }
+
+    @FunctionalInterface
+    private interface Query {
+        Object run() throws Exception;
+    }
+
+    private static void time(String name, Query query) throws Exception {
+        long startNanos = System.nanoTime();
+        query.run();
+        double coldMs = (System.nanoTime() - startNanos) / 1e6;
+        startNanos = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            query.run();
+        }
+        System.out.printf("   %-42s cold %8.1f ms, warm %8.1f ms%n", name, coldMs, (System.nanoTime() - startNanos) / 5e6);
+    }
+
+    private static double round2(double v) {
+        return Math.round(v * 100.0) / 100.0; // khớp DECIMAL(10,2)
+    }
+}
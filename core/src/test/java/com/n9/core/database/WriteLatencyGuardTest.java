@@ -0,0 +1,85 @@
+package com.n9.core.database;
+
+import com.n9.core.metrics.LatencyHistogram;
+
+/**
+ * Kiểm tra WriteLatencyGuard không cần MySQL: histogram riêng, đồng hồ giả; mỗi bước ghi một loạt
+ * độ trễ ghi, tiến đồng hồ rồi so kết luận "đang tăng" của guard.
+ *
+ * Chạy: java -cp ... com.n9.core.database.WriteLatencyGuardTest
+ */
+public class WriteLatencyGuardTest {
+
+    private static final long WINDOW_MS = 1_000;
+
+    private static long now = 0;
+
+    public static void main(String[] args) {
+        System.out.println("=== Testing write latency guard ===\n");
+        LatencyHistogram writes = new LatencyHistogram("test.write");
+        WriteLatencyGuard guard = new WriteLatencyGuard(writes, 50, 2, WINDOW_MS, () -> now);
+
+        // 1. Lúc nghỉ: ghi ~8ms → baseline 8.192ms (cận trên bucket), ngưỡng = max(50, 2 x baseline)
+        record(writes, 200, 8);
+        guard.begin();
+        expect(guard.getBaselineMs() > 4 && guard.getBaselineMs() <= 16.4, "1. Baseline " + guard.getBaselineMs() + "ms");
+        expect(guard.getThresholdMs() == 50, "   Threshold " + guard.getThresholdMs() + "ms");
+
+        // 2. Đang chạy, độ trễ giữ nguyên → không tăng
+        record(writes, 200, 9);
+        now += WINDOW_MS;
+        expect(!guard.isRising(), "2. Steady latency");
+
+        // 3. Độ trễ tăng vọt → tăng; cửa sổ chưa đủ dài thì giữ kết luận
+        record(writes, 200, 120);
+        now += WINDOW_MS;
+        expect(guard.isRising(), "3. Spike, p95 " + guard.getLastP95Ms() + "ms");
+        record(writes, 200, 5);
+        now += WINDOW_MS / 2;
+        expect(guard.isRising(), "   Window too short: keeps previous verdict");
+
+        // 4. Sau khi nghỉ, độ trễ về bình thường → hết tăng
+        now += WINDOW_MS;
+        expect(!guard.isRising(), "4. Recovered, p95 " + guard.getLastP95Ms() + "ms");
+
+        // 5. Ít mẫu (tải thấp) → không tăng dù từng mẫu chậm
+        record(writes, WriteLatencyGuard.MIN_SAMPLES - 1, 500);
+        now += WINDOW_MS;
+        expect(!guard.isRising(), "5. Too few samples");
+
+        // 6. Baseline cao (giờ cao điểm ~40ms): 60ms chưa tới ngưỡng 2 x baseline
+        record(writes, 200, 40);
+        now += WINDOW_MS;
+        guard.begin();
+        record(writes, 200, 60);
+        now += WINDOW_MS;
+        expect(!guard.isRising(), "6. Busy baseline " + guard.getBaselineMs() + "ms, threshold "
+                + guard.getThresholdMs() + "ms");
+        record(writes, 200, 300);
+        now += WINDOW_MS;
+        expect(guard.isRising(), "   Above 2 x busy baseline");
+
+        // 7. bucketCounts / percentileMillis khớp getPercentileMillis (p95 không rơi vào bucket của max)
+        LatencyHistogram mixed = new LatencyHistogram("test.mixed");
+        record(mixed, 100, 3);
+        record(mixed, 1, 900);
+        double fromCounts = LatencyHistogram.percentileMillis(mixed.bucketCounts(), 0.95);
+        expect(fromCounts == mixed.getPercentileMillis(0.95), "7. percentileMillis " + fromCounts + "ms");
+
+        System.out.println("\n✅ Write latency guard OK");
+    }
+
+    private static void record(LatencyHistogram histogram, int samples, long millis) {
+        for (int i = 0; i < samples; i++) {
+            histogram.recordMillis(millis);
+        }
+    }
+
+    private static void expect(boolean condition, String step) {
+        System.out.println(step + ": " + (condition ? "ok" : "FAILED"));
+        if (!condition) {
+            System.err.println("❌ " + step);
+            System.exit(1);
+        }
+    }
+}
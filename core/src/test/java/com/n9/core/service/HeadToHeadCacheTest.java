@@ -0,0 +1,184 @@
+package com.n9.core.service;
+
+import com.n9.core.repository.GameRepository;
+import com.n9.core.repository.GameResultRecord;
+import com.n9.core.repository.GameRoundRecord;
+import com.n9.core.repository.HeadToHeadRecord;
+import com.n9.core.repository.MatchHistoryRecord;
+import com.n9.core.repository.Repositories;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Kiểm tra cache đối đầu (LOBBY.GET_HEAD_TO_HEAD) trên backend in-memory, không cần MySQL.
+ *
+ * Run main():
+ * 1. Lần xem đầu nạp từ repository, khớp với tổng tính lại từ DB
+ * 2. Trận mới cộng dồn qua GameEndEvent, không đọc lại repository, vẫn khớp DB
+ * 3. Trận kết thúc trong lúc đang nạp (trước và sau khi truy vấn chạy): không đếm trùng, không sót
+ * 4. Trận đã ghi DB nhưng sự kiện đến SAU khi nạp xong (GameService ghi rồi mới phát): không đếm trùng
+ * 5. LRU giữ tối đa MAX_CACHED_PAIRS cặp
+ *
+ * Thoát với mã 1 nếu kết quả sai.
+ */
+public class HeadToHeadCacheTest {
+
+    private static final int USERS = 150; // 11175 cặp > MAX_CACHED_PAIRS
+
+    private static Repositories repositories;
+    private static int nextMatch = 0;
+    private static Runnable duringLoad = null;
+    private static Runnable afterLoadQuery = null;
+    private static int loads = 0;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Testing head-to-head cache ===\n");
+        repositories = Repositories.inMemory();
+        for (int i = 1; i <= USERS; i++) {
+            repositories.users().createUser("player" + i, "player" + i + "@example.com", "hash", "player" + i);
+        }
+        HeadToHeadService service = new HeadToHeadService(new HookedRepository(repositories.games()));
+
+        // 1. Nạp lần đầu
+        for (int i = 0; i < 30; i++) {
+            play(null, i % 2 == 0 ? 1 : 2, i % 2 == 0 ? 2 : 1, i % 5 == 0 ? null : (i % 3 == 0 ? 2 : 1), i % 7 == 3);
+        }
+        same(service.find(1, 2), 1, 2, "1. First lookup (loaded from repository)");
+        same(service.find(2, 1), 2, 1, "   Reverse view");
+
+        // 2. Cộng dồn từ sự kiện
+        int loadsBefore = loads;
+        for (int i = 0; i < 10; i++) {
+            play(service, 2, 1, i % 4 == 0 ? 2 : 1, i == 5);
+        }
+        check(loads == loadsBefore, "incremental update re-read the repository");
+        same(service.find(1, 2), 1, 2, "2. After 10 games via events (no reload)");
+
+        // 3. Trận kết thúc trong lúc nạp cặp (1, 3)
+        play(null, 1, 3, 1, false);
+        duringLoad = () -> play(service, 3, 1, 3, false);      // đã vào DB trước truy vấn → không cộng lại
+        afterLoadQuery = () -> play(service, 1, 3, null, false); // sau truy vấn → phải cộng từ pending
+        service.find(1, 3);
+        duringLoad = null;
+        afterLoadQuery = null;
+        same(service.find(1, 3), 1, 3, "3. Games ending during load");
+
+        // 4. Ván đã vào DB trước lần xem đầu, sự kiện của nó đến sau khi nạp xong
+        GameEndEvent late = commit(1, 4, 4, false);
+        service.find(1, 4);
+        service.onGameEnd(late);
+        same(service.find(1, 4), 1, 4, "4. Event arriving after load");
+        play(service, 4, 1, 1, false);
+        same(service.find(4, 1), 4, 1, "   Next game still counted");
+
+        // 5. LRU
+        for (int a = 1; a <= USERS && service.getCachedPairs() < HeadToHeadService.MAX_CACHED_PAIRS + 100; a++) {
+            for (int b = a + 1; b <= USERS; b++) {
+                service.find(a, b);
+            }
+        }
+        check(service.getCachedPairs() == HeadToHeadService.MAX_CACHED_PAIRS,
+                "cache holds " + service.getCachedPairs() + " pairs");
+        System.out.println("5. Cached pairs capped at " + service.getCachedPairs() + " after " + loads + " loads");
+
+        System.out.println("\n✅ Head-to-head cache OK");
+    }
+
+    /** Ghi một ván vào repository; có service thì phát GameEndEvent như GameService. */
+    private static void play(HeadToHeadService service, int player1, int player2, Integer winner, boolean forfeited) {
+        GameEndEvent event = commit(player1, player2, winner, forfeited);
+        if (service != null) {
+            service.onGameEnd(event);
+        }
+    }
+
+    /** Ghi một ván vào repository, trả về sự kiện để phát sau. */
+    private static GameEndEvent commit(int player1, int player2, Integer winner, boolean forfeited) {
+        String matchId = "h2h-" + (nextMatch++);
+        long completedAt = 1_700_000_000_000L + nextMatch * 1000L;
+        int score1 = forfeited ? 0 : 1 + nextMatch % 3;
+        int score2 = forfeited ? 0 : nextMatch % 2;
+        try {
+            GameRepository games = repositories.games();
+            games.createGame(matchId, player1, player2, 3);
+            GameResultRecord result = new GameResultRecord(matchId, winner, score1, score2, 3,
+                    1000.0, 1000.0, 1000.0, 1000.0, completedAt);
+            if (forfeited) games.abandonGame(result);
+            else games.completeGame(result);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+        return new GameEndEvent(matchId, String.valueOf(player1), String.valueOf(player2),
+                "player" + player1, "player" + player2, winner != null ? String.valueOf(winner) : null,
+                score1, score2, forfeited, completedAt, null);
+    }
+
+    /** So kết quả service với tổng tính lại trực tiếp từ repository. */
+    private static void same(HeadToHeadRecord actual, int userId, int opponentId, String step) throws SQLException {
+        HeadToHeadRecord expected = repositories.games().findHeadToHead(userId, opponentId, 0);
+        boolean equal = actual.getGames() == expected.getGames() && actual.getWins() == expected.getWins()
+                && actual.getLosses() == expected.getLosses() && actual.getScoredGames() == expected.getScoredGames()
+                && actual.getScoreTotal() == expected.getScoreTotal()
+                && actual.getOpponentScoreTotal() == expected.getOpponentScoreTotal()
+                && Objects.equals(actual.getLastPlayedMillis(), expected.getLastPlayedMillis());
+        System.out.println(step + ": " + actual.getGames() + " games, " + actual.getWins() + "W/"
+                + actual.getLosses() + "L/" + actual.getDraws() + "D");
+        check(equal, step + " differs from repository (" + expected.getGames() + " games, "
+                + expected.getWins() + "W/" + expected.getLosses() + "L, score " + expected.getScoreTotal()
+                + " vs " + actual.getScoreTotal() + ")");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.err.println("❌ " + message);
+            System.exit(1);
+        }
+    }
+
+    /** Repository có móc để chèn trận kết thúc trước/sau truy vấn nạp cặp. */
+    private static final class HookedRepository implements GameRepository {
+        private final GameRepository delegate;
+
+        HookedRepository(GameRepository delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void createGame(String matchId, int player1Id, int player2Id, int totalRounds) throws SQLException {
+            delegate.createGame(matchId, player1Id, player2Id, totalRounds);
+        }
+
+        @Override
+        public void saveRound(GameRoundRecord round) throws SQLException {
+            delegate.saveRound(round);
+        }
+
+        @Override
+        public void completeGame(GameResultRecord result) throws SQLException {
+            delegate.completeGame(result);
+        }
+
+        @Override
+        public void abandonGame(GameResultRecord result) throws SQLException {
+            delegate.abandonGame(result);
+        }
+
+        @Override
+        public List<MatchHistoryRecord> findMatchHistory(int userId, Long beforeCompletedAtMillis, String beforeMatchId,
+                                                         int limit) throws SQLException {
+            return delegate.findMatchHistory(userId, beforeCompletedAtMillis, beforeMatchId, limit);
+        }
+
+        @Override
+        public HeadToHeadRecord findHeadToHead(int userId, int opponentId, long recentSinceMillis) throws SQLException {
+            loads++;
+            if (duringLoad != null) duringLoad.run();
+            // Dữ liệu test có completedAt cố định trong quá khứ: tính "gần đây" từ mốc đó
+            HeadToHeadRecord record = delegate.findHeadToHead(userId, opponentId, 0);
+            if (afterLoadQuery != null) afterLoadQuery.run();
+            return record;
+        }
+    }
+}
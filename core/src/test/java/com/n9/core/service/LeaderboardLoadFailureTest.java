@@ -0,0 +1,130 @@
+package com.n9.core.service;
+
+import com.n9.core.repository.PlayerStatsRecord;
+import com.n9.core.repository.ProfileRecord;
+import com.n9.core.repository.Repositories;
+import com.n9.core.repository.StatsRepository;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.List;
+
+/**
+ * Kiểm tra RatingEngine + LeaderboardIndex khi không nạp được profile (bulkhead từ chối, DB lỗi),
+ * trên backend in-memory, không cần MySQL.
+ *
+ * Run main():
+ * 1. findProfiles lỗi → trận bị hoãn: không dirty, index không đổi, index khớp truy vấn SQL
+ * 2. Flush khi DB vẫn lỗi → trận vẫn chờ, user_profiles không bị ghi đè
+ * 3. DB hồi phục → flush áp trận hoãn lên stats thật, index cập nhật qua listener, vẫn khớp SQL
+ *
+ * Thoát với mã 1 nếu kết quả sai.
+ */
+public class LeaderboardLoadFailureTest {
+
+    private static volatile boolean failing = false;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Testing leaderboard when profiles fail to load ===\n");
+        Repositories repositories = Repositories.inMemory();
+        for (int i = 1; i <= 4; i++) {
+            repositories.users().createUser("player" + i, "player" + i + "@example.com", "hash", "player" + i);
+        }
+        // Cựu binh: 50 trận, và vài người chơi khác để rank có nghĩa
+        repositories.stats().saveProfiles(List.of(
+                new ProfileRecord(1, 1450.0, 1500.0, 50, 30, 20, 0, 2, 7, null),
+                new ProfileRecord(2, 1320.0, 1380.0, 40, 22, 18, 0, 0, 5, null),
+                new ProfileRecord(3, 1100.0, 1150.0, 30, 25, 5, 0, 1, 4, null),
+                new ProfileRecord(4, 1000.0, 1000.0, 2, 1, 1, 0, 0, 1, null)));
+
+        StatsRepository stats = flaky(repositories.stats());
+        LeaderboardIndex index = new LeaderboardIndex(stats);
+        index.loadFromDatabase();
+        RatingEngine engine = new RatingEngine(stats);
+        engine.setDeferredResultListener(index::onDeferredResult);
+        matchesSql(index, stats, "   Loaded");
+
+        // 1. Không nạp được profile
+        failing = true;
+        long versionBefore = index.getVersion();
+        RatingEngine.GameRatingResult result = engine.applyGameResult("1", "2", "1");
+        index.onGameEnd(event("m1", result));
+        check(!result.isApplied(), "result applied although profiles failed to load");
+        check(result.getPlayer1After() == null && result.getPlayer1Stats() == null, "deferred result carries ratings/stats");
+        check(engine.getDirtyCount() == 0, engine.getDirtyCount() + " profiles marked dirty");
+        check(engine.getPendingCount() == 1, "pending " + engine.getPendingCount());
+        check(index.getVersion() == versionBefore, "index changed on a deferred result");
+        check(index.get(1).getEntry().getGamesPlayed() == 50, "veteran shows "
+                + index.get(1).getEntry().getGamesPlayed() + " games");
+        System.out.println("1. Load failed: game deferred, index unchanged");
+        matchesSql(index, stats, "   Index vs SQL");
+
+        // 2. Flush khi vẫn lỗi
+        engine.flush();
+        check(engine.getPendingCount() == 1, "deferred game dropped while DB is down");
+        check(repositories.stats().findProfiles(List.of(1)).get(1).getGamesPlayed() == 50,
+                "user_profiles overwritten while DB is down");
+        System.out.println("2. Flush while failing: still pending, row untouched");
+
+        // 3. Hồi phục
+        failing = false;
+        int written = engine.flush();
+        ProfileRecord veteran = repositories.stats().findProfiles(List.of(1)).get(1);
+        check(engine.getPendingCount() == 0, "pending after recovery " + engine.getPendingCount());
+        check(written == 2, "flushed " + written + " profiles");
+        check(veteran.getGamesPlayed() == 51 && veteran.getGamesWon() == 31 && veteran.getWinStreakCurrent() == 3,
+                "veteran row " + veteran.getGamesPlayed() + " played / " + veteran.getGamesWon() + " won");
+        check(veteran.getRating() > 1450.0 && veteran.getPeakRating() == 1500.0, "veteran rating " + veteran.getRating());
+        check(index.get(1).getEntry().getGamesPlayed() == 51, "index not updated after deferred apply");
+        System.out.println("3. Recovered: veteran " + veteran.getGamesPlayed() + " games, rating " + veteran.getRating());
+        matchesSql(index, stats, "   Index vs SQL");
+
+        System.out.println("\n✅ Leaderboard load failure OK");
+    }
+
+    private static GameEndEvent event(String matchId, RatingEngine.GameRatingResult ratings) {
+        return new GameEndEvent(matchId, "1", "2", "player1", "player2", "1", 2, 1, false,
+                System.currentTimeMillis() / 1000 * 1000, ratings);
+    }
+
+    /** Mỗi người chơi: rank + W/L trong index giống truy vấn xếp hạng (đường fallback SQL). */
+    private static void matchesSql(LeaderboardIndex index, StatsRepository stats, String step) throws SQLException {
+        boolean previous = failing;
+        failing = false;
+        for (int userId = 1; userId <= 4; userId++) {
+            PlayerStatsRecord sql = stats.findRankedPlayer(userId);
+            LeaderboardIndex.RankedEntry entry = index.get(userId);
+            check(sql != null && entry != null, step + ": user " + userId + " missing");
+            check(entry.getRank() == sql.getRank() && entry.getEntry().getGamesPlayed() == sql.getGamesPlayed()
+                            && entry.getEntry().getGamesWon() == sql.getGamesWon(),
+                    step + ": user " + userId + " index #" + entry.getRank() + " " + entry.getEntry().getGamesPlayed()
+                            + " games vs SQL #" + sql.getRank() + " " + sql.getGamesPlayed() + " games");
+        }
+        failing = previous;
+        System.out.println(step + ": ok");
+    }
+
+    /** findProfiles ném SQLTransientConnectionException khi failing (như bulkhead từ chối). */
+    private static StatsRepository flaky(StatsRepository delegate) {
+        return (StatsRepository) Proxy.newProxyInstance(StatsRepository.class.getClassLoader(),
+                new Class<?>[]{StatsRepository.class}, (proxy, method, args) -> {
+                    if (failing && method.getName().equals("findProfiles")) {
+                        throw new SQLTransientConnectionException("bulkhead full");
+                    }
+                    try {
+                        return method.invoke(delegate, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.err.println("❌ " + message);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.n9.core.service;
+
+import com.n9.core.repository.GameRepository;
+import com.n9.core.repository.GameResultRecord;
+import com.n9.core.repository.GameRoundRecord;
+import com.n9.core.repository.HeadToHeadRecord;
+import com.n9.core.repository.MatchHistoryRecord;
+import com.n9.core.repository.Repositories;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Kiểm tra phân trang lịch sử đấu (LOBBY.GET_MATCH_HISTORY) trên backend in-memory, không cần MySQL.
+ *
+ * Run main():
+ * 1. 3 người chơi, 180 ván (nhiều ván cùng một giây để thử tie-break theo matchId)
+ * 2. Duyệt hết các trang của user 1 bằng nextCursor: không trùng, không sót, đúng thứ tự,
+ *    các trang đầu lấy từ bộ đệm, phần sau đọc repository
+ * 3. Thêm ván mới qua GameEndEvent: trang đầu có ván mới mà không đọc repository
+ * 5. Service mới, user 1 đăng nhập: bộ đệm nạp nền, trang đầu không đọc repository
+ * 6. User 2 online đấu xong khi chưa có bộ đệm: bộ đệm được tạo + nạp nền, trang đầu có ván mới
+ *
+ * Thoát với mã 1 nếu kết quả sai.
+ */
+public class MatchHistoryPagingTest {
+
+    private static final int GAMES = 180;
+    private static final int PAGE = 20;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Testing match history keyset pagination ===\n");
+        Repositories repositories = Repositories.inMemory();
+        for (String name : new String[]{"alice", "bob", "carol"}) {
+            repositories.users().createUser(name, name + "@example.com", "hash", name);
+        }
+        GameRepository games = repositories.games();
+        CountingRepository counting = new CountingRepository(games);
+        SessionManager sessions = new SessionManager(repositories.sessions());
+        MatchHistoryService service = new MatchHistoryService(counting, sessions);
+
+        long baseMillis = 1_700_000_000_000L;
+        int user1Games = 0;
+        for (int i = 0; i < GAMES; i++) {
+            int opponent = i % 3 == 0 ? 3 : 2;
+            int player1 = i % 2 == 0 ? 1 : opponent; // user 1 lúc là player1, lúc là player2
+            int player2 = player1 == 1 ? opponent : 1;
+            if (i % 7 == 6) {
+                player1 = 2; // ván không có user 1
+                player2 = 3;
+            } else {
+                user1Games++;
+            }
+            play(games, "m-" + String.format("%04d", i), player1, player2, i % 3 == 0 ? null : player1,
+                    baseMillis + (i / 4) * 1000L); // 4 ván mỗi giây
+        }
+        System.out.println("1. Played " + GAMES + " games, user 1 in " + user1Games);
+
+        List<String> walked = walk(service, 1);
+        int dbQueriesAfterWalk = counting.queries;
+        check(walked.size() == user1Games, "walked " + walked.size() + " games, expected " + user1Games);
+        check(new HashSet<>(walked).size() == walked.size(), "duplicate games across pages");
+        List<String> expected = new ArrayList<>();
+        for (MatchHistoryRecord game : games.findMatchHistory(1, null, null, GAMES)) {
+            expected.add(game.getMatchId());
+        }
+        check(walked.equals(expected), "page order differs from repository order");
+        System.out.println("2. Walked " + walked.size() + " games in " + ((walked.size() + PAGE - 1) / PAGE)
+                + " pages, repository queries = " + dbQueriesAfterWalk
+                + " (1 seed + pages beyond the " + MatchHistoryService.RECENT_CAPACITY + " cached games)");
+
+        // 3. Ván mới đẩy vào bộ đệm: trang đầu không đọc repository
+        long now = baseMillis + GAMES * 1000L;
+        play(games, "m-new", 3, 1, 1, now);
+        service.onGameEnd(new GameEndEvent("m-new", "3", "1", "carol", "alice", "1", 2, 1, false, now, null));
+        Map<String, Object> first = service.getMatchHistory(1, null, PAGE);
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> rows = (List<Map<String, Object>>) first.get("games");
+        check(counting.queries == dbQueriesAfterWalk, "first page hit the repository");
+        check("m-new".equals(rows.get(0).get("matchId")), "new game not first: " + rows.get(0));
+        check("WIN".equals(rows.get(0).get("result")) && "carol".equals(rows.get(0).get("opponentUsername")),
+                "wrong view of new game: " + rows.get(0));
+        System.out.println("3. New game served from cache: " + rows.get(0));
+
+        List<String> rewalked = walk(service, 1);
+        check(rewalked.size() == user1Games + 1 && rewalked.get(0).equals("m-new")
+                && rewalked.subList(1, rewalked.size()).equals(expected), "second walk differs");
+        System.out.println("4. Second walk consistent (" + rewalked.size() + " games)");
+
+        // 5. Đăng nhập: nạp nền, trang đầu lấy từ bộ đệm
+        CountingRepository fresh = new CountingRepository(games);
+        MatchHistoryService loggedIn = new MatchHistoryService(fresh, sessions);
+        sessions.createSession("1", "alice");
+        loggedIn.onUserLogin("1");
+        awaitCached(loggedIn, 1);
+        List<String> firstPage = pageIds(loggedIn.getMatchHistory(1, null, PAGE));
+        check(fresh.queries == 1, "first page after login hit the repository (" + fresh.queries + " queries)");
+        check(firstPage.equals(rewalked.subList(0, PAGE)), "first page after login differs");
+        System.out.println("5. Login prefetch: first page served from cache, repository queries = " + fresh.queries);
+
+        // 6. Kết thúc trận của user online chưa có bộ đệm
+        sessions.createSession("2", "bob");
+        long later = now + 1000L;
+        play(games, "m-later", 2, 3, 2, later);
+        loggedIn.onGameEnd(new GameEndEvent("m-later", "2", "3", "bob", "carol", "2", 2, 1, false, later, null));
+        awaitCached(loggedIn, 2);
+        List<String> bobPage = pageIds(loggedIn.getMatchHistory(2, null, PAGE));
+        check(fresh.queries == 2, "first page after game end hit the repository (" + fresh.queries + " queries)");
+        check("m-later".equals(bobPage.get(0)) && bobPage.size() == PAGE, "game-end buffer wrong: " + bobPage);
+        System.out.println("6. Game-end prefetch for online user: first page served from cache");
+
+        System.out.println("\n✅ Match history paging OK");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> pageIds(Map<String, Object> page) {
+        List<String> ids = new ArrayList<>();
+        for (Map<String, Object> row : (List<Map<String, Object>>) page.get("games")) ids.add((String) row.get("matchId"));
+        return ids;
+    }
+
+    /** Chờ luồng nạp nền nạp xong bộ đệm của user (tối đa 5 s). */
+    private static void awaitCached(MatchHistoryService service, int userId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!service.isCached(userId) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        check(service.isCached(userId), "history of user " + userId + " was not prefetched");
+    }
+
+    private static List<String> walk(MatchHistoryService service, int userId) throws Exception {
+        List<String> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            Map<String, Object> page = service.getMatchHistory(userId, cursor, PAGE);
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> rows = (List<Map<String, Object>>) page.get("games");
+            for (Map<String, Object> row : rows) ids.add((String) row.get("matchId"));
+            cursor = (String) page.get("nextCursor");
+        } while (cursor != null);
+        return ids;
+    }
+
+    private static void play(GameRepository games, String matchId, int player1, int player2, Integer winner,
+                             long completedAtMillis) throws Exception {
+        games.createGame(matchId, player1, player2, 3);
+        games.completeGame(new GameResultRecord(matchId, winner, 2, 1, 3,
+                1000.0, 1000.0, 1000.0, 1000.0, completedAtMillis));
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.err.println("❌ " + message);
+            System.exit(1);
+        }
+    }
+
+    /** Đếm số lần đọc lịch sử từ repository. */
+    private static final class CountingRepository implements GameRepository {
+        private final GameRepository delegate;
+        volatile int queries = 0;
+
+        CountingRepository(GameRepository delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void createGame(String matchId, int player1Id, int player2Id, int totalRounds) throws SQLException {
+            delegate.createGame(matchId, player1Id, player2Id, totalRounds);
+        }
+
+        @Override
+        public void saveRound(GameRoundRecord round) throws SQLException {
+            delegate.saveRound(round);
+        }
+
+        @Override
+        public void completeGame(GameResultRecord result) throws SQLException {
+            delegate.completeGame(result);
+        }
+
+        @Override
+        public void abandonGame(GameResultRecord result) throws SQLException {
+            delegate.abandonGame(result);
+        }
+
+        @Override
+        public List<MatchHistoryRecord> findMatchHistory(int userId, Long beforeCompletedAtMillis, String beforeMatchId,
+                                                         int limit) throws SQLException {
+            queries++;
+            return delegate.findMatchHistory(userId, beforeCompletedAtMillis, beforeMatchId, limit);
+        }
+
+        @Override
+        public HeadToHeadRecord findHeadToHead(int userId, int opponentId, long recentSinceMillis) throws SQLException {
+            return delegate.findHeadToHead(userId, opponentId, recentSinceMillis);
+        }
+    }
+}
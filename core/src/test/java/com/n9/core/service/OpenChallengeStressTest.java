@@ -0,0 +1,171 @@
+package com.n9.core.service;
+
+import com.n9.shared.model.ChallengeSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stress test cho open challenge: nhiều target accept cùng lúc, chỉ đúng một người thắng.
+ *
+ * Run main() (không cần DB):
+ * 1. Mỗi vòng: sender gửi open challenge đến MAX_OPEN_CHALLENGE_TARGETS target
+ * 2. Tất cả target accept đồng thời (cùng mở CountDownLatch), xen lẫn sender cancel
+ * 3. Kiểm tra: tối đa 1 accept thành công, đúng 1 direct match khi có accept thắng,
+ *    người thắng là target được mời, không rò rỉ challenge/index sau mỗi vòng
+ *
+ * Thoát với mã 1 nếu có vi phạm.
+ */
+public class OpenChallengeStressTest {
+
+    private static final int ROUNDS = 20_000;
+    private static final int TARGETS = ChallengeService.MAX_OPEN_CHALLENGE_TARGETS;
+
+    /** SessionManager chỉ trong bộ nhớ (không ghi active_sessions). */
+    static class InMemorySessionManager extends SessionManager {
+        private final Map<String, SessionContext> sessions = new ConcurrentHashMap<>();
+
+        InMemorySessionManager() {
+            super(null);
+        }
+
+        void login(String userId) {
+            sessions.put(userId, new SessionContext("s-" + userId, userId, "user" + userId));
+        }
+
+        @Override
+        public SessionContext getSessionByUserId(String userId) {
+            return userId == null ? null : sessions.get(userId);
+        }
+
+        @Override
+        public boolean isUserOnline(String userId) {
+            return userId != null && sessions.containsKey(userId);
+        }
+    }
+
+    /** Ghi lại các direct match thay vì khởi tạo game thật. */
+    static class RecordingMatchmakingService extends MatchmakingService {
+        final List<String[]> matches = new ArrayList<>();
+
+        RecordingMatchmakingService(SessionManager sessionManager, ScheduledExecutorService scheduler) {
+            super(null, sessionManager, new ConcurrentHashMap<>(), scheduler);
+        }
+
+        @Override
+        public synchronized void createDirectMatch(String player1Id, String player2Id) {
+            matches.add(new String[]{player1Id, player2Id});
+        }
+
+        @Override
+        public boolean isUserInQueue(String userId) {
+            return false;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Open challenge stress test (" + ROUNDS + " rounds, " + TARGETS + " concurrent accepts) ===\n");
+
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+        InMemorySessionManager sessions = new InMemorySessionManager();
+        RecordingMatchmakingService matchmaking = new RecordingMatchmakingService(sessions, scheduler);
+        ChallengeService challengeService = new ChallengeService(sessions, matchmaking, new ConcurrentHashMap<>(), scheduler);
+
+        String senderId = "1";
+        sessions.login(senderId);
+        List<String> targetIds = new ArrayList<>();
+        for (int i = 0; i < TARGETS; i++) {
+            String targetId = String.valueOf(100 + i);
+            sessions.login(targetId);
+            targetIds.add(targetId);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(TARGETS + 1);
+        int violations = 0;
+        int acceptedRounds = 0;
+        int cancelledRounds = 0;
+        long start = System.nanoTime();
+
+        for (int round = 0; round < ROUNDS; round++) {
+            int matchesBefore = matchmaking.matches.size();
+            ChallengeSession challenge = challengeService.createOpenChallenge(senderId, targetIds);
+            String challengeId = challenge.getChallengeId();
+
+            CountDownLatch go = new CountDownLatch(1);
+            AtomicInteger successfulAccepts = new AtomicInteger();
+            List<Future<?>> futures = new ArrayList<>();
+            for (String targetId : targetIds) {
+                futures.add(pool.submit(() -> {
+                    go.await();
+                    try {
+                        challengeService.handleChallengeResponse(challengeId, targetId, true);
+                        successfulAccepts.incrementAndGet();
+                    } catch (IllegalArgumentException lost) {
+                        // Thua cuộc đua: hợp lệ
+                    }
+                    return null;
+                }));
+            }
+            // Mỗi vòng thứ 4: sender hủy cùng lúc với các accept
+            boolean raceCancel = round % 4 == 0;
+            if (raceCancel) {
+                futures.add(pool.submit(() -> {
+                    go.await();
+                    challengeService.cancelChallenge(challengeId, "USER_CANCELLED");
+                    return null;
+                }));
+            }
+            go.countDown();
+            for (Future<?> f : futures) f.get();
+
+            int accepts = successfulAccepts.get();
+            int newMatches = matchmaking.matches.size() - matchesBefore;
+            ChallengeSession.ChallengeStatus status = challenge.getStatus();
+
+            if (accepts > 1 || accepts != newMatches) {
+                violations++;
+                System.err.println("❌ Round " + round + ": accepts=" + accepts + ", matches=" + newMatches);
+            }
+            if (accepts == 1) {
+                acceptedRounds++;
+                String winner = matchmaking.matches.get(matchmaking.matches.size() - 1)[1];
+                if (status != ChallengeSession.ChallengeStatus.ACCEPTED
+                        || !targetIds.contains(winner)
+                        || !winner.equals(challenge.getAcceptedTargetId())) {
+                    violations++;
+                    System.err.println("❌ Round " + round + ": status=" + status + ", winner=" + winner);
+                }
+            } else if (status != ChallengeSession.ChallengeStatus.CANCELLED || !raceCancel) {
+                violations++;
+                System.err.println("❌ Round " + round + ": no accept won, status=" + status);
+            } else {
+                cancelledRounds++;
+            }
+            if (challengeService.getActiveChallengeCount() != 0 || challengeService.getIndexedUserCount() != 0
+                    || sessions.getSessionByUserId(senderId).getChallengeId() != null) {
+                violations++;
+                System.err.println("❌ Round " + round + ": challenge state leaked after resolution");
+            }
+        }
+
+        double elapsedMs = (System.nanoTime() - start) / 1e6;
+        pool.shutdownNow();
+        scheduler.shutdownNow();
+
+        System.out.printf("Rounds: %d (accepted %d, cancelled before any accept %d) in %.1f ms%n",
+                ROUNDS, acceptedRounds, cancelledRounds, elapsedMs);
+        System.out.println("Violations: " + violations);
+        if (violations > 0) {
+            System.exit(1);
+        }
+        System.out.println("✅ First accept wins atomically in every round");
+    }
+}
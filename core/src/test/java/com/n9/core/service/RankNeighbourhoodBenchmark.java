@@ -0,0 +1,105 @@
+package com.n9.core.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Benchmark truy vấn "xung quanh tôi" (LOBBY.GET_RANK_NEIGHBOURHOOD) với 1M người chơi đã xếp hạng.
+ *
+ * Run main() (không cần DB):
+ * 1. Nạp 1M người chơi (games_won ~ phân phối lệch) vào LeaderboardIndex
+ * 2. Đo LeaderboardService.getRankNeighbourhood(userId, 10) cho user ngẫu nhiên
+ *    (gồm cả ghép cờ online từ SessionManager), in p50/p99
+ * 3. So với cách cũ: đếm số người đứng trước (tương đương ROW_NUMBER trên toàn bảng) rồi lấy trang
+ * 4. Kiểm tra tính đúng: rank liên tiếp, user nằm giữa, thứ tự không giảm
+ *
+ * Thoát với mã 1 nếu kết quả sai.
+ */
+public class RankNeighbourhoodBenchmark {
+
+    private static final int PLAYERS = 1_000_000;
+    private static final int QUERIES = 200_000;
+    private static final int BASELINE_QUERIES = 20;
+    private static final int K = 10;
+
+    public static void main(String[] args) {
+        System.out.println("=== Rank neighbourhood benchmark (" + PLAYERS + " ranked players, K=" + K + ") ===\n");
+        Random random = new Random(42);
+
+        LeaderboardIndex index = new LeaderboardIndex(null);
+        long start = System.nanoTime();
+        for (int userId = 1; userId <= PLAYERS; userId++) {
+            int played = 1 + random.nextInt(500);
+            int won = (int) (played * Math.min(1.0, Math.abs(0.5 + random.nextGaussian() * 0.15)));
+            index.update(userId, "player" + userId, played, won, played - won);
+        }
+        index.markLoaded();
+        System.out.printf("1. Loaded %d players in %.1f ms%n%n", index.size(), (System.nanoTime() - start) / 1e6);
+
+        // 1% người chơi online
+        OpenChallengeStressTest.InMemorySessionManager sessions = new OpenChallengeStressTest.InMemorySessionManager();
+        for (int userId = 1; userId <= PLAYERS; userId += 100) {
+            sessions.login(String.valueOf(userId));
+        }
+        LeaderboardService service = new LeaderboardService(null, sessions, index, null);
+
+        // [2] Service path
+        for (int i = 0; i < 20_000; i++) { // warm-up JIT
+            service.getRankNeighbourhood(1 + random.nextInt(PLAYERS), K);
+        }
+        long[] latencies = new long[QUERIES];
+        int violations = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            int userId = 1 + random.nextInt(PLAYERS);
+            long t = System.nanoTime();
+            Map<String, Object> result = service.getRankNeighbourhood(userId, K);
+            latencies[i] = System.nanoTime() - t;
+            if (i % 1000 == 0) {
+                violations += verify(index, userId, result);
+            }
+        }
+        double elapsedMs = (System.nanoTime() - start) / 1e6;
+        java.util.Arrays.sort(latencies);
+        System.out.printf("2. %d queries in %.1f ms → %.0f queries/s, p50 %.1f µs, p99 %.1f µs%n%n",
+                QUERIES, elapsedMs, QUERIES / (elapsedMs / 1000.0),
+                latencies[QUERIES / 2] / 1e3, latencies[(int) (QUERIES * 0.99)] / 1e3);
+
+        // [3] Cách cũ: rank = số người đứng trước (quét toàn bộ), rồi lấy trang OFFSET
+        List<LeaderboardIndex.RankedEntry> all = index.page(0, PLAYERS);
+        start = System.nanoTime();
+        long checksum = 0;
+        for (int i = 0; i < BASELINE_QUERIES; i++) {
+            LeaderboardIndex.Entry me = index.get(1 + random.nextInt(PLAYERS)).getEntry();
+            int ahead = 0;
+            for (LeaderboardIndex.RankedEntry other : all) {
+                if (LeaderboardIndex.ORDER.compare(other.getEntry(), me) < 0) ahead++;
+            }
+            checksum += index.page(Math.max(0, ahead - K), 2 * K + 1).size();
+        }
+        double baselineMs = (System.nanoTime() - start) / 1e6 / BASELINE_QUERIES;
+        System.out.printf("3. Full-scan rank + OFFSET page: %.2f ms/query (checksum %d)%n%n", baselineMs, checksum);
+
+        System.out.println("4. Violations: " + violations);
+        if (violations > 0) {
+            System.exit(1);
+        }
+        System.out.println("✅ Neighbourhoods are contiguous and centred on the caller");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int verify(LeaderboardIndex index, int userId, Map<String, Object> result) {
+        List<Map<String, Object>> players = (List<Map<String, Object>>) result.get("players");
+        int rank = (Integer) result.get("rank");
+        if (rank != index.rankOf(userId)) return 1;
+        int expectedFrom = Math.max(1, rank - K);
+        int expectedTo = Math.min(index.size(), rank + K);
+        if (players.size() != expectedTo - expectedFrom + 1) return 1;
+        for (int i = 0; i < players.size(); i++) {
+            if ((Integer) players.get(i).get("rank") != expectedFrom + i) return 1;
+            if (i > 0 && (Integer) players.get(i).get("gamesWon") > (Integer) players.get(i - 1).get("gamesWon")) return 1;
+        }
+        return (Integer) players.get(rank - expectedFrom).get("userId") == userId ? 0 : 1;
+    }
+}
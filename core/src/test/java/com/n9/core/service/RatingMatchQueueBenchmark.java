@@ -0,0 +1,110 @@
+package com.n9.core.service;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmark throughput của RatingMatchQueue với 100k người chơi đang chờ.
+ *
+ * Run main() (không cần DB):
+ * 1. Nạp 100k người chơi rating ~ N(1000, 200) vào hàng đợi
+ * 2. Đo offer() của người mới (tìm đối thủ gần nhất, O(log n))
+ * 3. Đo cancel (remove) giữa hàng đợi lớn
+ * 4. Đo một lần sweep() sau 30s chờ (cửa sổ đã nới)
+ * 5. Đo sweep() mỗi giây ở trạng thái ổn định (ít cặp đến hạn): không được tỷ lệ với kích thước hàng đợi
+ *
+ * @author MVP Team
+ */
+public class RatingMatchQueueBenchmark {
+
+    private static final int QUEUED_PLAYERS = 100_000;
+    private static final int ARRIVALS = 200_000;
+
+    public static void main(String[] args) {
+        System.out.println("=== RatingMatchQueue Benchmark (" + QUEUED_PLAYERS + " queued players) ===\n");
+        Random random = new Random(42);
+
+        // Cửa sổ gốc = 0 khi nạp để 100k người không tự ghép với nhau
+        RatingMatchQueue queue = new RatingMatchQueue(0.0, RatingMatchQueue.DEFAULT_GROWTH_PER_SECOND,
+                RatingMatchQueue.DEFAULT_MAX_WINDOW);
+        double[] ratings = new double[QUEUED_PLAYERS];
+        long t0 = System.nanoTime();
+        for (int i = 0; i < QUEUED_PLAYERS; i++) {
+            ratings[i] = 1000 + random.nextGaussian() * 200;
+            queue.offer("q" + i, ratings[i], t0);
+        }
+        System.out.printf("1. Filled queue: %d players in %.1f ms%n%n", queue.size(), (System.nanoTime() - t0) / 1e6);
+
+        // [2] Người mới đến: một nửa có đối thủ đúng rating (ghép ngay), một nửa không (vào hàng rồi hủy)
+        warmUp(queue, random, t0);
+        int matched = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < ARRIVALS; i++) {
+            String userId = "a" + i;
+            if ((i & 1) == 0) {
+                double target = ratings[random.nextInt(QUEUED_PLAYERS)];
+                RatingMatchQueue.Pairing p = queue.offer(userId, target, t0);
+                if (p != null) {
+                    matched++;
+                    // Trả đối thủ về hàng để giữ kích thước ~100k
+                    queue.offer(p.getPlayer1().getUserId(), p.getPlayer1().getRating(), t0);
+                }
+            } else {
+                queue.offer(userId, 5000 + i, t0);
+                queue.remove(userId);
+            }
+        }
+        double elapsedMs = (System.nanoTime() - start) / 1e6;
+        System.out.printf("2. %d arrivals (%d matched) in %.1f ms → %.0f arrivals/s (queue size %d)%n%n",
+                ARRIVALS, matched, elapsedMs, ARRIVALS / (elapsedMs / 1000.0), queue.size());
+
+        // [3] Cancel ở giữa hàng đợi lớn
+        start = System.nanoTime();
+        int cancels = 0;
+        for (int i = 0; i < QUEUED_PLAYERS; i += 2) {
+            if (queue.remove("q" + i) != null) cancels++;
+        }
+        elapsedMs = (System.nanoTime() - start) / 1e6;
+        System.out.printf("3. %d cancels in %.1f ms → %.0f cancels/s%n%n", cancels, elapsedMs, cancels / (elapsedMs / 1000.0));
+
+        // [4] Refill rồi sweep sau 30s: cửa sổ = 0 + 10 * 30 = 300
+        for (int i = 0; i < QUEUED_PLAYERS; i += 2) {
+            queue.offer("r" + i, 1000 + random.nextGaussian() * 200, t0);
+        }
+        int before = queue.size();
+        start = System.nanoTime();
+        List<RatingMatchQueue.Pairing> pairs = queue.sweep(t0 + 30_000_000_000L);
+        elapsedMs = (System.nanoTime() - start) / 1e6;
+        System.out.printf("4. sweep over %d players: %d pairs in %.1f ms%n%n", before, pairs.size(), elapsedMs);
+
+        // [5] Refill tới 100k (rating rải đều, không ai tự ghép), rồi 60 tick 1s với 200 người mới mỗi tick
+        RatingMatchQueue steady = new RatingMatchQueue();
+        for (int i = 0; i < QUEUED_PLAYERS; i++) {
+            steady.offer("s" + i, i * 1000.0, t0);
+        }
+        long now = t0;
+        long maxTickNanos = 0, totalTickNanos = 0;
+        int tickPairs = 0;
+        for (int tick = 0; tick < 60; tick++) {
+            now += 1_000_000_000L;
+            for (int i = 0; i < 200; i++) {
+                steady.offer("t" + tick + "-" + i, -1_000_000.0 - random.nextDouble() * 20_000, now);
+            }
+            start = System.nanoTime();
+            tickPairs += steady.sweep(now).size();
+            long tickNanos = System.nanoTime() - start;
+            totalTickNanos += tickNanos;
+            maxTickNanos = Math.max(maxTickNanos, tickNanos);
+        }
+        System.out.printf("5. 60 ticks over %d queued players: %d pairs, avg %.3f ms, max %.3f ms per sweep%n",
+                steady.size(), tickPairs, totalTickNanos / 60 / 1e6, maxTickNanos / 1e6);
+    }
+
+    private static void warmUp(RatingMatchQueue queue, Random random, long now) {
+        for (int i = 0; i < 50_000; i++) {
+            String userId = "w" + i;
+            queue.offer(userId, 9000 + random.nextDouble(), now);
+            queue.remove(userId);
+        }
+    }
+}
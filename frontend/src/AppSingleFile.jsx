@@ -26,9 +26,11 @@ const MessageType = {
   
   // GAME DOMAIN
   GAME_MATCH_FOUND: 'GAME.MATCH_FOUND',
+  GAME_READY: 'GAME.READY',
   GAME_START: 'GAME.START',
   GAME_ROUND_START: 'GAME.ROUND_START',
   GAME_ROUND_REVEAL: 'GAME.ROUND_REVEAL',
+  GAME_REVEAL_ACK: 'GAME.REVEAL_ACK',
   GAME_CARD_PLAY_REQUEST: 'GAME.CARD_PLAY_REQUEST',
   GAME_CARD_PLAY_SUCCESS: 'GAME.CARD_PLAY_SUCCESS',
   GAME_CARD_PLAY_FAILURE: 'GAME.CARD_PLAY_FAILURE',
@@ -51,6 +53,9 @@ const MessageType = {
   SYSTEM_ERROR: 'SYSTEM.ERROR'
 };
 
+// Thời gian hiển thị kết quả hiệp trước khi gửi GAME.REVEAL_ACK (server chờ tối đa 3 giây)
+const REVEAL_DISPLAY_MS = 1500;
+
 // ============================================================================
 // UTILITY FUNCTIONS - Tuân thủ MessageFactory.java & JsonUtils.java
 // ============================================================================
@@ -539,6 +544,8 @@ const useWebSocket = (dispatch, sessionId) => {
                 type: 'MATCH_FOUND',
                 payload: envelope.payload
               });
+              // Báo server sẵn sàng → trận bắt đầu ngay khi cả hai ready (không chờ đủ 2 giây)
+              ws.send(JSON.stringify(createRequest(MessageType.GAME_READY, { matchId: envelope.payload.matchId }, sessionId)));
               break;
             
             case MessageType.GAME_START:
@@ -599,12 +606,20 @@ const useWebSocket = (dispatch, sessionId) => {
               });
               break;
             
-            case MessageType.GAME_ROUND_REVEAL:
+            case MessageType.GAME_ROUND_REVEAL: {
               dispatch({
                 type: 'ROUND_REVEAL',
                 payload: envelope.payload
               });
+              // Ack sau khi người chơi kịp xem kết quả hiệp; server chờ tối đa 3 giây nếu không nhận được ack
+              const { gameId, roundNumber } = envelope.payload;
+              setTimeout(() => {
+                if (ws.readyState === WebSocket.OPEN) {
+                  ws.send(JSON.stringify(createRequest(MessageType.GAME_REVEAL_ACK, { matchId: gameId, roundNumber }, sessionId)));
+                }
+              }, REVEAL_DISPLAY_MS);
               break;
+            }
             
             case MessageType.GAME_END:
               dispatch({
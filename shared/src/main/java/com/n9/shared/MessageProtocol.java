@@ -37,6 +37,11 @@ public final class MessageProtocol {
         public static final String AUTH_LOGOUT_REQUEST   = "AUTH.LOGOUT_REQUEST";
         public static final String AUTH_LOGOUT_SUCCESS   = "AUTH.LOGOUT_SUCCESS";
 
+        /** Client hỏi username còn trống không (trả lời từ bộ nhớ, không query DB). */
+        public static final String AUTH_CHECK_USERNAME        = "AUTH.CHECK_USERNAME";
+        /** Server trả về { username, available }. */
+        public static final String AUTH_CHECK_USERNAME_RESULT = "AUTH.CHECK_USERNAME_RESULT";
+
 
         // ============================
         // LOBBY DOMAIN
@@ -66,6 +71,30 @@ public final class MessageProtocol {
         /** Server báo lỗi khi lấy rank. */
         public static final String LOBBY_GET_USER_RANK_FAILURE   = "LOBBY.GET_USER_RANK_FAILURE";
 
+        /** Client yêu cầu K người chơi trên/dưới mình (payload: k). */
+        public static final String LOBBY_GET_RANK_NEIGHBOURHOOD_REQUEST = "LOBBY.GET_RANK_NEIGHBOURHOOD_REQUEST";
+        /** Server trả về vùng xếp hạng quanh user. */
+        public static final String LOBBY_GET_RANK_NEIGHBOURHOOD_SUCCESS = "LOBBY.GET_RANK_NEIGHBOURHOOD_SUCCESS";
+
+        /** Client yêu cầu một trang lịch sử đấu (payload: limit, cursor). */
+        public static final String LOBBY_GET_MATCH_HISTORY_REQUEST = "LOBBY.GET_MATCH_HISTORY_REQUEST";
+        /** Server trả về trang lịch sử đấu + nextCursor. */
+        public static final String LOBBY_GET_MATCH_HISTORY_SUCCESS = "LOBBY.GET_MATCH_HISTORY_SUCCESS";
+
+        /** Client yêu cầu thành tích đối đầu với một người chơi (payload: opponentId), ví dụ người vừa thách đấu. */
+        public static final String LOBBY_GET_HEAD_TO_HEAD_REQUEST = "LOBBY.GET_HEAD_TO_HEAD_REQUEST";
+        /** Server trả về số trận, thắng/thua/hòa, điểm trung bình, lần gặp gần nhất. */
+        public static final String LOBBY_GET_HEAD_TO_HEAD_SUCCESS = "LOBBY.GET_HEAD_TO_HEAD_SUCCESS";
+
+        /** Client đăng ký nhận cập nhật top-N trực tiếp (payload: topN). */
+        public static final String LOBBY_LEADERBOARD_SUBSCRIBE   = "LOBBY.LEADERBOARD_SUBSCRIBE";
+        /** Server trả về toàn bộ top-N hiện tại + seq, sau đó chỉ gửi delta. */
+        public static final String LOBBY_LEADERBOARD_SNAPSHOT    = "LOBBY.LEADERBOARD_SNAPSHOT";
+        /** Server đẩy các dòng top-N đã thay đổi (tối đa một lần mỗi chu kỳ). */
+        public static final String LOBBY_LEADERBOARD_DELTA       = "LOBBY.LEADERBOARD_DELTA";
+        /** Client hủy đăng ký cập nhật leaderboard. */
+        public static final String LOBBY_LEADERBOARD_UNSUBSCRIBE = "LOBBY.LEADERBOARD_UNSUBSCRIBE";
+
 
         // ============================
         // GAME DOMAIN
@@ -74,6 +103,9 @@ public final class MessageProtocol {
         /** Thông báo đẩy từ server cho 2 client khi tìm thấy trận. */
         public static final String GAME_MATCH_FOUND      = "GAME.MATCH_FOUND";
 
+        /** Client báo đã sẵn sàng sau MATCH_FOUND (payload: matchId). Cả hai ready → GAME.START ngay. */
+        public static final String GAME_READY            = "GAME.READY";
+
         /** Bắt đầu trận đấu, gửi thông tin ban đầu. */
         public static final String GAME_START            = "GAME.START";
 
@@ -83,6 +115,9 @@ public final class MessageProtocol {
         /** Kết thúc một vòng đấu, công bố kết quả round. */
         public static final String GAME_ROUND_REVEAL     = "GAME.ROUND_REVEAL";
 
+        /** Client báo đã hiển thị xong kết quả hiệp (payload: matchId, roundNumber). Cả hai ack → hiệp mới ngay. */
+        public static final String GAME_REVEAL_ACK       = "GAME.REVEAL_ACK";
+
         // THAY ĐỔI: Hợp nhất GAME_PLAY_CARD, ACK, NACK thành một cặp request/response
         /** Client gửi yêu cầu đánh một lá bài. */
         public static final String GAME_CARD_PLAY_REQUEST  = "GAME.CARD_PLAY_REQUEST";
@@ -137,6 +172,11 @@ public final class MessageProtocol {
         public static final String SYSTEM_PONG           = "SYSTEM.PONG";
         public static final String SYSTEM_ERROR          = "SYSTEM.ERROR";
 
+        /** Yêu cầu snapshot metrics (histogram độ trễ, gauge) của Core. */
+        public static final String SYSTEM_METRICS_REQUEST  = "SYSTEM.METRICS_REQUEST";
+        /** Server trả về snapshot metrics. */
+        public static final String SYSTEM_METRICS_RESPONSE = "SYSTEM.METRICS_RESPONSE";
+
     }
 
     // THAY ĐỔI: Keys class được cập nhật để khớp với MessageEnvelope tinh gọn.
@@ -1,15 +1,27 @@
 package com.n9.shared.model;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  * ChallengeSession - Mô hình dữ liệu cho một lời thách đấu.
  * 
  * Lifecycle:
  * 1. PENDING - Đang chờ target trả lời
- * 2. ACCEPTED - Target chấp nhận → Tạo match
- * 3. DECLINED - Target từ chối
+ * 2. ACCEPTED - Một target chấp nhận → Tạo match
+ * 3. DECLINED - Tất cả target từ chối
  * 4. TIMEOUT - Hết thời gian (15s)
  * 5. CANCELLED - Sender hủy hoặc disconnect
  * 
+ * Chuyển trạng thái từ PENDING dùng compareAndSetStatus() (CAS) → chỉ đúng một luồng
+ * (accept / decline / cancel / timeout) thắng, không cần lock riêng cho mỗi challenge.
+ * 
+ * Open challenge: một challenge có thể gửi đến nhiều target cùng lúc. Target đầu tiên
+ * accept thắng CAS PENDING → ACCEPTED; target từ chối chỉ bị rút khỏi pendingTargetIds.
+ * 
  * @author N9 Team
  * @version 1.0.0
  * @since 2025-11-07
@@ -18,10 +30,12 @@ public class ChallengeSession {
     
     private final String challengeId;
     private final String senderId;
-    private final String targetId;
+    private final List<String> targetIds;
+    private final Set<String> pendingTargetIds;
+    private volatile String acceptedTargetId;
     private final long createdAt;
     private final long expiresAt;
-    private ChallengeStatus status;
+    private final AtomicReference<ChallengeStatus> status;
     
     /**
      * Trạng thái của challenge.
@@ -52,12 +66,26 @@ public class ChallengeSession {
      * @param timeoutSeconds Thời gian timeout (giây)
      */
     public ChallengeSession(String challengeId, String senderId, String targetId, int timeoutSeconds) {
+        this(challengeId, senderId, List.of(targetId), timeoutSeconds);
+    }
+    
+    /**
+     * Constructor cho open challenge (nhiều target).
+     * 
+     * @param targetIds Danh sách target (không rỗng, không trùng)
+     */
+    public ChallengeSession(String challengeId, String senderId, List<String> targetIds, int timeoutSeconds) {
+        if (targetIds == null || targetIds.isEmpty()) {
+            throw new IllegalArgumentException("At least one target is required");
+        }
         this.challengeId = challengeId;
         this.senderId = senderId;
-        this.targetId = targetId;
+        this.targetIds = List.copyOf(targetIds);
+        this.pendingTargetIds = ConcurrentHashMap.newKeySet();
+        this.pendingTargetIds.addAll(targetIds);
         this.createdAt = System.currentTimeMillis();
         this.expiresAt = this.createdAt + (timeoutSeconds * 1000L);
-        this.status = ChallengeStatus.PENDING;
+        this.status = new AtomicReference<>(ChallengeStatus.PENDING);
     }
     
     // ============================
@@ -72,8 +100,30 @@ public class ChallengeSession {
         return senderId;
     }
     
+    /**
+     * Target đã accept; nếu chưa có thì target đầu tiên được mời.
+     */
     public String getTargetId() {
-        return targetId;
+        String accepted = acceptedTargetId;
+        return accepted != null ? accepted : targetIds.get(0);
+    }
+    
+    /** Tất cả target được mời (bất biến). */
+    public List<String> getTargetIds() {
+        return targetIds;
+    }
+    
+    /** Target chưa từ chối/rời đi (view chỉ đọc, thay đổi đồng thời). */
+    public Set<String> getPendingTargetIds() {
+        return Collections.unmodifiableSet(pendingTargetIds);
+    }
+    
+    public String getAcceptedTargetId() {
+        return acceptedTargetId;
+    }
+    
+    public boolean isPendingTarget(String userId) {
+        return pendingTargetIds.contains(userId);
     }
     
     public long getCreatedAt() {
@@ -85,7 +135,7 @@ public class ChallengeSession {
     }
     
     public ChallengeStatus getStatus() {
-        return status;
+        return status.get();
     }
     
     // ============================
@@ -93,7 +143,29 @@ public class ChallengeSession {
     // ============================
     
     public void setStatus(ChallengeStatus status) {
-        this.status = status;
+        this.status.set(status);
+    }
+    
+    public void setAcceptedTargetId(String acceptedTargetId) {
+        this.acceptedTargetId = acceptedTargetId;
+    }
+    
+    /**
+     * Rút một target khỏi challenge (từ chối hoặc disconnect).
+     * 
+     * @return true nếu target đang chờ và đã được rút (chỉ một luồng nhận true)
+     */
+    public boolean removePendingTarget(String userId) {
+        return pendingTargetIds.remove(userId);
+    }
+    
+    /**
+     * Chuyển trạng thái nguyên tử.
+     * 
+     * @return true nếu trạng thái hiện tại đúng là expected và đã được đổi thành update
+     */
+    public boolean compareAndSetStatus(ChallengeStatus expected, ChallengeStatus update) {
+        return this.status.compareAndSet(expected, update);
     }
     
     // ============================
@@ -121,7 +193,7 @@ public class ChallengeSession {
     
     @Override
     public String toString() {
-        return String.format("ChallengeSession{id=%s, sender=%s, target=%s, status=%s, remaining=%ds}",
-                challengeId, senderId, targetId, status, getRemainingSeconds());
+        return String.format("ChallengeSession{id=%s, sender=%s, targets=%s, status=%s, remaining=%ds}",
+                challengeId, senderId, targetIds, status.get(), getRemainingSeconds());
     }
 }
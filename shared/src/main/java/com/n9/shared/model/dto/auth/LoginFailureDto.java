@@ -112,6 +112,16 @@ public class LoginFailureDto {
         return dto;
     }
     
+    public static LoginFailureDto serverBusy(int retryAfter) {
+        LoginFailureDto dto = new LoginFailureDto();
+        dto.errorCode = ErrorCode.SYSTEM_SERVICE_UNAVAILABLE.getCode();
+        dto.message = "Server busy, retry after " + retryAfter + "s";
+        dto.reason = "SERVER_BUSY";
+        dto.retryAllowed = true;
+        dto.retryAfter = retryAfter;
+        return dto;
+    }
+    
     public static LoginFailureDto sessionConflict() {
         LoginFailureDto dto = new LoginFailureDto();
         dto.errorCode = "AUTH_SESSION_CONFLICT";
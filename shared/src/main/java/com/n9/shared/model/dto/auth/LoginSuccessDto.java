@@ -46,6 +46,10 @@ public class LoginSuccessDto {
     @JsonProperty("score")
     private Double score;
     
+    /** ELO-style rating (user_profiles.current_rating) */
+    @JsonProperty("rating")
+    private Double rating;
+    
     /** Total games played */
     @JsonProperty("gamesPlayed")
     private Integer gamesPlayed;
@@ -206,6 +210,9 @@ public class LoginSuccessDto {
     public Double getScore() { return score; }
     public void setScore(Double score) { this.score = score; }
     
+    public Double getRating() { return rating; }
+    public void setRating(Double rating) { this.rating = rating; }
+    
     public Integer getGamesPlayed() { return gamesPlayed; }
     public void setGamesPlayed(Integer gamesPlayed) { this.gamesPlayed = gamesPlayed; }
     
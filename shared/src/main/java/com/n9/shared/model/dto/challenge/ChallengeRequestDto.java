@@ -1,5 +1,7 @@
 package com.n9.shared.model.dto.challenge;
 
+import java.util.List;
+
 /**
  * DTO cho request thách đấu từ client.
  * 
@@ -7,10 +9,16 @@ package com.n9.shared.model.dto.challenge;
  * {
  *   "targetUserId": "101"
  * }
+ * 
+ * Open challenge (gửi nhiều người, ai accept trước thì đấu):
+ * {
+ *   "targetUserIds": ["101", "102", "103"]
+ * }
  */
 public class ChallengeRequestDto {
     
     private String targetUserId;
+    private List<String> targetUserIds;
     
     // Constructors
     public ChallengeRequestDto() {}
@@ -27,4 +35,12 @@ public class ChallengeRequestDto {
     public void setTargetUserId(String targetUserId) {
         this.targetUserId = targetUserId;
     }
+    
+    public List<String> getTargetUserIds() {
+        return targetUserIds;
+    }
+    
+    public void setTargetUserIds(List<String> targetUserIds) {
+        this.targetUserIds = targetUserIds;
+    }
 }